@@ -1,11 +1,15 @@
 package hr.fer.zemris.java.tecaj_13;
 
+import hr.fer.zemris.java.tecaj_13.dao.sql.ConnectionScope;
 import hr.fer.zemris.java.tecaj_13.dao.sql.SQLConnectionProvider;
+import hr.fer.zemris.java.tecaj_13.pool.ReplicaDataSource;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
 
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.SQLException;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -13,31 +17,56 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.sql.DataSource;
 
 /**
- * {@code ConnectionSetterFilter} is filter that sets the connection for every
- * servlet.
+ * {@code ConnectionSetterFilter} is filter that opens a connection scope for
+ * every request.
+ * <p>
+ * Connection is acquired from the connection pool only when some servlet
+ * first asks {@link SQLConnectionProvider} for it, so requests for static
+ * resources and requests served from caches don't use the pool at all.
+ * Connection is returned to the pool as soon as the request is forwarded to a
+ * page, before the page is rendered, and the scope is closed when the request
+ * is finished.
+ * <p>
+ * Scope is not tied to the request thread: it is stored as the request
+ * attribute {@link ConnectionScope#ATTRIBUTE}, so a servlet that continues the
+ * request asynchronously on another thread can bind it there. Scope of such a
+ * request is closed when its asynchronous processing completes.
+ * <p>
+ * If read replicas are configured reads of the scope use them. Servlet that
+ * writes calls {@link #markWritten(HttpServletRequest, HttpServletResponse,
+ * long)} to give the client a cookie, and requests with that cookie read only
+ * from the primary database until replicas catch up.
+ * <p>
+ * Votes are first held by the {@link VoteAggregator}, and results are read
+ * from a snapshot that changes only when they are written, so the cookie also
+ * carries the generation of the client's last vote. Servlets that show votes
+ * get the aggregator from {@link #pendingVotes(HttpServletRequest)} if that
+ * generation is still pending and add its pending votes to the results they
+ * read, so clients see their own votes(e.g. results after a vote redirect)
+ * while votes are written only by the aggregator's own flushes.
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see Filter
  */
-@WebFilter(filterName = "f1", urlPatterns = { "/*" })
+@WebFilter(
+        filterName = "f1",
+        urlPatterns = { "/*" },
+        dispatcherTypes = { DispatcherType.REQUEST, DispatcherType.FORWARD },
+        asyncSupported = true)
 public class ConnectionSetterFilter implements Filter {
 
+    /** Name of the cookie of clients that read from the primary database. */
+    public static final String PRIMARY_READS_COOKIE = "primaryReads";
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
-        DataSource ds = (DataSource) filterConfig.getServletContext().getAttribute("hr.fer.zemris.dbpool");
-        Connection con = null;
-
-        try {
-            con = ds.getConnection();
-        } catch (SQLException e) {
-            throw new ServletException("Database is currently unavailable.", e);
-        }
-
-        SQLConnectionProvider.setConnection(con);
     }
 
     @Override
@@ -47,26 +76,180 @@ public class ConnectionSetterFilter implements Filter {
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
-        DataSource ds = (DataSource) request.getServletContext().getAttribute("hr.fer.zemris.dbpool");
-        Connection con = null;
+        if (request.getDispatcherType() == DispatcherType.FORWARD) {
+            ConnectionScope scope = (ConnectionScope) request.getAttribute(ConnectionScope.ATTRIBUTE);
+            if (scope != null) {
+                scope.release();
+            }
+            chain.doFilter(request, response);
+            return;
+        }
 
-        try {
-            con = ds.getConnection();
-        } catch (SQLException e) {
-            throw new IOException("Database is currently unavailable.", e);
+        DataSource ds = (DataSource) request.getServletContext().getAttribute(Initialization.DBPOOL_ATTRIBUTE);
+        DataSource replicas = (DataSource) request.getServletContext().getAttribute(Initialization.REPLICAS_ATTRIBUTE);
+        if (replicas != null && readsPrimary(request)) {
+            replicas = null;
         }
 
-        SQLConnectionProvider.setConnection(con);
+        ConnectionScope scope = new ConnectionScope(ds, replicas);
+        request.setAttribute(ConnectionScope.ATTRIBUTE, scope);
 
+        ConnectionScope previous = SQLConnectionProvider.bindScope(scope);
         try {
             chain.doFilter(request, response);
         } finally {
-            SQLConnectionProvider.setConnection(null);
-            try {
-                con.close();
-            } catch (SQLException ignorable) {
+            SQLConnectionProvider.bindScope(previous);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ScopeCloser(scope));
+            } else {
+                scope.close();
             }
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Makes the client of the specified request read from the primary database
+     * for as long as replicas may lag behind it and, if its vote is held by
+     * the vote aggregator, see that vote until it is written. Should be called
+     * by every servlet that writes to database before its response is
+     * committed. Does nothing if no read replicas are configured and nothing is
+     * held by the aggregator.
+     * 
+     * @param req
+     *            the request that wrote to database
+     * @param resp
+     *            the response
+     * @param generation
+     *            the generation returned by
+     *            {@link VoteAggregator#addVote(long, long)} or {@code 0} if
+     *            request wrote to database directly
+     */
+    public static void markWritten(HttpServletRequest req, HttpServletResponse resp, long generation) {
+        ReplicaDataSource replicas = (ReplicaDataSource) req.getServletContext()
+                .getAttribute(Initialization.REPLICAS_ATTRIBUTE);
+        VoteAggregator aggregator = (VoteAggregator) req.getServletContext()
+                .getAttribute(Initialization.VOTES_ATTRIBUTE);
+        if (replicas == null && (aggregator == null || generation == 0))
+            return;
+
+        int maxAge = replicas == null ? 0 : replicas.getMaxLag();
+        if (aggregator != null && generation != 0) {
+            maxAge = (int) Math.max(maxAge, aggregator.getFlushInterval() / 1000 + 1);
+        }
+
+        Cookie cookie = new Cookie(PRIMARY_READS_COOKIE, Long.toString(generation));
+        cookie.setMaxAge(maxAge);
+        cookie.setPath(req.getContextPath().isEmpty() ? "/" : req.getContextPath());
+        cookie.setHttpOnly(true);
+        resp.addCookie(cookie);
+    }
+
+    /**
+     * Returns the vote aggregator if it still holds the votes of the client of
+     * the specified request or {@code null} if they are written. Results read
+     * for the client should include the aggregator's pending votes(see
+     * {@link VoteAggregator#readWithPendingVotes(long, java.util.function.Supplier,
+     * java.util.function.BiFunction)}), so the client sees its own votes
+     * without flushing them.
+     * 
+     * @param req
+     *            the request
+     * @return the aggregator that holds client's votes or {@code null} if
+     *         client has no pending votes
+     */
+    public static VoteAggregator pendingVotes(HttpServletRequest req) {
+        VoteAggregator aggregator = (VoteAggregator) req.getServletContext()
+                .getAttribute(Initialization.VOTES_ATTRIBUTE);
+        Cookie cookie = getPinCookie(req);
+        if (aggregator == null || cookie == null)
+            return null;
+
+        long generation;
+        try {
+            generation = Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return aggregator.isFlushed(generation) ? null : aggregator;
+    }
+
+    /**
+     * Checks if the client of the specified request must read from the
+     * primary database.
+     * 
+     * @param request
+     *            the request
+     * @return {@code true} if request has the cookie set by
+     *         {@link #markWritten(HttpServletRequest, HttpServletResponse, long)};
+     *         {@code false} otherwise
+     */
+    private static boolean readsPrimary(ServletRequest request) {
+        return request instanceof HttpServletRequest && getPinCookie((HttpServletRequest) request) != null;
+    }
+
+    /**
+     * Returns the cookie set by
+     * {@link #markWritten(HttpServletRequest, HttpServletResponse, long)} or
+     * {@code null} if the specified request doesn't have it.
+     * 
+     * @param req
+     *            the request
+     * @return the cookie or {@code null} if request doesn't have it
+     */
+    private static Cookie getPinCookie(HttpServletRequest req) {
+        Cookie[] cookies = req.getCookies();
+        if (cookies == null)
+            return null;
+
+        for (Cookie cookie : cookies) {
+            if (PRIMARY_READS_COOKIE.equals(cookie.getName()))
+                return cookie;
+        }
+
+        return null;
+    }
+
+    /**
+     * {@code ScopeCloser} closes the connection scope of an asynchronous
+     * request when its processing is finished.
+     * 
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class ScopeCloser implements AsyncListener {
+
+        /** Connection scope of the request. */
+        private final ConnectionScope scope;
+
+        /**
+         * Constructs a new {@code ScopeCloser}.
+         * 
+         * @param scope
+         *            the connection scope of the request
+         */
+        private ScopeCloser(ConnectionScope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            scope.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            scope.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            scope.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
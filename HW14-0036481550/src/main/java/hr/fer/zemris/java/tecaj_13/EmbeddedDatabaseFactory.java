@@ -0,0 +1,146 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Properties;
+
+import javax.servlet.ServletContextEvent;
+
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+
+/**
+ * {@code EmbeddedDatabaseFactory} is a utility class that boots the database
+ * run inside this application by the embedded Derby driver, makes its
+ * connection pool and shuts it down. Pool settings of the embedded database
+ * are overridden by properties whose keys start with "embedded.pool.", and
+ * page cache and checkpoint properties are passed to Derby.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class EmbeddedDatabaseFactory {
+
+    /** Class name of the embedded Derby driver. */
+    private static final String EMBEDDED_DRIVER = "org.apache.derby.jdbc.EmbeddedDriver";
+    /** SQL state of the exception thrown when a database is shut down. */
+    private static final String DATABASE_SHUT_DOWN = "08006";
+    /** Names of Derby storage properties that can be set for embedded database. */
+    private static final String[] EMBEDDED_STORAGE_PROPERTIES = {
+            "pageCacheSize",
+            "checkpointInterval",
+            "logSwitchInterval"
+    };
+
+    /**
+     * Disable creation of {@code EmbeddedDatabaseFactory} objects.
+     */
+    private EmbeddedDatabaseFactory() {
+    }
+
+    /**
+     * Returns the connection URL of the embedded database. Its directory is
+     * given by property "embedded.directory" or, if it is missing, it is the
+     * directory named by property "name" in "WEB-INF/derby" directory.
+     *
+     * @param sce
+     *            the servlet context event
+     * @param config
+     *            the configuration
+     * @return the connection URL of the embedded database
+     * @throws NullPointerException
+     *             if both "embedded.directory" and "name" properties are
+     *             missing or "user" or "password" property is missing
+     */
+    static String getDatabaseURL(ServletContextEvent sce, Properties config) {
+        String directory = config.getProperty("embedded.directory", "").trim();
+        if (directory.isEmpty()) {
+            String name = Objects.requireNonNull(
+                    config.getProperty("name"),
+                    "You cannot get embedded database directory with null reference as a name!");
+            directory = sce.getServletContext().getRealPath("/WEB-INF/derby/" + name);
+        }
+
+        return PoolFactory.getConnectionURL(config, directory);
+    }
+
+    /**
+     * Passes storage properties to Derby, boots the embedded database with the
+     * specified {@code databaseURL} and makes its connection pool.
+     *
+     * @param databaseURL
+     *            the connection URL of the embedded database
+     * @param config
+     *            the configuration
+     * @return the connection pool of the embedded database
+     * @throws RuntimeException
+     *             if database couldn't be booted or pool couldn't be made
+     */
+    static InstrumentedDataSource open(String databaseURL, Properties config) {
+        configureStorage(config);
+        boot(databaseURL);
+        return PoolFactory.createPrimary(EMBEDDED_DRIVER, databaseURL, Settings.withOverrides(config, "embedded."));
+    }
+
+    /**
+     * Shuts down the embedded database with the specified
+     * {@code databaseURL}. Exception that reports the successful shutdown is
+     * ignored.
+     *
+     * @param databaseURL
+     *            the connection URL of the embedded database
+     */
+    static void shutdown(String databaseURL) {
+        try {
+            DriverManager.getConnection(databaseURL + ";shutdown=true").close();
+        } catch (SQLException e) {
+            if (!DATABASE_SHUT_DOWN.equals(e.getSQLState())) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Boots the embedded database and creates it if it doesn't exist, so
+     * pooled connections don't have to create it.
+     *
+     * @param databaseURL
+     *            the connection URL of the embedded database
+     * @throws RuntimeException
+     *             if database couldn't be booted
+     */
+    private static void boot(String databaseURL) {
+        try {
+            Class.forName(EMBEDDED_DRIVER);
+            DriverManager.getConnection(databaseURL + ";create=true").close();
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new RuntimeException("Embedded database couldn't be booted.", e);
+        }
+    }
+
+    /**
+     * Passes storage properties whose keys start with "embedded." (e.g.
+     * "embedded.pageCacheSize") to Derby as system properties. Derby reads them
+     * when embedded database is booted, so this must be called before
+     * {@link #boot(String)}. Property that is already set as a system
+     * property(e.g. by JVM option) is left unchanged.
+     *
+     * @param config
+     *            the configuration
+     * @throws RuntimeException
+     *             if some property is not a valid number
+     */
+    private static void configureStorage(Properties config) {
+        for (String name : EMBEDDED_STORAGE_PROPERTIES) {
+            String key = "embedded." + name;
+            if (config.getProperty(key) == null)
+                continue;
+
+            long value = Settings.getLong(config, key, 0);
+            if (System.getProperty("derby.storage." + name) == null) {
+                System.setProperty("derby.storage." + name, Long.toString(value));
+            }
+        }
+    }
+
+}
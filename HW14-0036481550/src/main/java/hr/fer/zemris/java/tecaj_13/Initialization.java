@@ -1,12 +1,9 @@
 package hr.fer.zemris.java.tecaj_13;
 
-import java.beans.PropertyVetoException;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.util.Objects;
 import java.util.Properties;
 
 import javax.servlet.ServletContextEvent;
@@ -14,16 +11,49 @@ import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import javax.sql.DataSource;
 
-import com.mchange.v2.c3p0.ComboPooledDataSource;
-import com.mchange.v2.c3p0.DataSources;
-
+import hr.fer.zemris.java.tecaj_13.concurrent.ThreadFactories;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.NotifyingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.cache.CachingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.dao.sql.CounterCompactor;
+import hr.fer.zemris.java.tecaj_13.dao.sql.PollLoader;
+import hr.fer.zemris.java.tecaj_13.dao.sql.PollWatcher;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLAsyncDAO;
 import hr.fer.zemris.java.tecaj_13.dao.sql.SQLConnectionProvider;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLDAO;
 import hr.fer.zemris.java.tecaj_13.dao.sql.SQLUtils;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SchemaMigrator;
+import hr.fer.zemris.java.tecaj_13.dao.sql.ShardedSQLDAO;
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+import hr.fer.zemris.java.tecaj_13.pool.ReplicaDataSource;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
+import hr.fer.zemris.java.tecaj_13.votes.VoteQueue;
 
 /**
  * {@code Initialization} is a servlet context listener that on every context
- * initialization makes a connection pool and sets it as a servlet context
- * attribute.
+ * initialization makes a connection pool, a vote aggregator and a vote queue
+ * and sets them as servlet context attributes. Votes left in the vote journal by a previous
+ * run are written to database before application starts serving requests.
+ * <p>
+ * If property "replicas" lists servers of read replicas a connection pool is
+ * made for every replica and reads of requests are spread over them.
+ * <p>
+ * If property "mode" is "embedded" the database is run inside this
+ * application by the embedded Derby driver instead of being reached over the
+ * network. Its pool settings are overridden by properties whose keys start
+ * with "embedded.pool.", and page cache and checkpoint properties are passed
+ * to Derby. Embedded database is shut down when context is destroyed.
+ * <p>
+ * If property "mode" is "memory" no database is used. Polls and votes are kept
+ * by {@link MemoryDAO}, which is persisted to a snapshot file.
+ * <p>
+ * Setup specific to every mode lives in its own factory:
+ * {@link PoolFactory} makes the pools, {@link EmbeddedDatabaseFactory} runs the
+ * embedded database, {@link ReplicaFactory} makes pools of read replicas,
+ * {@link MemoryDAOFactory} makes the in-memory DAO and
+ * {@link VoteJournalFactory} opens the vote journal.
  * <p>
  * If file "src/main/webapp/WEB-INF/dbsettings.properties" is missing this
  * application will end with status code 1.
@@ -35,112 +65,320 @@ import hr.fer.zemris.java.tecaj_13.dao.sql.SQLUtils;
 @WebListener
 public class Initialization implements ServletContextListener {
 
+    /** Name of the servlet context attribute that holds the connection pool. */
+    public static final String DBPOOL_ATTRIBUTE = "hr.fer.zemris.dbpool";
+    /** Name of the servlet context attribute that holds the vote aggregator. */
+    public static final String VOTES_ATTRIBUTE = "hr.fer.zemris.votes";
+    /** Name of the servlet context attribute that holds the vote queue. */
+    public static final String VOTE_QUEUE_ATTRIBUTE = "hr.fer.zemris.voteQueue";
+    /** Name of the servlet context attribute that holds the results engine. */
+    public static final String RESULTS_ATTRIBUTE = "hr.fer.zemris.results";
+    /** Name of the servlet context attribute that holds the counter compactor. */
+    public static final String COMPACTOR_ATTRIBUTE = "hr.fer.zemris.compactor";
+    /** Name of the servlet context attribute that holds the poll watcher. */
+    public static final String WATCHER_ATTRIBUTE = "hr.fer.zemris.pollWatcher";
+    /** Name of the servlet context attribute that holds the asynchronous DAO. */
+    public static final String ASYNC_DAO_ATTRIBUTE = "hr.fer.zemris.asyncDao";
+    /** Name of the servlet context attribute that holds the read replicas. */
+    public static final String REPLICAS_ATTRIBUTE = "hr.fer.zemris.replicas";
+    /** Name of the servlet context attribute that holds the in-memory DAO. */
+    public static final String MEMORY_DAO_ATTRIBUTE = "hr.fer.zemris.memoryDao";
+
+    /** Default number of milliseconds between two flushes of pending votes. */
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+    /** Default number of pending votes that triggers a flush. */
+    private static final long DEFAULT_FLUSH_THRESHOLD = 1000;
+    /** Default maximum number of votes waiting to be recorded. */
+    private static final long DEFAULT_QUEUE_CAPACITY = 10000;
+    /** Default number of threads that record votes. */
+    private static final long DEFAULT_WRITER_THREADS = 4;
+    /** Default number of milliseconds between two compactions of counter shards. */
+    private static final long DEFAULT_COMPACT_INTERVAL = 10000;
+    /** Default maximum number of cached polls and poll option lists. */
+    private static final long DEFAULT_CACHE_SIZE = 1000;
+    /** Default number of milliseconds without file events before polls are reloaded. */
+    private static final long DEFAULT_WATCH_DEBOUNCE = 500;
+    /** Default number of threads that run asynchronous DAO calls. */
+    private static final long DEFAULT_JDBC_THREADS = 8;
+    /** Default maximum number of asynchronous DAO calls waiting to be run. */
+    private static final long DEFAULT_JDBC_QUEUE_CAPACITY = 1000;
+    /** Default timeout of an asynchronous DAO call in milliseconds. */
+    private static final long DEFAULT_JDBC_TIMEOUT = 5000;
+
+    /** Connection URL of the embedded database or {@code null} if database is not embedded. */
+    private String embeddedDatabaseURL;
+
     @Override
     public void contextInitialized(ServletContextEvent sce) {
-        String connectionURL = null;
+        Properties config = Settings.load(sce.getServletContext().getRealPath("/WEB-INF/dbsettings.properties"));
+        String mode = config.getProperty("mode", "client").trim();
+        boolean memory = "memory".equals(mode);
+
+        InstrumentedDataSource ds = null;
+        if (!memory) {
+            ds = openDatabase(sce, config, "embedded".equals(mode));
+            sce.getServletContext().setAttribute(DBPOOL_ATTRIBUTE, ds);
+        }
+
+        Path pollsDir = getPollsDirectory(sce);
+        PollLoader loader = null;
+        CachingDAO cachingDAO = null;
+
+        if (memory) {
+            MemoryDAO memoryDAO = MemoryDAOFactory.open(sce, config);
+            DAOProvider.setDao(memoryDAO);
+            sce.getServletContext().setAttribute(MEMORY_DAO_ATTRIBUTE, memoryDAO);
+
+            if (pollsDir != null) {
+                MemoryDAOFactory.loadPolls(memoryDAO, pollsDir);
+            }
+        } else {
+            int shards = (int) Settings.getLong(config, "votes.counterShards", 0);
+            SQLDAO sqlDAO = shards > 0 ? new ShardedSQLDAO(shards) : new SQLDAO();
+            DAOProvider.setDao(sqlDAO);
+
+            loader = new PollLoader(sqlDAO);
+            if (pollsDir != null) {
+                loadPolls(sce, ds, loader, pollsDir);
+            }
+
+            if (shards > 0) {
+                SQLConnectionProvider.runWithConnection(ds, () -> SQLUtils.createCounterShards(shards));
+
+                CounterCompactor compactor = new CounterCompactor(
+                        (ShardedSQLDAO) sqlDAO,
+                        ds,
+                        Settings.getLong(config, "votes.compactInterval", DEFAULT_COMPACT_INTERVAL));
+                sce.getServletContext().setAttribute(COMPACTOR_ATTRIBUTE, compactor);
+            }
 
-        connectionURL = getConnectionURL(sce.getServletContext().getRealPath("/WEB-INF/dbsettings.properties"));
+            if (Boolean.parseBoolean(config.getProperty("dao.cache", "true"))) {
+                cachingDAO = new CachingDAO(
+                        DAOProvider.getDao(),
+                        (int) Settings.getLong(config, "dao.cacheSize", DEFAULT_CACHE_SIZE));
+                DAOProvider.setDao(cachingDAO);
+            }
+        }
 
-        ComboPooledDataSource cpds = new ComboPooledDataSource();
+        ResultsEngine engine = new ResultsEngine(
+                (int) Settings.getLong(config, "results.maxOptions", ResultsEngine.DEFAULT_MAX_OPTIONS));
+        NotifyingDAO notifyingDAO = new NotifyingDAO(DAOProvider.getDao());
+        notifyingDAO.addListener(engine);
+        DAOProvider.setDao(notifyingDAO);
+        sce.getServletContext().setAttribute(RESULTS_ATTRIBUTE, engine);
+
+        if (Boolean.parseBoolean(config.getProperty("results.warmUp", "true"))) {
+            if (ds == null) {
+                engine.warmUp();
+            } else {
+                SQLConnectionProvider.runWithConnection(ds, engine::warmUp);
+            }
+        }
+
+        if (loader != null && pollsDir != null && Boolean.parseBoolean(config.getProperty("polls.watch", "true"))) {
+            CachingDAO cache = cachingDAO;
+            try {
+                PollWatcher watcher = new PollWatcher(
+                        loader,
+                        pollsDir,
+                        ds,
+                        Settings.getLong(config, "polls.watchDebounce", DEFAULT_WATCH_DEBOUNCE),
+                        pollID -> {
+                            if (cache != null) {
+                                cache.invalidatePoll(pollID);
+                            }
+                            engine.invalidate(pollID);
+                        });
+                sce.getServletContext().setAttribute(WATCHER_ATTRIBUTE, watcher);
+            } catch (IOException e) {
+                throw new RuntimeException("Directory with polls couldn't be watched.", e);
+            }
+        }
 
-        try {
-            cpds.setDriverClass("org.apache.derby.jdbc.ClientDriver");
-        } catch (PropertyVetoException e1) {
-            throw new RuntimeException("Error occured during initialization of a connection pool.", e1);
+        boolean virtualThreads = Boolean.parseBoolean(config.getProperty("execution.virtualThreads", "false"));
+        if (virtualThreads && !ThreadFactories.isVirtualSupported()) {
+            sce.getServletContext().log("Virtual threads are not supported by this JDK, platform threads are used.");
         }
 
-        cpds.setJdbcUrl(connectionURL);
+        SQLAsyncDAO asyncDAO = new SQLAsyncDAO(
+                ds,
+                (int) Settings.getLong(config, "dao.async.threads", DEFAULT_JDBC_THREADS),
+                (int) Settings.getLong(config, "dao.async.queueCapacity", DEFAULT_JDBC_QUEUE_CAPACITY),
+                Settings.getLong(config, "dao.async.timeout", DEFAULT_JDBC_TIMEOUT),
+                ThreadFactories.create("jdbc-", virtualThreads));
+        sce.getServletContext().setAttribute(ASYNC_DAO_ATTRIBUTE, asyncDAO);
 
-        sce.getServletContext().setAttribute("hr.fer.zemris.dbpool", cpds);
+        if (memory) {
+            sce.getServletContext().log("Votes are added directly to in-memory DAO and persisted by snapshots, "
+                    + "vote aggregator and journal are not used.");
+        } else {
+            VoteAggregator aggregator = new VoteAggregator(
+                    ds,
+                    VoteJournalFactory.open(sce, config),
+                    Settings.getLong(config, "votes.flushInterval", DEFAULT_FLUSH_INTERVAL),
+                    Settings.getLong(config, "votes.flushThreshold", DEFAULT_FLUSH_THRESHOLD));
+            aggregator.flush();
+            sce.getServletContext().setAttribute(VOTES_ATTRIBUTE, aggregator);
+        }
 
-        initializeDatabase(cpds, sce.getServletContext().getRealPath("WEB-INF/polls"));
+        VoteQueue queue = new VoteQueue(
+                (int) Settings.getLong(config, "votes.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+                (int) Settings.getLong(config, "votes.writerThreads", DEFAULT_WRITER_THREADS),
+                ThreadFactories.create("vote-writer-", virtualThreads));
+        sce.getServletContext().setAttribute(VOTE_QUEUE_ATTRIBUTE, queue);
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
-        ComboPooledDataSource cpds = (ComboPooledDataSource) sce.getServletContext()
-                .getAttribute("hr.fer.zemris.dbpool");
-        if (cpds != null) {
+        PollWatcher watcher = (PollWatcher) sce.getServletContext().getAttribute(WATCHER_ATTRIBUTE);
+        if (watcher != null) {
+            watcher.close();
+        }
+
+        VoteQueue queue = (VoteQueue) sce.getServletContext().getAttribute(VOTE_QUEUE_ATTRIBUTE);
+        if (queue != null) {
+            queue.close();
+        }
+
+        SQLAsyncDAO asyncDAO = (SQLAsyncDAO) sce.getServletContext().getAttribute(ASYNC_DAO_ATTRIBUTE);
+        if (asyncDAO != null) {
+            asyncDAO.close();
+        }
+
+        CounterCompactor compactor = (CounterCompactor) sce.getServletContext().getAttribute(COMPACTOR_ATTRIBUTE);
+        if (compactor != null) {
+            compactor.close();
+        }
+
+        VoteAggregator aggregator = (VoteAggregator) sce.getServletContext().getAttribute(VOTES_ATTRIBUTE);
+        if (aggregator != null) {
             try {
-                DataSources.destroy(cpds);
-            } catch (SQLException e) {
+                aggregator.close();
+            } catch (RuntimeException e) {
                 e.printStackTrace();
             }
         }
+
+        ResultsEngine engine = (ResultsEngine) sce.getServletContext().getAttribute(RESULTS_ATTRIBUTE);
+        if (engine != null) {
+            engine.close();
+        }
+
+        MemoryDAO memoryDAO = (MemoryDAO) sce.getServletContext().getAttribute(MEMORY_DAO_ATTRIBUTE);
+        if (memoryDAO != null) {
+            try {
+                memoryDAO.close();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        ReplicaDataSource replicas = (ReplicaDataSource) sce.getServletContext().getAttribute(REPLICAS_ATTRIBUTE);
+        if (replicas != null) {
+            ReplicaFactory.close(replicas);
+        }
+
+        InstrumentedDataSource ds = (InstrumentedDataSource) sce.getServletContext()
+                .getAttribute(DBPOOL_ATTRIBUTE);
+        if (ds != null) {
+            PoolFactory.destroy(ds);
+        }
+
+        if (embeddedDatabaseURL != null) {
+            EmbeddedDatabaseFactory.shutdown(embeddedDatabaseURL);
+            embeddedDatabaseURL = null;
+        }
     }
 
     /**
-     * Returns the connection URL of the database.
+     * Makes the connection pool of the database(and of its read replicas if
+     * they are configured) and brings schema of the database to its current
+     * version. Embedded database is booted first.
      * 
-     * @param configPath
-     *            path to a {@code .properties} file that contains resources
-     *            needed to make connection URL
-     * @return the connection URL of the database
-     * @throws NullPointerException
-     *             if {@code configPath} parameter is a {@code null} reference
-     *             or {@code host}, {@code port}, {@code name}, {@code user} or
-     *             {@code password} properties are missing from a file specified
-     *             by {@code configPath} parameter.
+     * @param sce
+     *            the servlet context event
+     * @param config
+     *            the configuration
+     * @param embedded
+     *            whether database is embedded
+     * @return the connection pool of the database
+     * @throws RuntimeException
+     *             if pool couldn't be made or database couldn't be initialized
      */
-    private static String getConnectionURL(String configPath) {
-        Objects.requireNonNull(
-                configPath,
-                "You cannot get connection URL with null reference as a path to config file!");
-
-        Properties config = new Properties();
-
-        try {
-            config.load(Files.newInputStream(Paths.get(configPath)));
-        } catch (IOException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
-
-        String host = Objects.requireNonNull(
-                config.getProperty("host"),
-                "You cannot get connection URL with null reference as a host!");
-        String port = Objects.requireNonNull(
-                config.getProperty("port"),
-                "You cannot get connection URL with null reference as a port!");
-        String name = Objects.requireNonNull(
-                config.getProperty("name"),
-                "You cannot get connection URL with null reference as a name!");
-        String user = Objects.requireNonNull(
-                config.getProperty("user"),
-                "You cannot get connection URL with null reference as a user!");
-        String password = Objects.requireNonNull(
-                config.getProperty("password"),
-                "You cannot get connection URL with null reference as a password!");
-
-        return "jdbc:derby://" + host + ":" + port + "/" + name + ";user=" + user + ";password=" + password;
+    private InstrumentedDataSource openDatabase(ServletContextEvent sce, Properties config, boolean embedded) {
+        InstrumentedDataSource ds;
+        if (embedded) {
+            embeddedDatabaseURL = EmbeddedDatabaseFactory.getDatabaseURL(sce, config);
+            ds = EmbeddedDatabaseFactory.open(embeddedDatabaseURL, config);
+        } else {
+            ds = PoolFactory.openClient(config);
+        }
+
+        if (ReplicaFactory.isConfigured(config)) {
+            if (embedded) {
+                sce.getServletContext().log("Read replicas are not used by embedded database.");
+            } else {
+                sce.getServletContext().setAttribute(REPLICAS_ATTRIBUTE, ReplicaFactory.open(config));
+            }
+        }
+
+        initializeDatabase(ds);
+        return ds;
     }
 
     /**
-     * Creates the polls if they previously didn't existed in the database and
-     * loads them with data from .properties files in location specified by
-     * {@code dir} parameter.
+     * Brings schema of the database to its current version.
      * 
      * @param ds
      *            data source
-     * @param dir
-     *            the path to directory with .properties files containg
-     *            information about polls
      * @throws RuntimeException
      *             if a database access error occurs
      */
-    private static void initializeDatabase(DataSource ds, String dir) {
-        Connection con = null;
+    private static void initializeDatabase(DataSource ds) {
+        SQLConnectionProvider.runWithConnection(ds, SchemaMigrator::migrate);
+    }
 
-        try {
-            con = ds.getConnection();
-        } catch (SQLException e) {
-            throw new RuntimeException(e.getMessage(), e);
-        }
+    /**
+     * Returns the path to "WEB-INF/polls" directory or {@code null} if it
+     * doesn't exist.
+     * 
+     * @param sce
+     *            the servlet context event
+     * @return the path to directory with polls
+     */
+    private static Path getPollsDirectory(ServletContextEvent sce) {
+        String realPath = sce.getServletContext().getRealPath("/WEB-INF/polls");
+        if (realPath == null || !Files.isDirectory(Paths.get(realPath)))
+            return null;
 
-        SQLConnectionProvider.setConnection(con);
+        return Paths.get(realPath);
+    }
 
-        SQLUtils.createPollsIfNotExist();
-        SQLUtils.createPollOptionsIfNotExist();
-        SQLUtils.loadPolls(dir);
+    /**
+     * Loads polls that are not in the database from .properties files in
+     * directory specified by {@code dir} parameter that changed since the
+     * previous start and logs the time spent in every phase of loading.
+     * 
+     * @param sce
+     *            the servlet context event
+     * @param ds
+     *            data source
+     * @param loader
+     *            the loader polls are loaded with
+     * @param dir
+     *            the directory with polls
+     * @throws RuntimeException
+     *             if directory couldn't be read or a database access error
+     *             occurs
+     */
+    private static void loadPolls(ServletContextEvent sce, DataSource ds, PollLoader loader, Path dir) {
+        SQLConnectionProvider.runWithConnection(ds, () -> {
+            try {
+                sce.getServletContext().log(loader.load(dir).toString());
+            } catch (IOException e) {
+                throw new RuntimeException("Polls couldn't be loaded.", e);
+            }
+        });
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import javax.servlet.ServletContextEvent;
+
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.dao.sql.PollLoader;
+
+/**
+ * {@code MemoryDAOFactory} is a utility class that makes the {@link MemoryDAO}
+ * used when property "mode" is "memory" and adds polls defined by
+ * .properties files to it.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class MemoryDAOFactory {
+
+    /** Default number of milliseconds between two snapshots of the in-memory DAO. */
+    private static final long DEFAULT_SNAPSHOT_INTERVAL = 10000;
+
+    /**
+     * Disable creation of {@code MemoryDAOFactory} objects.
+     */
+    private MemoryDAOFactory() {
+    }
+
+    /**
+     * Makes the in-memory DAO. Its snapshot file is given by property
+     * "memory.snapshot" or, if it is missing, it is file "polls.snapshot" in
+     * "WEB-INF/snapshot" directory.
+     *
+     * @param sce
+     *            the servlet context event
+     * @param config
+     *            the configuration
+     * @return the in-memory DAO
+     * @throws RuntimeException
+     *             if snapshot couldn't be loaded
+     */
+    static MemoryDAO open(ServletContextEvent sce, Properties config) {
+        String snapshot = config.getProperty("memory.snapshot", "").trim();
+        if (snapshot.isEmpty()) {
+            snapshot = sce.getServletContext().getRealPath("/WEB-INF/snapshot/polls.snapshot");
+        }
+
+        return new MemoryDAO(
+                Paths.get(snapshot),
+                Settings.getLong(config, "memory.snapshotInterval", DEFAULT_SNAPSHOT_INTERVAL));
+    }
+
+    /**
+     * Adds polls defined by .properties files in directory specified by
+     * {@code dir} parameter that are not in the in-memory DAO.
+     *
+     * @param dao
+     *            the in-memory DAO
+     * @param dir
+     *            the directory with polls
+     * @throws RuntimeException
+     *             if directory couldn't be read
+     */
+    static void loadPolls(MemoryDAO dao, Path dir) {
+        try {
+            PollLoader.readDefinitions(dir).forEach(dao::addPollIfDoesntExist);
+        } catch (IOException e) {
+            throw new RuntimeException("Polls couldn't be loaded.", e);
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.beans.PropertyVetoException;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Properties;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.mchange.v2.c3p0.DataSources;
+
+import hr.fer.zemris.java.tecaj_13.dao.sql.StatementStatistics;
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+import hr.fer.zemris.java.tecaj_13.pool.LeakDetector;
+
+/**
+ * {@code PoolFactory} is a utility class that makes instrumented c3p0
+ * connection pools configured by properties whose keys start with "pool.",
+ * both for the database reached over the network and, through
+ * {@link EmbeddedDatabaseFactory} and {@link ReplicaFactory}, for the
+ * embedded database and read replicas.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class PoolFactory {
+
+    /** Class name of the network client Derby driver. */
+    static final String CLIENT_DRIVER = "org.apache.derby.jdbc.ClientDriver";
+    /** Default number of pool checkouts per captured leak stack trace. */
+    private static final long DEFAULT_LEAK_STACK_SAMPLING = 100;
+
+    /**
+     * Disable creation of {@code PoolFactory} objects.
+     */
+    private PoolFactory() {
+    }
+
+    /**
+     * Makes the connection pool of the database on the server given by
+     * properties "host" and "port".
+     *
+     * @param config
+     *            the configuration
+     * @return the connection pool of the database
+     * @throws NullPointerException
+     *             if "host", "port", "name", "user" or "password" property is
+     *             missing
+     * @throws RuntimeException
+     *             if pool couldn't be made
+     */
+    static InstrumentedDataSource openClient(Properties config) {
+        String connectionURL = getConnectionURL(config, config.getProperty("host"), config.getProperty("port"));
+        return createPrimary(CLIENT_DRIVER, connectionURL, config);
+    }
+
+    /**
+     * Makes the connection pool of the primary database with the specified
+     * connection URL. Its statement cache size is passed to
+     * {@link StatementStatistics}.
+     *
+     * @param driverClass
+     *            the class name of the JDBC driver
+     * @param connectionURL
+     *            the connection URL of the database
+     * @param config
+     *            the configuration
+     * @return the connection pool
+     * @throws RuntimeException
+     *             if pool couldn't be made
+     */
+    static InstrumentedDataSource createPrimary(String driverClass, String connectionURL, Properties config) {
+        ComboPooledDataSource cpds = createPool(driverClass, connectionURL, config);
+        StatementStatistics.setCacheSize(cpds.getMaxStatementsPerConnection());
+        return new InstrumentedDataSource(cpds, createLeakDetector(config));
+    }
+
+    /**
+     * Makes the connection pool of a read replica whose metrics are registered
+     * with the specified {@code prefix}.
+     *
+     * @param connectionURL
+     *            the connection URL of the replica
+     * @param config
+     *            the configuration
+     * @param prefix
+     *            the prefix of the names of metrics of the pool
+     * @return the connection pool
+     * @throws RuntimeException
+     *             if pool couldn't be made
+     */
+    static InstrumentedDataSource createReplica(String connectionURL, Properties config, String prefix) {
+        return new InstrumentedDataSource(
+                createPool(CLIENT_DRIVER, connectionURL, config),
+                createLeakDetector(config),
+                prefix);
+    }
+
+    /**
+     * Unregisters metrics of the specified connection pool and closes its
+     * connections.
+     *
+     * @param ds
+     *            the connection pool
+     */
+    static void destroy(InstrumentedDataSource ds) {
+        ds.close();
+        try {
+            DataSources.destroy(ds.getDelegate());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the connection URL of the database on the specified server.
+     *
+     * @param config
+     *            the configuration that contains resources needed to make
+     *            connection URL
+     * @param host
+     *            the host of the database server
+     * @param port
+     *            the port of the database server
+     * @return the connection URL of the database
+     * @throws NullPointerException
+     *             if {@code config}, {@code host} or {@code port} parameter is
+     *             a {@code null} reference or {@code name}, {@code user} or
+     *             {@code password} properties are missing from configuration.
+     */
+    static String getConnectionURL(Properties config, String host, String port) {
+        Objects.requireNonNull(
+                config,
+                "You cannot get connection URL with null reference as a configuration!");
+        Objects.requireNonNull(host, "You cannot get connection URL with null reference as a host!");
+        Objects.requireNonNull(port, "You cannot get connection URL with null reference as a port!");
+
+        String name = Objects.requireNonNull(
+                config.getProperty("name"),
+                "You cannot get connection URL with null reference as a name!");
+
+        return getConnectionURL(config, "//" + host + ":" + port + "/" + name);
+    }
+
+    /**
+     * Returns the connection URL of the specified database. Database is either
+     * a database on a server or a directory of an embedded database.
+     *
+     * @param config
+     *            the configuration that contains resources needed to make
+     *            connection URL
+     * @param database
+     *            the database part of connection URL
+     * @return the connection URL of the database
+     * @throws NullPointerException
+     *             if {@code user} or {@code password} properties are missing
+     *             from configuration.
+     */
+    static String getConnectionURL(Properties config, String database) {
+        String user = Objects.requireNonNull(
+                config.getProperty("user"),
+                "You cannot get connection URL with null reference as a user!");
+        String password = Objects.requireNonNull(
+                config.getProperty("password"),
+                "You cannot get connection URL with null reference as a password!");
+
+        return "jdbc:derby:" + database + ";user=" + user + ";password=" + password;
+    }
+
+    /**
+     * Makes the leak detector configured by properties "pool.leakThreshold"
+     * and "pool.leakStackSampling".
+     *
+     * @param config
+     *            the configuration
+     * @return the leak detector or {@code null} if leaks are not detected
+     * @throws RuntimeException
+     *             if some property is not a valid number
+     */
+    private static LeakDetector createLeakDetector(Properties config) {
+        long leakThreshold = Settings.getLong(config, "pool.leakThreshold", 0);
+        if (leakThreshold <= 0)
+            return null;
+
+        return new LeakDetector(
+                leakThreshold,
+                (int) Settings.getLong(config, "pool.leakStackSampling", DEFAULT_LEAK_STACK_SAMPLING));
+    }
+
+    /**
+     * Makes a connection pool of the database with the specified connection
+     * URL.
+     *
+     * @param driverClass
+     *            the class name of the JDBC driver
+     * @param connectionURL
+     *            the connection URL of the database
+     * @param config
+     *            the configuration
+     * @return the connection pool
+     * @throws RuntimeException
+     *             if pool couldn't be made
+     */
+    private static ComboPooledDataSource createPool(String driverClass, String connectionURL, Properties config) {
+        ComboPooledDataSource cpds = new ComboPooledDataSource();
+
+        try {
+            cpds.setDriverClass(driverClass);
+        } catch (PropertyVetoException e1) {
+            throw new RuntimeException("Error occured during initialization of a connection pool.", e1);
+        }
+
+        cpds.setJdbcUrl(connectionURL);
+        configurePool(cpds, config);
+        return cpds;
+    }
+
+    /**
+     * Configures the connection pool with properties whose keys start with
+     * "pool.". Settings whose property is missing keep c3p0's default value.
+     *
+     * @param cpds
+     *            the connection pool
+     * @param config
+     *            the configuration
+     * @throws RuntimeException
+     *             if some property is not a valid number
+     */
+    private static void configurePool(ComboPooledDataSource cpds, Properties config) {
+        cpds.setMinPoolSize((int) Settings.getLong(config, "pool.minPoolSize", cpds.getMinPoolSize()));
+        cpds.setMaxPoolSize((int) Settings.getLong(config, "pool.maxPoolSize", cpds.getMaxPoolSize()));
+        cpds.setInitialPoolSize((int) Settings.getLong(config, "pool.initialPoolSize", cpds.getInitialPoolSize()));
+        cpds.setAcquireIncrement((int) Settings.getLong(
+                config,
+                "pool.acquireIncrement",
+                cpds.getAcquireIncrement()));
+        cpds.setCheckoutTimeout((int) Settings.getLong(config, "pool.checkoutTimeout", cpds.getCheckoutTimeout()));
+        cpds.setMaxStatementsPerConnection((int) Settings.getLong(
+                config,
+                "pool.maxStatementsPerConnection",
+                cpds.getMaxStatementsPerConnection()));
+        cpds.setIdleConnectionTestPeriod((int) Settings.getLong(
+                config,
+                "pool.idleConnectionTestPeriod",
+                cpds.getIdleConnectionTestPeriod()));
+        cpds.setMaxIdleTime((int) Settings.getLong(config, "pool.maxIdleTime", cpds.getMaxIdleTime()));
+        cpds.setTestConnectionOnCheckout(Boolean.parseBoolean(config.getProperty(
+                "pool.testConnectionOnCheckout",
+                Boolean.toString(cpds.isTestConnectionOnCheckout()))));
+
+        String testQuery = config.getProperty("pool.preferredTestQuery");
+        if (testQuery != null) {
+            cpds.setPreferredTestQuery(testQuery);
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+import hr.fer.zemris.java.tecaj_13.pool.ReplicaDataSource;
+
+/**
+ * {@code ReplicaFactory} is a utility class that makes a connection pool for
+ * every read replica listed by property "replicas" and combines them into a
+ * {@link ReplicaDataSource} that spreads reads over them.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class ReplicaFactory {
+
+    /** Default maximum number of seconds read replicas lag behind the primary database. */
+    private static final long DEFAULT_REPLICA_MAX_LAG = 5;
+
+    /**
+     * Disable creation of {@code ReplicaFactory} objects.
+     */
+    private ReplicaFactory() {
+    }
+
+    /**
+     * Checks if property "replicas" lists any servers.
+     *
+     * @param config
+     *            the configuration
+     * @return {@code true} if read replicas are configured; {@code false}
+     *         otherwise
+     */
+    static boolean isConfigured(Properties config) {
+        return !config.getProperty("replicas", "").trim().isEmpty();
+    }
+
+    /**
+     * Makes the connection pools of read replicas listed by property
+     * "replicas" as comma separated host:port pairs. Metrics of every pool are
+     * registered with prefix "replicaX.pool.", where X is the index of the
+     * replica.
+     *
+     * @param config
+     *            the configuration
+     * @return the read replicas
+     * @throws RuntimeException
+     *             if some replica is not given as host:port or its pool
+     *             couldn't be made
+     */
+    static ReplicaDataSource open(Properties config) {
+        List<InstrumentedDataSource> replicas = new ArrayList<>();
+        for (String server : config.getProperty("replicas", "").trim().split(",")) {
+            String[] parts = server.trim().split(":");
+            if (parts.length != 2)
+                throw new RuntimeException("Replica " + server.trim() + " must be given as host:port.");
+
+            replicas.add(PoolFactory.createReplica(
+                    PoolFactory.getConnectionURL(config, parts[0], parts[1]),
+                    config,
+                    "replica" + replicas.size() + ".pool."));
+        }
+
+        return new ReplicaDataSource(
+                replicas,
+                (int) Settings.getLong(config, "replicas.maxLag", DEFAULT_REPLICA_MAX_LAG));
+    }
+
+    /**
+     * Closes the connection pools of the specified read replicas.
+     *
+     * @param replicas
+     *            the read replicas
+     */
+    static void close(ReplicaDataSource replicas) {
+        for (DataSource replica : replicas.getReplicas()) {
+            PoolFactory.destroy((InstrumentedDataSource) replica);
+        }
+        replicas.close();
+    }
+
+}
@@ -0,0 +1,105 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * {@code Settings} is a utility class that loads the configuration of the
+ * application from "WEB-INF/dbsettings.properties" and reads typed values
+ * from it.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class Settings {
+
+    /**
+     * Disable creation of {@code Settings} objects.
+     */
+    private Settings() {
+    }
+
+    /**
+     * Loads the configuration from a {@code .properties} file.
+     *
+     * @param configPath
+     *            path to a {@code .properties} file that contains the
+     *            configuration
+     * @return the configuration
+     * @throws NullPointerException
+     *             if {@code configPath} parameter is a {@code null} reference
+     * @throws RuntimeException
+     *             if file couldn't be read
+     */
+    static Properties load(String configPath) {
+        Objects.requireNonNull(
+                configPath,
+                "You cannot load configuration with null reference as a path to config file!");
+
+        Properties config = new Properties();
+
+        try (InputStream is = Files.newInputStream(Paths.get(configPath))) {
+            config.load(is);
+        } catch (IOException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+
+        return config;
+    }
+
+    /**
+     * Returns the value of the property with the specified {@code key} as a
+     * {@code long} or {@code defaultValue} if property is missing.
+     *
+     * @param config
+     *            the configuration
+     * @param key
+     *            the property key
+     * @param defaultValue
+     *            value returned if property is missing
+     * @return the value of the property
+     * @throws RuntimeException
+     *             if property is not a valid number
+     */
+    static long getLong(Properties config, String key, long defaultValue) {
+        String value = config.getProperty(key);
+
+        if (value == null)
+            return defaultValue;
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Property " + key + " must be a number.", e);
+        }
+    }
+
+    /**
+     * Returns a copy of the configuration in which properties whose keys start
+     * with {@code prefix} override properties with the rest of their key(e.g.
+     * "embedded.pool.maxPoolSize" overrides "pool.maxPoolSize").
+     *
+     * @param config
+     *            the configuration
+     * @param prefix
+     *            the prefix of overriding properties
+     * @return the configuration with overridden properties
+     */
+    static Properties withOverrides(Properties config, String prefix) {
+        Properties overridden = new Properties();
+        overridden.putAll(config);
+
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                overridden.setProperty(key.substring(prefix.length()), config.getProperty(key));
+            }
+        }
+
+        return overridden;
+    }
+
+}
@@ -0,0 +1,56 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import javax.servlet.ServletContextEvent;
+
+import hr.fer.zemris.java.tecaj_13.votes.VoteJournal;
+
+/**
+ * {@code VoteJournalFactory} is a utility class that opens the
+ * {@link VoteJournal} pending votes are written to before they are flushed to
+ * database.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class VoteJournalFactory {
+
+    /**
+     * Disable creation of {@code VoteJournalFactory} objects.
+     */
+    private VoteJournalFactory() {
+    }
+
+    /**
+     * Opens the vote journal unless property "votes.journal" is
+     * {@code false}. Its directory is given by property "votes.journalDir" or,
+     * if it is missing, it is "WEB-INF/journal" directory.
+     *
+     * @param sce
+     *            the servlet context event
+     * @param config
+     *            the configuration
+     * @return the vote journal or {@code null} if journal is disabled
+     * @throws RuntimeException
+     *             if journal couldn't be opened
+     */
+    static VoteJournal open(ServletContextEvent sce, Properties config) {
+        if (!Boolean.parseBoolean(config.getProperty("votes.journal", "true")))
+            return null;
+
+        String journalDir = config.getProperty("votes.journalDir");
+        if (journalDir == null) {
+            journalDir = sce.getServletContext().getRealPath("/WEB-INF/journal");
+        }
+
+        try {
+            return new VoteJournal(Paths.get(journalDir));
+        } catch (IOException e) {
+            throw new RuntimeException("Vote journal couldn't be opened.", e);
+        }
+    }
+
+}
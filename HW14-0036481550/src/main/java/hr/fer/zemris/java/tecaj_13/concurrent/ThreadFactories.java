@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.tecaj_13.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code ThreadFactories} is a utility class that creates factories of the
+ * named threads that run the blocking work of the application(e.g. JDBC calls
+ * and journal I/O).
+ * <p>
+ * Threads are either daemon platform threads or, if requested and supported
+ * by the running JDK, virtual threads. Virtual thread is parked instead of
+ * blocking its carrier thread while it waits for I/O, so many more of them
+ * can wait for database at the same time. Application is compiled for an
+ * older JDK, so virtual threads are created reflectively; if they are not
+ * supported platform threads are used instead.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ThreadFactories {
+
+    /**
+     * Builder of virtual threads that can be named; {@code null} if virtual
+     * threads are not supported.
+     */
+    private static final Method VIRTUAL_BUILDER = findVirtualBuilder();
+
+    /**
+     * Disable creation of {@code ThreadFactories} objects.
+     */
+    private ThreadFactories() {
+    }
+
+    /**
+     * Checks if the running JDK supports virtual threads.
+     *
+     * @return {@code true} if virtual threads are supported; {@code false}
+     *         otherwise
+     */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_BUILDER != null;
+    }
+
+    /**
+     * Returns a factory of threads named by the specified {@code prefix} and
+     * the ordinal number of the thread. Threads are virtual if {@code virtual}
+     * parameter is {@code true} and virtual threads are supported; otherwise
+     * they are daemon platform threads.
+     *
+     * @param prefix
+     *            the prefix of thread names
+     * @param virtual
+     *            whether threads should be virtual
+     * @return the thread factory
+     * @throws NullPointerException
+     *             if {@code prefix} parameter is a {@code null} reference
+     */
+    public static ThreadFactory create(String prefix, boolean virtual) {
+        Objects.requireNonNull(prefix, "You cannot name threads by a null reference as a prefix.");
+
+        if (virtual && VIRTUAL_BUILDER != null) {
+            try {
+                Object builder = VIRTUAL_BUILDER.invoke(null);
+                builder = builder.getClass().getMethod("name", String.class, long.class)
+                        .invoke(builder, prefix, 1L);
+                return (ThreadFactory) builder.getClass().getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Returns the method {@code Thread.ofVirtual()} if virtual threads are
+     * supported by the running JDK.
+     *
+     * @return the method that returns a builder of virtual threads or
+     *         {@code null} if virtual threads are not supported
+     */
+    private static Method findVirtualBuilder() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package hr.fer.zemris.java.tecaj_13.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code AsyncDAO} is an asynchronous counterpart of {@link DAO}. Calls are not
+ * run by the calling thread but are submitted to an executor, and their
+ * results are returned as {@link CompletableFuture}s, so the calling thread is
+ * never blocked by database I/O and independent calls can run concurrently.
+ * <p>
+ * Calls use the {@link DAO} returned by {@link DAOProvider#getDao()} at the
+ * time they are run. Every call has a timeout; if call doesn't finish in time
+ * its future is completed exceptionally with a {@link DAOException} whose
+ * cause is a {@link java.util.concurrent.TimeoutException}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see DAO
+ */
+public interface AsyncDAO {
+
+    /**
+     * Submits the specified {@code call} with the default timeout.
+     *
+     * @param <T>
+     *            the type of the result
+     * @param call
+     *            the call that uses the DAO
+     * @return the future result of the call
+     * @throws NullPointerException
+     *             if {@code call} parameter is a {@code null} reference
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call);
+
+    /**
+     * Submits the specified {@code call} that must finish in {@code timeout}
+     * milliseconds.
+     *
+     * @param <T>
+     *            the type of the result
+     * @param call
+     *            the call that uses the DAO
+     * @param timeout
+     *            the maximum number of milliseconds the call may take or
+     *            {@code 0} if call has no timeout
+     * @return the future result of the call
+     * @throws NullPointerException
+     *             if {@code call} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code timeout} parameter is a negative number
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> call, long timeout);
+
+    /**
+     * Asynchronous version of {@link DAO#getPolls(long, int)}.
+     *
+     * @param afterID
+     *            the ID after which polls are returned
+     * @param limit
+     *            the maximum number of returned polls
+     * @return the future list of polls
+     */
+    public default CompletableFuture<List<Poll>> getPolls(long afterID, int limit) {
+        return submit(() -> DAOProvider.getDao().getPolls(afterID, limit));
+    }
+
+    /**
+     * Asynchronous version of {@link DAO#getPoll(long)}.
+     *
+     * @param id
+     *            the ID of the poll
+     * @return the future poll with the specified ID
+     */
+    public default CompletableFuture<Poll> getPoll(long id) {
+        return submit(() -> DAOProvider.getDao().getPoll(id));
+    }
+
+    /**
+     * Asynchronous version of {@link DAO#getPollOption(long)}.
+     *
+     * @param id
+     *            the ID of the poll option
+     * @return the future poll option with the specified ID
+     */
+    public default CompletableFuture<PollOption> getPollOption(long id) {
+        return submit(() -> DAOProvider.getDao().getPollOption(id));
+    }
+
+    /**
+     * Asynchronous version of {@link DAO#getPollOptionByPollID(long)}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the future list of options of the poll
+     */
+    public default CompletableFuture<List<PollOption>> getPollOptionByPollID(long pollID) {
+        return submit(() -> DAOProvider.getDao().getPollOptionByPollID(pollID));
+    }
+
+    /**
+     * Asynchronous version of {@link DAO#getPollDetails(long)}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the future poll with its options
+     */
+    public default CompletableFuture<PollDetails> getPollDetails(long pollID) {
+        return submit(() -> DAOProvider.getDao().getPollDetails(pollID));
+    }
+
+    /**
+     * Asynchronous version of {@link DAO#addVotes(List)}.
+     *
+     * @param votes
+     *            the list of votes
+     * @return the future number of affected rows for every vote in the list
+     */
+    public default CompletableFuture<int[]> addVotes(List<Vote> votes) {
+        return submit(() -> DAOProvider.getDao().addVotes(votes));
+    }
+
+}
@@ -1,14 +1,26 @@
 package hr.fer.zemris.java.tecaj_13.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
 import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
 
 /**
  * {@code DAO}(Direct Access Object) is an interface of a persistent data
  * subsystem.
+ * <p>
+ * Implementation may serve reads from replicas that lag behind the primary
+ * storage. Reads whose results are kept and updated with later writes(e.g.
+ * by a cache) must be done by {@link #readLatest(Supplier)}.
  * 
  * @author Karlo Vrbić
  * @version 1.0
@@ -24,6 +36,51 @@ public interface DAO {
      */
     public List<Poll> getAllPolls() throws DAOException;
 
+    /**
+     * Returns at most {@code limit} polls whose ID is greater than
+     * {@code afterID} ordered by ID. Next page of polls is returned by passing
+     * the ID of the last poll of the previous page as {@code afterID}.
+     * 
+     * @param afterID
+     *            the ID after which polls are returned
+     * @param limit
+     *            the maximum number of returned polls
+     * @return the list of polls
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code limit} parameter is not a positive number
+     */
+    public default List<Poll> getPolls(long afterID, int limit) throws DAOException {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit of polls must be a positive number.");
+
+        List<Poll> polls = new ArrayList<>();
+        for (Poll poll : getAllPolls()) {
+            if (poll.getId() > afterID && polls.size() < limit) {
+                polls.add(poll);
+            }
+        }
+
+        return polls;
+    }
+
+    /**
+     * Passes every poll to the specified {@code action} in order of their IDs
+     * without collecting them in a list.
+     * 
+     * @param action
+     *            the action performed on every poll
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code action} parameter is a {@code null} reference
+     */
+    public default void forEachPoll(Consumer<Poll> action) throws DAOException {
+        Objects.requireNonNull(action, "Action performed on polls cannot be a null reference.");
+        getAllPolls().forEach(action);
+    }
+
     /**
      * Returns the poll with the ID specified by parameter {@code id} or
      * {@code null} if that entry doesn't exist.
@@ -89,8 +146,8 @@ public interface DAO {
      *            the title of the poll
      * @param message
      *            the message of the poll
-     * @return the id of a new row or {@code -1} if row with same {@code title}
-     *         already exists
+     * @return the id of a new row or the id of the existing row with same
+     *         {@code title}
      * @throws DAOException
      *             if some exception occurs
      * @throws NullPointerException
@@ -99,6 +156,36 @@ public interface DAO {
      */
     public long addPollIfDoesntExist(String title, String message) throws DAOException;
 
+    /**
+     * Adds the poll of the specified {@code definition} if poll with the same
+     * title doesn't exist and then adds all of definition's options that the
+     * poll doesn't already have. IDs and poll IDs of definition's poll and
+     * options are ignored.
+     * 
+     * @param definition
+     *            the poll with its options
+     * @return the ID of the new or the existing poll
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code definition} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if votes count of some option is a negative number
+     */
+    public default long addPollIfDoesntExist(PollDetails definition) throws DAOException {
+        Objects.requireNonNull(definition, "You cannot add a null reference as a poll definition.");
+
+        Poll poll = definition.getPoll();
+        long pollID = addPollIfDoesntExist(poll.getTitle(), poll.getMessage());
+
+        for (PollOption option : definition.getOptions()) {
+            addPollOptionIfDoesntExist(option.getOptionTitle(), option.getOptionLink(), pollID,
+                    option.getVotesCount());
+        }
+
+        return pollID;
+    }
+
     /**
      * Returns the list of all poll options.
      * 
@@ -144,6 +231,91 @@ public interface DAO {
      */
     public List<PollOption> getPollOptionByPollID(long pollID) throws DAOException;
 
+    /**
+     * Returns at most {@code limit} options of the poll with the specified
+     * {@code pollID} sorted by votes count in descending order, skipping the
+     * first {@code offset} of them.
+     * 
+     * @param pollID
+     *            the ID of the poll
+     * @param offset
+     *            the number of skipped poll options
+     * @param limit
+     *            the maximum number of returned poll options
+     * @return the page of poll options sorted by votes count
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws IllegalArgumentException
+     *             if {@code offset} parameter is a negative number or
+     *             {@code limit} parameter is not a positive number
+     */
+    public default List<PollOption> getPollOptions(long pollID, int offset, int limit) throws DAOException {
+        if (offset < 0)
+            throw new IllegalArgumentException("Offset of poll options cannot be a negative number.");
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit of poll options must be a positive number.");
+
+        List<PollOption> options = getPollOptionByPollID(pollID);
+        if (options == null)
+            return new ArrayList<>();
+
+        options = new ArrayList<>(options);
+        options.sort(PollDetails.BY_VOTES);
+
+        int from = Math.min(offset, options.size());
+        return new ArrayList<>(options.subList(from, Math.min(options.size(), from + limit)));
+    }
+
+    /**
+     * Returns the poll with the specified {@code pollID} together with all of
+     * its options sorted by votes count in descending order.
+     * 
+     * @param pollID
+     *            the ID of the poll
+     * @return the poll with its options or {@code null} if poll with the
+     *         specified ID doesn't exist
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    public default PollDetails getPollDetails(long pollID) throws DAOException {
+        Poll poll = getPoll(pollID);
+        if (poll == null)
+            return null;
+
+        List<PollOption> options = new ArrayList<>(getPollOptionByPollID(pollID));
+        options.sort(PollDetails.BY_VOTES);
+
+        return new PollDetails(poll, options);
+    }
+
+    /**
+     * Returns polls with the specified {@code pollIDs} together with all of
+     * their options sorted by votes count in descending order. Polls that
+     * don't exist are not contained in the returned map.
+     * 
+     * @param pollIDs
+     *            the IDs of the polls
+     * @return map of poll IDs to polls with their options in iteration order
+     *         of {@code pollIDs}
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code pollIDs} parameter is a {@code null} reference
+     */
+    public default Map<Long, PollDetails> getPollDetails(Collection<Long> pollIDs) throws DAOException {
+        Objects.requireNonNull(pollIDs, "You cannot get polls with a null reference as poll IDs.");
+
+        Map<Long, PollDetails> details = new LinkedHashMap<>();
+        for (Long pollID : pollIDs) {
+            PollDetails pollDetails = getPollDetails(pollID);
+            if (pollDetails != null) {
+                details.put(pollID, pollDetails);
+            }
+        }
+
+        return details;
+    }
+
     /**
      * Adds a poll option to table 'PollOptions' with specified {@code id},
      * {@code optionTitle}, {@code optionLink}, {@code pollID} and
@@ -192,7 +364,8 @@ public interface DAO {
     /**
      * Adds a poll option to table 'PollOptions' with specified {@code id},
      * {@code optionTitle}, {@code optionLink}, {@code pollID} and
-     * {@code votesCount} if row with same {@code optionTitle} doesn't exist.
+     * {@code votesCount} if poll with specified {@code pollID} doesn't already
+     * have a row with same {@code optionTitle}.
      * 
      * @param optionTitle
      *            the title of the poll option
@@ -202,8 +375,8 @@ public interface DAO {
      *            the ID of the poll that this option is available
      * @param votesCount
      *            the votes count of this poll option
-     * @return the ID of a poll option or {@code -1} if row with same
-     *         {@code optionTitle} already exists
+     * @return the ID of a new poll option or the ID of the existing poll
+     *         option with same {@code optionTitle}
      * @throws DAOException
      *             if some exception occurs
      * @throws NullPointerException
@@ -233,6 +406,75 @@ public interface DAO {
      */
     public int updatePollOptionsVotesCount(long id, long votes) throws DAOException;
 
+    /**
+     * Updates votes count of every poll option whose ID is a key in
+     * {@code votes} map to votes count plus the value mapped to that key. All
+     * updates are applied as a single batch and either all of them or none of
+     * them are applied.
+     * 
+     * @param votes
+     *            map of poll option IDs to votes to be added
+     * @return the number of affected rows for every update in iteration order of
+     *         {@code votes} map
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code votes} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if some of the votes is a negative number
+     */
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException;
+
+    /**
+     * Updates votes count of poll options like
+     * {@link #updatePollOptionsVotesCount(Map)} and records
+     * {@code journalSegment} as the journal checkpoint in the same
+     * transaction, so votes of journal segments up to and including it are
+     * never applied twice.
+     * 
+     * @param votes
+     *            map of poll option IDs to votes to be added
+     * @param journalSegment
+     *            the sequence number of the last journal segment whose votes
+     *            are contained in {@code votes}
+     * @return the number of affected rows for every update in iteration order of
+     *         {@code votes} map
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code votes} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if some of the votes or {@code journalSegment} is a negative
+     *             number
+     */
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException;
+
+    /**
+     * Returns the sequence number of the last journal segment whose votes are
+     * written, as recorded by {@link #updatePollOptionsVotesCount(Map, long)}.
+     * 
+     * @return the journal checkpoint or {@code 0} if none was recorded
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    public long getJournalCheckpoint() throws DAOException;
+
+    /**
+     * Adds all specified {@code votes} in a single transaction. Vote is
+     * applied only if its poll option belongs to its poll.
+     * 
+     * @param votes
+     *            the list of votes
+     * @return the number of affected rows for every vote in the list; 1 if
+     *         vote was applied and 0 if poll option with the vote's ID doesn't
+     *         belong to the vote's poll
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code votes} parameter is a {@code null} reference
+     */
+    public int[] addVotes(List<Vote> votes) throws DAOException;
+
     /**
      * Updates the poll option with specified {@code id} votes count to votes
      * count plus {@code 1}.
@@ -249,4 +491,24 @@ public interface DAO {
     public default int updatePollOptionsVotesCount(long id) throws DAOException {
         return updatePollOptionsVotesCount(id, 1);
     }
+
+    /**
+     * Calls the specified {@code read} so that every read of this DAO it does
+     * sees all writes committed before the call. By default this DAO has no
+     * replicas and {@code read} is simply called.
+     * 
+     * @param <T>
+     *            the type of the result
+     * @param read
+     *            the read that uses this DAO
+     * @return the result of the read
+     * @throws DAOException
+     *             if some exception occurs
+     * @throws NullPointerException
+     *             if {@code read} parameter is a {@code null} reference
+     */
+    public default <T> T readLatest(Supplier<T> read) throws DAOException {
+        Objects.requireNonNull(read, "You cannot call a null reference as a read.");
+        return read.get();
+    }
 }
\ No newline at end of file
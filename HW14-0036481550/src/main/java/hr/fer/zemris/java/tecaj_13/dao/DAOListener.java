@@ -0,0 +1,63 @@
+package hr.fer.zemris.java.tecaj_13.dao;
+
+import java.util.Collection;
+
+/**
+ * {@code DAOListener} is an interface of an object that is notified after
+ * persistent data is successfully changed through {@link NotifyingDAO}.
+ * <p>
+ * Every write is also bracketed by {@link #writeStarted(Collection)} and
+ * {@link #writeFinished(Collection)} with IDs of poll options whose votes it
+ * adds, so listener that reads data itself(e.g. to build a cache) can tell
+ * whether a write to the data it read may have been committed but not yet
+ * notified while it was reading.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see NotifyingDAO
+ */
+public interface DAOListener {
+
+    /**
+     * Called after {@code votes} votes were added to the poll option with the
+     * specified {@code optionID}.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @param votes
+     *            the number of added votes
+     */
+    public void votesAdded(long optionID, long votes);
+
+    /**
+     * Called after the poll with the specified {@code pollID} or its options
+     * were changed in some way other than by adding votes(e.g. new poll option
+     * was added).
+     *
+     * @param pollID
+     *            the ID of the poll
+     */
+    public void pollChanged(long pollID);
+
+    /**
+     * Called before a write is delegated. Does nothing by default.
+     *
+     * @param optionIDs
+     *            IDs of poll options whose votes the write adds; empty if it
+     *            adds no votes
+     */
+    public default void writeStarted(Collection<Long> optionIDs) {
+    }
+
+    /**
+     * Called after a write finished, successfully or not, and all its changes
+     * were notified. Does nothing by default.
+     *
+     * @param optionIDs
+     *            IDs of poll options whose votes the write adds; the same IDs
+     *            that were passed to {@link #writeStarted(Collection)}
+     */
+    public default void writeFinished(Collection<Long> optionIDs) {
+    }
+
+}
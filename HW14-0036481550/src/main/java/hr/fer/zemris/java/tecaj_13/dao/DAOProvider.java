@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.tecaj_13.dao;
 
+import java.util.Objects;
+
 import hr.fer.zemris.java.tecaj_13.dao.sql.SQLDAO;
 
 /**
@@ -13,7 +15,7 @@ import hr.fer.zemris.java.tecaj_13.dao.sql.SQLDAO;
 public class DAOProvider {
 
     /** Direct access object used to access persistent data. */
-    private static DAO DIRECT_ACCESS_OBJECT = new SQLDAO();
+    private static volatile DAO DIRECT_ACCESS_OBJECT = new SQLDAO();
 
     /**
      * Returns the instance of the direct access object used to access
@@ -25,4 +27,16 @@ public class DAOProvider {
         return DIRECT_ACCESS_OBJECT;
     }
 
+    /**
+     * Sets the direct access object used to access persistent data.
+     * 
+     * @param dao
+     *            the new direct access object
+     * @throws NullPointerException
+     *             if {@code dao} parameter is a {@code null} reference
+     */
+    public static void setDao(DAO dao) {
+        DIRECT_ACCESS_OBJECT = Objects.requireNonNull(dao, "Direct access object cannot be a null reference.");
+    }
+
 }
@@ -0,0 +1,321 @@
+package hr.fer.zemris.java.tecaj_13.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code NotifyingDAO} is a {@link DAO} that delegates all calls to another
+ * DAO and notifies registered {@link DAOListener}s after every successful
+ * write. Listeners are also notified before every write is delegated and
+ * after its changes are notified.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see DAO
+ * @see DAOListener
+ */
+public class NotifyingDAO implements DAO {
+
+    /** DAO all calls are delegated to. */
+    private final DAO dao;
+    /** Registered listeners. */
+    private final List<DAOListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a new {@code NotifyingDAO} that delegates all calls to the
+     * specified {@code dao}.
+     *
+     * @param dao
+     *            the DAO all calls are delegated to
+     * @throws NullPointerException
+     *             if {@code dao} parameter is a {@code null} reference
+     */
+    public NotifyingDAO(DAO dao) {
+        this.dao = Objects.requireNonNull(dao, "You cannot delegate to a null reference as a DAO.");
+    }
+
+    /**
+     * Registers the specified {@code listener}.
+     *
+     * @param listener
+     *            the listener
+     * @throws NullPointerException
+     *             if {@code listener} parameter is a {@code null} reference
+     */
+    public void addListener(DAOListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "You cannot add a null reference as a listener."));
+    }
+
+    /**
+     * Unregisters the specified {@code listener}.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(DAOListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the DAO all calls are delegated to.
+     *
+     * @return the DAO all calls are delegated to
+     */
+    public DAO getDelegate() {
+        return dao;
+    }
+
+    @Override
+    public <T> T readLatest(Supplier<T> read) throws DAOException {
+        return dao.readLatest(read);
+    }
+
+    @Override
+    public List<Poll> getAllPolls() throws DAOException {
+        return dao.getAllPolls();
+    }
+
+    @Override
+    public List<Poll> getPolls(long afterID, int limit) throws DAOException {
+        return dao.getPolls(afterID, limit);
+    }
+
+    @Override
+    public void forEachPoll(Consumer<Poll> action) throws DAOException {
+        dao.forEachPoll(action);
+    }
+
+    @Override
+    public Poll getPoll(long id) throws DAOException {
+        return dao.getPoll(id);
+    }
+
+    @Override
+    public Poll getPoll(String title) throws DAOException {
+        return dao.getPoll(title);
+    }
+
+    @Override
+    public long addPoll(String title, String message) throws DAOException {
+        return write(() -> {
+            long id = dao.addPoll(title, message);
+            firePollChanged(id);
+            return id;
+        });
+    }
+
+    @Override
+    public long addPollIfDoesntExist(String title, String message) throws DAOException {
+        return write(() -> {
+            long id = dao.addPollIfDoesntExist(title, message);
+            firePollChanged(id);
+            return id;
+        });
+    }
+
+    @Override
+    public long addPollIfDoesntExist(PollDetails definition) throws DAOException {
+        return write(() -> {
+            long id = dao.addPollIfDoesntExist(definition);
+            firePollChanged(id);
+            return id;
+        });
+    }
+
+    @Override
+    public List<PollOption> getAllPollOptions() throws DAOException {
+        return dao.getAllPollOptions();
+    }
+
+    @Override
+    public PollOption getPollOption(long id) throws DAOException {
+        return dao.getPollOption(id);
+    }
+
+    @Override
+    public PollOption getPollOption(String optionTitle) throws DAOException {
+        return dao.getPollOption(optionTitle);
+    }
+
+    @Override
+    public List<PollOption> getPollOptionByPollID(long pollID) throws DAOException {
+        return dao.getPollOptionByPollID(pollID);
+    }
+
+    @Override
+    public List<PollOption> getPollOptions(long pollID, int offset, int limit) throws DAOException {
+        return dao.getPollOptions(pollID, offset, limit);
+    }
+
+    @Override
+    public PollDetails getPollDetails(long pollID) throws DAOException {
+        return dao.getPollDetails(pollID);
+    }
+
+    @Override
+    public Map<Long, PollDetails> getPollDetails(Collection<Long> pollIDs) throws DAOException {
+        return dao.getPollDetails(pollIDs);
+    }
+
+    @Override
+    public long addPollOption(String optionTitle, String optionLink, long pollID, long votesCount)
+            throws DAOException {
+        return write(() -> {
+            long id = dao.addPollOption(optionTitle, optionLink, pollID, votesCount);
+            firePollChanged(pollID);
+            return id;
+        });
+    }
+
+    @Override
+    public long addPollOptionIfDoesntExist(String optionTitle, String optionLink, long pollID, long votesCount)
+            throws DAOException {
+        return write(() -> {
+            long id = dao.addPollOptionIfDoesntExist(optionTitle, optionLink, pollID, votesCount);
+            firePollChanged(pollID);
+            return id;
+        });
+    }
+
+    @Override
+    public int updatePollOptionsVotesCount(long id, long votes) throws DAOException {
+        return write(Collections.singletonList(id), () -> {
+            int affected = dao.updatePollOptionsVotesCount(id, votes);
+
+            if (affected > 0) {
+                fireVotesAdded(id, votes);
+            }
+
+            return affected;
+        });
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException {
+        return write(votes.keySet(), () -> fireVotesAdded(votes, dao.updatePollOptionsVotesCount(votes)));
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException {
+        return write(
+                votes.keySet(),
+                () -> fireVotesAdded(votes, dao.updatePollOptionsVotesCount(votes, journalSegment)));
+    }
+
+    @Override
+    public long getJournalCheckpoint() throws DAOException {
+        return dao.getJournalCheckpoint();
+    }
+
+    @Override
+    public int[] addVotes(List<Vote> votes) throws DAOException {
+        List<Long> optionIDs = new ArrayList<>(votes.size());
+        votes.forEach(v -> optionIDs.add(v.getOptionID()));
+
+        return write(optionIDs, () -> {
+            int[] affected = dao.addVotes(votes);
+
+            for (int i = 0; i < affected.length; i++) {
+                if (affected[i] != 0) {
+                    fireVotesAdded(votes.get(i).getOptionID(), votes.get(i).getCount());
+                }
+            }
+
+            return affected;
+        });
+    }
+
+    /**
+     * Performs the given write that adds no votes, notifying all listeners
+     * before it starts and after it finishes.
+     *
+     * @param write
+     *            the write to perform
+     * @return the result of the write
+     */
+    private <T> T write(Supplier<T> write) {
+        return write(Collections.emptyList(), write);
+    }
+
+    /**
+     * Performs the given write that adds votes to the poll options with the
+     * specified {@code optionIDs}, notifying all listeners before it starts
+     * and after it finishes.
+     *
+     * @param optionIDs
+     *            IDs of poll options whose votes the write adds
+     * @param write
+     *            the write to perform
+     * @return the result of the write
+     */
+    private <T> T write(Collection<Long> optionIDs, Supplier<T> write) {
+        listeners.forEach(l -> l.writeStarted(optionIDs));
+        try {
+            return write.get();
+        } finally {
+            listeners.forEach(l -> l.writeFinished(optionIDs));
+        }
+    }
+
+    /**
+     * Notifies all listeners that votes were added to a poll option.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @param votes
+     *            the number of added votes
+     */
+    private void fireVotesAdded(long optionID, long votes) {
+        listeners.forEach(l -> l.votesAdded(optionID, votes));
+    }
+
+    /**
+     * Notifies all listeners that votes were added to every poll option whose
+     * update affected a row.
+     *
+     * @param votes
+     *            map of poll option IDs to added votes
+     * @param affected
+     *            the number of affected rows for every update in iteration
+     *            order of {@code votes} map
+     * @return {@code affected}
+     */
+    private int[] fireVotesAdded(Map<Long, Long> votes, int[] affected) {
+        Iterator<Map.Entry<Long, Long>> it = votes.entrySet().iterator();
+        for (int i = 0; i < affected.length && it.hasNext(); i++) {
+            Map.Entry<Long, Long> entry = it.next();
+            if (affected[i] != 0) {
+                fireVotesAdded(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return affected;
+    }
+
+    /**
+     * Notifies all listeners that a poll was changed.
+     *
+     * @param pollID
+     *            the ID of the poll
+     */
+    private void firePollChanged(long pollID) {
+        if (pollID < 0)
+            return;
+
+        listeners.forEach(l -> l.pollChanged(pollID));
+    }
+
+}
@@ -0,0 +1,527 @@
+package hr.fer.zemris.java.tecaj_13.dao.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code CachingDAO} is a read-through cache in front of another {@link DAO}.
+ * <p>
+ * Results of {@link #getAllPolls()}, {@link #getPolls(long, int)},
+ * {@link #getPoll(long)} and {@link #getPollOptionByPollID(long)} are cached in
+ * size-bounded LRU caches.
+ * Poll details are assembled from the same caches and loading them fills both
+ * caches at once.
+ * Every write that goes through this DAO invalidates exactly the entries it
+ * affects: votes invalidate options of their poll and new polls invalidate the
+ * list of all polls and all pages of polls.
+ * <p>
+ * Values are loaded by {@link DAO#readLatest(Supplier)} of the underlying
+ * DAO, so a value read from a lagging replica is never cached.
+ * <p>
+ * Polls and poll options are mutable beans, so the cache keeps its own
+ * objects and every call returns copies of them; callers may modify and sort
+ * what they get without affecting the cache or each other.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see DAO
+ */
+public class CachingDAO implements DAO {
+
+    /** Prefix of the names of metrics registered by this DAO. */
+    private static final String METRICS_PREFIX = "dao.cache.";
+
+    /** DAO whose results are cached. */
+    private final DAO dao;
+    /** Cached list of all polls; {@code null} if not cached. */
+    private volatile List<Poll> allPolls;
+    /** Cached pages of polls by after ID and limit. */
+    private final LRUCache<List<Long>, List<Poll>> pollPages;
+    /** Cached polls by ID. */
+    private final LRUCache<Long, Poll> polls;
+    /** Cached poll options by poll ID. */
+    private final LRUCache<Long, List<PollOption>> pollOptions;
+    /**
+     * Poll IDs by poll option ID of poll options whose list is cached; changed
+     * together with {@link #pollOptions}.
+     */
+    private final Map<Long, Long> optionPolls = new ConcurrentHashMap<>();
+    /**
+     * Number of writes; value loaded from the underlying DAO is cached only if
+     * no write happened while it was loading.
+     */
+    private final AtomicLong writes = new AtomicLong();
+    /** Number of cache hits. */
+    private final LongAdder hits = new LongAdder();
+    /** Number of cache misses. */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs a new {@code CachingDAO} that caches results of the specified
+     * {@code dao}.
+     *
+     * @param dao
+     *            the DAO whose results are cached
+     * @param capacity
+     *            the maximum number of cached polls and the maximum number of
+     *            cached poll option lists
+     * @throws NullPointerException
+     *             if {@code dao} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code capacity} parameter is not a positive number
+     */
+    public CachingDAO(DAO dao, int capacity) {
+        this.dao = Objects.requireNonNull(dao, "You cannot cache a null reference as a DAO.");
+        polls = new LRUCache<>(capacity);
+        pollPages = new LRUCache<>(capacity);
+        pollOptions = new LRUCache<Long, List<PollOption>>(capacity) {
+
+            @Override
+            protected void entryAdded(Long pollID, List<PollOption> options) {
+                options.forEach(o -> optionPolls.put(o.getId(), pollID));
+            }
+
+            @Override
+            protected void entryRemoved(Long pollID, List<PollOption> options) {
+                options.forEach(o -> optionPolls.remove(o.getId(), pollID));
+            }
+        };
+
+        Metrics.register(METRICS_PREFIX + "hits", hits::sum);
+        Metrics.register(METRICS_PREFIX + "misses", misses::sum);
+        Metrics.register(METRICS_PREFIX + "evictions",
+                () -> polls.getEvictions() + pollPages.getEvictions() + pollOptions.getEvictions());
+        Metrics.register(METRICS_PREFIX + "polls", polls::size);
+        Metrics.register(METRICS_PREFIX + "pollPages", pollPages::size);
+        Metrics.register(METRICS_PREFIX + "pollOptionLists", pollOptions::size);
+        Metrics.register(METRICS_PREFIX + "indexedOptions", optionPolls::size);
+    }
+
+    /**
+     * Returns the DAO whose results are cached.
+     *
+     * @return the DAO whose results are cached
+     */
+    public DAO getDelegate() {
+        return dao;
+    }
+
+    /**
+     * Removes cached poll and poll options of the poll with the specified
+     * {@code pollID}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     */
+    public void invalidatePoll(long pollID) {
+        writes.incrementAndGet();
+        polls.remove(pollID);
+        pollOptions.remove(pollID);
+        pollPages.clear();
+        allPolls = null;
+    }
+
+    @Override
+    public <T> T readLatest(Supplier<T> read) throws DAOException {
+        return dao.readLatest(read);
+    }
+
+    @Override
+    public List<Poll> getAllPolls() throws DAOException {
+        List<Poll> cached = allPolls;
+        if (cached != null) {
+            hits.increment();
+            return copyPolls(cached);
+        }
+
+        misses.increment();
+        long version = writes.get();
+        List<Poll> loaded = Collections.unmodifiableList(new ArrayList<>(dao.readLatest(dao::getAllPolls)));
+
+        if (writes.get() == version) {
+            allPolls = loaded;
+        }
+
+        return copyPolls(loaded);
+    }
+
+    @Override
+    public List<Poll> getPolls(long afterID, int limit) throws DAOException {
+        return copyPolls(readThrough(pollPages, Arrays.asList(afterID, (long) limit),
+                () -> Collections.unmodifiableList(new ArrayList<>(dao.getPolls(afterID, limit)))));
+    }
+
+    @Override
+    public void forEachPoll(Consumer<Poll> action) throws DAOException {
+        dao.forEachPoll(action);
+    }
+
+    @Override
+    public Poll getPoll(long id) throws DAOException {
+        return copy(readThrough(polls, id, () -> dao.getPoll(id)));
+    }
+
+    @Override
+    public Poll getPoll(String title) throws DAOException {
+        return dao.getPoll(title);
+    }
+
+    @Override
+    public long addPoll(String title, String message) throws DAOException {
+        try {
+            return dao.addPoll(title, message);
+        } finally {
+            invalidateAllPolls();
+        }
+    }
+
+    @Override
+    public long addPollIfDoesntExist(String title, String message) throws DAOException {
+        try {
+            return dao.addPollIfDoesntExist(title, message);
+        } finally {
+            invalidateAllPolls();
+        }
+    }
+
+    @Override
+    public long addPollIfDoesntExist(PollDetails definition) throws DAOException {
+        long id = dao.addPollIfDoesntExist(definition);
+        invalidatePoll(id);
+        return id;
+    }
+
+    @Override
+    public List<PollOption> getAllPollOptions() throws DAOException {
+        return dao.getAllPollOptions();
+    }
+
+    @Override
+    public PollOption getPollOption(long id) throws DAOException {
+        Long pollID = optionPolls.get(id);
+        List<PollOption> options = pollID == null ? null : pollOptions.get(pollID);
+
+        if (options != null) {
+            for (PollOption option : options) {
+                if (option.getId() == id) {
+                    hits.increment();
+                    return copy(option);
+                }
+            }
+        }
+
+        return dao.getPollOption(id);
+    }
+
+    @Override
+    public PollOption getPollOption(String optionTitle) throws DAOException {
+        return dao.getPollOption(optionTitle);
+    }
+
+    @Override
+    public List<PollOption> getPollOptionByPollID(long pollID) throws DAOException {
+        return copyOptions(readThrough(pollOptions, pollID, () -> {
+            List<PollOption> options = dao.getPollOptionByPollID(pollID);
+            if (options == null)
+                return null;
+
+            return Collections.unmodifiableList(new ArrayList<>(options));
+        }));
+    }
+
+    @Override
+    public List<PollOption> getPollOptions(long pollID, int offset, int limit) throws DAOException {
+        return dao.getPollOptions(pollID, offset, limit);
+    }
+
+    @Override
+    public PollDetails getPollDetails(long pollID) throws DAOException {
+        PollDetails cached = getCachedPollDetails(pollID);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        long version = writes.get();
+        PollDetails loaded = dao.readLatest(() -> dao.getPollDetails(pollID));
+
+        if (loaded == null)
+            return null;
+
+        cachePollDetails(loaded, version);
+        return copy(loaded);
+    }
+
+    @Override
+    public Map<Long, PollDetails> getPollDetails(Collection<Long> pollIDs) throws DAOException {
+        Objects.requireNonNull(pollIDs, "You cannot get polls with a null reference as poll IDs.");
+
+        Map<Long, PollDetails> details = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+
+        for (Long pollID : pollIDs) {
+            PollDetails cached = getCachedPollDetails(pollID);
+            if (cached != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                missing.add(pollID);
+            }
+            details.put(pollID, cached);
+        }
+
+        if (!missing.isEmpty()) {
+            long version = writes.get();
+            Map<Long, PollDetails> loaded = dao.readLatest(() -> dao.getPollDetails(missing));
+            loaded.values().forEach(d -> cachePollDetails(d, version));
+            missing.forEach(id -> details.put(id, loaded.containsKey(id) ? copy(loaded.get(id)) : null));
+        }
+
+        details.values().removeIf(Objects::isNull);
+        return details;
+    }
+
+    @Override
+    public long addPollOption(String optionTitle, String optionLink, long pollID, long votesCount)
+            throws DAOException {
+        try {
+            return dao.addPollOption(optionTitle, optionLink, pollID, votesCount);
+        } finally {
+            invalidatePoll(pollID);
+        }
+    }
+
+    @Override
+    public long addPollOptionIfDoesntExist(String optionTitle, String optionLink, long pollID, long votesCount)
+            throws DAOException {
+        try {
+            return dao.addPollOptionIfDoesntExist(optionTitle, optionLink, pollID, votesCount);
+        } finally {
+            invalidatePoll(pollID);
+        }
+    }
+
+    @Override
+    public int updatePollOptionsVotesCount(long id, long votes) throws DAOException {
+        try {
+            return dao.updatePollOptionsVotesCount(id, votes);
+        } finally {
+            invalidateOption(id);
+        }
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException {
+        try {
+            return dao.updatePollOptionsVotesCount(votes);
+        } finally {
+            votes.keySet().forEach(this::invalidateOption);
+        }
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException {
+        try {
+            return dao.updatePollOptionsVotesCount(votes, journalSegment);
+        } finally {
+            votes.keySet().forEach(this::invalidateOption);
+        }
+    }
+
+    @Override
+    public long getJournalCheckpoint() throws DAOException {
+        return dao.getJournalCheckpoint();
+    }
+
+    @Override
+    public int[] addVotes(List<Vote> votes) throws DAOException {
+        try {
+            return dao.addVotes(votes);
+        } finally {
+            writes.incrementAndGet();
+            votes.forEach(v -> pollOptions.remove(v.getPollID()));
+        }
+    }
+
+    /**
+     * Returns the value cached under the specified {@code key} or loads it with
+     * {@code loader} and caches it. {@code null} values are not cached.
+     *
+     * @param cache
+     *            the cache
+     * @param key
+     *            the key
+     * @param loader
+     *            loads the value from the underlying DAO
+     * @return the value
+     */
+    private <K, V> V readThrough(LRUCache<K, V> cache, K key, Supplier<V> loader) {
+        V cached = cache.get(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        long version = writes.get();
+        V loaded = dao.readLatest(loader);
+
+        if (loaded != null && writes.get() == version) {
+            cache.put(key, loaded);
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Returns copies of poll details assembled from cached poll and cached poll
+     * options or {@code null} if either of them is not cached.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the poll details or {@code null} if they are not cached
+     */
+    private PollDetails getCachedPollDetails(long pollID) {
+        Poll poll = polls.get(pollID);
+        List<PollOption> options = poll == null ? null : pollOptions.get(pollID);
+
+        if (options == null)
+            return null;
+
+        List<PollOption> sorted = copyOptions(options);
+        sorted.sort(PollDetails.BY_VOTES);
+        return new PollDetails(copy(poll), sorted);
+    }
+
+    /**
+     * Caches the poll and poll options of the specified {@code details} if no
+     * write happened since {@code version} was read.
+     *
+     * @param details
+     *            the poll details loaded from the underlying DAO
+     * @param version
+     *            the number of writes before details were loaded
+     */
+    private void cachePollDetails(PollDetails details, long version) {
+        long pollID = details.getPoll().getId();
+
+        if (writes.get() == version) {
+            polls.put(pollID, details.getPoll());
+            pollOptions.put(pollID, details.getOptions());
+        }
+    }
+
+    /**
+     * Removes cached poll options of the poll that poll option with the
+     * specified {@code id} belongs to.
+     *
+     * @param id
+     *            the ID of the poll option
+     */
+    private void invalidateOption(long id) {
+        writes.incrementAndGet();
+
+        Long pollID = optionPolls.get(id);
+        if (pollID != null) {
+            pollOptions.remove(pollID);
+        }
+    }
+
+    /**
+     * Removes cached list of all polls and all cached pages of polls.
+     */
+    private void invalidateAllPolls() {
+        writes.incrementAndGet();
+        pollPages.clear();
+        allPolls = null;
+    }
+
+    /**
+     * Returns a copy of the specified poll.
+     *
+     * @param poll
+     *            the poll
+     * @return the copy or {@code null} if {@code poll} is {@code null}
+     */
+    private static Poll copy(Poll poll) {
+        return poll == null ? null : new Poll(poll.getId(), poll.getTitle(), poll.getMessage());
+    }
+
+    /**
+     * Returns a copy of the specified poll option.
+     *
+     * @param option
+     *            the poll option
+     * @return the copy or {@code null} if {@code option} is {@code null}
+     */
+    private static PollOption copy(PollOption option) {
+        return option == null ? null
+                : new PollOption(option.getId(), option.getOptionTitle(), option.getOptionLink(),
+                        option.getPollID(), option.getVotesCount());
+    }
+
+    /**
+     * Returns a copy of the specified poll details with copies of its poll and
+     * poll options.
+     *
+     * @param details
+     *            the poll details
+     * @return the copy
+     */
+    private static PollDetails copy(PollDetails details) {
+        return new PollDetails(copy(details.getPoll()), copyOptions(details.getOptions()));
+    }
+
+    /**
+     * Returns a modifiable list of copies of the specified polls.
+     *
+     * @param polls
+     *            the polls
+     * @return the copies or {@code null} if {@code polls} is {@code null}
+     */
+    private static List<Poll> copyPolls(List<Poll> polls) {
+        if (polls == null)
+            return null;
+
+        List<Poll> copies = new ArrayList<>(polls.size());
+        polls.forEach(p -> copies.add(copy(p)));
+        return copies;
+    }
+
+    /**
+     * Returns a modifiable list of copies of the specified poll options.
+     *
+     * @param options
+     *            the poll options
+     * @return the copies or {@code null} if {@code options} is {@code null}
+     */
+    private static List<PollOption> copyOptions(List<PollOption> options) {
+        if (options == null)
+            return null;
+
+        List<PollOption> copies = new ArrayList<>(options.size());
+        options.forEach(o -> copies.add(copy(o)));
+        return copies;
+    }
+
+}
@@ -0,0 +1,152 @@
+package hr.fer.zemris.java.tecaj_13.dao.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code LRUCache} is a size-bounded thread-safe map that evicts the least
+ * recently used entry when its size exceeds its capacity.
+ * <p>
+ * Subclasses that keep an index of cached values can override
+ * {@link #entryAdded(Object, Object)} and
+ * {@link #entryRemoved(Object, Object)}, which are called while the cache is
+ * locked, so the index changes atomically with the cache.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @param <K>
+ *            the type of keys
+ * @param <V>
+ *            the type of values
+ */
+public class LRUCache<K, V> {
+
+    /** Entries in access order. */
+    private final LinkedHashMap<K, V> entries;
+    /** Number of evicted entries. */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a new empty {@code LRUCache} with specified
+     * {@code capacity}.
+     *
+     * @param capacity
+     *            the maximum number of entries
+     * @throws IllegalArgumentException
+     *             if {@code capacity} parameter is not a positive number
+     */
+    public LRUCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity of cache must be a positive number.");
+
+        entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+
+            /** Serial version UID. */
+            private static final long serialVersionUID = 6013766254307412337L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    entryRemoved(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the value mapped to the specified {@code key} or {@code null} if
+     * there is no such value.
+     *
+     * @param key
+     *            the key
+     * @return the value mapped to the key
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Maps the specified {@code value} to the specified {@code key}.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     */
+    public synchronized void put(K key, V value) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            entryRemoved(key, previous);
+        }
+
+        entryAdded(key, value);
+        entries.put(key, value);
+    }
+
+    /**
+     * Removes the value mapped to the specified {@code key}.
+     *
+     * @param key
+     *            the key
+     */
+    public synchronized void remove(K key) {
+        V previous = entries.remove(key);
+        if (previous != null) {
+            entryRemoved(key, previous);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.forEach(this::entryRemoved);
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of evicted entries.
+     *
+     * @return the number of evicted entries
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Called when an entry is added to the cache. Does nothing by default.
+     *
+     * @param key
+     *            the key of the entry
+     * @param value
+     *            the value of the entry
+     */
+    protected void entryAdded(K key, V value) {
+    }
+
+    /**
+     * Called when an entry is removed from the cache, either explicitly,
+     * by being replaced or by eviction. Does nothing by default.
+     *
+     * @param key
+     *            the key of the entry
+     * @param value
+     *            the value of the entry
+     */
+    protected void entryRemoved(K key, V value) {
+    }
+
+}
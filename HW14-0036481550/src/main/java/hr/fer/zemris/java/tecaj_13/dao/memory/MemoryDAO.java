@@ -0,0 +1,781 @@
+package hr.fer.zemris.java.tecaj_13.dao.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code MemoryDAO} is a {@link DAO} that keeps all polls and poll options in
+ * memory, so no call does any I/O.
+ * <p>
+ * Polls and options are kept in concurrent maps keyed by their IDs. Votes
+ * count of every option is an {@link AtomicLong}, so votes are added without
+ * locking. Adding polls and options is rare and is serialized by a single
+ * lock, which also keeps titles of polls and titles of options of a poll
+ * unique.
+ * <p>
+ * If DAO is given a snapshot file its content is loaded when DAO is
+ * constructed, and a compact binary snapshot of all data is written to it
+ * every {@code snapshotInterval} milliseconds if data changed and when DAO is
+ * closed. Snapshot is written to a temporary file which is forced to disk and
+ * then atomically renamed to the snapshot file, so snapshot file is always
+ * complete. Votes added after the last snapshot are lost if application
+ * crashes.
+ * <p>
+ * Journal checkpoint is kept in the snapshot. Vote batches that record it are
+ * applied under the structure lock, which snapshot holds while it reads the
+ * data, so snapshot contains either all votes of a batch and its checkpoint
+ * or neither of them.
+ * <p>
+ * Number of polls, poll options, written and failed snapshots are published
+ * as {@link Metrics} gauges whose names start with "dao.memory.".
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see DAO
+ */
+public class MemoryDAO implements DAO {
+
+    /** Prefix of the names of metrics registered by this DAO. */
+    private static final String METRICS_PREFIX = "dao.memory.";
+    /** Number that every snapshot file starts with. */
+    private static final int SNAPSHOT_MAGIC = 0x504F4C4C;
+    /** Version of the snapshot format. */
+    private static final int SNAPSHOT_VERSION = 2;
+
+    /** Polls mapped by their IDs. */
+    private final ConcurrentSkipListMap<Long, PollEntry> polls = new ConcurrentSkipListMap<>();
+    /** Polls mapped by their titles. */
+    private final Map<String, PollEntry> pollsByTitle = new ConcurrentHashMap<>();
+    /** Poll options mapped by their IDs. */
+    private final Map<Long, OptionEntry> options = new ConcurrentSkipListMap<>();
+    /** Lock that guards adding polls and poll options and the journal checkpoint. */
+    private final Object structureLock = new Object();
+    /** Number of changes of data. */
+    private final LongAdder changes = new LongAdder();
+    /** Number of written snapshots. */
+    private final LongAdder snapshots = new LongAdder();
+    /** Number of snapshots that couldn't be written. */
+    private final LongAdder failedSnapshots = new LongAdder();
+    /** Snapshot file; {@code null} if data is not persisted. */
+    private final Path snapshot;
+    /** Executor that writes periodic snapshots; {@code null} if there are none. */
+    private final ScheduledExecutorService scheduler;
+
+    /** ID of the last added poll. */
+    private long lastPollID;
+    /** ID of the last added poll option. */
+    private long lastOptionID;
+    /** Sequence number of the last journal segment whose votes are added. */
+    private long journalCheckpoint;
+    /** Number of changes of data contained in the last snapshot. */
+    private long snapshotChanges;
+
+    /**
+     * Constructs a new {@code MemoryDAO} that doesn't persist its data.
+     */
+    public MemoryDAO() {
+        this(null, 0);
+    }
+
+    /**
+     * Constructs a new {@code MemoryDAO}, loads the specified {@code snapshot}
+     * if it exists and starts periodic snapshots.
+     *
+     * @param snapshot
+     *            the snapshot file or {@code null} if data shouldn't be
+     *            persisted
+     * @param snapshotInterval
+     *            number of milliseconds between two periodic snapshots or
+     *            {@code 0} if snapshot is written only when DAO is closed
+     * @throws IllegalArgumentException
+     *             if {@code snapshotInterval} parameter is a negative number
+     * @throws UncheckedIOException
+     *             if snapshot couldn't be loaded
+     */
+    public MemoryDAO(Path snapshot, long snapshotInterval) {
+        if (snapshotInterval < 0)
+            throw new IllegalArgumentException("Snapshot interval cannot be a negative number.");
+        this.snapshot = snapshot;
+
+        if (snapshot != null && Files.exists(snapshot)) {
+            try {
+                load(snapshot);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Snapshot " + snapshot + " couldn't be loaded.", e);
+            }
+        }
+
+        if (snapshot != null && snapshotInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "memory-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(
+                    this::snapshotQuietly,
+                    snapshotInterval,
+                    snapshotInterval,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+
+        Metrics.register(METRICS_PREFIX + "polls", polls::size);
+        Metrics.register(METRICS_PREFIX + "options", options::size);
+        Metrics.register(METRICS_PREFIX + "snapshots", snapshots::sum);
+        Metrics.register(METRICS_PREFIX + "failedSnapshots", failedSnapshots::sum);
+    }
+
+    @Override
+    public List<Poll> getAllPolls() throws DAOException {
+        List<Poll> result = new ArrayList<>();
+        for (PollEntry poll : polls.values()) {
+            result.add(poll.toPoll());
+        }
+
+        return result;
+    }
+
+    @Override
+    public List<Poll> getPolls(long afterID, int limit) throws DAOException {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit of polls must be a positive number.");
+
+        List<Poll> result = new ArrayList<>();
+        for (PollEntry poll : polls.tailMap(afterID, false).values()) {
+            if (result.size() == limit)
+                break;
+
+            result.add(poll.toPoll());
+        }
+
+        return result;
+    }
+
+    @Override
+    public void forEachPoll(Consumer<Poll> action) throws DAOException {
+        Objects.requireNonNull(action, "Action performed on polls cannot be a null reference.");
+
+        for (PollEntry poll : polls.values()) {
+            action.accept(poll.toPoll());
+        }
+    }
+
+    @Override
+    public Poll getPoll(long id) throws DAOException {
+        PollEntry poll = polls.get(id);
+        return poll == null ? null : poll.toPoll();
+    }
+
+    @Override
+    public Poll getPoll(String title) throws DAOException {
+        PollEntry poll = title == null ? null : pollsByTitle.get(title);
+        return poll == null ? null : poll.toPoll();
+    }
+
+    @Override
+    public long addPoll(String title, String message) throws DAOException {
+        Objects.requireNonNull(title, "You cannot add a poll with a null reference as a title.");
+        Objects.requireNonNull(message, "You cannot add a poll with a null reference as a message.");
+
+        synchronized (structureLock) {
+            if (pollsByTitle.containsKey(title))
+                throw new DAOException("Poll with title " + title + " already exists.");
+
+            return insertPoll(++lastPollID, title, message).id;
+        }
+    }
+
+    @Override
+    public long addPollIfDoesntExist(String title, String message) throws DAOException {
+        Objects.requireNonNull(title, "You cannot add a poll with a null reference as a title.");
+        Objects.requireNonNull(message, "You cannot add a poll with a null reference as a message.");
+
+        synchronized (structureLock) {
+            return upsertPoll(title, message).id;
+        }
+    }
+
+    @Override
+    public long addPollIfDoesntExist(PollDetails definition) throws DAOException {
+        Objects.requireNonNull(definition, "You cannot add a null reference as a poll definition.");
+        for (PollOption option : definition.getOptions()) {
+            if (option.getVotesCount() < 0)
+                throw new IllegalArgumentException("You cannot add a poll option with negative votes count.");
+        }
+
+        Poll poll = definition.getPoll();
+        synchronized (structureLock) {
+            PollEntry entry = upsertPoll(poll.getTitle(), poll.getMessage());
+            for (PollOption option : definition.getOptions()) {
+                if (!entry.optionsByTitle.containsKey(option.getOptionTitle())) {
+                    insertOption(++lastOptionID, option.getOptionTitle(), option.getOptionLink(), entry,
+                            option.getVotesCount());
+                }
+            }
+
+            return entry.id;
+        }
+    }
+
+    @Override
+    public List<PollOption> getAllPollOptions() throws DAOException {
+        List<PollOption> result = new ArrayList<>();
+        for (OptionEntry option : options.values()) {
+            result.add(option.toPollOption());
+        }
+
+        return result;
+    }
+
+    @Override
+    public PollOption getPollOption(long id) throws DAOException {
+        OptionEntry option = options.get(id);
+        return option == null ? null : option.toPollOption();
+    }
+
+    @Override
+    public PollOption getPollOption(String optionTitle) throws DAOException {
+        for (OptionEntry option : options.values()) {
+            if (option.title.equals(optionTitle))
+                return option.toPollOption();
+        }
+
+        return null;
+    }
+
+    @Override
+    public List<PollOption> getPollOptionByPollID(long pollID) throws DAOException {
+        List<PollOption> result = new ArrayList<>();
+
+        PollEntry poll = polls.get(pollID);
+        if (poll != null) {
+            for (OptionEntry option : poll.options.values()) {
+                result.add(option.toPollOption());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public long addPollOption(String optionTitle, String optionLink, long pollID, long votesCount) throws DAOException {
+        checkPollOption(optionTitle, optionLink, pollID, votesCount);
+
+        synchronized (structureLock) {
+            PollEntry poll = getPollEntry(pollID);
+            if (poll.optionsByTitle.containsKey(optionTitle))
+                throw new DAOException("Poll " + pollID + " already has option " + optionTitle + ".");
+
+            return insertOption(++lastOptionID, optionTitle, optionLink, poll, votesCount).id;
+        }
+    }
+
+    @Override
+    public long addPollOptionIfDoesntExist(String optionTitle, String optionLink, long pollID, long votesCount)
+            throws DAOException {
+        checkPollOption(optionTitle, optionLink, pollID, votesCount);
+
+        synchronized (structureLock) {
+            PollEntry poll = getPollEntry(pollID);
+            OptionEntry existing = poll.optionsByTitle.get(optionTitle);
+            if (existing != null)
+                return existing.id;
+
+            return insertOption(++lastOptionID, optionTitle, optionLink, poll, votesCount).id;
+        }
+    }
+
+    @Override
+    public int updatePollOptionsVotesCount(long id, long votes) throws DAOException {
+        if (votes < 0)
+            throw new IllegalArgumentException("You cannot update a poll option with negative votes count.");
+
+        return addVotes(options.get(id), votes);
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException {
+        Objects.requireNonNull(votes, "You cannot update poll options with a null reference as votes.");
+        if (votes.values().stream().anyMatch(v -> v < 0))
+            throw new IllegalArgumentException("You cannot update a poll option with negative votes count.");
+
+        int[] result = new int[votes.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : votes.entrySet()) {
+            result[i++] = addVotes(options.get(entry.getKey()), entry.getValue());
+        }
+
+        return result;
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException {
+        if (journalSegment < 0)
+            throw new IllegalArgumentException("Journal segment cannot be a negative number.");
+
+        synchronized (structureLock) {
+            int[] result = updatePollOptionsVotesCount(votes);
+            journalCheckpoint = journalSegment;
+            changes.increment();
+            return result;
+        }
+    }
+
+    @Override
+    public long getJournalCheckpoint() throws DAOException {
+        synchronized (structureLock) {
+            return journalCheckpoint;
+        }
+    }
+
+    @Override
+    public int[] addVotes(List<Vote> votes) throws DAOException {
+        Objects.requireNonNull(votes, "You cannot add a null reference as votes.");
+
+        int[] result = new int[votes.size()];
+        for (int i = 0; i < result.length; i++) {
+            Vote vote = votes.get(i);
+            OptionEntry option = options.get(vote.getOptionID());
+
+            result[i] = addVotes(option != null && option.pollID == vote.getPollID() ? option : null, vote.getCount());
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes a snapshot of all data to the snapshot file if data changed since
+     * the last snapshot. Does nothing if this DAO has no snapshot file.
+     *
+     * @throws IOException
+     *             if snapshot couldn't be written
+     */
+    public synchronized void snapshot() throws IOException {
+        if (snapshot == null)
+            return;
+
+        long currentChanges = changes.sum();
+        if (currentChanges == snapshotChanges && Files.exists(snapshot))
+            return;
+
+        Path parent = snapshot.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            write(out);
+            out.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            failedSnapshots.increment();
+            throw e;
+        }
+
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        snapshotChanges = currentChanges;
+        snapshots.increment();
+    }
+
+    /**
+     * Stops periodic snapshots, writes the final snapshot and unregisters
+     * metrics of this DAO.
+     *
+     * @throws UncheckedIOException
+     *             if the final snapshot couldn't be written
+     */
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            snapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot couldn't be written.", e);
+        } finally {
+            Metrics.unregister(METRICS_PREFIX);
+        }
+    }
+
+    /**
+     * Writes a snapshot and prints the stack trace if writing fails.
+     *
+     * @see #snapshot()
+     */
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes all data to the specified output stream. Polls and options are
+     * read under the structure lock so snapshot contains every option of every
+     * written poll; votes counts are read without locking.
+     *
+     * @param out
+     *            the output stream
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private void write(DataOutputStream out) throws IOException {
+        synchronized (structureLock) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(lastPollID);
+            out.writeLong(lastOptionID);
+            out.writeLong(journalCheckpoint);
+            out.writeInt(polls.size());
+
+            for (PollEntry poll : polls.values()) {
+                out.writeLong(poll.id);
+                writeString(out, poll.title);
+                writeString(out, poll.message);
+                out.writeInt(poll.options.size());
+
+                for (OptionEntry option : poll.options.values()) {
+                    out.writeLong(option.id);
+                    writeString(out, option.title);
+                    writeString(out, option.link);
+                    out.writeLong(option.votes.get());
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads all data from the specified snapshot file. Snapshots of the first
+     * version have no journal checkpoint, so it is {@code 0} after loading
+     * them.
+     *
+     * @param file
+     *            the snapshot file
+     * @throws IOException
+     *             if file couldn't be read or isn't a valid snapshot
+     */
+    private void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC)
+                throw new IOException("File is not a snapshot.");
+            int version = in.readInt();
+            if (version != 1 && version != SNAPSHOT_VERSION)
+                throw new IOException("Snapshot version is not supported.");
+
+            synchronized (structureLock) {
+                lastPollID = in.readLong();
+                lastOptionID = in.readLong();
+                journalCheckpoint = version == 1 ? 0 : in.readLong();
+
+                for (int pollCount = in.readInt(); pollCount > 0; pollCount--) {
+                    PollEntry poll = insertPoll(in.readLong(), readString(in), readString(in));
+
+                    for (int optionCount = in.readInt(); optionCount > 0; optionCount--) {
+                        insertOption(in.readLong(), readString(in), readString(in), poll, in.readLong());
+                    }
+                }
+            }
+        }
+
+        snapshotChanges = changes.sum();
+    }
+
+    /**
+     * Writes the specified string as its length in bytes followed by its
+     * UTF-8 bytes.
+     *
+     * @param out
+     *            the output stream
+     * @param s
+     *            the string
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param in
+     *            the input stream
+     * @return the string
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new IOException("Snapshot is corrupted.");
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds {@code votes} votes to the specified poll option.
+     *
+     * @param option
+     *            the poll option or {@code null} if it doesn't exist
+     * @param votes
+     *            votes to be added
+     * @return the number of affected poll options
+     */
+    private int addVotes(OptionEntry option, long votes) {
+        if (option == null)
+            return 0;
+
+        option.votes.addAndGet(votes);
+        changes.increment();
+        return 1;
+    }
+
+    /**
+     * Returns the poll with the specified {@code title}, adding it if it
+     * doesn't exist. Must be called while holding the structure lock.
+     *
+     * @param title
+     *            the title of the poll
+     * @param message
+     *            the message of the poll
+     * @return the new or the existing poll
+     */
+    private PollEntry upsertPoll(String title, String message) {
+        PollEntry poll = pollsByTitle.get(title);
+        return poll != null ? poll : insertPoll(++lastPollID, title, message);
+    }
+
+    /**
+     * Returns the poll with the specified {@code id}.
+     *
+     * @param id
+     *            the ID of the poll
+     * @return the poll
+     * @throws DAOException
+     *             if poll doesn't exist
+     */
+    private PollEntry getPollEntry(long id) {
+        PollEntry poll = polls.get(id);
+        if (poll == null)
+            throw new DAOException("Poll " + id + " doesn't exist.");
+
+        return poll;
+    }
+
+    /**
+     * Adds a new poll. Must be called while holding the structure lock.
+     *
+     * @param id
+     *            the ID of the poll
+     * @param title
+     *            the title of the poll
+     * @param message
+     *            the message of the poll
+     * @return the new poll
+     */
+    private PollEntry insertPoll(long id, String title, String message) {
+        PollEntry poll = new PollEntry(id, title, message);
+        polls.put(id, poll);
+        pollsByTitle.put(title, poll);
+        changes.increment();
+        return poll;
+    }
+
+    /**
+     * Adds a new poll option. Must be called while holding the structure lock.
+     *
+     * @param id
+     *            the ID of the poll option
+     * @param title
+     *            the title of the poll option
+     * @param link
+     *            the link of the poll option
+     * @param poll
+     *            the poll the option belongs to
+     * @param votesCount
+     *            the votes count of the poll option
+     * @return the new poll option
+     */
+    private OptionEntry insertOption(long id, String title, String link, PollEntry poll, long votesCount) {
+        OptionEntry option = new OptionEntry(id, title, link, poll.id, votesCount);
+        options.put(id, option);
+        poll.options.put(id, option);
+        poll.optionsByTitle.put(title, option);
+        changes.increment();
+        return option;
+    }
+
+    /**
+     * Checks arguments of a new poll option.
+     *
+     * @param optionTitle
+     *            the title of the poll option
+     * @param optionLink
+     *            the link of the poll option
+     * @param pollID
+     *            the ID of the poll
+     * @param votesCount
+     *            the votes count of the poll option
+     * @throws NullPointerException
+     *             if {@code optionTitle} or {@code optionLink} parameter is a
+     *             {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code pollID} or {@code votesCount} parameter is a
+     *             negative number
+     */
+    private static void checkPollOption(String optionTitle, String optionLink, long pollID, long votesCount) {
+        if (pollID < 0)
+            throw new IllegalArgumentException("You cannot add a poll option with negative poll ID.");
+        if (votesCount < 0)
+            throw new IllegalArgumentException("You cannot add a poll option with negative votes count.");
+        Objects.requireNonNull(optionTitle, "You cannot add a poll option with a null reference as a option title.");
+        Objects.requireNonNull(optionLink, "You cannot add a poll option with a null reference as a option link.");
+    }
+
+    /**
+     * {@code PollEntry} is a poll kept in memory together with its options.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class PollEntry {
+
+        /** ID of the poll. */
+        private final long id;
+        /** Title of the poll. */
+        private final String title;
+        /** Message of the poll. */
+        private final String message;
+        /** Options of the poll mapped by their IDs. */
+        private final Map<Long, OptionEntry> options = new ConcurrentSkipListMap<>();
+        /** Options of the poll mapped by their titles. */
+        private final Map<String, OptionEntry> optionsByTitle = new ConcurrentHashMap<>();
+
+        /**
+         * Constructs a new {@code PollEntry}.
+         *
+         * @param id
+         *            the ID of the poll
+         * @param title
+         *            the title of the poll
+         * @param message
+         *            the message of the poll
+         */
+        private PollEntry(long id, String title, String message) {
+            this.id = id;
+            this.title = title;
+            this.message = message;
+        }
+
+        /**
+         * Returns a new {@link Poll} with data of this entry.
+         *
+         * @return the poll
+         */
+        private Poll toPoll() {
+            return new Poll(id, title, message);
+        }
+    }
+
+    /**
+     * {@code OptionEntry} is a poll option kept in memory.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class OptionEntry {
+
+        /** ID of the poll option. */
+        private final long id;
+        /** Title of the poll option. */
+        private final String title;
+        /** Link of the poll option. */
+        private final String link;
+        /** ID of the poll the option belongs to. */
+        private final long pollID;
+        /** Votes count of the poll option. */
+        private final AtomicLong votes;
+
+        /**
+         * Constructs a new {@code OptionEntry}.
+         *
+         * @param id
+         *            the ID of the poll option
+         * @param title
+         *            the title of the poll option
+         * @param link
+         *            the link of the poll option
+         * @param pollID
+         *            the ID of the poll the option belongs to
+         * @param votes
+         *            the votes count of the poll option
+         */
+        private OptionEntry(long id, String title, String link, long pollID, long votes) {
+            this.id = id;
+            this.title = title;
+            this.link = link;
+            this.pollID = pollID;
+            this.votes = new AtomicLong(votes);
+        }
+
+        /**
+         * Returns a new {@link PollOption} with data of this entry.
+         *
+         * @return the poll option
+         */
+        private PollOption toPollOption() {
+            return new PollOption(id, title, link, pollID, votes.get());
+        }
+    }
+
+}
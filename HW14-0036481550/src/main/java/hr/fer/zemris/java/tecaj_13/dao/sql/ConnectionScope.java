@@ -0,0 +1,261 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+
+/**
+ * {@code ConnectionScope} is a unit of work(e.g. a request) that uses at most
+ * one connection to the primary database at a time.
+ * <p>
+ * Connection is acquired from the data source only the first time it is
+ * requested and is returned by {@link #release()}. Scope isn't tied to a
+ * thread: it is an object that can be passed around(e.g. as a request
+ * attribute) and bound by {@link #run(Runnable)} or {@link #call(Supplier)}
+ * to whichever thread currently does the work, so request can continue on
+ * another thread after it is suspended. Scope may be used by only one thread
+ * at a time.
+ * <p>
+ * Scope can be given a data source of read replicas. Reads then use a
+ * separate connection to a replica, acquired by {@link #getReadConnection()},
+ * unless scope already holds a connection to the primary database(so reads
+ * see writes of the scope) or reads are done by {@link #readLatest(Supplier)}.
+ * If no replica is available reads use the primary database.
+ * <p>
+ * Scope without a data source is used when DAO doesn't use a database(e.g.
+ * {@link hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO}); connection of
+ * such scope can't be acquired.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see SQLConnectionProvider
+ */
+public class ConnectionScope implements AutoCloseable {
+
+    /** Name of the request attribute that holds the scope of the request. */
+    public static final String ATTRIBUTE = "hr.fer.zemris.connectionScope";
+
+    /** Data source connection is acquired from; {@code null} if there is no database. */
+    private final DataSource ds;
+    /** Data source of read replicas; {@code null} if reads use {@link #ds}. */
+    private final DataSource replicas;
+    /** Acquired connection; {@code null} if no connection is acquired. */
+    private Connection con;
+    /** Acquired connection to a replica; {@code null} if none is acquired. */
+    private Connection readCon;
+    /** Number of running {@link #readLatest(Supplier)} calls. */
+    private int latestReads;
+
+    /**
+     * Constructs a new {@code ConnectionScope} on the specified data source.
+     * No connection is acquired.
+     *
+     * @param ds
+     *            the data source or {@code null} if there is no database
+     */
+    public ConnectionScope(DataSource ds) {
+        this(ds, null);
+    }
+
+    /**
+     * Constructs a new {@code ConnectionScope} on the specified data source
+     * whose reads use the data source of read replicas. No connection is
+     * acquired.
+     *
+     * @param ds
+     *            the data source or {@code null} if there is no database
+     * @param replicas
+     *            the data source of read replicas or {@code null} if reads use
+     *            {@code ds}
+     */
+    public ConnectionScope(DataSource ds, DataSource replicas) {
+        this.ds = ds;
+        this.replicas = ds == null ? null : replicas;
+    }
+
+    /**
+     * Returns a new scope on the same data sources as this scope, which can be
+     * used by another thread at the same time as this scope.
+     *
+     * @return the new scope
+     */
+    public ConnectionScope fork() {
+        return new ConnectionScope(ds, replicas);
+    }
+
+    /**
+     * Returns the connection of this scope. Connection is acquired from the
+     * data source if this scope doesn't hold one.
+     *
+     * @return the connection of this scope
+     * @throws DAOException
+     *             if connection couldn't be acquired or scope has no data
+     *             source
+     */
+    public synchronized Connection getConnection() {
+        if (ds == null)
+            throw new DAOException("No database is configured.");
+
+        if (con == null) {
+            try {
+                con = ds.getConnection();
+            } catch (SQLException e) {
+                throw new DAOException("Database is currently unavailable.", e);
+            }
+        }
+
+        return con;
+    }
+
+    /**
+     * Returns the connection of this scope used for reads. It is a connection
+     * to a replica if this scope has replicas, doesn't hold a connection to
+     * the primary database and isn't running {@link #readLatest(Supplier)};
+     * otherwise it is the {@link #getConnection() connection} of this scope.
+     *
+     * @return the connection used for reads
+     * @throws DAOException
+     *             if connection couldn't be acquired
+     */
+    public synchronized Connection getReadConnection() {
+        if (replicas == null || con != null || latestReads > 0)
+            return getConnection();
+
+        if (readCon == null) {
+            try {
+                readCon = replicas.getConnection();
+            } catch (SQLException e) {
+                return getConnection();
+            }
+        }
+
+        return readCon;
+    }
+
+    /**
+     * Checks if this scope holds a connection.
+     *
+     * @return {@code true} if connection is acquired; {@code false} otherwise
+     */
+    public synchronized boolean hasConnection() {
+        return con != null || readCon != null;
+    }
+
+    /**
+     * Returns connections of this scope to their data sources. Scope can still
+     * be used; next call of {@link #getConnection()} acquires a new
+     * connection. Does nothing if no connection is acquired.
+     */
+    public synchronized void release() {
+        close(con);
+        close(readCon);
+        con = null;
+        readCon = null;
+    }
+
+    /**
+     * Runs the specified {@code action} with this scope bound to the current
+     * thread, so {@link SQLConnectionProvider#getConnection()} returns the
+     * connection of this scope. Previously bound scope is restored afterwards.
+     *
+     * @param action
+     *            the action
+     * @throws NullPointerException
+     *             if {@code action} parameter is a {@code null} reference
+     */
+    public void run(Runnable action) {
+        Objects.requireNonNull(action, "You cannot run a null reference as an action.");
+
+        ConnectionScope previous = SQLConnectionProvider.bindScope(this);
+        try {
+            action.run();
+        } finally {
+            SQLConnectionProvider.bindScope(previous);
+        }
+    }
+
+    /**
+     * Calls the specified {@code action} with this scope bound to the current
+     * thread and returns its result. Previously bound scope is restored
+     * afterwards.
+     *
+     * @param <T>
+     *            the type of the result
+     * @param action
+     *            the action
+     * @return the result of the action
+     * @throws NullPointerException
+     *             if {@code action} parameter is a {@code null} reference
+     */
+    public <T> T call(Supplier<T> action) {
+        Objects.requireNonNull(action, "You cannot call a null reference as an action.");
+
+        ConnectionScope previous = SQLConnectionProvider.bindScope(this);
+        try {
+            return action.get();
+        } finally {
+            SQLConnectionProvider.bindScope(previous);
+        }
+    }
+
+    /**
+     * Calls the specified {@code read} with this scope bound to the current
+     * thread so that all its reads use the primary database and see all
+     * committed writes. It should be used by reads whose results are kept
+     * and updated with later writes, because result read from a lagging
+     * replica would miss some of them forever.
+     *
+     * @param <T>
+     *            the type of the result
+     * @param read
+     *            the read
+     * @return the result of the read
+     * @throws NullPointerException
+     *             if {@code read} parameter is a {@code null} reference
+     */
+    public <T> T readLatest(Supplier<T> read) {
+        Objects.requireNonNull(read, "You cannot call a null reference as a read.");
+
+        synchronized (this) {
+            latestReads++;
+        }
+
+        try {
+            return call(read);
+        } finally {
+            synchronized (this) {
+                latestReads--;
+            }
+        }
+    }
+
+    /**
+     * Releases connections of this scope.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * Closes the specified connection if it isn't a {@code null} reference.
+     *
+     * @param con
+     *            the connection
+     */
+    private static void close(Connection con) {
+        if (con == null)
+            return;
+
+        try {
+            con.close();
+        } catch (SQLException ignorable) {
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code CounterCompactor} periodically folds counter shards of a
+ * {@link ShardedSQLDAO} back into votes count of their poll options.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see ShardedSQLDAO#compact()
+ */
+public class CounterCompactor {
+
+    /** Prefix of the names of metrics registered by this compactor. */
+    private static final String METRICS_PREFIX = "votes.compactor.";
+
+    /** Number of compactions. */
+    private final LongAdder compactions = new LongAdder();
+    /** Number of folded votes. */
+    private final LongAdder foldedVotes = new LongAdder();
+    /** Executor that runs compactions. */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new {@code CounterCompactor} and starts periodic
+     * compaction.
+     *
+     * @param dao
+     *            the DAO whose counter shards are compacted
+     * @param ds
+     *            data source used for compaction
+     * @param interval
+     *            number of milliseconds between two compactions
+     * @throws NullPointerException
+     *             if {@code dao} or {@code ds} parameter is a {@code null}
+     *             reference
+     * @throws IllegalArgumentException
+     *             if {@code interval} parameter is not a positive number
+     */
+    public CounterCompactor(ShardedSQLDAO dao, DataSource ds, long interval) {
+        Objects.requireNonNull(dao, "You cannot compact a null reference as a DAO.");
+        Objects.requireNonNull(ds, "You cannot compact with a null reference as a data source.");
+        if (interval <= 0)
+            throw new IllegalArgumentException("Compaction interval must be a positive number.");
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "counter-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                SQLConnectionProvider.runWithConnection(ds, () -> foldedVotes.add(dao.compact()));
+                compactions.increment();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+
+        Metrics.register(METRICS_PREFIX + "compactions", compactions::sum);
+        Metrics.register(METRICS_PREFIX + "folded", foldedVotes::sum);
+    }
+
+    /**
+     * Stops periodic compaction.
+     */
+    public void close() {
+        scheduler.shutdown();
+
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+}
@@ -0,0 +1,734 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+
+/**
+ * {@code PollLoader} loads poll definitions from .properties files to
+ * database in bulk.
+ * <p>
+ * Loading has four phases:
+ * <ol>
+ * <li>size and modification time of every file are compared with the
+ * fingerprint recorded in table 'PollFiles' by the previous loading; files
+ * whose fingerprint matches are skipped without being read,</li>
+ * <li>remaining files are hashed and parsed in parallel on the common
+ * fork-join pool; files whose content hash didn't change are not loaded,</li>
+ * <li>titles of all polls and options already in database are read with a
+ * single query and compared with parsed definitions,</li>
+ * <li>only new polls and new options are inserted in a single transaction
+ * together with the new fingerprints of read files; IDs of new polls are read
+ * from generated keys and new options are inserted with a batched
+ * statement.</li>
+ * </ol>
+ * Time spent in every phase is returned as a {@link Report}.
+ * <p>
+ * File must be a .properties file with properties title, message and at least
+ * one option. One option has two properties: optX_title and optX_link(where X
+ * is a ordinal number of the poll option). Options are read until the first
+ * one that misses one of the properties. Files without title or message are
+ * skipped.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class PollLoader {
+
+    /**
+     * Number of attempts to insert new polls; attempt fails if other
+     * transaction inserts the same poll or option concurrently.
+     */
+    private static final int ATTEMPTS = 2;
+    /**
+     * SQL select statement that selects 'id' and 'title' of all polls joined
+     * with titles of their options.
+     */
+    private static final String SQL_SELECT_TITLES = "SELECT p.id, p.title, o.optionTitle"
+            + " FROM Polls p LEFT OUTER JOIN PollOptions o ON o.pollID=p.id";
+    /** SQL select statement that selects all fingerprints of loaded files. */
+    private static final String SQL_POLLFILES_SELECT = "SELECT path, size, modified, hash"
+            + " FROM PollFiles";
+    /**
+     * SQL insert statement that inserts row with specified 'path', 'size',
+     * 'modified' and 'hash' columns in table 'PollFiles'.
+     */
+    private static final String SQL_POLLFILES_INSERT = "INSERT INTO PollFiles"
+            + " (path, size, modified, hash) values (?,?,?,?)";
+    /**
+     * SQL update statement that updates 'size', 'modified' and 'hash' columns
+     * of the row with specified 'path' in table 'PollFiles'.
+     */
+    private static final String SQL_POLLFILES_UPDATE = "UPDATE PollFiles"
+            + " SET size=?, modified=?, hash=?"
+            + " WHERE path=?";
+    /** SQL delete statement that deletes row with specified 'path'. */
+    private static final String SQL_POLLFILES_DELETE = "DELETE FROM PollFiles"
+            + " WHERE path=?";
+
+    /** DAO whose hook is called after poll options are inserted. */
+    private final SQLDAO dao;
+
+    /**
+     * Constructs a new {@code PollLoader}.
+     *
+     * @param dao
+     *            the DAO whose {@link SQLDAO#pollOptionsInserted(Connection, long)}
+     *            hook is called after poll options are inserted
+     * @throws NullPointerException
+     *             if {@code dao} parameter is a {@code null} reference
+     */
+    public PollLoader(SQLDAO dao) {
+        this.dao = Objects.requireNonNull(dao, "Poll loader cannot use a null reference as a DAO.");
+    }
+
+    /**
+     * Loads all .properties files from the directory specified by {@code dir}
+     * parameter and its subdirectories to database on the connection returned
+     * by {@link SQLConnectionProvider}.
+     *
+     * @param dir
+     *            the path to directory with .properties files containing
+     *            information about polls
+     * @return the report of the loading
+     * @throws IOException
+     *             if directory couldn't be read
+     * @throws DAOException
+     *             if some exception occurs while writing to database
+     * @throws NullPointerException
+     *             if {@code dir} parameter is a {@code null} reference
+     */
+    public Report load(Path dir) throws IOException, DAOException {
+        Objects.requireNonNull(dir, "You cannot load polls from a null reference as a directory.");
+
+        Report report = new Report();
+        long start = System.nanoTime();
+        Connection con = SQLConnectionProvider.getConnection();
+
+        List<PollFile> files = scan(dir);
+        Map<String, PollFile> manifest = readManifest(con);
+
+        Set<String> removed = new HashSet<>(manifest.keySet());
+        List<PollFile> candidates = new ArrayList<>();
+        for (PollFile file : files) {
+            removed.remove(file.path);
+            if (!file.hasSameAttributes(manifest.get(file.path))) {
+                candidates.add(file);
+            }
+        }
+
+        report.files = files.size();
+        report.scanTime = System.nanoTime() - start;
+
+        long parseStart = System.nanoTime();
+        List<PollFile> read = candidates.parallelStream()
+                .filter(PollFile::read)
+                .collect(Collectors.toList());
+
+        Map<String, PollDetails> definitions = new LinkedHashMap<>();
+        for (PollFile file : read) {
+            PollFile recorded = manifest.get(file.path);
+            if (recorded != null && recorded.hash.equals(file.hash))
+                continue;
+
+            report.changedFiles++;
+            if (file.definition != null) {
+                definitions.putIfAbsent(file.definition.getPoll().getTitle(), file.definition);
+            }
+        }
+
+        report.polls = definitions.size();
+        report.parseTime = System.nanoTime() - parseStart;
+
+        if (read.isEmpty() && removed.isEmpty()) {
+            report.totalTime = System.nanoTime() - start;
+            return report;
+        }
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                SQLDAO.executeInTransaction(con, () -> {
+                    report.insertedPolls = 0;
+                    report.insertedOptions = 0;
+                    report.changedPolls.clear();
+                    report.diffTime = 0;
+                    report.insertTime = 0;
+
+                    if (!definitions.isEmpty()) {
+                        long diffStart = System.nanoTime();
+                        Map<String, Long> pollIDs = new HashMap<>();
+                        Map<Long, Set<String>> optionTitles = new HashMap<>();
+                        readTitles(con, pollIDs, optionTitles);
+                        report.diffTime = System.nanoTime() - diffStart;
+
+                        long insertStart = System.nanoTime();
+                        insert(con, definitions, pollIDs, optionTitles, report);
+                        report.insertTime = System.nanoTime() - insertStart;
+                    }
+
+                    long manifestStart = System.nanoTime();
+                    writeManifest(con, read, manifest, removed);
+                    report.manifestTime = System.nanoTime() - manifestStart;
+                    return null;
+                });
+                report.totalTime = System.nanoTime() - start;
+                return report;
+            } catch (SQLException e) {
+                if (!SQLDAO.isDuplicateKey(e) || attempt == ATTEMPTS)
+                    throw new DAOException("Exception occured while loading polls.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads poll definitions from all .properties files in the directory
+     * specified by {@code dir} parameter and its subdirectories without
+     * writing them to database. Files are read in parallel; files that
+     * couldn't be read or parsed are skipped. If more files define a poll with
+     * the same title only the first one is returned.
+     *
+     * @param dir
+     *            the path to directory with .properties files containing
+     *            information about polls
+     * @return the poll definitions
+     * @throws IOException
+     *             if directory couldn't be read
+     * @throws NullPointerException
+     *             if {@code dir} parameter is a {@code null} reference
+     */
+    public static List<PollDetails> readDefinitions(Path dir) throws IOException {
+        Objects.requireNonNull(dir, "You cannot read polls from a null reference as a directory.");
+
+        List<PollFile> read = scan(dir).parallelStream()
+                .filter(PollFile::read)
+                .collect(Collectors.toList());
+
+        Map<String, PollDetails> definitions = new LinkedHashMap<>();
+        for (PollFile file : read) {
+            if (file.definition != null) {
+                definitions.putIfAbsent(file.definition.getPoll().getTitle(), file.definition);
+            }
+        }
+
+        return new ArrayList<>(definitions.values());
+    }
+
+    /**
+     * Returns all .properties files from the directory specified by
+     * {@code dir} parameter and its subdirectories with their size and
+     * modification time.
+     *
+     * @param dir
+     *            the path to directory with .properties files
+     * @return the files in the directory
+     * @throws IOException
+     *             if directory couldn't be read
+     */
+    private static List<PollFile> scan(Path dir) throws IOException {
+        List<PollFile> files = new ArrayList<>();
+
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                if (!Files.isRegularFile(p) || !p.toString().endsWith(".properties"))
+                    continue;
+
+                String path = dir.relativize(p).toString().replace('\\', '/');
+                files.add(new PollFile(p, path, Files.size(p), Files.getLastModifiedTime(p).toMillis(), null));
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Reads fingerprints of all files recorded by previous loadings.
+     *
+     * @param con
+     *            the connection to database
+     * @return the recorded fingerprints by path of file
+     * @throws DAOException
+     *             if some exception occurs while reading fingerprints
+     */
+    private static Map<String, PollFile> readManifest(Connection con) throws DAOException {
+        Map<String, PollFile> manifest = new HashMap<>();
+
+        try (PreparedStatement pst = SQLDAO.prepare(con, "pollFilesSelect", SQL_POLLFILES_SELECT);
+                ResultSet rs = pst.executeQuery()) {
+            while (rs.next()) {
+                String path = rs.getString(1);
+                manifest.put(path, new PollFile(null, path, rs.getLong(2), rs.getLong(3), rs.getString(4)));
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Exception occured while reading loaded poll files.", e);
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Records fingerprints of the specified {@code read} files and deletes
+     * fingerprints of {@code removed} files.
+     *
+     * @param con
+     *            the connection to database
+     * @param read
+     *            the files that were read
+     * @param manifest
+     *            the fingerprints recorded by previous loadings
+     * @param removed
+     *            paths of the files that no longer exist
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static void writeManifest(Connection con, List<PollFile> read, Map<String, PollFile> manifest,
+            Set<String> removed) throws SQLException {
+        try (PreparedStatement insert = SQLDAO.prepare(con, "pollFilesInsert", SQL_POLLFILES_INSERT);
+                PreparedStatement update = SQLDAO.prepare(con, "pollFilesUpdate", SQL_POLLFILES_UPDATE)) {
+            boolean inserted = false;
+            boolean updated = false;
+
+            for (PollFile file : read) {
+                if (manifest.containsKey(file.path)) {
+                    update.setLong(1, file.size);
+                    update.setLong(2, file.modified);
+                    update.setString(3, file.hash);
+                    update.setString(4, file.path);
+                    update.addBatch();
+                    updated = true;
+                } else {
+                    insert.setString(1, file.path);
+                    insert.setLong(2, file.size);
+                    insert.setLong(3, file.modified);
+                    insert.setString(4, file.hash);
+                    insert.addBatch();
+                    inserted = true;
+                }
+            }
+
+            if (inserted) {
+                insert.executeBatch();
+            }
+            if (updated) {
+                update.executeBatch();
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            try (PreparedStatement pst = SQLDAO.prepare(con, "pollFilesDelete", SQL_POLLFILES_DELETE)) {
+                for (String path : removed) {
+                    pst.setString(1, path);
+                    pst.addBatch();
+                }
+                pst.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Reads IDs and titles of all polls and titles of their options.
+     *
+     * @param con
+     *            the connection to database
+     * @param pollIDs
+     *            map that is filled with poll IDs by poll title
+     * @param optionTitles
+     *            map that is filled with option titles by poll ID
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static void readTitles(Connection con, Map<String, Long> pollIDs, Map<Long, Set<String>> optionTitles)
+            throws SQLException {
+        try (PreparedStatement pst = SQLDAO.prepare(con, "pollTitlesSelect", SQL_SELECT_TITLES);
+                ResultSet rs = pst.executeQuery()) {
+            while (rs.next()) {
+                long pollID = rs.getLong(1);
+                pollIDs.put(rs.getString(2), pollID);
+
+                Set<String> titles = optionTitles.computeIfAbsent(pollID, id -> new HashSet<>());
+                String optionTitle = rs.getString(3);
+                if (optionTitle != null) {
+                    titles.add(optionTitle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts polls and options of the specified {@code definitions} that are
+     * not in database. Every new poll is inserted on its own so its ID is read
+     * from the generated keys of its own insert; options are inserted with a
+     * single batch.
+     *
+     * @param con
+     *            the connection to database
+     * @param definitions
+     *            the poll definitions by poll title
+     * @param pollIDs
+     *            IDs of polls in database by poll title
+     * @param optionTitles
+     *            titles of options in database by poll ID
+     * @param report
+     *            the report that counts inserted rows
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private void insert(Connection con, Map<String, PollDetails> definitions, Map<String, Long> pollIDs,
+            Map<Long, Set<String>> optionTitles, Report report) throws SQLException {
+        for (PollDetails definition : definitions.values()) {
+            Poll poll = definition.getPoll();
+            if (pollIDs.containsKey(poll.getTitle()))
+                continue;
+
+            long pollID = SQLDAO.insertPoll(con, poll.getTitle(), poll.getMessage());
+            if (pollID < 0)
+                throw new SQLException("ID of the inserted poll " + poll.getTitle() + " wasn't generated.");
+
+            pollIDs.put(poll.getTitle(), pollID);
+            report.changedPolls.add(pollID);
+            report.insertedPolls++;
+        }
+
+        Set<Long> changedPolls = new HashSet<>();
+        try (PreparedStatement pst = SQLDAO.prepare(con, "pollOptionsInsert", SQLDAO.SQL_POLLOPTIONS_INSERT)) {
+            for (PollDetails definition : definitions.values()) {
+                long pollID = pollIDs.get(definition.getPoll().getTitle());
+                Set<String> titles = optionTitles.computeIfAbsent(pollID, id -> new HashSet<>());
+
+                for (PollOption option : definition.getOptions()) {
+                    if (!titles.add(option.getOptionTitle()))
+                        continue;
+
+                    pst.setString(1, option.getOptionTitle());
+                    pst.setString(2, option.getOptionLink());
+                    pst.setLong(3, pollID);
+                    pst.setLong(4, option.getVotesCount());
+                    pst.addBatch();
+                    changedPolls.add(pollID);
+                    report.insertedOptions++;
+                }
+            }
+
+            if (report.insertedOptions > 0) {
+                pst.executeBatch();
+            }
+        }
+
+        for (Long pollID : changedPolls) {
+            dao.pollOptionsInserted(con, pollID);
+        }
+
+        report.changedPolls.addAll(changedPolls);
+    }
+
+    /**
+     * Parses a poll definition from the specified {@code content} of a
+     * .properties file.
+     *
+     * @param content
+     *            the content of the file
+     * @return the poll definition or {@code null} if file doesn't contain
+     *         title and message of a poll
+     * @throws IOException
+     *             if content isn't a valid .properties file
+     */
+    private static PollDetails parse(byte[] content) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(content));
+
+        String title = properties.getProperty("title");
+        String message = properties.getProperty("message");
+        if (title == null || message == null)
+            return null;
+
+        List<PollOption> options = new ArrayList<>();
+        for (int i = 1;; i++) {
+            String optionTitle = properties.getProperty("opt" + i + "_title");
+            String optionLink = properties.getProperty("opt" + i + "_link");
+
+            if (optionTitle == null || optionLink == null)
+                break;
+
+            options.add(new PollOption(optionTitle, optionLink, 0L, 0L));
+        }
+
+        return new PollDetails(new Poll(title, message), options);
+    }
+
+    /**
+     * Returns the hexadecimal SHA-256 hash of the specified {@code content}.
+     *
+     * @param content
+     *            the content of a file
+     * @return the hash of the content
+     */
+    private static String hash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported.", e);
+        }
+
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest(content)) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * {@code PollFile} is a poll definition file with its fingerprint: size,
+     * modification time and hash of its content.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class PollFile {
+
+        /** Location of the file; {@code null} for recorded fingerprints. */
+        private final Path location;
+        /** Path of the file relative to the polls directory. */
+        private final String path;
+        /** Size of the file in bytes. */
+        private final long size;
+        /** Modification time of the file in milliseconds since the epoch. */
+        private final long modified;
+        /** Hash of the content of the file; set once the file is read. */
+        private String hash;
+        /** Poll defined by the file; set once the file is read. */
+        private PollDetails definition;
+
+        /**
+         * Constructs a new {@code PollFile}.
+         *
+         * @param location
+         *            the location of the file
+         * @param path
+         *            the path of the file relative to the polls directory
+         * @param size
+         *            the size of the file in bytes
+         * @param modified
+         *            the modification time of the file
+         * @param hash
+         *            the hash of the content of the file
+         */
+        private PollFile(Path location, String path, long size, long modified, String hash) {
+            this.location = location;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        /**
+         * Checks if this file has the same size and modification time as the
+         * specified {@code recorded} fingerprint.
+         *
+         * @param recorded
+         *            the recorded fingerprint; may be {@code null}
+         * @return {@code true} if fingerprint matches; {@code false} otherwise
+         */
+        private boolean hasSameAttributes(PollFile recorded) {
+            return recorded != null && recorded.size == size && recorded.modified == modified;
+        }
+
+        /**
+         * Reads content of this file, hashes it and parses the poll
+         * definition.
+         *
+         * @return {@code true} if file was read; {@code false} otherwise
+         */
+        private boolean read() {
+            try {
+                byte[] content = Files.readAllBytes(location);
+                hash = hash(content);
+                definition = parse(content);
+                return true;
+            } catch (IOException | IllegalArgumentException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * {@code Report} contains the number of loaded files and rows and time
+     * spent in every phase of loading.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    public static class Report {
+
+        /** Number of poll definition files. */
+        private int files;
+        /** Number of files whose content changed since the previous loading. */
+        private int changedFiles;
+        /** Number of parsed poll definitions. */
+        private int polls;
+        /** Number of inserted polls. */
+        private int insertedPolls;
+        /** Number of inserted poll options. */
+        private int insertedOptions;
+        /** IDs of polls that were inserted or got new options. */
+        private final Set<Long> changedPolls = new HashSet<>();
+        /** Time spent comparing fingerprints of files in nanoseconds. */
+        private long scanTime;
+        /** Time spent parsing files in nanoseconds. */
+        private long parseTime;
+        /** Time spent reading existing polls in nanoseconds. */
+        private long diffTime;
+        /** Time spent inserting new rows in nanoseconds. */
+        private long insertTime;
+        /** Time spent writing fingerprints of files in nanoseconds. */
+        private long manifestTime;
+        /** Time spent loading in nanoseconds. */
+        private long totalTime;
+
+        /**
+         * Returns the number of poll definition files.
+         *
+         * @return the number of poll definition files
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the number of files whose content changed since the previous
+         * loading.
+         *
+         * @return the number of changed files
+         */
+        public int getChangedFiles() {
+            return changedFiles;
+        }
+
+        /**
+         * Returns the number of parsed poll definitions.
+         *
+         * @return the number of parsed poll definitions
+         */
+        public int getPolls() {
+            return polls;
+        }
+
+        /**
+         * Returns the number of inserted polls.
+         *
+         * @return the number of inserted polls
+         */
+        public int getInsertedPolls() {
+            return insertedPolls;
+        }
+
+        /**
+         * Returns the number of inserted poll options.
+         *
+         * @return the number of inserted poll options
+         */
+        public int getInsertedOptions() {
+            return insertedOptions;
+        }
+
+        /**
+         * Returns IDs of polls that were inserted or got new options.
+         *
+         * @return IDs of changed polls
+         */
+        public Set<Long> getChangedPolls() {
+            return Collections.unmodifiableSet(changedPolls);
+        }
+
+        /**
+         * Returns the time spent comparing fingerprints of files in
+         * milliseconds.
+         *
+         * @return the time spent comparing fingerprints of files
+         */
+        public long getScanMillis() {
+            return scanTime / 1_000_000;
+        }
+
+        /**
+         * Returns the time spent parsing files in milliseconds.
+         *
+         * @return the time spent parsing files
+         */
+        public long getParseMillis() {
+            return parseTime / 1_000_000;
+        }
+
+        /**
+         * Returns the time spent reading existing polls in milliseconds.
+         *
+         * @return the time spent reading existing polls
+         */
+        public long getDiffMillis() {
+            return diffTime / 1_000_000;
+        }
+
+        /**
+         * Returns the time spent inserting new rows in milliseconds.
+         *
+         * @return the time spent inserting new rows
+         */
+        public long getInsertMillis() {
+            return insertTime / 1_000_000;
+        }
+
+        /**
+         * Returns the time spent writing fingerprints of files in
+         * milliseconds.
+         *
+         * @return the time spent writing fingerprints of files
+         */
+        public long getManifestMillis() {
+            return manifestTime / 1_000_000;
+        }
+
+        /**
+         * Returns the time spent loading in milliseconds, including the
+         * transactions that were retried.
+         *
+         * @return the time spent loading
+         */
+        public long getTotalMillis() {
+            return totalTime / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return "Loaded " + polls + " polls from " + changedFiles + " changed of " + files + " files (inserted "
+                    + insertedPolls + " polls, " + insertedOptions + " options): scan=" + getScanMillis()
+                    + "ms, parse=" + getParseMillis() + "ms, diff=" + getDiffMillis() + "ms, insert="
+                    + getInsertMillis() + "ms, manifest=" + getManifestMillis() + "ms, total=" + getTotalMillis()
+                    + "ms";
+        }
+    }
+
+}
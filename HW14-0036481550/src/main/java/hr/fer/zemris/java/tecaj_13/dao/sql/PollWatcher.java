@@ -0,0 +1,232 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code PollWatcher} watches a directory with poll definition files and loads
+ * added or modified files with a {@link PollLoader} while application is
+ * running.
+ * <p>
+ * Bursts of file events(e.g. copying many files at once) are debounced: files
+ * are loaded only after no event was received for the debounce interval.
+ * Loader skips files whose fingerprint didn't change, so reloading after an
+ * event costs only a directory walk and a single query for every unchanged
+ * file. After loading, the consumer given to the constructor is called with
+ * the ID of every poll that was inserted or got new options so that exactly
+ * those cache entries can be refreshed.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see PollLoader
+ */
+public class PollWatcher {
+
+    /** Prefix of the names of metrics registered by this watcher. */
+    private static final String METRICS_PREFIX = "polls.watcher.";
+
+    /** Loader that loads changed files. */
+    private final PollLoader loader;
+    /** Watched directory. */
+    private final Path dir;
+    /** Data source used for loading. */
+    private final DataSource ds;
+    /** Number of milliseconds without events after which files are loaded. */
+    private final long debounce;
+    /** Consumer called with the ID of every changed poll. */
+    private final LongConsumer onPollChanged;
+    /** Watch service of the watched directory and its subdirectories. */
+    private final WatchService watchService;
+    /** Thread that waits for events and loads files. */
+    private final Thread thread;
+    /** Number of reloads. */
+    private final LongAdder reloads = new LongAdder();
+    /** Number of polls changed by reloads. */
+    private final LongAdder changedPolls = new LongAdder();
+
+    /**
+     * Constructs a new {@code PollWatcher} and starts watching.
+     *
+     * @param loader
+     *            the loader that loads changed files
+     * @param dir
+     *            the directory with poll definition files
+     * @param ds
+     *            data source used for loading
+     * @param debounce
+     *            number of milliseconds without events after which files are
+     *            loaded
+     * @param onPollChanged
+     *            consumer called with the ID of every poll that was inserted
+     *            or got new options
+     * @throws IOException
+     *             if directory couldn't be watched
+     * @throws NullPointerException
+     *             if {@code loader}, {@code dir}, {@code ds} or
+     *             {@code onPollChanged} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code debounce} parameter is a negative number
+     */
+    public PollWatcher(PollLoader loader, Path dir, DataSource ds, long debounce, LongConsumer onPollChanged)
+            throws IOException {
+        this.loader = Objects.requireNonNull(loader, "You cannot watch with a null reference as a loader.");
+        this.dir = Objects.requireNonNull(dir, "You cannot watch a null reference as a directory.");
+        this.ds = Objects.requireNonNull(ds, "You cannot watch with a null reference as a data source.");
+        this.onPollChanged = Objects.requireNonNull(onPollChanged,
+                "You cannot watch with a null reference as a consumer.");
+        if (debounce < 0)
+            throw new IllegalArgumentException("Debounce interval cannot be a negative number.");
+        this.debounce = debounce;
+
+        watchService = dir.getFileSystem().newWatchService();
+        try {
+            register(dir);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        thread = new Thread(this::watch, "poll-watcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        Metrics.register(METRICS_PREFIX + "reloads", reloads::sum);
+        Metrics.register(METRICS_PREFIX + "changedPolls", changedPolls::sum);
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+    /**
+     * Waits for events and loads files after every debounced burst of events
+     * until watch service is closed.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                boolean relevant = handle(watchService.take());
+
+                WatchKey key;
+                while ((key = watchService.poll(debounce, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= handle(key);
+                }
+
+                if (relevant) {
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // watcher is closed
+        }
+    }
+
+    /**
+     * Handles events of the specified {@code key}. New subdirectories are
+     * watched too.
+     *
+     * @param key
+     *            the signalled watch key
+     * @return {@code true} if some event may have changed poll definition
+     *         files; {@code false} otherwise
+     */
+    private boolean handle(WatchKey key) {
+        boolean relevant = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+
+            Path path = ((Path) key.watchable()).resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                relevant = true;
+            } else if (path.toString().endsWith(".properties")) {
+                relevant = true;
+            }
+        }
+
+        key.reset();
+        return relevant;
+    }
+
+    /**
+     * Loads changed files and passes IDs of changed polls to the consumer.
+     */
+    private void reload() {
+        try {
+            SQLConnectionProvider.runWithConnection(ds, () -> {
+                try {
+                    PollLoader.Report report = loader.load(dir);
+                    reloads.increment();
+                    changedPolls.add(report.getChangedPolls().size());
+                    report.getChangedPolls().forEach(onPollChanged::accept);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registers the specified {@code directory} and all its subdirectories
+     * with the watch service.
+     *
+     * @param directory
+     *            the directory
+     * @throws IOException
+     *             if directory couldn't be registered
+     */
+    private void register(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) paths::iterator) {
+                if (Files.isDirectory(p)) {
+                    p.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                }
+            }
+        }
+    }
+
+}
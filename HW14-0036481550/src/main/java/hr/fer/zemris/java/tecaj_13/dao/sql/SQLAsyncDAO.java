@@ -0,0 +1,209 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.metrics.Histogram;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code SQLAsyncDAO} is an {@link AsyncDAO} that runs calls on a bounded pool
+ * of JDBC threads.
+ * <p>
+ * Every call runs in its own {@link ConnectionScope}, so connection is
+ * acquired only if call reaches the database and is released as soon as call
+ * finishes. If the submitting thread has a bound scope the call's scope is
+ * forked from it and uses the same data sources(e.g. read replicas). Number
+ * of JDBC threads should not exceed the size of the connection pool. When all
+ * threads are busy calls wait in a bounded queue; when queue is full calls are
+ * rejected with a {@link DAOException} instead of being queued.
+ * <p>
+ * Call that times out while waiting in queue is never run. Running JDBC call
+ * is not interrupted, because that would break its connection; its result is
+ * discarded instead.
+ * <p>
+ * Queue depth, number of running calls, rejected and timed out calls and call
+ * latencies are published as {@link Metrics} gauges whose names start with
+ * "dao.async.".
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class SQLAsyncDAO implements AsyncDAO {
+
+    /** Prefix of the names of metrics registered by this DAO. */
+    private static final String METRICS_PREFIX = "dao.async.";
+
+    /** Data source connections are acquired from; {@code null} if there is no database. */
+    private final DataSource ds;
+    /** Default timeout of a call in milliseconds. */
+    private final long timeout;
+    /** Executor that runs calls. */
+    private final ThreadPoolExecutor executor;
+    /** Executor that times out calls. */
+    private final ScheduledExecutorService timer;
+    /** Number of rejected calls. */
+    private final LongAdder rejected = new LongAdder();
+    /** Number of timed out calls. */
+    private final LongAdder timeouts = new LongAdder();
+    /** Durations of calls from submission to completion. */
+    private final Histogram latencies = new Histogram();
+
+    /**
+     * Constructs a new {@code SQLAsyncDAO} and starts its JDBC threads.
+     *
+     * @param ds
+     *            the data source connections are acquired from or
+     *            {@code null} if DAO doesn't use a database
+     * @param threads
+     *            number of JDBC threads
+     * @param capacity
+     *            maximum number of calls waiting in queue
+     * @param timeout
+     *            default timeout of a call in milliseconds or {@code 0} if
+     *            calls have no timeout
+     * @param factory
+     *            the factory of JDBC threads
+     * @throws NullPointerException
+     *             if {@code factory} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code threads} or {@code capacity} parameter is not a
+     *             positive number or {@code timeout} parameter is a negative
+     *             number
+     */
+    public SQLAsyncDAO(DataSource ds, int threads, int capacity, long timeout, ThreadFactory factory) {
+        this.ds = ds;
+        Objects.requireNonNull(factory, "You cannot create JDBC threads by a null reference as a thread factory.");
+        if (threads <= 0)
+            throw new IllegalArgumentException("Number of JDBC threads must be a positive number.");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Queue capacity must be a positive number.");
+        if (timeout < 0)
+            throw new IllegalArgumentException("Timeout cannot be a negative number.");
+        this.timeout = timeout;
+
+        executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                factory);
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jdbc-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Metrics.register(METRICS_PREFIX + "depth", () -> executor.getQueue().size());
+        Metrics.register(METRICS_PREFIX + "active", executor::getActiveCount);
+        Metrics.register(METRICS_PREFIX + "rejected", rejected::sum);
+        Metrics.register(METRICS_PREFIX + "timeouts", timeouts::sum);
+        latencies.register(METRICS_PREFIX + "latency.");
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return submit(call, timeout);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Supplier<T> call, long timeout) {
+        Objects.requireNonNull(call, "You cannot submit a null reference as a call.");
+        if (timeout < 0)
+            throw new IllegalArgumentException("Timeout cannot be a negative number.");
+
+        ConnectionScope parent = SQLConnectionProvider.getScope();
+        long submitted = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, e) -> latencies.record(System.nanoTime() - submitted));
+
+        Future<?> task;
+        try {
+            task = executor.submit(() -> run(call, result, parent));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(new DAOException("Database is currently overloaded.", e));
+            return result;
+        }
+
+        if (timeout > 0) {
+            ScheduledFuture<?> expiry = timer.schedule(() -> {
+                DAOException e = new DAOException(
+                        "Database call didn't finish in " + timeout + " ms.",
+                        new TimeoutException());
+
+                if (result.completeExceptionally(e)) {
+                    timeouts.increment();
+                    task.cancel(false);
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, e) -> expiry.cancel(false));
+        }
+
+        return result;
+    }
+
+    /**
+     * Stops accepting calls, waits for submitted calls to finish and
+     * unregisters metrics of this DAO.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        timer.shutdownNow();
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+    /**
+     * Runs the specified {@code call} in a new connection scope and completes
+     * {@code result} with its outcome. Call is not run if {@code result} is
+     * already completed(e.g. if it timed out).
+     *
+     * @param <T>
+     *            the type of the result
+     * @param call
+     *            the call
+     * @param result
+     *            the future result of the call
+     * @param parent
+     *            the scope of the thread that submitted the call or
+     *            {@code null} if it had none
+     */
+    private <T> void run(Supplier<T> call, CompletableFuture<T> result, ConnectionScope parent) {
+        if (result.isDone())
+            return;
+
+        T value;
+        try (ConnectionScope scope = parent == null ? new ConnectionScope(ds) : parent.fork()) {
+            value = scope.call(call);
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        result.complete(value);
+    }
+
+}
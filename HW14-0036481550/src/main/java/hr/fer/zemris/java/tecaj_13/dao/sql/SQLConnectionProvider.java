@@ -1,45 +1,122 @@
 package hr.fer.zemris.java.tecaj_13.dao.sql;
 
 import java.sql.Connection;
+import java.util.Objects;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
 
 /**
- * {@code SQLConnectionProvider} provides thread-local connections to database.
- * These connections differ from their normal counterparts in that each thread
- * that accesses one (via its {@code get} or {@code set} method) has its own,
- * independently initialized copy of the connection.
+ * {@code SQLConnectionProvider} provides connections to database through the
+ * {@link ConnectionScope} bound to the current thread. Connection is acquired
+ * from the scope's data source only the first time {@link #getConnection()} is
+ * called, so threads that don't access database don't use any connection.
+ * Scope is owned by the unit of work, not by the thread, so the same scope can
+ * be bound by another thread when the work moves to it.
+ * <p>
+ * The binding is the only thread-local state left. It stays because the
+ * {@link hr.fer.zemris.java.tecaj_13.dao.DAO} interface is shared with DAOs
+ * that don't use a database and its methods take no connection; binding costs
+ * one thread-local lookup per statement, which is negligible next to the
+ * statement itself(see {@code ConnectionScopeBenchmark} in the tests). Bare
+ * connections can't be bound any more, {@link #runWithConnection(DataSource,
+ * Runnable)} binds a scope as well.
  * 
  * @author Karlo Vrbić
  * @version 1.0
  */
 public class SQLConnectionProvider {
 
-    /** Thread-local connections. */
-    private static ThreadLocal<Connection> CONNECTIONS = new ThreadLocal<>();
+    /** Connection scopes bound to threads. */
+    private static final ThreadLocal<ConnectionScope> SCOPES = new ThreadLocal<>();
+
+    /**
+     * Returns the connection of the connection scope bound to the current
+     * thread.
+     * 
+     * @return the current thread's connection to database or {@code null} if
+     *         no scope is bound
+     * @throws DAOException
+     *             if connection couldn't be acquired
+     */
+    public static Connection getConnection() {
+        ConnectionScope scope = SCOPES.get();
+        return scope == null ? null : scope.getConnection();
+    }
+
+    /**
+     * Returns the connection to database that is used for reads. It is the
+     * {@link ConnectionScope#getReadConnection() read connection} of the
+     * current thread's connection scope, which may be a connection to a read
+     * replica.
+     * 
+     * @return the current thread's connection used for reads or {@code null}
+     *         if no scope is bound
+     * @throws DAOException
+     *             if connection couldn't be acquired
+     */
+    public static Connection getReadConnection() {
+        ConnectionScope scope = SCOPES.get();
+        return scope == null ? null : scope.getReadConnection();
+    }
 
     /**
-     * Sets the current thread's copy of this thread-local variable to the
-     * specified connection(or removes the current thread's value for this
-     * thread-local variable if parameter {@code con} is a {@code null}
-     * reference).
+     * Binds the specified connection scope to the current thread(or unbinds
+     * the current thread's scope if parameter {@code scope} is a {@code null}
+     * reference). Connection of the scope is not acquired nor released.
      * 
-     * @param con
-     *            the connection to database
+     * @param scope
+     *            the connection scope
+     * @return the scope previously bound to the current thread or {@code null}
+     *         if there was none
      */
-    public static void setConnection(Connection con) {
-        if (con == null) {
-            CONNECTIONS.remove();
+    public static ConnectionScope bindScope(ConnectionScope scope) {
+        ConnectionScope previous = SCOPES.get();
+        if (scope == null) {
+            SCOPES.remove();
         } else {
-            CONNECTIONS.set(con);
+            SCOPES.set(scope);
         }
+
+        return previous;
     }
 
     /**
-     * Returns the connection to database in the current thread's copy of this
-     * thread-local connection.
+     * Returns the connection scope bound to the current thread.
      * 
-     * @return the current thread's connection to database
+     * @return the current thread's connection scope or {@code null} if there
+     *         is none
      */
-    public static Connection getConnection() {
-        return CONNECTIONS.get();
+    public static ConnectionScope getScope() {
+        return SCOPES.get();
+    }
+
+    /**
+     * Binds a new connection scope on the data source {@code ds} to the
+     * current thread while {@code action} is running. Connection is acquired
+     * the first time action uses it. After action finishes connection is
+     * released and the previously bound scope is restored.
+     * <p>
+     * This method is intended for background threads that aren't handled by
+     * {@link hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter}.
+     * 
+     * @param ds
+     *            the data source
+     * @param action
+     *            the action that uses current thread's connection
+     * @throws DAOException
+     *             if connection couldn't be acquired when action used it
+     * @throws NullPointerException
+     *             if {@code ds} or {@code action} parameter is a {@code null}
+     *             reference
+     */
+    public static void runWithConnection(DataSource ds, Runnable action) {
+        Objects.requireNonNull(ds, "You cannot acquire a connection from a null reference as a data source.");
+        Objects.requireNonNull(action, "You cannot run a null reference as an action.");
+
+        try (ConnectionScope scope = new ConnectionScope(ds)) {
+            scope.run(action);
+        }
     }
 }
@@ -4,15 +4,26 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import hr.fer.zemris.java.tecaj_13.dao.DAO;
 import hr.fer.zemris.java.tecaj_13.dao.DAOException;
 import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
 import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
 
 /**
  * {@code SQLDAO} is a class that offers a some methods to work with a SQL
@@ -31,6 +42,18 @@ public class SQLDAO implements DAO {
     private static final String SQL_POLLS_SELECT_ALL = "SELECT id, title, message"
             + " FROM Polls"
             + " ORDER BY id";
+    /**
+     * SQL select statement that selects at most specified number of rows from
+     * table 'Polls' whose 'id' is greater than specified 'id' and orders them
+     * by 'id'.
+     */
+    private static final String SQL_POLLS_SELECT_PAGE = "SELECT id, title, message"
+            + " FROM Polls"
+            + " WHERE id>?"
+            + " ORDER BY id"
+            + " FETCH FIRST ? ROWS ONLY";
+    /** Number of rows fetched at once while streaming polls. */
+    private static final int STREAM_FETCH_SIZE = 100;
     /**
      * SQL select statement that selects column from table 'Polls' with
      * specified 'id'.
@@ -49,45 +72,103 @@ public class SQLDAO implements DAO {
      * SQL insert statement that inserts row with specified 'title' and
      * 'message' columns in table 'Polls'.
      */
-    private static final String SQL_POLLS_INSERT = "INSERT INTO Polls"
+    static final String SQL_POLLS_INSERT = "INSERT INTO Polls"
             + " (title, message) values (?,?)";
+    /**
+     * SQL select statement that selects 'id' of row from table 'Polls' with
+     * specified 'title'.
+     */
+    private static final String SQL_POLLS_SELECT_ID_BY_TITLE = "SELECT id"
+            + " FROM Polls"
+            + " WHERE title=?";
+    /** SQL state of an error caused by violating unique constraint. */
+    private static final String DUPLICATE_KEY = "23505";
+    /**
+     * Number of attempts to add a poll definition; attempt fails if other
+     * transaction adds the same option concurrently.
+     */
+    private static final int POLL_DEFINITION_ATTEMPTS = 2;
 
     /**
-     * SQL select statement that selects all columns from table 'PollOptions'
-     * and orders rows by 'id'.
+     * SQL select statement that selects all columns from poll options source
+     * and orders rows by 'id'. Source is specified by format argument.
      */
     private static final String SQL_POLLOPTIONS_SELECT_ALL = "SELECT id, optionTitle, optionLink, pollID, votesCount"
-            + " FROM PollOptions"
+            + " FROM %s"
             + " ORDER BY id";
     /**
-     * SQL select statement that selects column from table 'PollOptions' with
-     * specified 'id'.
+     * SQL select statement that selects column from poll options source with
+     * specified 'id'. Source is specified by format argument.
      */
     private static final String SQL_POLLOPTIONS_SELECT_BY_ID = "SELECT id, optionTitle, optionLink, pollID, votesCount"
-            + " FROM PollOptions"
+            + " FROM %s"
             + " WHERE id=?";
     /**
-     * SQL select statement that selects column from table 'PollOptions' with
-     * specified 'optionTitle'.
+     * SQL select statement that selects column from poll options source with
+     * specified 'optionTitle'. Source is specified by format argument.
      */
     private static final String SQL_POLLOPTIONS_SELECT_BY_OPTIONTITLE = "SELECT id, optionTitle, optionLink, pollID,"
             + " votesCount"
-            + " FROM PollOptions"
+            + " FROM %s"
             + " WHERE optionTitle=?";
     /**
-     * SQL select statement that selects column from table 'PollOptions' with
-     * specified 'optionTitle'.
+     * SQL select statement that selects column from poll options source with
+     * specified 'pollID'. Source is specified by format argument.
      */
     private static final String SQL_POLLOPTIONS_SELECT_BY_POLLID = "SELECT id, optionTitle, optionLink, pollID,"
             + " votesCount"
-            + " FROM PollOptions"
+            + " FROM %s"
             + " WHERE pollID=?";
+    /**
+     * SQL select statement that selects a page of rows from poll options
+     * source with specified 'pollID' ordered by 'votesCount' in descending
+     * order. Source is specified by format argument.
+     */
+    private static final String SQL_POLLOPTIONS_SELECT_PAGE_BY_POLLID = "SELECT id, optionTitle, optionLink,"
+            + " pollID, votesCount"
+            + " FROM %s"
+            + " WHERE pollID=?"
+            + " ORDER BY votesCount DESC, id"
+            + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+    /**
+     * SQL select statement that selects polls joined with their options from
+     * poll options source. Rows are ordered by poll 'id' and then by
+     * 'votesCount' in descending order. Source and condition on poll 'id' are
+     * specified by format arguments.
+     */
+    private static final String SQL_POLLDETAILS_SELECT = "SELECT p.id, p.title, p.message,"
+            + " o.id, o.optionTitle, o.optionLink, o.votesCount"
+            + " FROM Polls p LEFT OUTER JOIN %s o ON o.pollID=p.id"
+            + " WHERE p.id%s"
+            + " ORDER BY p.id, o.votesCount DESC, o.id";
+    /**
+     * Numbers of poll IDs bound to a statement that selects details of
+     * multiple polls. Every chunk of IDs is padded to the smallest of these
+     * sizes by repeating its last ID, so only these few statements are
+     * prepared and the statement cache isn't filled with one statement per
+     * number of IDs. The last size is the maximum number of IDs per statement.
+     */
+    private static final int[] IN_LIST_SIZES = { 1, 4, 16, 64, 256, 500 };
     /**
      * SQL insert statement that inserts row with specified 'optionTitle',
      * 'optionLink', 'pollID' and 'votesCount' columns in table 'PollOptions'.
      */
-    private static final String SQL_POLLOPTIONS_INSERT = "INSERT INTO PollOptions"
+    static final String SQL_POLLOPTIONS_INSERT = "INSERT INTO PollOptions"
             + " (optionTitle, optionLink, pollID, votesCount) values (?,?,?,?)";
+    /**
+     * SQL select statement that selects 'id' of row from table 'PollOptions'
+     * with specified 'pollID' and 'optionTitle'.
+     */
+    private static final String SQL_POLLOPTIONS_SELECT_ID_BY_POLLID_AND_TITLE = "SELECT id"
+            + " FROM PollOptions"
+            + " WHERE pollID=? AND optionTitle=?";
+    /**
+     * SQL select statement that selects 'optionTitle' of rows from table
+     * 'PollOptions' with specified 'pollID'.
+     */
+    private static final String SQL_POLLOPTIONS_SELECT_TITLES_BY_POLLID = "SELECT optionTitle"
+            + " FROM PollOptions"
+            + " WHERE pollID=?";
     /**
      * SQL update statement that updates row with specified 'id' with new
      * 'votesCount' value in table 'PollOptions'.
@@ -95,13 +176,97 @@ public class SQLDAO implements DAO {
     private static final String SQL_POLLOPTIONS_UPDATE_VOTESCOUNT = "UPDATE pollOptions"
             + " SET votesCount=votesCount+?"
             + " WHERE id=?";
+    /**
+     * SQL update statement that updates row with specified 'id' and 'pollID'
+     * with new 'votesCount' value in table 'PollOptions'.
+     */
+    private static final String SQL_POLLOPTIONS_UPDATE_VOTESCOUNT_BY_POLLID = "UPDATE pollOptions"
+            + " SET votesCount=votesCount+?"
+            + " WHERE id=? AND pollID=?";
+    /**
+     * SQL update statement that updates the journal checkpoint with new
+     * 'segment' value in table 'JournalCheckpoint'.
+     */
+    private static final String SQL_JOURNALCHECKPOINT_UPDATE = "UPDATE JournalCheckpoint"
+            + " SET segment=?"
+            + " WHERE id=1";
+    /** SQL select statement that selects the journal checkpoint. */
+    private static final String SQL_JOURNALCHECKPOINT_SELECT = "SELECT segment FROM JournalCheckpoint WHERE id=1";
+
+    /** Statement that selects all poll options. */
+    private final String selectAllPollOptions;
+    /** Statement that selects poll option by ID. */
+    private final String selectPollOptionByID;
+    /** Statement that selects poll option by title. */
+    private final String selectPollOptionByTitle;
+    /** Statement that selects poll options by poll ID. */
+    private final String selectPollOptionsByPollID;
+    /** Statement that selects a page of poll options by poll ID. */
+    private final String selectPollOptionsPageByPollID;
+    /** Statement that selects a poll with its options by poll ID. */
+    private final String selectPollDetailsByID;
+    /**
+     * Statements that select polls with their options by poll IDs, one for
+     * every size in {@link #IN_LIST_SIZES}.
+     */
+    private final String[] selectPollDetailsByIDs;
+
+    /**
+     * Constructs a new {@code SQLDAO} that reads poll options from table
+     * 'PollOptions'.
+     */
+    public SQLDAO() {
+        this("PollOptions");
+    }
+
+    /**
+     * Constructs a new {@code SQLDAO} that reads poll options from table or
+     * view specified by {@code pollOptionsSource} parameter. Source must have
+     * the same columns as table 'PollOptions'.
+     * 
+     * @param pollOptionsSource
+     *            the name of the table or view poll options are read from
+     * @throws NullPointerException
+     *             if {@code pollOptionsSource} parameter is a {@code null}
+     *             reference
+     */
+    protected SQLDAO(String pollOptionsSource) {
+        Objects.requireNonNull(pollOptionsSource, "Poll options source cannot be a null reference.");
+
+        selectAllPollOptions = String.format(SQL_POLLOPTIONS_SELECT_ALL, pollOptionsSource);
+        selectPollOptionByID = String.format(SQL_POLLOPTIONS_SELECT_BY_ID, pollOptionsSource);
+        selectPollOptionByTitle = String.format(SQL_POLLOPTIONS_SELECT_BY_OPTIONTITLE, pollOptionsSource);
+        selectPollOptionsByPollID = String.format(SQL_POLLOPTIONS_SELECT_BY_POLLID, pollOptionsSource);
+        selectPollOptionsPageByPollID = String.format(SQL_POLLOPTIONS_SELECT_PAGE_BY_POLLID, pollOptionsSource);
+        selectPollDetailsByID = String.format(SQL_POLLDETAILS_SELECT, pollOptionsSource, "=?");
+        selectPollDetailsByIDs = new String[IN_LIST_SIZES.length];
+        for (int i = 0; i < IN_LIST_SIZES.length; i++) {
+            String condition = " IN (" + String.join(",", Collections.nCopies(IN_LIST_SIZES[i], "?")) + ")";
+            selectPollDetailsByIDs[i] = String.format(SQL_POLLDETAILS_SELECT, pollOptionsSource, condition);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads of this DAO use a connection to a read replica if the current
+     * thread's {@link ConnectionScope} has replicas. Reads of the specified
+     * {@code read} use the primary database instead.
+     */
+    @Override
+    public <T> T readLatest(Supplier<T> read) throws DAOException {
+        Objects.requireNonNull(read, "You cannot call a null reference as a read.");
+
+        ConnectionScope scope = SQLConnectionProvider.getScope();
+        return scope == null ? read.get() : scope.readLatest(read);
+    }
 
     @Override
     public List<Poll> getAllPolls() throws DAOException {
         List<Poll> polls = new ArrayList<>();
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLS_SELECT_ALL)) {
+        try (PreparedStatement pst = prepare(con, "pollsSelectAll", SQL_POLLS_SELECT_ALL)) {
             try (ResultSet rs = pst.executeQuery()) {
                 while (rs != null && rs.next()) {
                     polls.add(new Poll(rs.getLong(1), rs.getString(2), rs.getString(3)));
@@ -116,15 +281,58 @@ public class SQLDAO implements DAO {
         return polls;
     }
 
+    @Override
+    public List<Poll> getPolls(long afterID, int limit) throws DAOException {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit of polls must be a positive number.");
+
+        List<Poll> polls = new ArrayList<>(limit);
+        Connection con = SQLConnectionProvider.getReadConnection();
+
+        try (PreparedStatement pst = prepare(con, "pollsSelectPage", SQL_POLLS_SELECT_PAGE)) {
+            pst.setLong(1, afterID);
+            pst.setInt(2, limit);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs != null && rs.next()) {
+                    polls.add(new Poll(rs.getLong(1), rs.getString(2), rs.getString(3)));
+                }
+            }
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while getting polls after id=" + afterID + ".", e);
+        }
+
+        return polls;
+    }
+
+    @Override
+    public void forEachPoll(Consumer<Poll> action) throws DAOException {
+        Objects.requireNonNull(action, "Action performed on polls cannot be a null reference.");
+
+        Connection con = SQLConnectionProvider.getReadConnection();
+
+        try (PreparedStatement pst = prepare(con, "pollsSelectAll", SQL_POLLS_SELECT_ALL)) {
+            pst.setFetchSize(STREAM_FETCH_SIZE);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs != null && rs.next()) {
+                    action.accept(new Poll(rs.getLong(1), rs.getString(2), rs.getString(3)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Exception occured while streaming polls.", e);
+        }
+    }
+
     @Override
     public Poll getPoll(long id) throws DAOException {
         if (id < 0)
             return null;
 
         Poll poll = null;
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLS_SELECT_BY_ID)) {
+        try (PreparedStatement pst = prepare(con, "pollsSelectById", SQL_POLLS_SELECT_BY_ID)) {
             pst.setLong(1, Long.valueOf(id));
 
             try (ResultSet rs = pst.executeQuery()) {
@@ -144,9 +352,9 @@ public class SQLDAO implements DAO {
             return null;
 
         Poll poll = null;
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLS_SELECT_BY_TITLE)) {
+        try (PreparedStatement pst = prepare(con, "pollsSelectByTitle", SQL_POLLS_SELECT_BY_TITLE)) {
             pst.setString(1, title);
 
             try (ResultSet rs = pst.executeQuery()) {
@@ -166,25 +374,11 @@ public class SQLDAO implements DAO {
         Objects.requireNonNull(title, "You cannot add a poll with a null reference as a title.");
         Objects.requireNonNull(message, "You cannot add a poll with a null reference as a message.");
 
-        Connection con = SQLConnectionProvider.getConnection();
-        long id = -1;
-
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLS_INSERT, Statement.RETURN_GENERATED_KEYS)) {
-            pst.setString(1, title);
-            pst.setString(2, message);
-
-            pst.executeUpdate();
-
-            try (ResultSet rset = pst.getGeneratedKeys()) {
-                if (rset != null && rset.next()) {
-                    id = rset.getLong(1);
-                }
-            }
+        try {
+            return insertPoll(SQLConnectionProvider.getConnection(), title, message);
         } catch (SQLException e) {
             throw new DAOException("Exception occured while inserting a new poll.", e);
         }
-
-        return id;
     }
 
     @Override
@@ -192,21 +386,44 @@ public class SQLDAO implements DAO {
         Objects.requireNonNull(title, "You cannot add a poll with a null reference as a title.");
         Objects.requireNonNull(message, "You cannot add a poll with a null reference as a message.");
 
-        Poll poll = getPoll(title);
+        try {
+            return upsertPoll(SQLConnectionProvider.getConnection(), title, message);
+        } catch (SQLException e) {
+            throw new DAOException("Exception occured while inserting a new poll.", e);
+        }
+    }
 
-        if (poll == null) {
-            return addPoll(title, message);
+    @Override
+    public long addPollIfDoesntExist(PollDetails definition) throws DAOException {
+        Objects.requireNonNull(definition, "You cannot add a null reference as a poll definition.");
+        for (PollOption option : definition.getOptions()) {
+            if (option.getVotesCount() < 0)
+                throw new IllegalArgumentException("You cannot add a poll option with negative votes count.");
         }
 
-        return poll.getId();
+        Connection con = SQLConnectionProvider.getConnection();
+        Poll poll = definition.getPoll();
+
+        for (int attempt = 1;; attempt++) {
+            try {
+                return executeInTransaction(con, () -> {
+                    long pollID = upsertPoll(con, poll.getTitle(), poll.getMessage());
+                    insertMissingPollOptions(con, pollID, definition.getOptions());
+                    return pollID;
+                });
+            } catch (SQLException e) {
+                if (!isDuplicateKey(e) || attempt == POLL_DEFINITION_ATTEMPTS)
+                    throw new DAOException("Exception occured while inserting a poll definition.", e);
+            }
+        }
     }
 
     @Override
     public List<PollOption> getAllPollOptions() throws DAOException {
         List<PollOption> pollOptions = new ArrayList<>();
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_SELECT_ALL)) {
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectAll", selectAllPollOptions)) {
             try (ResultSet rs = pst.executeQuery()) {
                 while (rs != null && rs.next()) {
                     pollOptions.add(new PollOption(
@@ -230,9 +447,9 @@ public class SQLDAO implements DAO {
             return null;
         
         PollOption pollOption = null;
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_SELECT_BY_ID)) {
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectById", selectPollOptionByID)) {
             pst.setLong(1, Long.valueOf(id));
 
             try (ResultSet rs = pst.executeQuery()) {
@@ -258,9 +475,9 @@ public class SQLDAO implements DAO {
             return null;
         
         PollOption pollOption = null;
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_SELECT_BY_OPTIONTITLE)) {
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectByTitle", selectPollOptionByTitle)) {
             pst.setString(1, optionTitle);
 
             try (ResultSet rs = pst.executeQuery()) {
@@ -286,9 +503,9 @@ public class SQLDAO implements DAO {
             return null;
         
         List<PollOption> pollOptions = null;
-        Connection con = SQLConnectionProvider.getConnection();
+        Connection con = SQLConnectionProvider.getReadConnection();
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_SELECT_BY_POLLID)) {
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectByPollId", selectPollOptionsByPollID)) {
             pst.setLong(1, pollID);
 
             try (ResultSet rs = pst.executeQuery()) {
@@ -313,6 +530,96 @@ public class SQLDAO implements DAO {
         return pollOptions;
     }
 
+    @Override
+    public List<PollOption> getPollOptions(long pollID, int offset, int limit) throws DAOException {
+        if (offset < 0)
+            throw new IllegalArgumentException("Offset of poll options cannot be a negative number.");
+        if (limit <= 0)
+            throw new IllegalArgumentException("Limit of poll options must be a positive number.");
+
+        List<PollOption> pollOptions = new ArrayList<>(limit);
+        Connection con = SQLConnectionProvider.getReadConnection();
+
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectPageByPollId", selectPollOptionsPageByPollID)) {
+            pst.setLong(1, pollID);
+            pst.setInt(2, offset);
+            pst.setInt(3, limit);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs != null && rs.next()) {
+                    pollOptions.add(new PollOption(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getString(3),
+                            rs.getLong(4),
+                            rs.getLong(5)));
+                }
+            }
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while getting poll options with pollID=" + pollID + ".", e);
+        }
+
+        return pollOptions;
+    }
+
+    @Override
+    public PollDetails getPollDetails(long pollID) throws DAOException {
+        if (pollID < 0)
+            return null;
+
+        Connection con = SQLConnectionProvider.getReadConnection();
+
+        try (PreparedStatement pst = prepare(con, "pollDetailsSelectById", selectPollDetailsByID)) {
+            pst.setLong(1, pollID);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                return readPollDetails(rs).get(pollID);
+            }
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while getting details of a poll with id=" + pollID + ".", e);
+        }
+    }
+
+    @Override
+    public Map<Long, PollDetails> getPollDetails(Collection<Long> pollIDs) throws DAOException {
+        Objects.requireNonNull(pollIDs, "You cannot get polls with a null reference as poll IDs.");
+
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(pollIDs));
+        Map<Long, PollDetails> loaded = new HashMap<>();
+        Connection con = SQLConnectionProvider.getReadConnection();
+
+        int maxSize = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        for (int from = 0; from < ids.size(); from += maxSize) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + maxSize));
+            int size = 0;
+            while (IN_LIST_SIZES[size] < chunk.size()) {
+                size++;
+            }
+
+            try (PreparedStatement pst = prepare(con, "pollDetailsSelectByIds", selectPollDetailsByIDs[size])) {
+                for (int i = 0; i < IN_LIST_SIZES[size]; i++) {
+                    pst.setLong(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+
+                try (ResultSet rs = pst.executeQuery()) {
+                    loaded.putAll(readPollDetails(rs));
+                }
+            } catch (Exception e) {
+                throw new DAOException("Exception occured while getting details of polls.", e);
+            }
+        }
+
+        Map<Long, PollDetails> details = new LinkedHashMap<>();
+        for (Long id : ids) {
+            PollDetails pollDetails = loaded.get(id);
+            if (pollDetails != null) {
+                details.put(id, pollDetails);
+            }
+        }
+
+        return details;
+    }
+
     @Override
     public long addPollOption(String optionTitle, String optionLink, long pollID, long votesCount) throws DAOException {
         if (pollID < 0)
@@ -323,26 +630,16 @@ public class SQLDAO implements DAO {
         Objects.requireNonNull(optionLink, "You cannot add a poll option with a null reference as a option link.");
 
         Connection con = SQLConnectionProvider.getConnection();
-        long id = -1;
-
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_INSERT, Statement.RETURN_GENERATED_KEYS)) {
-            pst.setString(1, optionTitle);
-            pst.setString(2, optionLink);
-            pst.setLong(3, pollID);
-            pst.setLong(4, votesCount);
 
-            pst.executeUpdate();
-
-            try (ResultSet rset = pst.getGeneratedKeys()) {
-                if (rset != null && rset.next()) {
-                    id = rset.getLong(1);
-                }
-            }
+        try {
+            return executeInTransaction(con, () -> {
+                long id = insertPollOption(con, optionTitle, optionLink, pollID, votesCount);
+                pollOptionsInserted(con, pollID);
+                return id;
+            });
         } catch (SQLException e) {
             throw new DAOException("Exception occured while inserting a new poll option.", e);
         }
-
-        return id;
     }
 
     @Override
@@ -355,13 +652,30 @@ public class SQLDAO implements DAO {
         Objects.requireNonNull(optionTitle, "You cannot add a poll option with a null reference as a option title.");
         Objects.requireNonNull(optionLink, "You cannot add a poll option with a null reference as a option link.");
 
-        PollOption pollOption = getPollOption(optionTitle);
+        Connection con = SQLConnectionProvider.getConnection();
 
-        if (pollOption == null) {
-            return addPollOption(optionTitle, optionLink, pollID, votesCount);
+        try {
+            return executeInTransaction(con, () -> {
+                long id = insertPollOption(con, optionTitle, optionLink, pollID, votesCount);
+                pollOptionsInserted(con, pollID);
+                return id;
+            });
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e))
+                throw new DAOException("Exception occured while inserting a new poll option.", e);
         }
 
-        return pollOption.getId();
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectIdByPollIdAndTitle",
+                SQL_POLLOPTIONS_SELECT_ID_BY_POLLID_AND_TITLE)) {
+            pst.setLong(1, pollID);
+            pst.setString(2, optionTitle);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Exception occured while getting an existing poll option.", e);
+        }
     }
 
     @Override
@@ -372,7 +686,7 @@ public class SQLDAO implements DAO {
         Connection con = SQLConnectionProvider.getConnection();
         int numberOfAffectedRows = -1;
 
-        try (PreparedStatement pst = con.prepareStatement(SQL_POLLOPTIONS_UPDATE_VOTESCOUNT)) {
+        try (PreparedStatement pst = prepare(con, "pollOptionsUpdateVotesCount", SQL_POLLOPTIONS_UPDATE_VOTESCOUNT)) {
             pst.setLong(1, votes);
             pst.setLong(2, Long.valueOf(id));
 
@@ -384,4 +698,440 @@ public class SQLDAO implements DAO {
         return numberOfAffectedRows;
     }
 
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException {
+        return updateVotesCount(votes, -1);
+    }
+
+    @Override
+    public int[] updatePollOptionsVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException {
+        if (journalSegment < 0)
+            throw new IllegalArgumentException("Journal segment cannot be a negative number.");
+
+        return updateVotesCount(votes, journalSegment);
+    }
+
+    @Override
+    public long getJournalCheckpoint() throws DAOException {
+        Connection con = SQLConnectionProvider.getConnection();
+
+        try (PreparedStatement pst = prepare(con, "journalCheckpointSelect", SQL_JOURNALCHECKPOINT_SELECT);
+                ResultSet rs = pst.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while getting the journal checkpoint.", e);
+        }
+    }
+
+    @Override
+    public int[] addVotes(List<Vote> votes) throws DAOException {
+        Objects.requireNonNull(votes, "You cannot add a null reference as votes.");
+
+        if (votes.isEmpty())
+            return new int[0];
+
+        Connection con = SQLConnectionProvider.getConnection();
+
+        try (PreparedStatement pst = prepare(con, "pollOptionsUpdateVotesCountByPollId",
+                SQL_POLLOPTIONS_UPDATE_VOTESCOUNT_BY_POLLID)) {
+            for (Vote vote : votes) {
+                pst.setLong(1, vote.getCount());
+                pst.setLong(2, vote.getOptionID());
+                pst.setLong(3, vote.getPollID());
+                pst.addBatch();
+            }
+
+            return executeInTransaction(con, pst::executeBatch);
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while adding votes.", e);
+        }
+    }
+
+    /**
+     * Prepares a batch that adds {@code votes} to votes count of poll options
+     * and is executed in a transaction by
+     * {@link #updatePollOptionsVotesCount(Map)}. Subclasses that don't update
+     * votes count directly override this method.
+     * 
+     * @param con
+     *            the connection to database
+     * @param votes
+     *            map of poll option IDs to votes to be added
+     * @return the prepared batch; one update for every entry in iteration
+     *         order of {@code votes} map
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    protected PreparedStatement prepareVotesCountUpdate(Connection con, Map<Long, Long> votes) throws SQLException {
+        PreparedStatement pst = prepare(con, "pollOptionsUpdateVotesCount", SQL_POLLOPTIONS_UPDATE_VOTESCOUNT);
+
+        for (Map.Entry<Long, Long> entry : votes.entrySet()) {
+            pst.setLong(1, entry.getValue());
+            pst.setLong(2, entry.getKey());
+            pst.addBatch();
+        }
+
+        return pst;
+    }
+
+    /**
+     * Called in the same transaction after poll options of the poll with the
+     * specified {@code pollID} were inserted. Subclasses that keep additional
+     * rows per poll option insert them here. Default implementation does
+     * nothing.
+     * 
+     * @param con
+     *            the connection to database
+     * @param pollID
+     *            the ID of the poll whose options were inserted
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    protected void pollOptionsInserted(Connection con, long pollID) throws SQLException {
+    }
+
+    /**
+     * Adds {@code votes} to votes count of poll options and, if
+     * {@code journalSegment} isn't negative, records it as the journal
+     * checkpoint, all in a single transaction.
+     * 
+     * @param votes
+     *            map of poll option IDs to votes to be added
+     * @param journalSegment
+     *            the new journal checkpoint or a negative number if it
+     *            shouldn't be recorded
+     * @return the number of affected rows for every update in iteration order of
+     *         {@code votes} map
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    private int[] updateVotesCount(Map<Long, Long> votes, long journalSegment) throws DAOException {
+        Objects.requireNonNull(votes, "You cannot update poll options with a null reference as votes.");
+        if (votes.values().stream().anyMatch(v -> v < 0))
+            throw new IllegalArgumentException("You cannot update a poll option with negative votes count.");
+
+        if (votes.isEmpty() && journalSegment < 0)
+            return new int[0];
+
+        Connection con = SQLConnectionProvider.getConnection();
+
+        try (PreparedStatement pst = votes.isEmpty() ? null : prepareVotesCountUpdate(con, votes);
+                PreparedStatement checkpoint = journalSegment < 0 ? null
+                        : prepare(con, "journalCheckpointUpdate", SQL_JOURNALCHECKPOINT_UPDATE)) {
+            return executeInTransaction(con, () -> {
+                int[] affected = pst == null ? new int[0] : pst.executeBatch();
+
+                if (checkpoint != null) {
+                    checkpoint.setLong(1, journalSegment);
+                    checkpoint.executeUpdate();
+                }
+
+                return affected;
+            });
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while updating poll options.", e);
+        }
+    }
+
+    /**
+     * Inserts a new poll with the specified {@code title} and {@code message}.
+     * 
+     * @param con
+     *            the connection to database
+     * @param title
+     *            the title of the poll
+     * @param message
+     *            the message of the poll
+     * @return the ID of the new poll
+     * @throws SQLException
+     *             if a database access error occurs or poll with the same
+     *             title already exists
+     */
+    static long insertPoll(Connection con, String title, String message) throws SQLException {
+        try (PreparedStatement pst = prepareReturningKeys(con, "pollsInsert", SQL_POLLS_INSERT)) {
+            pst.setString(1, title);
+            pst.setString(2, message);
+
+            pst.executeUpdate();
+
+            try (ResultSet rset = pst.getGeneratedKeys()) {
+                return rset != null && rset.next() ? rset.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts a new poll with the specified {@code title} and {@code message}
+     * or returns the ID of the existing poll with the same title. Insert is
+     * tried first, so a new poll costs a single round-trip and concurrent
+     * callers can't create duplicates.
+     * 
+     * @param con
+     *            the connection to database
+     * @param title
+     *            the title of the poll
+     * @param message
+     *            the message of the poll
+     * @return the ID of the new or the existing poll
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static long upsertPoll(Connection con, String title, String message) throws SQLException {
+        try {
+            return insertPoll(con, title, message);
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e))
+                throw e;
+        }
+
+        try (PreparedStatement pst = prepare(con, "pollsSelectIdByTitle", SQL_POLLS_SELECT_ID_BY_TITLE)) {
+            pst.setString(1, title);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts a new poll option with the specified {@code optionTitle},
+     * {@code optionLink}, {@code pollID} and {@code votesCount}.
+     * 
+     * @param con
+     *            the connection to database
+     * @param optionTitle
+     *            the title of the poll option
+     * @param optionLink
+     *            the link of the poll option
+     * @param pollID
+     *            the ID of the poll that this option is available
+     * @param votesCount
+     *            the votes count of this poll option
+     * @return the ID of the new poll option
+     * @throws SQLException
+     *             if a database access error occurs or poll already has an
+     *             option with the same title
+     */
+    private static long insertPollOption(Connection con, String optionTitle, String optionLink, long pollID,
+            long votesCount) throws SQLException {
+        try (PreparedStatement pst = prepareReturningKeys(con, "pollOptionsInsert", SQL_POLLOPTIONS_INSERT)) {
+            pst.setString(1, optionTitle);
+            pst.setString(2, optionLink);
+            pst.setLong(3, pollID);
+            pst.setLong(4, votesCount);
+
+            pst.executeUpdate();
+
+            try (ResultSet rset = pst.getGeneratedKeys()) {
+                return rset != null && rset.next() ? rset.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts all specified {@code options} that the poll with the specified
+     * {@code pollID} doesn't already have as a single batch. Options are
+     * matched by their title.
+     * 
+     * @param con
+     *            the connection to database
+     * @param pollID
+     *            the ID of the poll
+     * @param options
+     *            the poll options
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private void insertMissingPollOptions(Connection con, long pollID, List<PollOption> options)
+            throws SQLException {
+        Set<String> titles = new HashSet<>();
+
+        try (PreparedStatement pst = prepare(con, "pollOptionsSelectTitlesByPollId",
+                SQL_POLLOPTIONS_SELECT_TITLES_BY_POLLID)) {
+            pst.setLong(1, pollID);
+
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    titles.add(rs.getString(1));
+                }
+            }
+        }
+
+        boolean inserted = false;
+        try (PreparedStatement pst = prepare(con, "pollOptionsInsert", SQL_POLLOPTIONS_INSERT)) {
+            for (PollOption option : options) {
+                if (!titles.add(option.getOptionTitle()))
+                    continue;
+
+                pst.setString(1, option.getOptionTitle());
+                pst.setString(2, option.getOptionLink());
+                pst.setLong(3, pollID);
+                pst.setLong(4, option.getVotesCount());
+                pst.addBatch();
+                inserted = true;
+            }
+
+            if (inserted) {
+                pst.executeBatch();
+            }
+        }
+
+        if (inserted) {
+            pollOptionsInserted(con, pollID);
+        }
+    }
+
+    /**
+     * Checks if the specified exception or some exception chained to it was
+     * caused by violating unique constraint.
+     * 
+     * @param e
+     *            the exception
+     * @return {@code true} if a unique constraint was violated; {@code false}
+     *         otherwise
+     */
+    static boolean isDuplicateKey(SQLException e) {
+        for (SQLException ex = e; ex != null; ex = ex.getNextException()) {
+            if (DUPLICATE_KEY.equals(ex.getSQLState()))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads polls and their options from the specified result set of a
+     * statement created from {@link #SQL_POLLDETAILS_SELECT}. Rows of the same
+     * poll must be adjacent.
+     * 
+     * @param rs
+     *            the result set
+     * @return map of poll IDs to polls with their options
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static Map<Long, PollDetails> readPollDetails(ResultSet rs) throws SQLException {
+        Map<Long, PollDetails> details = new LinkedHashMap<>();
+        Poll poll = null;
+        List<PollOption> options = null;
+
+        while (rs.next()) {
+            long pollID = rs.getLong(1);
+
+            if (poll == null || poll.getId() != pollID) {
+                if (poll != null) {
+                    details.put(poll.getId(), new PollDetails(poll, options));
+                }
+                poll = new Poll(pollID, rs.getString(2), rs.getString(3));
+                options = new ArrayList<>();
+            }
+
+            long optionID = rs.getLong(4);
+            if (!rs.wasNull()) {
+                options.add(new PollOption(
+                        optionID,
+                        rs.getString(5),
+                        rs.getString(6),
+                        pollID,
+                        rs.getLong(7)));
+            }
+        }
+
+        if (poll != null) {
+            details.put(poll.getId(), new PollDetails(poll, options));
+        }
+
+        return details;
+    }
+
+    /**
+     * Prepares the specified {@code sql} on the connection {@code con}.
+     * Statement is counted under the specified {@code name} by
+     * {@link StatementStatistics}.
+     * 
+     * @param con
+     *            the connection to database
+     * @param name
+     *            the name of the statement
+     * @param sql
+     *            the SQL statement
+     * @return the prepared statement
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    protected static PreparedStatement prepare(Connection con, String name, String sql) throws SQLException {
+        return StatementStatistics.prepare(con, name, sql);
+    }
+
+    /**
+     * Prepares the specified {@code sql} on the connection {@code con} so that
+     * it returns generated keys. Statement is counted under the specified
+     * {@code name} by {@link StatementStatistics}.
+     * 
+     * @param con
+     *            the connection to database
+     * @param name
+     *            the name of the statement
+     * @param sql
+     *            the SQL insert statement
+     * @return the prepared statement
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    protected static PreparedStatement prepareReturningKeys(Connection con, String name, String sql)
+            throws SQLException {
+        return StatementStatistics.prepareReturningKeys(con, name, sql);
+    }
+
+    /**
+     * Executes the specified {@code action} in a transaction on the connection
+     * {@code con}. If action fails transaction is rolled back. Auto-commit mode
+     * of the connection is restored afterwards.
+     * 
+     * @param con
+     *            the connection to database
+     * @param action
+     *            the action to be executed
+     * @return the result of the action
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    protected static <T> T executeInTransaction(Connection con, SQLAction<T> action) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        con.setAutoCommit(false);
+
+        try {
+            T result = action.execute();
+            con.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * {@code SQLAction} is a functional interface of an action that works with a
+     * database and can throw {@link SQLException}.
+     * 
+     * @author Karlo Vrbić
+     * @version 1.0
+     * @param <T>
+     *            the type of the result of the action
+     */
+    @FunctionalInterface
+    protected interface SQLAction<T> {
+
+        /**
+         * Executes this action.
+         * 
+         * @return the result of the action
+         * @throws SQLException
+         *             if a database access error occurs
+         */
+        T execute() throws SQLException;
+    }
+
 }
\ No newline at end of file
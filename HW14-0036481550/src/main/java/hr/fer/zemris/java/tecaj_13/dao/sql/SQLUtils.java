@@ -1,22 +1,13 @@
 package hr.fer.zemris.java.tecaj_13.dao.sql;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
 import java.sql.Statement;
-import java.util.Objects;
-import java.util.Properties;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAO;
 import hr.fer.zemris.java.tecaj_13.dao.DAOException;
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
 
 /**
  * {@code SQLUtils} is a utility class that provides static method for creating
- * tables and loading Polls.
+ * counter shards. Tables are created by {@link SchemaMigrator} and polls are
+ * loaded by {@link PollLoader}.
  * 
  * @author Karlo Vrbić
  * @version 1.0
@@ -24,139 +15,50 @@ import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
 public class SQLUtils {
 
     /**
-     * Creates table with table name 'Polls' in database 'votingDB' if it didn't
-     * existed previous to this method call
+     * Inserts missing shards {@code 0} to {@code shards - 1} of every poll
+     * option to table 'PollOptionCounters'.
      * 
-     * @return number of affected rows; -1 if some exceptions occurred
+     * @param shards
+     *            the number of shards per poll option
+     * @return number of inserted rows
      * @throws DAOException
-     *             if some exception occurs while executing create statement
-     * @see #createIfNotExist(String, String)
+     *             if some exception occurs while executing insert statement
+     * @throws IllegalArgumentException
+     *             if {@code shards} parameter is not a positive number
      */
-    public static long createPollsIfNotExist() {
-        String sql = "CREATE TABLE Polls"
-                + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
-                + "title VARCHAR(150) NOT NULL,"
-                + "message CLOB(2048) NOT NULL)";
-
-        return createIfNotExist("Polls", sql);
-    }
-
-    /**
-     * Creates table with table name 'PollOptions' in database 'votingDB' if it
-     * didn't existed previous to this method call
-     * 
-     * @return number of affected rows; -1 if some exceptions occurred
-     * @throws DAOException
-     *             if some exception occurs while executing create statement
-     * @see #createIfNotExist(String, String)
-     */
-    public static long createPollOptionsIfNotExist() {
-        String sql = "CREATE TABLE PollOptions"
-                + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
-                + " optionTitle VARCHAR(100) NOT NULL,"
-                + " optionLink VARCHAR(150) NOT NULL,"
-                + " pollID BIGINT, votesCount BIGINT,"
-                + " FOREIGN KEY (pollID) REFERENCES Polls(id))";
-
-        return createIfNotExist("PollOptions", sql);
-    }
-
-    /**
-     * Loads a poll from a path specified by {@code path} parameter and inserts
-     * it to database.
-     * <p>
-     * File at the specified path must be a .properties file with properties
-     * title, message and at least one option. One option has two properties:
-     * optX_title and optX_link(where X is a ordinal number of the poll option).
-     * If option is to be properly added both properties must exists for all
-     * options.
-     * 
-     * @param path
-     *            path to file that contains information about poll
-     */
-    public static void loadPoll(String path) {
-        Properties properties = new Properties();
-
-        try {
-            properties.load(Files.newInputStream(Paths.get(path)));
-        } catch (IOException e) {
-            e.printStackTrace();
+    public static long createCounterShards(int shards) {
+        if (shards <= 0)
+            throw new IllegalArgumentException("Number of shards must be a positive number.");
+
+        String sql = "INSERT INTO PollOptionCounters (optionId, shard, delta)"
+                + " SELECT o.id, s.n, 0"
+                + " FROM PollOptions o, " + shardNumbers(shards) + " AS s(n)"
+                + " WHERE NOT EXISTS (SELECT 1 FROM PollOptionCounters c"
+                + " WHERE c.optionId = o.id AND c.shard = s.n)";
+
+        try (Statement sta = SQLConnectionProvider.getConnection().createStatement()) {
+            return sta.executeUpdate(sql);
+        } catch (Exception e) {
+            throw new DAOException("Exception while creating counter shards: " + e.getMessage(), e);
         }
-
-        DAO dao = DAOProvider.getDao();
-
-        String title = properties.getProperty("title");
-        String message = properties.getProperty("message");
-
-        long pollID = dao.addPollIfDoesntExist(title, message);
-
-        String optionTitle = null;
-        String optionLink = null;
-        int i = 1;
-
-        do {
-            optionTitle = properties.getProperty("opt" + i + "_title");
-            optionLink = properties.getProperty("opt" + i + "_link");
-
-            if (optionTitle == null || optionLink == null)
-                break;
-
-            dao.addPollOptionIfDoesntExist(optionTitle, optionLink, pollID, 0L);
-            i++;
-        } while (true);
     }
 
     /**
-     * Loads all .properties files as polls from the directory specified by
-     * {@code dir} parameter.
+     * Returns a derived table with a single column that contains numbers
+     * {@code 0} to {@code shards - 1}. Rows are selected from
+     * 'SYSIBM.SYSDUMMY1' because Derby can't join a single row VALUES clause
+     * in a NOT EXISTS subquery.
      * 
-     * @param dir
-     *            the path to directory with .properties files containg
-     *            information about polls
-     * @see #loadPoll(String)
+     * @param shards
+     *            the number of shards
+     * @return the derived table of shard numbers
      */
-    public static void loadPolls(String dir) {
-        Objects.requireNonNull(dir, "You cannot load polls from a null reference as a directory.");
-
-        try {
-            Files.walk(Paths.get(dir))
-                    .filter(p -> Files.isRegularFile(p))
-                    .filter(p -> p.toString().endsWith(".properties"))
-                    .forEach(path -> SQLUtils.loadPoll(path.toString()));
-        } catch (IOException ignorable) {
+    static String shardNumbers(int shards) {
+        StringBuilder numbers = new StringBuilder("(");
+        for (int i = 0; i < shards; i++) {
+            numbers.append(i == 0 ? "" : " UNION ALL ").append("SELECT ").append(i).append(" FROM SYSIBM.SYSDUMMY1");
         }
-    }
-
-    /**
-     * Creates table with table name specified by parameter {@code table} in
-     * database 'votingDB' if it didn't existed previous to this method call
-     * 
-     * @param table
-     *            the table name
-     * @param sql
-     *            the SQL statement that creates this table
-     * @return number of affected rows; -1 if some exceptions occurred
-     * @throws DAOException
-     *             if some exception occurs while executing create statement
-     */
-    private static long createIfNotExist(String table, String sql) {
-        try {
-            Connection con = SQLConnectionProvider.getConnection();
-            DatabaseMetaData dbmd = con.getMetaData();
-            ResultSet rs = dbmd.getTables(null, null, table.toUpperCase(), null);
 
-            if (!rs.next()) {
-                int numberOfAffectedRows = -1;
-
-                try (Statement sta = con.createStatement()) {
-                    numberOfAffectedRows = sta.executeUpdate(sql);
-                }
-
-                return numberOfAffectedRows;
-            }
-        } catch (Exception e) {
-            throw new DAOException("Exception while creating " + table + " table: " + e.getMessage(), e);
-        }
-        return -1;
+        return numbers.append(')').toString();
     }
-}
+}
\ No newline at end of file
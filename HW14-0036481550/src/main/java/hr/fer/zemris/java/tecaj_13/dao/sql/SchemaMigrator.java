@@ -0,0 +1,398 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+
+/**
+ * {@code SchemaMigrator} is a utility class that brings database schema to
+ * its current version.
+ * <p>
+ * Schema is changed only by ordered, numbered migrations. Version of the last
+ * applied migration is kept in table 'SchemaVersion', so once schema is
+ * current startup costs a single query. Every migration is applied in its own
+ * transaction together with the row that records it. That transaction first
+ * locks table 'SchemaVersion' exclusively and reads the version again, so
+ * servers that start against the same database at the same time apply every
+ * migration exactly once.
+ * <p>
+ * Databases created before migrations existed already contain some of the
+ * objects migrations create; statements that fail only because their object
+ * already exists are skipped. Migrations that add unique constraints first
+ * merge rows that would violate them.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class SchemaMigrator {
+
+    /** SQL state of an error caused by querying table that doesn't exist. */
+    private static final String TABLE_NOT_FOUND = "42X05";
+    /**
+     * SQL state of an error caused by querying schema that doesn't exist; the
+     * schema of a user is created with the first object in a new database.
+     */
+    private static final String SCHEMA_NOT_FOUND = "42Y07";
+    /** SQL state of an error caused by creating table or view that exists. */
+    private static final String OBJECT_EXISTS = "X0Y32";
+    /** SQL state of an error caused by adding constraint that exists. */
+    private static final String CONSTRAINT_EXISTS = "42Z93";
+
+    /** SQL statement that creates table 'SchemaVersion'. */
+    private static final String SQL_SCHEMAVERSION_CREATE = "CREATE TABLE SchemaVersion"
+            + "(version INT PRIMARY KEY,"
+            + " description VARCHAR(200) NOT NULL,"
+            + " appliedAt TIMESTAMP NOT NULL)";
+    /** SQL select statement that selects the current version of schema. */
+    private static final String SQL_SCHEMAVERSION_SELECT = "SELECT MAX(version) FROM SchemaVersion";
+    /** SQL statement that locks table 'SchemaVersion' until the end of transaction. */
+    private static final String SQL_SCHEMAVERSION_LOCK = "LOCK TABLE SchemaVersion IN EXCLUSIVE MODE";
+    /** SQL insert statement that records an applied migration. */
+    private static final String SQL_SCHEMAVERSION_INSERT = "INSERT INTO SchemaVersion"
+            + " (version, description, appliedAt) VALUES (?,?,CURRENT_TIMESTAMP)";
+
+    /**
+     * SQL update statement that moves options of polls whose title is repeated
+     * to the poll with that title and the smallest ID.
+     */
+    private static final String SQL_POLLOPTIONS_MOVE_TO_FIRST_POLL = "UPDATE PollOptions"
+            + " SET pollID=(SELECT MIN(f.id) FROM Polls f, Polls p"
+            + " WHERE p.id=PollOptions.pollID AND f.title=p.title)"
+            + " WHERE pollID NOT IN (SELECT MIN(id) FROM Polls GROUP BY title)";
+    /** SQL delete statement that deletes all but the first poll of every title. */
+    private static final String SQL_POLLS_DELETE_DUPLICATES = "DELETE FROM Polls"
+            + " WHERE id NOT IN (SELECT MIN(id) FROM Polls GROUP BY title)";
+    /**
+     * SQL update statement that sets votes count of the first option of every
+     * repeated option title within a poll to the sum of votes counts of all
+     * options with that title.
+     */
+    private static final String SQL_POLLOPTIONS_SUM_DUPLICATES = "UPDATE PollOptions"
+            + " SET votesCount=(SELECT SUM(d.votesCount) FROM PollOptions d"
+            + " WHERE d.pollID=PollOptions.pollID AND d.optionTitle=PollOptions.optionTitle)"
+            + " WHERE id IN (SELECT MIN(id) FROM PollOptions GROUP BY pollID, optionTitle HAVING COUNT(*)>1)";
+    /**
+     * SQL update statement that adds counter shards of repeated options to
+     * votes count of the first option with the same title within a poll.
+     */
+    private static final String SQL_POLLOPTIONS_FOLD_DUPLICATE_COUNTERS = "UPDATE PollOptions"
+            + " SET votesCount=COALESCE(votesCount, 0)+(SELECT COALESCE(SUM(c.delta), 0)"
+            + " FROM PollOptionCounters c, PollOptions d"
+            + " WHERE c.optionId=d.id AND d.id<>PollOptions.id"
+            + " AND d.pollID=PollOptions.pollID AND d.optionTitle=PollOptions.optionTitle)"
+            + " WHERE id IN (SELECT MIN(id) FROM PollOptions GROUP BY pollID, optionTitle HAVING COUNT(*)>1)";
+    /** SQL delete statement that deletes counter shards of repeated options. */
+    private static final String SQL_COUNTERS_DELETE_DUPLICATES = "DELETE FROM PollOptionCounters"
+            + " WHERE optionId NOT IN (SELECT MIN(id) FROM PollOptions GROUP BY pollID, optionTitle)";
+    /** SQL delete statement that deletes all but the first option of every title within a poll. */
+    private static final String SQL_POLLOPTIONS_DELETE_DUPLICATES = "DELETE FROM PollOptions"
+            + " WHERE id NOT IN (SELECT MIN(id) FROM PollOptions GROUP BY pollID, optionTitle)";
+
+    /** All migrations ordered by their version. */
+    private static final List<Migration> MIGRATIONS = Collections.unmodifiableList(Arrays.asList(
+            new Migration(1, "Create table Polls",
+                    "CREATE TABLE Polls"
+                            + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
+                            + "title VARCHAR(150) NOT NULL,"
+                            + "message CLOB(2048) NOT NULL)"),
+            new Migration(2, "Create table PollOptions",
+                    "CREATE TABLE PollOptions"
+                            + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
+                            + " optionTitle VARCHAR(100) NOT NULL,"
+                            + " optionLink VARCHAR(150) NOT NULL,"
+                            + " pollID BIGINT, votesCount BIGINT,"
+                            + " FOREIGN KEY (pollID) REFERENCES Polls(id))"),
+            new Migration(3, "Index poll options by poll and votes count",
+                    "CREATE INDEX PollOptions_pollID_votesCount ON PollOptions (pollID, votesCount)"),
+            new Migration(4, "Make poll titles unique",
+                    SchemaMigrator::mergeDuplicatePolls,
+                    "ALTER TABLE Polls ADD CONSTRAINT Polls_title_unique UNIQUE (title)"),
+            new Migration(5, "Make option titles unique within a poll and index them",
+                    SchemaMigrator::mergeDuplicateOptions,
+                    "ALTER TABLE PollOptions ADD CONSTRAINT PollOptions_pollID_optionTitle_unique"
+                            + " UNIQUE (pollID, optionTitle)",
+                    "CREATE INDEX PollOptions_optionTitle ON PollOptions (optionTitle)"),
+            new Migration(6, "Create table PollOptionCounters",
+                    "CREATE TABLE PollOptionCounters"
+                            + "(optionId BIGINT NOT NULL,"
+                            + " shard INT NOT NULL,"
+                            + " delta BIGINT NOT NULL,"
+                            + " PRIMARY KEY (optionId, shard),"
+                            + " FOREIGN KEY (optionId) REFERENCES PollOptions(id))"),
+            new Migration(7, "Create view PollOptionTotals",
+                    "CREATE VIEW PollOptionTotals"
+                            + " (id, optionTitle, optionLink, pollID, votesCount) AS"
+                            + " SELECT o.id, o.optionTitle, o.optionLink, o.pollID,"
+                            + " o.votesCount + COALESCE("
+                            + "(SELECT SUM(c.delta) FROM PollOptionCounters c WHERE c.optionId = o.id), 0)"
+                            + " FROM PollOptions o"),
+            new Migration(8, "Create table PollFiles",
+                    "CREATE TABLE PollFiles"
+                            + "(path VARCHAR(500) PRIMARY KEY,"
+                            + " size BIGINT NOT NULL,"
+                            + " modified BIGINT NOT NULL,"
+                            + " hash CHAR(64) NOT NULL)"),
+            new Migration(9, "Create table JournalCheckpoint",
+                    "CREATE TABLE JournalCheckpoint"
+                            + "(id INT PRIMARY KEY,"
+                            + " segment BIGINT NOT NULL)",
+                    "INSERT INTO JournalCheckpoint (id, segment)"
+                            + " SELECT 1, 0 FROM SYSIBM.SYSDUMMY1"
+                            + " WHERE NOT EXISTS (SELECT 1 FROM JournalCheckpoint)")));
+
+    /**
+     * Disable creation of {@code SchemaMigrator} objects.
+     */
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies all migrations newer than the current version of schema on the
+     * connection returned by {@link SQLConnectionProvider}.
+     *
+     * @return the number of applied migrations
+     * @throws DAOException
+     *             if some migration couldn't be applied
+     */
+    public static int migrate() throws DAOException {
+        Connection con = SQLConnectionProvider.getConnection();
+        int version = getVersion(con);
+        int applied = 0;
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= version)
+                continue;
+
+            try {
+                boolean appliedNow = SQLDAO.executeInTransaction(con, () -> {
+                    try (Statement sta = con.createStatement()) {
+                        sta.execute(SQL_SCHEMAVERSION_LOCK);
+                        if (selectVersion(sta) >= migration.version)
+                            return false;
+                    }
+
+                    migration.apply(con);
+                    return true;
+                });
+
+                if (appliedNow) {
+                    applied++;
+                }
+            } catch (SQLException e) {
+                throw new DAOException("Exception while applying migration " + migration.version + " ("
+                        + migration.description + "): " + e.getMessage(), e);
+            }
+        }
+
+        return applied;
+    }
+
+    /**
+     * Merges polls with the same title into the one with the smallest ID, so
+     * unique constraint on titles can be added. Options of merged polls are
+     * moved to the remaining poll; options that end up with the same title
+     * are merged by the next migration.
+     *
+     * @param con
+     *            the connection to database
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static void mergeDuplicatePolls(Connection con) throws SQLException {
+        try (Statement sta = con.createStatement()) {
+            sta.executeUpdate(SQL_POLLOPTIONS_MOVE_TO_FIRST_POLL);
+            sta.executeUpdate(SQL_POLLS_DELETE_DUPLICATES);
+        }
+    }
+
+    /**
+     * Merges options of a poll with the same title into the one with the
+     * smallest ID, so unique constraint on poll IDs and titles can be added.
+     * Votes of merged options, including their counter shards if table
+     * 'PollOptionCounters' exists, are added to the remaining option.
+     *
+     * @param con
+     *            the connection to database
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static void mergeDuplicateOptions(Connection con) throws SQLException {
+        boolean counters;
+        try (ResultSet rs = con.getMetaData().getTables(null, null, "POLLOPTIONCOUNTERS", null)) {
+            counters = rs.next();
+        }
+
+        try (Statement sta = con.createStatement()) {
+            sta.executeUpdate(SQL_POLLOPTIONS_SUM_DUPLICATES);
+            if (counters) {
+                sta.executeUpdate(SQL_POLLOPTIONS_FOLD_DUPLICATE_COUNTERS);
+                sta.executeUpdate(SQL_COUNTERS_DELETE_DUPLICATES);
+            }
+            sta.executeUpdate(SQL_POLLOPTIONS_DELETE_DUPLICATES);
+        }
+    }
+
+    /**
+     * Returns the version of the last migration applied to the database. Table
+     * 'SchemaVersion'(and schema of the user of a new database) is created if
+     * it doesn't exist.
+     *
+     * @param con
+     *            the connection to database
+     * @return the current version of schema; {@code 0} if no migration was
+     *         applied
+     * @throws DAOException
+     *             if some exception occurs while reading the version
+     */
+    private static int getVersion(Connection con) throws DAOException {
+        try (Statement sta = con.createStatement()) {
+            try {
+                return selectVersion(sta);
+            } catch (SQLException e) {
+                if (!TABLE_NOT_FOUND.equals(e.getSQLState()) && !SCHEMA_NOT_FOUND.equals(e.getSQLState()))
+                    throw e;
+            }
+
+            try {
+                sta.executeUpdate(SQL_SCHEMAVERSION_CREATE);
+            } catch (SQLException e) {
+                if (!OBJECT_EXISTS.equals(e.getSQLState()))
+                    throw e;
+            }
+            return 0;
+        } catch (SQLException e) {
+            throw new DAOException("Exception while reading schema version: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the version of the last migration applied to the database.
+     *
+     * @param sta
+     *            the statement used for the query
+     * @return the current version of schema; {@code 0} if no migration was
+     *         applied
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private static int selectVersion(Statement sta) throws SQLException {
+        try (ResultSet rs = sta.executeQuery(SQL_SCHEMAVERSION_SELECT)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * {@code Migration} is a numbered list of SQL statements that changes
+     * schema.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class Migration {
+
+        /** Version of schema after this migration. */
+        private final int version;
+        /** Description of this migration. */
+        private final String description;
+        /** Step executed before statements of this migration; may be {@code null}. */
+        private final MigrationStep step;
+        /** SQL statements of this migration. */
+        private final String[] statements;
+
+        /**
+         * Constructs a new {@code Migration}.
+         *
+         * @param version
+         *            the version of schema after this migration
+         * @param description
+         *            the description of this migration
+         * @param statements
+         *            the SQL statements of this migration
+         */
+        private Migration(int version, String description, String... statements) {
+            this(version, description, null, statements);
+        }
+
+        /**
+         * Constructs a new {@code Migration} that executes {@code step} before
+         * its statements.
+         *
+         * @param version
+         *            the version of schema after this migration
+         * @param description
+         *            the description of this migration
+         * @param step
+         *            the step executed before statements or {@code null}
+         * @param statements
+         *            the SQL statements of this migration
+         */
+        private Migration(int version, String description, MigrationStep step, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+            this.statements = statements;
+        }
+
+        /**
+         * Executes step and statements of this migration and records it in
+         * table 'SchemaVersion'. Statements that fail because their object
+         * already exists are skipped.
+         *
+         * @param con
+         *            the connection to database
+         * @throws SQLException
+         *             if a database access error occurs
+         */
+        private void apply(Connection con) throws SQLException {
+            if (step != null) {
+                step.execute(con);
+            }
+
+            try (Statement sta = con.createStatement()) {
+                for (String sql : statements) {
+                    try {
+                        sta.executeUpdate(sql);
+                    } catch (SQLException e) {
+                        if (!OBJECT_EXISTS.equals(e.getSQLState()) && !CONSTRAINT_EXISTS.equals(e.getSQLState()))
+                            throw e;
+                    }
+                }
+            }
+
+            try (PreparedStatement pst = con.prepareStatement(SQL_SCHEMAVERSION_INSERT)) {
+                pst.setInt(1, version);
+                pst.setString(2, description);
+                pst.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * {@code MigrationStep} is a functional interface of a part of migration
+     * that can't be expressed as a fixed SQL statement.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    @FunctionalInterface
+    private interface MigrationStep {
+
+        /**
+         * Executes this step.
+         *
+         * @param con
+         *            the connection to database
+         * @throws SQLException
+         *             if a database access error occurs
+         */
+        void execute(Connection con) throws SQLException;
+    }
+
+}
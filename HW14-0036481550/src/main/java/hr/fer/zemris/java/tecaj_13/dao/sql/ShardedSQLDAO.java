@@ -0,0 +1,241 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code ShardedSQLDAO} is a {@link SQLDAO} that doesn't update poll option's
+ * votes count directly. Votes count of every poll option is split into a
+ * number of shards(rows of table 'PollOptionCounters') and every vote
+ * increments only one of them, so concurrent votes for the same poll option
+ * don't wait for the same row lock.
+ * <p>
+ * Poll options are read from view 'PollOptionTotals' which sums poll option's
+ * votes count and all of its shards. Shards are periodically folded back into
+ * votes count by {@link #compact()}.
+ * <p>
+ * Every statement takes the next shard in round-robin order, so concurrent
+ * statements don't contend for the same shard if there are at least as many
+ * shards as statements in flight, no matter which threads run them. All
+ * votes of one statement go to the same shard.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see SQLDAO
+ * @see SchemaMigrator
+ * @see SQLUtils#createCounterShards(int)
+ */
+public class ShardedSQLDAO extends SQLDAO {
+
+    /**
+     * SQL update statement that updates shard with specified 'optionId' and
+     * 'shard' with new 'delta' value in table 'PollOptionCounters'.
+     */
+    private static final String SQL_COUNTERS_UPDATE_DELTA = "UPDATE PollOptionCounters"
+            + " SET delta=delta+?"
+            + " WHERE optionId=? AND shard=?";
+    /**
+     * SQL update statement that updates shard with specified 'optionId' and
+     * 'shard' with new 'delta' value in table 'PollOptionCounters' if poll
+     * option with that ID belongs to poll with specified 'pollID'.
+     */
+    private static final String SQL_COUNTERS_UPDATE_DELTA_BY_POLLID = "UPDATE PollOptionCounters"
+            + " SET delta=delta+?"
+            + " WHERE optionId=? AND shard=?"
+            + " AND EXISTS (SELECT 1 FROM PollOptions WHERE id=? AND pollID=?)";
+    /**
+     * SQL insert statement that inserts missing shards with zero 'delta' of all
+     * options of poll with specified 'pollID' in table 'PollOptionCounters'.
+     * Shard numbers are specified by format argument as a derived table.
+     */
+    private static final String SQL_COUNTERS_INSERT_BY_POLLID = "INSERT INTO PollOptionCounters"
+            + " (optionId, shard, delta)"
+            + " SELECT o.id, s.n, 0"
+            + " FROM PollOptions o, %s AS s(n)"
+            + " WHERE o.pollID=? AND NOT EXISTS (SELECT 1 FROM PollOptionCounters c"
+            + " WHERE c.optionId = o.id AND c.shard = s.n)";
+    /**
+     * SQL select statement that selects all shards with non-zero 'delta' from
+     * table 'PollOptionCounters'.
+     */
+    private static final String SQL_COUNTERS_SELECT_NONZERO = "SELECT optionId, shard, delta"
+            + " FROM PollOptionCounters"
+            + " WHERE delta<>0";
+    /**
+     * SQL update statement that updates row with specified 'id' with new
+     * 'votesCount' value in table 'PollOptions'.
+     */
+    private static final String SQL_POLLOPTIONS_UPDATE_VOTESCOUNT = "UPDATE PollOptions"
+            + " SET votesCount=votesCount+?"
+            + " WHERE id=?";
+    /**
+     * SQL update statement that subtracts folded value from 'delta' of shard
+     * with specified 'optionId' and 'shard' in table 'PollOptionCounters'.
+     */
+    private static final String SQL_COUNTERS_SUBTRACT_DELTA = "UPDATE PollOptionCounters"
+            + " SET delta=delta-?"
+            + " WHERE optionId=? AND shard=?";
+
+    /** Number of shards per poll option. */
+    private final int shards;
+    /** Statement that inserts missing shards of options of a poll. */
+    private final String insertMissingShards;
+    /** Source of shards in round-robin order. */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Constructs a new {@code ShardedSQLDAO} with specified number of
+     * {@code shards} per poll option.
+     *
+     * @param shards
+     *            the number of shards per poll option
+     * @throws IllegalArgumentException
+     *             if {@code shards} parameter is not a positive number
+     */
+    public ShardedSQLDAO(int shards) {
+        super("PollOptionTotals");
+        if (shards <= 0)
+            throw new IllegalArgumentException("Number of shards must be a positive number.");
+
+        this.shards = shards;
+        insertMissingShards = String.format(SQL_COUNTERS_INSERT_BY_POLLID, SQLUtils.shardNumbers(shards));
+    }
+
+    @Override
+    protected void pollOptionsInserted(Connection con, long pollID) throws SQLException {
+        try (PreparedStatement pst = prepare(con, "countersInsertByPollId", insertMissingShards)) {
+            pst.setLong(1, pollID);
+            pst.executeUpdate();
+        }
+    }
+
+    @Override
+    public int updatePollOptionsVotesCount(long id, long votes) throws DAOException {
+        if (votes < 0)
+            throw new IllegalArgumentException("You cannot update a poll option with negative votes count.");
+
+        Connection con = SQLConnectionProvider.getConnection();
+
+        try (PreparedStatement pst = prepare(con, "countersUpdateDelta", SQL_COUNTERS_UPDATE_DELTA)) {
+            pst.setLong(1, votes);
+            pst.setLong(2, id);
+            pst.setInt(3, nextShard());
+
+            return pst.executeUpdate();
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while updating a poll option.", e);
+        }
+    }
+
+    @Override
+    protected PreparedStatement prepareVotesCountUpdate(Connection con, Map<Long, Long> votes) throws SQLException {
+        PreparedStatement pst = prepare(con, "countersUpdateDelta", SQL_COUNTERS_UPDATE_DELTA);
+        int shard = nextShard();
+
+        for (Map.Entry<Long, Long> entry : votes.entrySet()) {
+            pst.setLong(1, entry.getValue());
+            pst.setLong(2, entry.getKey());
+            pst.setInt(3, shard);
+            pst.addBatch();
+        }
+
+        return pst;
+    }
+
+    @Override
+    public int[] addVotes(List<Vote> votes) throws DAOException {
+        Objects.requireNonNull(votes, "You cannot add a null reference as votes.");
+
+        if (votes.isEmpty())
+            return new int[0];
+
+        Connection con = SQLConnectionProvider.getConnection();
+        int shard = nextShard();
+
+        try (PreparedStatement pst = prepare(con, "countersUpdateDeltaByPollId", SQL_COUNTERS_UPDATE_DELTA_BY_POLLID)) {
+            for (Vote vote : votes) {
+                pst.setLong(1, vote.getCount());
+                pst.setLong(2, vote.getOptionID());
+                pst.setInt(3, shard);
+                pst.setLong(4, vote.getOptionID());
+                pst.setLong(5, vote.getPollID());
+                pst.addBatch();
+            }
+
+            return executeInTransaction(con, pst::executeBatch);
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while adding votes.", e);
+        }
+    }
+
+    /**
+     * Folds all shards into votes count of their poll options in a single
+     * transaction. Folded value is subtracted from the shard rather than
+     * overwritten, so votes added concurrently are never lost.
+     *
+     * @return the number of folded votes
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    public long compact() throws DAOException {
+        Connection con = SQLConnectionProvider.getConnection();
+
+        try (PreparedStatement select = prepare(con, "countersSelectNonZero", SQL_COUNTERS_SELECT_NONZERO);
+                PreparedStatement fold = prepare(con, "pollOptionsUpdateVotesCount", SQL_POLLOPTIONS_UPDATE_VOTESCOUNT);
+                PreparedStatement subtract = prepare(con, "countersSubtractDelta", SQL_COUNTERS_SUBTRACT_DELTA)) {
+            return executeInTransaction(con, () -> {
+                Map<Long, Long> totals = new HashMap<>();
+
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs != null && rs.next()) {
+                        long optionID = rs.getLong(1);
+                        long delta = rs.getLong(3);
+
+                        subtract.setLong(1, delta);
+                        subtract.setLong(2, optionID);
+                        subtract.setInt(3, rs.getInt(2));
+                        subtract.addBatch();
+
+                        totals.merge(optionID, delta, Long::sum);
+                    }
+                }
+
+                if (totals.isEmpty())
+                    return 0L;
+
+                for (Map.Entry<Long, Long> entry : totals.entrySet()) {
+                    fold.setLong(1, entry.getValue());
+                    fold.setLong(2, entry.getKey());
+                    fold.addBatch();
+                }
+
+                fold.executeBatch();
+                subtract.executeBatch();
+
+                return totals.values().stream().mapToLong(Long::longValue).sum();
+            });
+        } catch (Exception e) {
+            throw new DAOException("Exception occured while compacting counter shards.", e);
+        }
+    }
+
+    /**
+     * Returns the shard used by the next statement.
+     *
+     * @return the shard used by the next statement
+     */
+    private int nextShard() {
+        return Math.floorMod(nextShard.getAndIncrement(), shards);
+    }
+
+}
@@ -0,0 +1,229 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code StatementStatistics} is a utility class that prepares statements of
+ * the DAO and counts, for every named statement, how many times it was
+ * prepared and estimates how many of those times it was served from the
+ * statement cache of the connection pool.
+ * <p>
+ * Statements are cached by the pool per physical connection, so preparing the
+ * same SQL on a connection that already prepared it costs no round-trip to
+ * the database. Pool doesn't report which statements were found in its
+ * cache, so this class mirrors it: it remembers the last
+ * {@link #setCacheSize(int) cache size} statements prepared on every physical
+ * connection in least recently used order. The mirror is only an estimate of
+ * the pool's cache: it sees only statements prepared through this class, it
+ * doesn't see statements the pool closes on its own(e.g. when a connection is
+ * tested or a statement is still in use) and the pool may evict in a
+ * different order. Cache hit rate computed from these counts should be read
+ * as an upper bound.
+ * <p>
+ * Counts are published as {@link Metrics} gauges
+ * "dao.statements.<i>name</i>.prepared" and
+ * "dao.statements.<i>name</i>.cachedEstimate".
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class StatementStatistics {
+
+    /** Prefix of the names of metrics registered by this class. */
+    private static final String METRICS_PREFIX = "dao.statements.";
+
+    /** Counters by statement name. */
+    private static final Map<String, Counters> COUNTERS = new ConcurrentHashMap<>();
+    /** Recently prepared statements by physical connection. */
+    private static final Map<Connection, Map<String, Boolean>> PREPARED = Collections
+            .synchronizedMap(new WeakHashMap<>());
+    /** Maximum number of statements cached per connection by the pool. */
+    private static volatile int cacheSize;
+
+    /**
+     * Disable creation of {@code StatementStatistics} objects.
+     */
+    private StatementStatistics() {
+    }
+
+    /**
+     * Sets the maximum number of statements the pool caches per connection.
+     * If it is {@code 0} statements are not cached and every prepare is a
+     * miss.
+     *
+     * @param size
+     *            the maximum number of statements cached per connection
+     * @throws IllegalArgumentException
+     *             if {@code size} parameter is a negative number
+     */
+    public static void setCacheSize(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("Statement cache size cannot be a negative number.");
+
+        cacheSize = size;
+        PREPARED.clear();
+    }
+
+    /**
+     * Prepares the specified {@code sql} on the connection {@code con} and
+     * counts it under the specified {@code name}.
+     *
+     * @param con
+     *            the connection to database
+     * @param name
+     *            the name of the statement
+     * @param sql
+     *            the SQL statement
+     * @return the prepared statement
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    public static PreparedStatement prepare(Connection con, String name, String sql) throws SQLException {
+        record(con, name, sql);
+        return con.prepareStatement(sql);
+    }
+
+    /**
+     * Prepares the specified {@code sql} on the connection {@code con} so that
+     * it returns keys generated by an insert and counts it under the specified
+     * {@code name}.
+     *
+     * @param con
+     *            the connection to database
+     * @param name
+     *            the name of the statement
+     * @param sql
+     *            the SQL insert statement
+     * @return the prepared statement
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    public static PreparedStatement prepareReturningKeys(Connection con, String name, String sql)
+            throws SQLException {
+        record(con, name, sql + "#keys");
+        return con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * Counts preparing of the statement with the specified {@code name} and
+     * {@code key} on the connection {@code con} and estimates if it was
+     * served from the statement cache.
+     *
+     * @param con
+     *            the connection to database
+     * @param name
+     *            the name of the statement
+     * @param key
+     *            the key of the statement in the statement cache
+     */
+    private static void record(Connection con, String name, String key) {
+        Objects.requireNonNull(name, "You cannot prepare a statement with a null reference as a name.");
+
+        Counters counters = COUNTERS.computeIfAbsent(name, Counters::new);
+        counters.prepared.increment();
+
+        int capacity = cacheSize;
+        if (capacity == 0)
+            return;
+
+        Connection physical = physical(con);
+        boolean probablyCached;
+        synchronized (PREPARED) {
+            Map<String, Boolean> statements = PREPARED.computeIfAbsent(physical, c -> new RecentStatements(capacity));
+            probablyCached = statements.put(key, Boolean.TRUE) != null;
+        }
+
+        if (probablyCached) {
+            counters.cachedEstimate.increment();
+        }
+    }
+
+    /**
+     * Returns the physical connection behind the connection {@code con}
+     * returned by the pool or {@code con} if it can't be unwrapped.
+     *
+     * @param con
+     *            the connection returned by the pool
+     * @return the physical connection
+     */
+    private static Connection physical(Connection con) {
+        try {
+            return con.unwrap(Connection.class);
+        } catch (SQLException | RuntimeException e) {
+            return con;
+        }
+    }
+
+    /**
+     * {@code RecentStatements} is a map whose keys are the most recently
+     * prepared statements of a connection in least recently used order.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class RecentStatements extends LinkedHashMap<String, Boolean> {
+
+        /** Serial version UID. */
+        private static final long serialVersionUID = 1L;
+
+        /** Maximum number of remembered statements. */
+        private final int capacity;
+
+        /**
+         * Constructs a new empty {@code RecentStatements}.
+         *
+         * @param capacity
+         *            the maximum number of remembered statements
+         */
+        private RecentStatements(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /**
+     * {@code Counters} counts prepares of a single named statement.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class Counters {
+
+        /** Number of times statement was prepared. */
+        private final LongAdder prepared = new LongAdder();
+        /**
+         * Estimated number of times statement was served from the statement
+         * cache.
+         */
+        private final LongAdder cachedEstimate = new LongAdder();
+
+        /**
+         * Constructs new {@code Counters} and registers their gauges.
+         *
+         * @param name
+         *            the name of the statement
+         */
+        private Counters(String name) {
+            Metrics.register(METRICS_PREFIX + name + ".prepared", prepared::sum);
+            Metrics.register(METRICS_PREFIX + name + ".cachedEstimate", cachedEstimate::sum);
+        }
+    }
+
+}
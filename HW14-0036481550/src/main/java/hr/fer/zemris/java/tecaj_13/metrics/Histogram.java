@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.tecaj_13.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code Histogram} counts durations in fixed buckets whose upper bounds grow
+ * exponentially from 1 ms to 10 s.
+ * <p>
+ * Recording a duration only increments a {@link LongAdder}, so histogram can
+ * be updated on the request path by many threads without contention. Its
+ * values are published as {@link Metrics} gauges: the number of recorded
+ * durations, their sum and maximum in milliseconds and, for every bucket, the
+ * number of durations that were less than or equal to its bound.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see Metrics
+ */
+public class Histogram {
+
+    /** Upper bounds of buckets in milliseconds. */
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    /** Number of durations in every bucket; last bucket has no upper bound. */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    /** Sum of all durations in nanoseconds. */
+    private final LongAdder sum = new LongAdder();
+    /** Maximum duration in nanoseconds. */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructs a new empty {@code Histogram}.
+     */
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the specified duration.
+     *
+     * @param nanos
+     *            the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+        int i = 0;
+        while (i < BOUNDS.length && millis > BOUNDS[i]) {
+            i++;
+        }
+
+        buckets[i].increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of recorded durations less than or equal to the
+     * specified number of milliseconds, rounded up to the nearest bucket
+     * bound.
+     *
+     * @param millis
+     *            the duration in milliseconds
+     * @return the number of shorter durations
+     */
+    public long getCountAtMost(long millis) {
+        long count = 0;
+        for (int i = 0; i < BOUNDS.length && BOUNDS[i] <= millis; i++) {
+            count += buckets[i].sum();
+        }
+
+        return count;
+    }
+
+    /**
+     * Registers gauges of this histogram whose names start with the specified
+     * {@code prefix}.
+     *
+     * @param prefix
+     *            the prefix of gauge names
+     * @throws NullPointerException
+     *             if {@code prefix} parameter is a {@code null} reference
+     */
+    public void register(String prefix) {
+        Objects.requireNonNull(prefix, "You cannot register a histogram with a null reference as a prefix.");
+
+        Metrics.register(prefix + "count", this::getCount);
+        Metrics.register(prefix + "sumMillis", () -> TimeUnit.NANOSECONDS.toMillis(sum.sum()));
+        Metrics.register(prefix + "maxMillis", () -> TimeUnit.NANOSECONDS.toMillis(max.get()));
+        for (long bound : BOUNDS) {
+            Metrics.register(String.format("%sle%05dms", prefix, bound), () -> getCountAtMost(bound));
+        }
+    }
+
+}
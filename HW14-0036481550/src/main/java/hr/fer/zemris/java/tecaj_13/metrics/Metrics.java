@@ -0,0 +1,73 @@
+package hr.fer.zemris.java.tecaj_13.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * {@code Metrics} is a registry of named gauges that describe the current state
+ * of this application(e.g. number of votes still waiting to be written to the
+ * database).
+ * <p>
+ * Every gauge is a {@link Supplier} that is asked for its value only when
+ * metrics are read so registering a gauge costs nothing on the request path.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see hr.fer.zemris.java.tecaj_13.servlets.MetricsServlet
+ */
+public class Metrics {
+
+    /** Registered gauges sorted by their names. */
+    private static final Map<String, Supplier<? extends Number>> GAUGES = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers the gauge with the specified {@code name}. If gauge with the
+     * same name was already registered it is replaced.
+     *
+     * @param name
+     *            the name of the gauge
+     * @param gauge
+     *            the supplier of gauge's current value
+     * @throws NullPointerException
+     *             if {@code name} or {@code gauge} parameter is a {@code null}
+     *             reference
+     */
+    public static void register(String name, Supplier<? extends Number> gauge) {
+        Objects.requireNonNull(name, "You cannot register a gauge with a null reference as a name.");
+        Objects.requireNonNull(gauge, "You cannot register a null reference as a gauge.");
+
+        GAUGES.put(name, gauge);
+    }
+
+    /**
+     * Removes all gauges whose name starts with the specified {@code prefix}.
+     *
+     * @param prefix
+     *            the prefix of gauge names
+     * @throws NullPointerException
+     *             if {@code prefix} parameter is a {@code null} reference
+     */
+    public static void unregister(String prefix) {
+        Objects.requireNonNull(prefix, "You cannot unregister gauges with a null reference as a prefix.");
+
+        GAUGES.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * Returns the current values of all registered gauges sorted by their
+     * names.
+     *
+     * @return the current values of all registered gauges
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> values = new LinkedHashMap<>();
+
+        GAUGES.forEach((name, gauge) -> values.put(name, gauge.get()));
+
+        return values;
+    }
+
+}
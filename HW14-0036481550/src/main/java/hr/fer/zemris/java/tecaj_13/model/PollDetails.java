@@ -0,0 +1,84 @@
+package hr.fer.zemris.java.tecaj_13.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@code PollDetails} class is an aggregate of a poll and all of its options.
+ * The list of options is unmodifiable, but the poll and options are mutable
+ * beans that are not copied, so details may share them with whoever made
+ * them.
+ * <p>
+ * Options are sorted by votes count in descending order; options with the
+ * same votes count are sorted by their ID.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see Serializable
+ */
+public class PollDetails implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 4386123470619526905L;
+
+    /**
+     * Comparator that orders poll options by votes count in descending order
+     * and then by ID.
+     */
+    public static final Comparator<PollOption> BY_VOTES = Comparator
+            .comparingLong(PollOption::getVotesCount)
+            .reversed()
+            .thenComparingLong(PollOption::getId);
+
+    /** The poll. */
+    private final Poll poll;
+    /** Poll options sorted by votes count in descending order. */
+    private final List<PollOption> options;
+
+    /**
+     * Constructs a new {@code PollDetails} of the specified {@code poll} and
+     * its {@code options}.
+     *
+     * @param poll
+     *            the poll
+     * @param options
+     *            poll options sorted by votes count in descending order
+     * @throws NullPointerException
+     *             if {@code poll} or {@code options} parameter is a
+     *             {@code null} reference
+     */
+    public PollDetails(Poll poll, List<PollOption> options) {
+        this.poll = Objects.requireNonNull(poll, "Poll of details cannot be null reference.");
+        this.options = Collections.unmodifiableList(new ArrayList<>(
+                Objects.requireNonNull(options, "Options of details cannot be null reference.")));
+    }
+
+    /**
+     * Returns the poll.
+     *
+     * @return the poll
+     */
+    public Poll getPoll() {
+        return poll;
+    }
+
+    /**
+     * Returns the unmodifiable list of poll options sorted by votes count in
+     * descending order.
+     *
+     * @return the poll options sorted by votes count
+     */
+    public List<PollOption> getOptions() {
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "poll=" + poll.getId() + ", options=" + options.size();
+    }
+
+}
@@ -0,0 +1,274 @@
+package hr.fer.zemris.java.tecaj_13.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@code PollResults} class is a snapshot of results of a poll. Its lists are
+ * unmodifiable, but the poll and options in them are mutable beans shared with
+ * whoever made the snapshot and must not be modified.
+ * <p>
+ * This class contains the poll, its options sorted by votes count in
+ * descending order, winners(options with the most votes), total votes count,
+ * percentage of votes of every option, version of the snapshot and the time it
+ * was created. Every new snapshot of the same poll has greater version than the
+ * previous one. Snapshot also has a fingerprint of its content, which is the
+ * same for equal results in every run of the application.
+ * <p>
+ * Snapshot of a poll with many options may contain only the options with the
+ * most votes; total votes count, percentages and the number of options still
+ * count all options of the poll. Use {@link #isComplete()} to check whether
+ * snapshot contains all options.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see Serializable
+ */
+public class PollResults implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = -2914316880532400170L;
+    /** Offset basis of the 64-bit FNV-1a hash. */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    /** Prime of the 64-bit FNV-1a hash. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** The poll. */
+    private final Poll poll;
+    /** Poll options sorted by votes count in descending order. */
+    private final List<PollOption> options;
+    /** Poll options with the most votes. */
+    private final List<PollOption> winners;
+    /** Percentage of votes of every poll option. */
+    private final List<Double> percentages;
+    /** Total votes count. */
+    private final long totalVotes;
+    /** Number of options of the poll. */
+    private final int optionsCount;
+    /** Version of this snapshot. */
+    private final long version;
+    /** Time this snapshot was created in milliseconds since the epoch. */
+    private final long timestamp;
+    /** Fingerprint of the content of this snapshot. */
+    private final long fingerprint;
+
+    /**
+     * Constructs a new {@code PollResults} of the specified {@code poll} and
+     * its {@code options}.
+     *
+     * @param poll
+     *            the poll
+     * @param options
+     *            poll options sorted by votes count in descending order
+     * @param version
+     *            the version of this snapshot
+     * @throws NullPointerException
+     *             if {@code poll} or {@code options} parameter is a
+     *             {@code null} reference
+     */
+    public PollResults(Poll poll, List<PollOption> options, long version) {
+        this(poll, options, Objects.requireNonNull(options, "Options of results cannot be null reference.").size(),
+                options.stream().mapToLong(PollOption::getVotesCount).sum(), version);
+    }
+
+    /**
+     * Constructs a new {@code PollResults} of the specified {@code poll} that
+     * contains only its {@code options} with the most votes.
+     *
+     * @param poll
+     *            the poll
+     * @param options
+     *            poll options with the most votes sorted by votes count in
+     *            descending order
+     * @param optionsCount
+     *            the number of all options of the poll
+     * @param totalVotes
+     *            the total votes count of all options of the poll
+     * @param version
+     *            the version of this snapshot
+     * @throws NullPointerException
+     *             if {@code poll} or {@code options} parameter is a
+     *             {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code optionsCount} is less than the number of
+     *             {@code options}
+     */
+    public PollResults(Poll poll, List<PollOption> options, int optionsCount, long totalVotes, long version) {
+        this.poll = Objects.requireNonNull(poll, "Poll of results cannot be null reference.");
+        this.options = Collections.unmodifiableList(new ArrayList<>(
+                Objects.requireNonNull(options, "Options of results cannot be null reference.")));
+        if (optionsCount < options.size())
+            throw new IllegalArgumentException("Poll cannot have less options than its results contain.");
+
+        this.optionsCount = optionsCount;
+        this.totalVotes = totalVotes;
+        this.version = version;
+        this.timestamp = System.currentTimeMillis();
+
+        Double[] percents = new Double[options.size()];
+        for (int i = 0; i < percents.length; i++) {
+            percents[i] = totalVotes == 0 ? 0.0 : 100.0 * options.get(i).getVotesCount() / totalVotes;
+        }
+        percentages = Collections.unmodifiableList(Arrays.asList(percents));
+
+        int winnersCount = Math.min(1, options.size());
+        while (winnersCount < options.size()
+                && options.get(winnersCount).getVotesCount() == options.get(0).getVotesCount()) {
+            winnersCount++;
+        }
+        winners = Collections.unmodifiableList(new ArrayList<>(this.options.subList(0, winnersCount)));
+        fingerprint = fingerprint();
+    }
+
+    /**
+     * Returns the poll.
+     *
+     * @return the poll
+     */
+    public Poll getPoll() {
+        return poll;
+    }
+
+    /**
+     * Returns the unmodifiable list of poll options sorted by votes count in
+     * descending order. If snapshot is not {@link #isComplete() complete} only
+     * options with the most votes are returned.
+     *
+     * @return the poll options sorted by votes count
+     */
+    public List<PollOption> getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the unmodifiable list of poll options with the most votes.
+     * <p>
+     * <b>Note:</b> more than one winner can exist if they have the same number
+     * of votes and therefore the list is returned
+     *
+     * @return the poll options with the most votes
+     */
+    public List<PollOption> getWinners() {
+        return winners;
+    }
+
+    /**
+     * Returns the unmodifiable list of percentages of votes of poll options in
+     * the same order as {@link #getOptions()}.
+     *
+     * @return the percentages of votes of poll options
+     */
+    public List<Double> getPercentages() {
+        return percentages;
+    }
+
+    /**
+     * Returns the number of all options of the poll.
+     *
+     * @return the number of options of the poll
+     */
+    public int getOptionsCount() {
+        return optionsCount;
+    }
+
+    /**
+     * Returns {@code true} if this snapshot contains all options of the poll.
+     *
+     * @return {@code true} if snapshot contains all options; {@code false}
+     *         otherwise
+     */
+    public boolean isComplete() {
+        return options.size() == optionsCount;
+    }
+
+    /**
+     * Returns the total votes count.
+     *
+     * @return the total votes count
+     */
+    public long getTotalVotes() {
+        return totalVotes;
+    }
+
+    /**
+     * Returns the version of this snapshot.
+     *
+     * @return the version of this snapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the time this snapshot was created in milliseconds since the
+     * epoch. Results of the poll haven't changed since that time.
+     *
+     * @return the time this snapshot was created
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the fingerprint of the content of this snapshot: the poll,
+     * number of options, total votes count and contained options with their
+     * votes. Unlike {@link #getVersion()} it doesn't depend on the run of the
+     * application, only on the results stored in database.
+     *
+     * @return the fingerprint of this snapshot
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public String toString() {
+        return "poll=" + poll.getId() + ", options=" + options.size() + "/" + optionsCount + ", version=" + version;
+    }
+
+    /**
+     * Computes the 64-bit FNV-1a hash of the content of this snapshot.
+     *
+     * @return the fingerprint of this snapshot
+     */
+    private long fingerprint() {
+        long hash = mix(FNV_OFFSET_BASIS, poll.getId());
+        hash = mix(hash, Objects.hashCode(poll.getTitle()));
+        hash = mix(hash, Objects.hashCode(poll.getMessage()));
+        hash = mix(hash, optionsCount);
+        hash = mix(hash, totalVotes);
+
+        for (PollOption option : options) {
+            hash = mix(hash, option.getId());
+            hash = mix(hash, option.getVotesCount());
+            hash = mix(hash, Objects.hashCode(option.getOptionTitle()));
+            hash = mix(hash, Objects.hashCode(option.getOptionLink()));
+        }
+
+        return hash;
+    }
+
+    /**
+     * Mixes the specified {@code value} into the FNV-1a {@code hash} byte by
+     * byte.
+     *
+     * @param hash
+     *            the current hash
+     * @param value
+     *            the value
+     * @return the new hash
+     */
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (value >>> (8 * i)) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+}
@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.tecaj_13.model;
+
+import java.io.Serializable;
+
+/**
+ * {@code Vote} class encapsulates information about a number of votes given to
+ * one poll option.
+ * <p>
+ * This class contains poll ID, poll option ID and votes count.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see Serializable
+ */
+public class Vote implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 4263907140519384476L;
+
+    /** ID of the poll. */
+    private final long pollID;
+    /** ID of the poll option. */
+    private final long optionID;
+    /** Number of votes. */
+    private final long count;
+
+    /**
+     * Constructs a new {@code Vote} with specified {@code pollID},
+     * {@code optionID} and {@code count} parameters.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param optionID
+     *            the ID of the poll option
+     * @param count
+     *            the number of votes
+     * @throws IllegalArgumentException
+     *             if {@code pollID} or {@code optionID} parameter is a negative
+     *             number or {@code count} parameter is not a positive number
+     */
+    public Vote(long pollID, long optionID, long count) {
+        if (pollID < 0)
+            throw new IllegalArgumentException("Poll ID cannot be a negative number.");
+        if (optionID < 0)
+            throw new IllegalArgumentException("Poll option ID cannot be a negative number.");
+        if (count <= 0)
+            throw new IllegalArgumentException("Votes count must be a positive number.");
+
+        this.pollID = pollID;
+        this.optionID = optionID;
+        this.count = count;
+    }
+
+    /**
+     * Returns the ID of the poll.
+     *
+     * @return the ID of the poll
+     */
+    public long getPollID() {
+        return pollID;
+    }
+
+    /**
+     * Returns the ID of the poll option.
+     *
+     * @return the ID of the poll option
+     */
+    public long getOptionID() {
+        return optionID;
+    }
+
+    /**
+     * Returns the number of votes.
+     *
+     * @return the number of votes
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (int) (count ^ (count >>> 32));
+        result = prime * result + (int) (optionID ^ (optionID >>> 32));
+        result = prime * result + (int) (pollID ^ (pollID >>> 32));
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Vote other = (Vote) obj;
+        if (count != other.count)
+            return false;
+        if (optionID != other.optionID)
+            return false;
+        if (pollID != other.pollID)
+            return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "pollID=" + pollID + ", optionID=" + optionID + ", count=" + count;
+    }
+
+}
@@ -0,0 +1,229 @@
+package hr.fer.zemris.java.tecaj_13.pool;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import com.mchange.v2.c3p0.PooledDataSource;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Histogram;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code InstrumentedDataSource} is a {@link DataSource} that delegates to a
+ * connection pool and measures how long acquiring a connection takes.
+ * <p>
+ * Acquire latencies are kept in a {@link Histogram}. If the pool is a c3p0
+ * {@link PooledDataSource} the numbers of busy, idle and all connections and
+ * of threads waiting for a connection are published as {@link Metrics} gauges
+ * too. If a {@link LeakDetector} is given, every acquired connection is
+ * tracked by it.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see Histogram
+ * @see LeakDetector
+ */
+public class InstrumentedDataSource implements DataSource {
+
+    /** Default prefix of the names of metrics registered by data source. */
+    private static final String METRICS_PREFIX = "pool.";
+
+    /** Data source all calls are delegated to. */
+    private final DataSource ds;
+    /** Prefix of the names of metrics registered by this data source. */
+    private final String prefix;
+    /** Leak detector; {@code null} if leaks are not detected. */
+    private final LeakDetector detector;
+    /** Durations of acquiring connections. */
+    private final Histogram acquireTimes = new Histogram();
+    /** Number of failed attempts to acquire a connection. */
+    private final LongAdder acquireFailures = new LongAdder();
+
+    /**
+     * Constructs a new {@code InstrumentedDataSource} whose metrics are
+     * registered with prefix "pool.".
+     *
+     * @param ds
+     *            the data source all calls are delegated to
+     * @param detector
+     *            the leak detector that tracks acquired connections; may be
+     *            {@code null}
+     * @throws NullPointerException
+     *             if {@code ds} parameter is a {@code null} reference
+     */
+    public InstrumentedDataSource(DataSource ds, LeakDetector detector) {
+        this(ds, detector, METRICS_PREFIX);
+    }
+
+    /**
+     * Constructs a new {@code InstrumentedDataSource}.
+     *
+     * @param ds
+     *            the data source all calls are delegated to
+     * @param detector
+     *            the leak detector that tracks acquired connections; may be
+     *            {@code null}
+     * @param prefix
+     *            the prefix of the names of metrics registered by this data
+     *            source(e.g. "pool.")
+     * @throws NullPointerException
+     *             if {@code ds} or {@code prefix} parameter is a {@code null}
+     *             reference
+     */
+    public InstrumentedDataSource(DataSource ds, LeakDetector detector, String prefix) {
+        this.ds = Objects.requireNonNull(ds, "You cannot instrument a null reference as a data source.");
+        this.prefix = Objects.requireNonNull(prefix, "You cannot register metrics with a null reference as a prefix.");
+        this.detector = detector;
+
+        acquireTimes.register(prefix + "acquire.");
+        Metrics.register(prefix + "acquire.failures", acquireFailures::sum);
+
+        if (ds instanceof PooledDataSource) {
+            PooledDataSource pool = (PooledDataSource) ds;
+            Metrics.register(prefix + "busy", () -> gauge(pool::getNumBusyConnectionsDefaultUser));
+            Metrics.register(prefix + "idle", () -> gauge(pool::getNumIdleConnectionsDefaultUser));
+            Metrics.register(prefix + "connections", () -> gauge(pool::getNumConnectionsDefaultUser));
+            Metrics.register(prefix + "waiting", () -> gauge(pool::getNumThreadsAwaitingCheckoutDefaultUser));
+        }
+
+        if (detector != null) {
+            Metrics.register(prefix + "leaks.tracked", detector::getTracked);
+            Metrics.register(prefix + "leaks.reported", detector::getLeaks);
+        }
+    }
+
+    /**
+     * Returns the data source all calls are delegated to.
+     *
+     * @return the data source all calls are delegated to
+     */
+    public DataSource getDelegate() {
+        return ds;
+    }
+
+    /**
+     * Stops the leak detector and unregisters metrics of this data source. The
+     * underlying pool is not closed.
+     */
+    public void close() {
+        if (detector != null) {
+            detector.close();
+        }
+
+        Metrics.unregister(prefix);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection con;
+
+        try {
+            con = ds.getConnection();
+        } catch (SQLException e) {
+            acquireFailures.increment();
+            throw e;
+        } finally {
+            acquireTimes.record(System.nanoTime() - start);
+        }
+
+        return detector == null ? con : detector.track(con);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection con;
+
+        try {
+            con = ds.getConnection(username, password);
+        } catch (SQLException e) {
+            acquireFailures.increment();
+            throw e;
+        } finally {
+            acquireTimes.record(System.nanoTime() - start);
+        }
+
+        return detector == null ? con : detector.track(con);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return ds.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        ds.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        ds.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return ds.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return ds.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(ds))
+            return iface.cast(ds);
+
+        return ds.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(ds) || ds.isWrapperFor(iface);
+    }
+
+    /**
+     * Returns the value read by the specified {@code reader} or {@code -1} if
+     * reading failed.
+     *
+     * @param reader
+     *            the reader of a value of the pool
+     * @return the read value
+     */
+    private static int gauge(PoolReader reader) {
+        try {
+            return reader.read();
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * {@code PoolReader} reads a value of the pool.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private interface PoolReader {
+
+        /**
+         * Reads a value of the pool.
+         *
+         * @return the read value
+         * @throws SQLException
+         *             if value couldn't be read
+         */
+        int read() throws SQLException;
+    }
+
+}
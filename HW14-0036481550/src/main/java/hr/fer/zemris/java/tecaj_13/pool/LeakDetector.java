@@ -0,0 +1,218 @@
+package hr.fer.zemris.java.tecaj_13.pool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code LeakDetector} reports connections that are held longer than a
+ * threshold.
+ * <p>
+ * Every tracked connection is wrapped in a proxy that remembers when and by
+ * which thread it was acquired and stops tracking when the connection is
+ * closed. Tracked connections are checked periodically and every connection
+ * held longer than the threshold is reported once, with the stack trace of the
+ * thread that acquired it if that trace was captured, so the code that forgot
+ * to release it can be found.
+ * <p>
+ * Detection isn't free: every checkout allocates a proxy and every call on the
+ * connection goes through reflection. Capturing a stack trace costs the most,
+ * so it is done only for every {@code stackSampling}-th checkout; a leak that
+ * happens repeatedly is soon caught with its trace. Use sampling of 1 only
+ * while debugging. Detector is off unless "pool.leakThreshold" is set.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class LeakDetector {
+
+    /** Tracked connections by their proxies. */
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    /** Number of milliseconds after which held connection is reported. */
+    private final long threshold;
+    /** Stack trace is captured for one of every this many checkouts. */
+    private final int stackSampling;
+    /** Number of tracked checkouts. */
+    private final AtomicLong checkouts = new AtomicLong();
+    /** Number of reported connections. */
+    private final LongAdder leaks = new LongAdder();
+    /** Executor that checks tracked connections. */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new {@code LeakDetector} that captures the acquiring stack
+     * trace of every connection and starts periodic checks.
+     *
+     * @param threshold
+     *            number of milliseconds after which held connection is
+     *            reported
+     * @throws IllegalArgumentException
+     *             if {@code threshold} parameter is not a positive number
+     */
+    public LeakDetector(long threshold) {
+        this(threshold, 1);
+    }
+
+    /**
+     * Constructs a new {@code LeakDetector} that captures the acquiring stack
+     * trace of one of every {@code stackSampling} connections and starts
+     * periodic checks.
+     *
+     * @param threshold
+     *            number of milliseconds after which held connection is
+     *            reported
+     * @param stackSampling
+     *            stack trace is captured for one of every this many checkouts
+     * @throws IllegalArgumentException
+     *             if {@code threshold} or {@code stackSampling} parameter is
+     *             not a positive number
+     */
+    public LeakDetector(long threshold, int stackSampling) {
+        if (threshold <= 0)
+            throw new IllegalArgumentException("Leak threshold must be a positive number.");
+        if (stackSampling <= 0)
+            throw new IllegalArgumentException("Stack sampling must be a positive number.");
+        this.threshold = threshold;
+        this.stackSampling = stackSampling;
+
+        long period = Math.max(1, threshold / 2);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a proxy of the specified {@code con} that is tracked until it is
+     * closed.
+     *
+     * @param con
+     *            the acquired connection
+     * @return the tracked connection
+     * @throws NullPointerException
+     *             if {@code con} parameter is a {@code null} reference
+     */
+    public Connection track(Connection con) {
+        Objects.requireNonNull(con, "You cannot track a null reference as a connection.");
+
+        Lease lease = new Lease(checkouts.getAndIncrement() % stackSampling == 0);
+        Connection proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (p, method, args) -> {
+                    switch (method.getName()) {
+                    case "close":
+                        leases.remove(p);
+                        break;
+                    case "equals":
+                        return p == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(p);
+                    default:
+                        break;
+                    }
+
+                    try {
+                        return method.invoke(con, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+
+        leases.put(proxy, lease);
+        return proxy;
+    }
+
+    /**
+     * Returns the number of connections currently tracked.
+     *
+     * @return the number of tracked connections
+     */
+    public int getTracked() {
+        return leases.size();
+    }
+
+    /**
+     * Returns the number of connections that were held longer than the
+     * threshold.
+     *
+     * @return the number of reported connections
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    /**
+     * Stops periodic checks.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Reports connections held longer than the threshold that weren't
+     * reported yet, with their acquiring stack traces if they were captured.
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+
+        for (Lease lease : leases.values()) {
+            long held = now - lease.acquired;
+            if (held < threshold || lease.reported)
+                continue;
+
+            lease.reported = true;
+            leaks.increment();
+            String message = "Connection acquired by thread " + lease.thread + " is held for " + held + " ms.";
+            if (lease.stack == null) {
+                System.err.println(message + " Acquiring stack trace wasn't sampled.");
+            } else {
+                new Exception(message, lease.stack).printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * {@code Lease} describes when and where a tracked connection was
+     * acquired.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class Lease {
+
+        /** Time the connection was acquired in milliseconds since the epoch. */
+        private final long acquired = System.currentTimeMillis();
+        /** Name of the thread that acquired the connection. */
+        private final String thread = Thread.currentThread().getName();
+        /**
+         * Stack trace of the thread at the time it acquired the connection;
+         * {@code null} if it wasn't captured.
+         */
+        private final Throwable stack;
+        /** Whether the connection was already reported. */
+        private volatile boolean reported;
+
+        /**
+         * Constructs a new {@code Lease} of the current thread.
+         *
+         * @param captureStack
+         *            {@code true} if stack trace of the current thread should
+         *            be captured
+         */
+        private Lease(boolean captureStack) {
+            stack = captureStack ? new Throwable("Connection acquired here") : null;
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package hr.fer.zemris.java.tecaj_13.pool;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code ReplicaDataSource} is a {@link DataSource} that spreads read-only
+ * connections over the data sources of read replicas of the primary database.
+ * <p>
+ * Replicas are chosen in round-robin order. If connection couldn't be acquired
+ * from a replica the next one is tried, so a replica that is down only slows
+ * down acquiring instead of failing it. Replicas are not written to by this
+ * application; they must be kept up to date with the primary database by
+ * replication, which lags behind the primary by at most
+ * {@link #getMaxLag() max lag} seconds.
+ * <p>
+ * Number of connections that couldn't be acquired from a replica is published
+ * as {@link Metrics} gauge "replicas.failures".
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ReplicaDataSource implements DataSource {
+
+    /** Prefix of the names of metrics registered by this data source. */
+    private static final String METRICS_PREFIX = "replicas.";
+
+    /** Data sources of the replicas. */
+    private final List<DataSource> replicas;
+    /** Maximum number of seconds replicas lag behind the primary database. */
+    private final int maxLag;
+    /** Index of the next replica. */
+    private final AtomicInteger next = new AtomicInteger();
+    /** Number of connections that couldn't be acquired from a replica. */
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Constructs a new {@code ReplicaDataSource}.
+     *
+     * @param replicas
+     *            the data sources of the replicas
+     * @param maxLag
+     *            maximum number of seconds replicas lag behind the primary
+     *            database
+     * @throws NullPointerException
+     *             if {@code replicas} parameter or some of its elements is a
+     *             {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code replicas} parameter is empty or {@code maxLag}
+     *             parameter is a negative number
+     */
+    public ReplicaDataSource(List<? extends DataSource> replicas, int maxLag) {
+        Objects.requireNonNull(replicas, "You cannot read from a null reference as replicas.");
+        if (replicas.isEmpty())
+            throw new IllegalArgumentException("There must be at least one replica.");
+        if (maxLag < 0)
+            throw new IllegalArgumentException("Maximum lag of replicas cannot be a negative number.");
+
+        List<DataSource> copy = new ArrayList<>();
+        for (DataSource replica : replicas) {
+            copy.add(Objects.requireNonNull(replica, "Replica cannot be a null reference."));
+        }
+        this.replicas = Collections.unmodifiableList(copy);
+        this.maxLag = maxLag;
+
+        Metrics.register(METRICS_PREFIX + "failures", failures::sum);
+    }
+
+    /**
+     * Returns the data sources of the replicas.
+     *
+     * @return the unmodifiable list of data sources of the replicas
+     */
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Returns the maximum number of seconds replicas lag behind the primary
+     * database. Client that wrote to the primary database should read from it
+     * for at least this long to see its own writes.
+     *
+     * @return the maximum lag of replicas in seconds
+     */
+    public int getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Unregisters metrics of this data source. Data sources of the replicas
+     * are not closed.
+     */
+    public void close() {
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return acquire(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return acquire(Objects.requireNonNull(username, "Username cannot be a null reference."), password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return replicas.get(0).getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        for (DataSource replica : replicas) {
+            replica.setLogWriter(out);
+        }
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        for (DataSource replica : replicas) {
+            replica.setLoginTimeout(seconds);
+        }
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return replicas.get(0).getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return replicas.get(0).getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this))
+            return iface.cast(this);
+
+        throw new SQLException("Replica data source is not a wrapper for " + iface.getName() + ".");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Acquires a connection from the next replica that is available.
+     *
+     * @param username
+     *            the database user or {@code null} if default user is used
+     * @param password
+     *            the user's password
+     * @return the connection to a replica
+     * @throws SQLException
+     *             if connection couldn't be acquired from any replica
+     */
+    private Connection acquire(String username, String password) throws SQLException {
+        int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+        SQLException failure = null;
+
+        for (int i = 0; i < replicas.size(); i++) {
+            DataSource replica = replicas.get((first + i) % replicas.size());
+            try {
+                return username == null ? replica.getConnection() : replica.getConnection(username, password);
+            } catch (SQLException e) {
+                failures.increment();
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        throw failure;
+    }
+
+}
@@ -0,0 +1,157 @@
+package hr.fer.zemris.java.tecaj_13.results;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+
+/**
+ * {@code Leaderboard} keeps options of a single poll ranked by their votes
+ * count.
+ * <p>
+ * Options are kept in a red-black tree ordered by {@link PollDetails#BY_VOTES}
+ * so adding votes to an option takes O(log n) time, while top {@code k}
+ * options are read in O(k) time without sorting. All methods are
+ * thread-safe.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class Leaderboard {
+
+    /** The poll. */
+    private final Poll poll;
+    /** Poll options by ID. */
+    private final Map<Long, PollOption> options = new HashMap<>();
+    /** Poll options ranked by votes count in descending order. */
+    private final TreeSet<PollOption> ranking = new TreeSet<>(PollDetails.BY_VOTES);
+    /** Total votes count of all options. */
+    private long totalVotes;
+
+    /**
+     * Constructs a new {@code Leaderboard} of the poll and options in the
+     * specified {@code details}.
+     *
+     * @param details
+     *            the poll with its options
+     * @throws NullPointerException
+     *             if {@code details} parameter is a {@code null} reference
+     */
+    public Leaderboard(PollDetails details) {
+        Objects.requireNonNull(details, "You cannot build a leaderboard from a null reference.");
+
+        poll = details.getPoll();
+        for (PollOption option : details.getOptions()) {
+            options.put(option.getId(), option);
+            ranking.add(option);
+            totalVotes += option.getVotesCount();
+        }
+    }
+
+    /**
+     * Returns the poll.
+     *
+     * @return the poll
+     */
+    public Poll getPoll() {
+        return poll;
+    }
+
+    /**
+     * Adds {@code votes} votes to the poll option with the specified
+     * {@code optionID} and moves it to its new rank.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @param votes
+     *            the number of added votes
+     * @return {@code true} if this leaderboard contains the poll option;
+     *         {@code false} otherwise
+     */
+    public synchronized boolean addVotes(long optionID, long votes) {
+        PollOption old = options.get(optionID);
+        if (old == null)
+            return false;
+
+        PollOption updated = new PollOption(
+                old.getId(),
+                old.getOptionTitle(),
+                old.getOptionLink(),
+                old.getPollID(),
+                old.getVotesCount() + votes);
+
+        ranking.remove(old);
+        ranking.add(updated);
+        options.put(optionID, updated);
+        totalVotes += votes;
+
+        return true;
+    }
+
+    /**
+     * Returns at most {@code k} poll options with the most votes sorted by
+     * votes count in descending order.
+     *
+     * @param k
+     *            the maximum number of returned poll options
+     * @return the poll options with the most votes
+     */
+    public synchronized List<PollOption> getTop(int k) {
+        List<PollOption> top = new ArrayList<>(Math.max(0, Math.min(k, ranking.size())));
+
+        Iterator<PollOption> it = ranking.iterator();
+        while (top.size() < k && it.hasNext()) {
+            top.add(it.next());
+        }
+
+        return top;
+    }
+
+    /**
+     * Returns all poll options sorted by votes count in descending order.
+     *
+     * @return all poll options sorted by votes count
+     */
+    public synchronized List<PollOption> getOptions() {
+        return new ArrayList<>(ranking);
+    }
+
+    /**
+     * Checks if this leaderboard contains the poll option with the specified
+     * {@code optionID}.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @return {@code true} if this leaderboard contains the poll option;
+     *         {@code false} otherwise
+     */
+    public synchronized boolean contains(long optionID) {
+        return options.containsKey(optionID);
+    }
+
+    /**
+     * Returns the total votes count of all poll options.
+     *
+     * @return the total votes count
+     */
+    public synchronized long getTotalVotes() {
+        return totalVotes;
+    }
+
+    /**
+     * Returns the number of poll options.
+     *
+     * @return the number of poll options
+     */
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+}
@@ -0,0 +1,505 @@
+package hr.fer.zemris.java.tecaj_13.results;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.dao.DAOListener;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+
+/**
+ * {@code ResultsEngine} keeps a {@link Leaderboard} and an immutable
+ * {@link PollResults} snapshot of every poll whose results were requested.
+ * <p>
+ * Leaderboard is built from {@link DAO#getPollDetails(long)}, read by
+ * {@link DAO#readLatest(java.util.function.Supplier)}, only the first time it
+ * is requested. After that it is kept in sync whenever votes are added
+ * to one of poll's options(engine is a {@link DAOListener}); every vote costs
+ * O(log n) time. When a write of votes finishes a new snapshot of every poll
+ * it changed is materialized from the leaderboard right away, once per write
+ * rather than once per vote, so reading results costs neither database work
+ * nor sorting; winners are the leading options of the snapshot. Snapshot is
+ * materialized on read only the first time after the leaderboard is built.
+ * <p>
+ * Leaderboard built from database is kept only if no write to one of its
+ * options and no other change of its poll overlapped the read; writes to
+ * other polls(e.g. periodic flushes of votes) don't discard it.
+ * <p>
+ * Snapshot contains at most {@code maxOptions} options with the most votes,
+ * so materializing it after every change costs O(maxOptions) rather than
+ * O(n) for polls with many options. Options beyond the snapshot are read by
+ * {@link DAO#getPollOptions(long, int, int)}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see PollResults
+ * @see Leaderboard
+ */
+public class ResultsEngine implements DAOListener {
+
+    /** Prefix of the names of metrics registered by this engine. */
+    private static final String METRICS_PREFIX = "results.";
+    /** Number of polls whose leaderboards are built by a single query. */
+    private static final int WARM_UP_PAGE_SIZE = 100;
+    /** Default maximum number of options in a snapshot. */
+    public static final int DEFAULT_MAX_OPTIONS = 1000;
+
+    /** Maximum number of options in a snapshot. */
+    private final int maxOptions;
+    /** Leaderboards by poll ID. */
+    private final Map<Long, Leaderboard> boards = new ConcurrentHashMap<>();
+    /** Snapshots by poll ID; snapshot is removed whenever it gets stale. */
+    private final Map<Long, PollResults> results = new ConcurrentHashMap<>();
+    /** Poll IDs by poll option ID of all poll options that have a leaderboard. */
+    private final Map<Long, Long> optionPolls = new ConcurrentHashMap<>();
+    /** Source of snapshot versions. */
+    private final AtomicLong versions = new AtomicLong();
+    /**
+     * Source of sequence numbers of leaderboard loads and changes; guarded by
+     * this engine.
+     */
+    private long sequence;
+    /**
+     * Numbers of leaderboard loads in progress by the sequence number of their
+     * start; guarded by this engine.
+     */
+    private final NavigableMap<Long, Integer> loading = new TreeMap<>();
+    /**
+     * Numbers of writes that started but weren't notified yet by the ID of the
+     * poll option they add votes to; leaderboard built from database while
+     * such write is in flight may already contain votes that will be added
+     * again when they are notified, so it isn't kept. Guarded by this engine.
+     */
+    private final Map<Long, Integer> writesInFlight = new HashMap<>();
+    /**
+     * Changes that finished while some leaderboard was loading, ordered by
+     * their sequence numbers; guarded by this engine.
+     */
+    private final Deque<Change> changes = new ArrayDeque<>();
+    /** Number of leaderboards built from database. */
+    private final LongAdder loads = new LongAdder();
+    /** Number of snapshots materialized from leaderboards. */
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Constructs a new {@code ResultsEngine} whose snapshots contain at most
+     * {@link #DEFAULT_MAX_OPTIONS} options.
+     */
+    public ResultsEngine() {
+        this(DEFAULT_MAX_OPTIONS);
+    }
+
+    /**
+     * Constructs a new {@code ResultsEngine} whose snapshots contain at most
+     * {@code maxOptions} options.
+     *
+     * @param maxOptions
+     *            the maximum number of options in a snapshot
+     * @throws IllegalArgumentException
+     *             if {@code maxOptions} parameter is not a positive number
+     */
+    public ResultsEngine(int maxOptions) {
+        if (maxOptions <= 0)
+            throw new IllegalArgumentException("Maximum number of options in a snapshot must be a positive number.");
+
+        this.maxOptions = maxOptions;
+
+        Metrics.register(METRICS_PREFIX + "leaderboards", boards::size);
+        Metrics.register(METRICS_PREFIX + "snapshots", results::size);
+        Metrics.register(METRICS_PREFIX + "loads", loads::sum);
+        Metrics.register(METRICS_PREFIX + "rebuilds", rebuilds::sum);
+    }
+
+    /**
+     * Builds leaderboards of all polls from the {@link DAO} returned by
+     * {@link DAOProvider}. Polls are read page by page and leaderboards of
+     * every page are built by a single query.
+     *
+     * @throws DAOException
+     *             if some exception occurs while loading polls
+     */
+    public void warmUp() throws DAOException {
+        DAO dao = DAOProvider.getDao();
+        long afterID = 0;
+
+        while (true) {
+            List<Poll> page = dao.getPolls(afterID, WARM_UP_PAGE_SIZE);
+            if (page.isEmpty())
+                break;
+
+            List<Long> pollIDs = new ArrayList<>(page.size());
+            page.forEach(p -> pollIDs.add(p.getId()));
+            afterID = pollIDs.get(pollIDs.size() - 1);
+
+            long start = startLoad();
+            try {
+                dao.readLatest(() -> dao.getPollDetails(pollIDs)).values()
+                        .forEach(d -> install(new Leaderboard(d), start));
+            } finally {
+                finishLoad(start);
+            }
+        }
+    }
+
+    /**
+     * Returns the current snapshot of results of the poll with the specified
+     * {@code pollID} or {@code null} if that poll doesn't exist. Snapshot
+     * contains at most {@code maxOptions} options with the most votes.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the current snapshot of results of the poll
+     * @throws DAOException
+     *             if some exception occurs while building the leaderboard
+     */
+    public PollResults getResults(long pollID) throws DAOException {
+        PollResults snapshot = results.get(pollID);
+        if (snapshot != null)
+            return snapshot;
+
+        Leaderboard board = getLeaderboard(pollID);
+        if (board == null)
+            return null;
+
+        synchronized (board) {
+            snapshot = results.get(pollID);
+            return snapshot != null ? snapshot : materialize(pollID, board);
+        }
+    }
+
+    /**
+     * Returns the current snapshot of results of the poll with the specified
+     * {@code pollID} if it is already materialized. Unlike
+     * {@link #getResults(long)} this method never builds the leaderboard or
+     * the snapshot, so it can be called on a container thread.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the current snapshot of results of the poll or {@code null} if
+     *         it isn't materialized
+     */
+    public PollResults getCachedResults(long pollID) {
+        return results.get(pollID);
+    }
+
+    /**
+     * Returns the entity tag of the specified {@code results} snapshot. Tag is
+     * derived only from results stored in database(total votes count, which
+     * only grows, and the {@link PollResults#getFingerprint() fingerprint} of
+     * the snapshot), so it changes whenever results of the poll change and
+     * stays the same across restarts of the application and on every
+     * instance that reads the same database.
+     *
+     * @param results
+     *            the snapshot of results
+     * @return the quoted entity tag of the snapshot
+     */
+    public String getETag(PollResults results) {
+        return "\"" + results.getPoll().getId() + "-" + results.getTotalVotes() + "-"
+                + Long.toUnsignedString(results.getFingerprint(), Character.MAX_RADIX) + "\"";
+    }
+
+    /**
+     * Removes the leaderboard and the snapshot of the poll with the specified
+     * {@code pollID}. They will be built from database the next time they are
+     * requested.
+     *
+     * @param pollID
+     *            the ID of the poll
+     */
+    public void invalidate(long pollID) {
+        Leaderboard board;
+        synchronized (this) {
+            recordChange(pollID, Collections.emptyList());
+            board = boards.remove(pollID);
+            if (board != null) {
+                board.getOptions().forEach(o -> optionPolls.remove(o.getId(), pollID));
+            }
+        }
+
+        if (board == null) {
+            results.remove(pollID);
+            return;
+        }
+
+        synchronized (board) {
+            results.remove(pollID);
+        }
+    }
+
+    @Override
+    public void votesAdded(long optionID, long votes) {
+        Long pollID = optionPolls.get(optionID);
+        Leaderboard board = pollID == null ? null : boards.get(pollID);
+        if (board == null)
+            return;
+
+        board.addVotes(optionID, votes);
+    }
+
+    @Override
+    public void pollChanged(long pollID) {
+        invalidate(pollID);
+    }
+
+    @Override
+    public synchronized void writeStarted(Collection<Long> optionIDs) {
+        optionIDs.forEach(id -> writesInFlight.merge(id, 1, Integer::sum));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * New snapshots of all polls whose leaderboards got votes are
+     * materialized.
+     */
+    @Override
+    public void writeFinished(Collection<Long> optionIDs) {
+        if (optionIDs.isEmpty())
+            return;
+
+        synchronized (this) {
+            optionIDs.forEach(id -> writesInFlight.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1));
+            recordChange(-1, optionIDs);
+        }
+
+        Set<Long> pollIDs = new HashSet<>();
+        for (Long optionID : optionIDs) {
+            Long pollID = optionPolls.get(optionID);
+            if (pollID != null) {
+                pollIDs.add(pollID);
+            }
+        }
+
+        for (Long pollID : pollIDs) {
+            Leaderboard board = boards.get(pollID);
+            if (board == null)
+                continue;
+
+            synchronized (board) {
+                materialize(pollID, board);
+            }
+        }
+    }
+
+    /**
+     * Materializes a new snapshot from the specified {@code board} and keeps
+     * it if the leaderboard is still kept. Must be called while holding the
+     * lock of the leaderboard.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param board
+     *            the leaderboard of the poll
+     * @return the new snapshot
+     */
+    private PollResults materialize(long pollID, Leaderboard board) {
+        PollResults snapshot = new PollResults(
+                board.getPoll(),
+                board.getTop(maxOptions),
+                board.size(),
+                board.getTotalVotes(),
+                versions.incrementAndGet());
+        rebuilds.increment();
+
+        if (boards.get(pollID) == board) {
+            results.put(pollID, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Unregisters metrics of this engine.
+     */
+    public void close() {
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+    /**
+     * Returns the leaderboard of the poll with the specified {@code pollID} or
+     * {@code null} if that poll doesn't exist. If leaderboard doesn't exist it
+     * is built from the {@link DAO} returned by {@link DAOProvider}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the leaderboard of the poll
+     * @throws DAOException
+     *             if some exception occurs while building the leaderboard
+     */
+    private Leaderboard getLeaderboard(long pollID) throws DAOException {
+        Leaderboard board = boards.get(pollID);
+        if (board != null)
+            return board;
+
+        long start = startLoad();
+        try {
+            DAO dao = DAOProvider.getDao();
+            PollDetails details = dao.readLatest(() -> dao.getPollDetails(pollID));
+            if (details == null)
+                return null;
+
+            return install(new Leaderboard(details), start);
+        } finally {
+            finishLoad(start);
+        }
+    }
+
+    /**
+     * Keeps the specified {@code board} if no change of its poll or options
+     * happened since the load that built it started and no other leaderboard
+     * of the same poll was kept in the meantime.
+     *
+     * @param board
+     *            the leaderboard built from database
+     * @param start
+     *            the sequence number of the start of the load
+     * @return the kept leaderboard or {@code board} if it wasn't kept
+     */
+    private synchronized Leaderboard install(Leaderboard board, long start) {
+        long pollID = board.getPoll().getId();
+        loads.increment();
+        if (changedSince(board, start))
+            return board;
+
+        Leaderboard existing = boards.putIfAbsent(pollID, board);
+        if (existing != null)
+            return existing;
+
+        board.getOptions().forEach(o -> optionPolls.put(o.getId(), pollID));
+        return board;
+    }
+
+    /**
+     * Checks if a write to one of the options of the specified {@code board}
+     * is in flight or if its poll or one of its options changed since the
+     * load with the specified {@code start} started. Must be called while
+     * holding the lock of this engine.
+     *
+     * @param board
+     *            the leaderboard built from database
+     * @param start
+     *            the sequence number of the start of the load
+     * @return {@code true} if leaderboard may be stale; {@code false}
+     *         otherwise
+     */
+    private boolean changedSince(Leaderboard board, long start) {
+        for (Long optionID : writesInFlight.keySet()) {
+            if (board.contains(optionID))
+                return true;
+        }
+
+        long pollID = board.getPoll().getId();
+        for (Change change : changes) {
+            if (change.sequence < start)
+                continue;
+            if (change.pollID == pollID)
+                return true;
+
+            for (Long optionID : change.optionIDs) {
+                if (board.contains(optionID))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Registers a leaderboard load that starts now.
+     *
+     * @return the sequence number of the start of the load
+     */
+    private synchronized long startLoad() {
+        long start = ++sequence;
+        loading.merge(start, 1, Integer::sum);
+        return start;
+    }
+
+    /**
+     * Unregisters the leaderboard load with the specified {@code start} and
+     * forgets changes no load in progress has to check.
+     *
+     * @param start
+     *            the sequence number of the start of the load
+     */
+    private synchronized void finishLoad(long start) {
+        loading.computeIfPresent(start, (key, count) -> count == 1 ? null : count - 1);
+
+        long oldest = loading.isEmpty() ? Long.MAX_VALUE : loading.firstKey();
+        while (!changes.isEmpty() && changes.peekFirst().sequence < oldest) {
+            changes.removeFirst();
+        }
+    }
+
+    /**
+     * Records a change of the poll with the specified {@code pollID} or of
+     * votes of the poll options with the specified {@code optionIDs} if some
+     * leaderboard is loading. Must be called while holding the lock of this
+     * engine.
+     *
+     * @param pollID
+     *            the ID of the changed poll or {@code -1} if only votes
+     *            changed
+     * @param optionIDs
+     *            IDs of poll options whose votes changed
+     */
+    private void recordChange(long pollID, Collection<Long> optionIDs) {
+        long change = ++sequence;
+        if (!loading.isEmpty()) {
+            changes.addLast(new Change(change, pollID, new ArrayList<>(optionIDs)));
+        }
+    }
+
+    /**
+     * {@code Change} is a change that finished while some leaderboard was
+     * loading.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private static class Change {
+
+        /** The sequence number of the change. */
+        private final long sequence;
+        /** The ID of the changed poll or {@code -1} if only votes changed. */
+        private final long pollID;
+        /** IDs of poll options whose votes changed. */
+        private final Collection<Long> optionIDs;
+
+        /**
+         * Constructs a new {@code Change}.
+         *
+         * @param sequence
+         *            the sequence number of the change
+         * @param pollID
+         *            the ID of the changed poll or {@code -1} if only votes
+         *            changed
+         * @param optionIDs
+         *            IDs of poll options whose votes changed
+         */
+        private Change(long sequence, long pollID, Collection<Long> optionIDs) {
+            this.sequence = sequence;
+            this.pollID = pollID;
+            this.optionIDs = optionIDs;
+        }
+    }
+
+}
@@ -2,13 +2,22 @@ package hr.fer.zemris.java.tecaj_13.servlets;
 
 import java.io.IOException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter;
+import hr.fer.zemris.java.tecaj_13.Initialization;
 import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.sql.ConnectionScope;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
+import hr.fer.zemris.java.tecaj_13.votes.VoteQueue;
 
 /**
  * {@code AddVoteServlet} is a {@link HttpServlet} class that handles
@@ -17,12 +26,25 @@ import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
  * In order to use this servlet you need to provided parameter {@code pollId}
  * which indicates the id of the poll user participated in and parameter
  * {@code id} which indicates the id of the poll option user voted for.
+ * <p>
+ * Votes are not written to database immediately but are handed to
+ * {@link VoteAggregator} which journals them and writes them in batches.
+ * <p>
+ * Request is processed asynchronously: vote is queued in {@link VoteQueue} and
+ * recorded by one of its writer threads so container thread is released
+ * immediately. Writer thread uses the {@link ConnectionScope} of the request,
+ * whose connection is released as soon as the vote is recorded. If queue is
+ * full status 429 is returned with {@code Retry-After} header.
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "dodajGlas", urlPatterns = "/dodajGlas")
+@WebServlet(
+        name = "dodajGlas",
+        urlPatterns = "/dodajGlas",
+        asyncSupported = true,
+        initParams = @WebInitParam(name = "retryAfter", value = "1"))
 public class AddVoteServlet extends HttpServlet {
 
     /** Serial version UID. */
@@ -45,14 +67,91 @@ public class AddVoteServlet extends HttpServlet {
             return;
         }
 
-        int num = DAOProvider.getDao().updatePollOptionsVotesCount(id);
-        
-        if(num != 1) {
-            resp.sendError(400, "Invalid id parameter.");
+        ServletContext context = req.getServletContext();
+        VoteQueue queue = (VoteQueue) context.getAttribute(Initialization.VOTE_QUEUE_ATTRIBUTE);
+        ConnectionScope scope = (ConnectionScope) req.getAttribute(ConnectionScope.ATTRIBUTE);
+        AsyncContext async = req.startAsync();
+        long finalPollID = pollID;
+        long finalID = id;
+
+        boolean queued = queue.offer(() -> {
+            try {
+                scope.run(() -> vote(async, finalPollID, finalID));
+            } catch (RuntimeException e) {
+                sendError(async, 503, "Database is currently unavailable.");
+            } finally {
+                scope.release();
+                async.complete();
+            }
+        });
+
+        if (!queued) {
+            resp.setHeader("Retry-After", getInitParameter("retryAfter"));
+            sendError(async, 429, "Too many votes, try again later.");
+            async.complete();
+        }
+    }
+
+    /**
+     * Records the vote for the poll option with the specified {@code id} and
+     * redirects the client to the results of the poll with the specified
+     * {@code pollID}. This method is run by one of the vote writer threads.
+     * Without a vote aggregator, as with in-memory DAO, the vote is added to
+     * the DAO directly.
+     *
+     * @param async
+     *            the asynchronous context of the request
+     * @param pollID
+     *            the ID of the poll
+     * @param id
+     *            the ID of the poll option
+     */
+    private static void vote(AsyncContext async, long pollID, long id) {
+        PollOption option = DAOProvider.getDao().getPollOption(id);
+
+        if (option == null || option.getPollID() != pollID) {
+            sendError(async, 400, "Invalid id parameter.");
             return;
         }
 
-        resp.sendRedirect(req.getContextPath() + "/glasanje-rezultati?pollID=" + pollID);
+        VoteAggregator aggregator = (VoteAggregator) async.getRequest().getServletContext()
+                .getAttribute(Initialization.VOTES_ATTRIBUTE);
+        long generation = 0;
+        if (aggregator == null) {
+            DAOProvider.getDao().updatePollOptionsVotesCount(id, 1);
+        } else {
+            try {
+                generation = aggregator.addVote(pollID, id);
+            } catch (IOException e) {
+                sendError(async, 503, "Vote couldn't be recorded.");
+                return;
+            }
+        }
+
+        HttpServletRequest req = (HttpServletRequest) async.getRequest();
+        HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+        ConnectionSetterFilter.markWritten(req, resp, generation);
+        try {
+            resp.sendRedirect(req.getContextPath() + "/glasanje-rezultati?pollID=" + pollID);
+        } catch (IOException ignorable) {
+        }
+    }
+
+    /**
+     * Sends an error response to the client of the asynchronous request.
+     *
+     * @param async
+     *            the asynchronous context of the request
+     * @param status
+     *            the error status code
+     * @param message
+     *            the descriptive message
+     */
+    private static void sendError(AsyncContext async, int status, String message) {
+        try {
+            ((HttpServletResponse) async.getResponse()).sendError(status, message);
+        } catch (IOException | IllegalStateException ignorable) {
+        }
     }
 
 }
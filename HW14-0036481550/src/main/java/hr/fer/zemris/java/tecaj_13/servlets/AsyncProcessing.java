@@ -0,0 +1,139 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
+
+/**
+ * {@code AsyncProcessing} is a utility class that processes requests of
+ * servlets whose responses depend on a call of the {@link AsyncDAO}.
+ * <p>
+ * Request is suspended while the call runs, so container thread is returned
+ * to the container instead of waiting for database. When call finishes its
+ * result is handled on a container thread again. If call failed status 503 is
+ * sent, or status 504 if it timed out.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class AsyncProcessing {
+
+    /**
+     * Disable creation of {@code AsyncProcessing} objects.
+     */
+    private AsyncProcessing() {
+    }
+
+    /**
+     * Suspends the specified {@code req} until {@code result} is completed and
+     * then passes the result to {@code handler}. Servlet of the request must
+     * support asynchronous processing.
+     *
+     * @param <T>
+     *            the type of the result
+     * @param req
+     *            the request
+     * @param result
+     *            the future result the response depends on
+     * @param handler
+     *            the handler of the result
+     */
+    public static <T> void process(HttpServletRequest req, CompletableFuture<T> result, ResultHandler<T> handler) {
+        AsyncContext async = req.startAsync();
+
+        result.whenComplete((value, e) -> async.start(() -> {
+            try {
+                if (e != null) {
+                    sendError(async, e);
+                    async.complete();
+                    return;
+                }
+
+                String page = handler.handle(value);
+                if (page == null) {
+                    async.complete();
+                } else {
+                    async.dispatch(page);
+                }
+            } catch (IOException | ServletException | RuntimeException ex) {
+                ex.printStackTrace();
+                sendError(async, 500, "Request couldn't be processed.");
+                async.complete();
+            }
+        }));
+    }
+
+    /**
+     * Sends the error response that describes the specified failure of a call.
+     *
+     * @param async
+     *            the asynchronous context of the request
+     * @param e
+     *            the failure
+     */
+    private static void sendError(AsyncContext async, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+
+        if (e.getCause() instanceof TimeoutException) {
+            sendError(async, 504, "Database didn't respond in time.");
+        } else {
+            sendError(async, 503, "Database is currently unavailable.");
+        }
+    }
+
+    /**
+     * Sends an error response to the client of the asynchronous request.
+     *
+     * @param async
+     *            the asynchronous context of the request
+     * @param status
+     *            the error status code
+     * @param message
+     *            the descriptive message
+     */
+    private static void sendError(AsyncContext async, int status, String message) {
+        try {
+            ((HttpServletResponse) async.getResponse()).sendError(status, message);
+        } catch (IOException | IllegalStateException ignorable) {
+        }
+    }
+
+    /**
+     * {@code ResultHandler} generates the response from the result of a call.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     * @param <T>
+     *            the type of the result
+     */
+    @FunctionalInterface
+    public interface ResultHandler<T> {
+
+        /**
+         * Handles the specified result. Handler either writes the whole
+         * response(e.g. an error) and returns {@code null} or sets request
+         * attributes and returns the page the request is dispatched to.
+         *
+         * @param result
+         *            the result of the call
+         * @return the context-relative path of the page that renders the
+         *         response or {@code null} if response was written
+         * @throws IOException
+         *             if an I/O error occurs
+         * @throws ServletException
+         *             if the response couldn't be generated
+         */
+        String handle(T result) throws IOException, ServletException;
+    }
+
+}
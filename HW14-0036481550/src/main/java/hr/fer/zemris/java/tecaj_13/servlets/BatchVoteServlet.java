@@ -0,0 +1,359 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * {@code BatchVoteServlet} is a {@link HttpServlet} class that adds many votes
+ * sent in a body of a single POST request.
+ * <p>
+ * Votes can be sent in two formats:
+ * <ul>
+ * <li>JSON lines(default) - one flat object per line with integer properties
+ * {@code pollID}, {@code id} and optional {@code count}(e.g.
+ * <code>{"pollID":1,"id":3,"count":12}</code>) and no other properties; line
+ * may be at most {@code maxLineLength} characters long</li>
+ * <li>binary({@code Content-Type: application/octet-stream}) - sequence of
+ * records of three big-endian 64-bit integers: poll ID, poll option ID and
+ * count</li>
+ * </ul>
+ * All valid votes are applied in a single transaction. Response contains one
+ * JSON line per received vote with its index and status: {@code APPLIED},
+ * {@code REJECTED} if poll option doesn't belong to the poll or
+ * {@code INVALID} if vote is malformed. Votes are applied by the
+ * {@link AsyncDAO} while request is suspended. Body with too long line or with
+ * incomplete binary record is rejected as a whole with status 400.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see HttpServlet
+ */
+@WebServlet(
+        name = "dodajGlasove",
+        urlPatterns = "/dodajGlasove",
+        asyncSupported = true,
+        initParams = {
+                @WebInitParam(name = "maxVotes", value = "100000"),
+                @WebInitParam(name = "maxLineLength", value = "256") })
+public class BatchVoteServlet extends HttpServlet {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = -2749123808126574013L;
+
+    /** Content type of binary request body. */
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+    /** Length of one binary record in bytes. */
+    private static final int RECORD_LENGTH = 3 * Long.BYTES;
+    /** Pattern of one numeric property of a JSON object. */
+    private static final Pattern JSON_PROPERTY = Pattern.compile("\"(\\w+)\"\\s*:\\s*(-?\\d+)");
+    /** Pattern of a JSON object whose properties are all integers. */
+    private static final Pattern JSON_OBJECT = Pattern.compile(
+            "\\{\\s*(" + JSON_PROPERTY + "\\s*(,\\s*" + JSON_PROPERTY + "\\s*)*)?\\}");
+    /** Names of properties of a vote in JSON lines format. */
+    private static final Set<String> VOTE_PROPERTIES = new HashSet<>(Arrays.asList("pollID", "id", "count"));
+
+    /** Maximum number of votes in one request. */
+    private int maxVotes;
+    /** Maximum number of characters of one line in JSON lines format. */
+    private int maxLineLength;
+
+    @Override
+    public void init() throws ServletException {
+        maxVotes = getIntParameter("maxVotes");
+        maxLineLength = getIntParameter("maxLineLength");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        List<Vote> votes = new ArrayList<>();
+
+        String contentType = req.getContentType();
+        Body body;
+        if (contentType != null && contentType.startsWith(BINARY_CONTENT_TYPE)) {
+            body = readBinary(req, votes);
+        } else {
+            body = readJsonLines(req, votes);
+        }
+
+        switch (body) {
+        case TOO_MANY_VOTES:
+            resp.sendError(413, "Request contains more than " + maxVotes + " votes.");
+            return;
+        case LINE_TOO_LONG:
+            resp.sendError(400, "Request contains a line longer than " + maxLineLength + " characters.");
+            return;
+        case TRUNCATED:
+            resp.sendError(400, "Request ends with an incomplete record.");
+            return;
+        default:
+            break;
+        }
+
+        List<Vote> valid = new ArrayList<>();
+        for (Vote vote : votes) {
+            if (vote != null) {
+                valid.add(vote);
+            }
+        }
+
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        AsyncProcessing.process(req, dao.addVotes(valid), results -> {
+            ConnectionSetterFilter.markWritten(req, resp, 0);
+            writeStatuses(resp, votes, results);
+            return null;
+        });
+    }
+
+    /**
+     * Writes the status of every received vote to the response.
+     *
+     * @param resp
+     *            the response
+     * @param votes
+     *            received votes; malformed votes are {@code null} references
+     * @param results
+     *            the number of affected rows for every valid vote
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private static void writeStatuses(HttpServletResponse resp, List<Vote> votes, int[] results) throws IOException {
+        resp.setContentType("application/x-ndjson");
+        resp.setCharacterEncoding("UTF-8");
+
+        PrintWriter writer = resp.getWriter();
+        for (int i = 0, j = 0, length = votes.size(); i < length; i++) {
+            String status;
+            if (votes.get(i) == null) {
+                status = "INVALID";
+            } else {
+                status = results[j++] > 0 ? "APPLIED" : "REJECTED";
+            }
+
+            writer.println("{\"index\":" + i + ",\"status\":\"" + status + "\"}");
+        }
+    }
+
+    /**
+     * Reads votes in JSON lines format from the request body. Votes that
+     * aren't flat objects with only integer properties {@code pollID},
+     * {@code id} and optional {@code count} are added to {@code votes} as
+     * {@code null} references.
+     *
+     * @param req
+     *            the request
+     * @param votes
+     *            the list votes are added to
+     * @return {@link Body#COMPLETE} if all votes were read,
+     *         {@link Body#TOO_MANY_VOTES} if request contains more than
+     *         {@link #maxVotes} votes or {@link Body#LINE_TOO_LONG} if it
+     *         contains a line longer than {@link #maxLineLength} characters
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private Body readJsonLines(HttpServletRequest req, List<Vote> votes) throws IOException {
+        BufferedReader reader = req.getReader();
+        StringBuilder sb = new StringBuilder();
+        Map<String, Long> properties = new HashMap<>();
+
+        while (readLine(reader, sb)) {
+            if (sb.length() > maxLineLength)
+                return Body.LINE_TOO_LONG;
+
+            String line = sb.toString().trim();
+            if (line.isEmpty())
+                continue;
+
+            if (votes.size() == maxVotes)
+                return Body.TOO_MANY_VOTES;
+
+            votes.add(parseVote(line, properties));
+        }
+
+        return Body.COMPLETE;
+    }
+
+    /**
+     * Reads the next line of {@code reader} into {@code sb}. At most
+     * {@link #maxLineLength} + 1 characters of a line are kept, so a too long
+     * line can be recognized without being buffered.
+     *
+     * @param reader
+     *            the reader
+     * @param sb
+     *            the builder the line is read into; it is cleared first
+     * @return {@code true} if a line was read; {@code false} if reader is at
+     *         its end
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private boolean readLine(BufferedReader reader, StringBuilder sb) throws IOException {
+        sb.setLength(0);
+
+        int c = reader.read();
+        if (c < 0)
+            return false;
+
+        while (c >= 0 && c != '\n') {
+            if (sb.length() <= maxLineLength) {
+                sb.append((char) c);
+            }
+            c = reader.read();
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the vote in the specified JSON line or {@code null} if line
+     * isn't a flat object with only integer properties {@code pollID},
+     * {@code id} and optional {@code count}, each given at most once.
+     *
+     * @param line
+     *            the line without surrounding whitespace
+     * @param properties
+     *            the map properties are parsed into
+     * @return the vote or {@code null} if line is malformed
+     */
+    static Vote parseVote(String line, Map<String, Long> properties) {
+        if (!JSON_OBJECT.matcher(line).matches())
+            return null;
+
+        properties.clear();
+        Matcher matcher = JSON_PROPERTY.matcher(line);
+        try {
+            while (matcher.find()) {
+                String name = matcher.group(1);
+                if (!VOTE_PROPERTIES.contains(name) || properties.put(name, Long.parseLong(matcher.group(2))) != null)
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        Long pollID = properties.get("pollID");
+        Long id = properties.get("id");
+        if (pollID == null || id == null)
+            return null;
+
+        return createVote(pollID, id, properties.getOrDefault("count", 1L));
+    }
+
+    /**
+     * Reads votes in binary format from the request body. Malformed votes are
+     * added to {@code votes} as {@code null} references.
+     *
+     * @param req
+     *            the request
+     * @param votes
+     *            the list votes are added to
+     * @return {@link Body#COMPLETE} if all votes were read,
+     *         {@link Body#TOO_MANY_VOTES} if request contains more than
+     *         {@link #maxVotes} votes or {@link Body#TRUNCATED} if body ends
+     *         with an incomplete record
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private Body readBinary(HttpServletRequest req, List<Vote> votes) throws IOException {
+        DataInputStream is = new DataInputStream(req.getInputStream());
+        byte[] record = new byte[RECORD_LENGTH];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+
+        while (true) {
+            int first = is.read();
+            if (first < 0)
+                return Body.COMPLETE;
+
+            record[0] = (byte) first;
+            try {
+                is.readFully(record, 1, RECORD_LENGTH - 1);
+            } catch (EOFException e) {
+                return Body.TRUNCATED;
+            }
+
+            if (votes.size() == maxVotes)
+                return Body.TOO_MANY_VOTES;
+
+            buffer.clear();
+            votes.add(createVote(buffer.getLong(), buffer.getLong(), buffer.getLong()));
+        }
+    }
+
+    /**
+     * Returns the new vote or {@code null} if parameters are not valid.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param id
+     *            the ID of the poll option
+     * @param count
+     *            the number of votes
+     * @return the new vote or {@code null} if parameters are not valid
+     */
+    private static Vote createVote(long pollID, long id, long count) {
+        try {
+            return new Vote(pollID, id, count);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the value of the specified init parameter as a number.
+     *
+     * @param name
+     *            the name of the init parameter
+     * @return the value of the init parameter
+     * @throws ServletException
+     *             if value is not a number
+     */
+    private int getIntParameter(String name) throws ServletException {
+        try {
+            return Integer.parseInt(getInitParameter(name));
+        } catch (NumberFormatException e) {
+            throw new ServletException("Init parameter " + name + " must be a number.", e);
+        }
+    }
+
+    /**
+     * {@code Body} is the outcome of reading votes from the request body.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private enum Body {
+        /** All votes were read. */
+        COMPLETE,
+        /** Body contains more votes than allowed. */
+        TOO_MANY_VOTES,
+        /** Body contains a too long line. */
+        LINE_TOO_LONG,
+        /** Body ends with an incomplete binary record. */
+        TRUNCATED
+    }
+
+}
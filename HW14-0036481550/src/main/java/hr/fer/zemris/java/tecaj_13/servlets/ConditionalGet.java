@@ -0,0 +1,153 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * {@code ConditionalGet} is a utility class that handles conditional GET
+ * requests of servlets whose responses are derived from a versioned resource.
+ * <p>
+ * Validators {@code ETag} and {@code Last-Modified} are set on every response.
+ * If request's {@code If-None-Match} (or, if it is absent,
+ * {@code If-Modified-Since}) header matches them status 304 is sent and
+ * servlet doesn't need to generate the response.
+ * <p>
+ * {@code Last-Modified} has a resolution of one second, so a change later in
+ * the same second would have the same date and client's copy would wrongly be
+ * considered valid. Date is therefore sent only once its second is over and no
+ * further change can get it; until then clients revalidate by {@code ETag}.
+ * <p>
+ * {@code Cache-Control} header is built from servlet's init parameters
+ * {@code maxAge} and {@code staleWhileRevalidate}, both in seconds. If
+ * {@code maxAge} is 0 or not set clients must revalidate on every request.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ConditionalGet {
+
+    /**
+     * Disable creation of {@code ConditionalGet} objects.
+     */
+    private ConditionalGet() {
+    }
+
+    /**
+     * Sets validators and {@code Cache-Control} header on the specified
+     * {@code resp} and sends status 304 if client's copy of the resource is
+     * still valid.
+     *
+     * @param servlet
+     *            the servlet whose init parameters configure caching
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @param etag
+     *            the quoted entity tag of the current version of the resource
+     * @param lastModified
+     *            the time the resource was last modified in milliseconds since
+     *            the epoch
+     * @return {@code true} if status 304 was sent; {@code false} otherwise
+     */
+    public static boolean isNotModified(GenericServlet servlet, HttpServletRequest req, HttpServletResponse resp,
+            String etag, long lastModified) {
+        resp.setHeader("ETag", etag);
+        if (lastModified / 1000 < System.currentTimeMillis() / 1000) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        resp.setHeader("Cache-Control", cacheControl(servlet));
+
+        boolean notModified;
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            long ifModifiedSince = -1;
+            try {
+                ifModifiedSince = req.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                // invalid date is ignored as if header wasn't sent
+            }
+            notModified = ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+
+        if (notModified) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+
+        return notModified;
+    }
+
+    /**
+     * Returns the value of {@code Cache-Control} header configured by init
+     * parameters of the specified {@code servlet}.
+     *
+     * @param servlet
+     *            the servlet
+     * @return the value of {@code Cache-Control} header
+     */
+    private static String cacheControl(GenericServlet servlet) {
+        long maxAge = getSeconds(servlet, "maxAge");
+        long staleWhileRevalidate = getSeconds(servlet, "staleWhileRevalidate");
+
+        if (maxAge == 0)
+            return "no-cache";
+
+        String value = "public, max-age=" + maxAge;
+        if (staleWhileRevalidate > 0) {
+            value += ", stale-while-revalidate=" + staleWhileRevalidate;
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the init parameter of the specified {@code servlet} with the
+     * specified {@code name} as non-negative number of seconds or {@code 0}
+     * if parameter is not set or is invalid.
+     *
+     * @param servlet
+     *            the servlet
+     * @param name
+     *            the name of the init parameter
+     * @return the number of seconds
+     */
+    private static long getSeconds(GenericServlet servlet, String name) {
+        String value = servlet.getInitParameter(name);
+        if (value == null)
+            return 0;
+
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Checks if the value of {@code If-None-Match} header contains the
+     * specified {@code etag}. Weak comparison is used.
+     *
+     * @param ifNoneMatch
+     *            the value of {@code If-None-Match} header
+     * @param etag
+     *            the quoted entity tag
+     * @return {@code true} if header matches the tag; {@code false} otherwise
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+
+        return false;
+    }
+
+}
@@ -1,22 +1,27 @@
 package hr.fer.zemris.java.tecaj_13.servlets;
 
 import java.io.IOException;
-import java.util.List;
 
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
-import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
 
 /**
  * {@code IndexServlet} is a {@link HttpServlet} class that initializes database
  * with polls if they weren't previously created and offers the user polls n
  * which user can participate.
  * <p>
+ * Polls are shown page by page; page size is set by {@code pageSize} init
+ * parameter and the next page is selected by {@code after} parameter which is
+ * the ID of the last poll of the previous page. Polls are read by the
+ * {@link AsyncDAO} while request is suspended.
+ * <p>
  * When user makes his/hers choice he/she will be redirected {@link VoteServlet}
  * .
  * 
@@ -24,7 +29,11 @@ import hr.fer.zemris.java.tecaj_13.model.Poll;
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "index", urlPatterns = { "", "/index.html" })
+@WebServlet(
+        name = "index",
+        urlPatterns = { "", "/index.html" },
+        asyncSupported = true,
+        initParams = @WebInitParam(name = "pageSize", value = "20"))
 public class IndexServlet extends HttpServlet {
 
     /** Serial version UID. */
@@ -32,10 +41,31 @@ public class IndexServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        List<Poll> polls = DAOProvider.getDao().getAllPolls();
+        long after = 0;
+        String afterParameter = req.getParameter("after");
+        if (afterParameter != null) {
+            try {
+                after = Long.parseLong(afterParameter);
+            } catch (NumberFormatException e) {
+                resp.sendError(400, "Invalid after parameter.");
+                return;
+            }
+        }
+
+        int pageSize = Integer.parseInt(getInitParameter("pageSize"));
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        boolean firstPage = after == 0;
+
+        AsyncProcessing.process(req, dao.getPolls(after, pageSize + 1), polls -> {
+            if (polls.size() > pageSize) {
+                polls = polls.subList(0, pageSize);
+                req.setAttribute("next", polls.get(pageSize - 1).getId());
+            }
 
-        req.setAttribute("polls", polls);
-        req.getRequestDispatcher("/WEB-INF/pages/index.jsp").forward(req, resp);
+            req.setAttribute("polls", polls);
+            req.setAttribute("firstPage", firstPage);
+            return "/WEB-INF/pages/index.jsp";
+        });
     }
 
 }
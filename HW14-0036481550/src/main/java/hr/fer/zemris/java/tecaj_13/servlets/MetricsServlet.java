@@ -0,0 +1,40 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code MetricsServlet} is a {@link HttpServlet} class that writes values of
+ * all gauges registered in {@link Metrics} as plain text, one gauge per line in
+ * format "name value".
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ * @see HttpServlet
+ * @see Metrics
+ */
+@WebServlet(name = "metrics", urlPatterns = "/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 3094410947011635123L;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        resp.setContentType("text/plain");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+
+        PrintWriter writer = resp.getWriter();
+        Metrics.snapshot().forEach((name, value) -> writer.println(name + " " + value));
+    }
+
+}
@@ -0,0 +1,341 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
+
+/**
+ * {@code OptionsPage} is one page of options of a poll sorted by votes count
+ * together with the {@link PollResults} snapshot it belongs to.
+ * <p>
+ * Page is sliced from the snapshot if snapshot contains its options;
+ * otherwise its options are read by {@link DAO#getPollOptions(long, int, int)}
+ * and their percentages are computed from total votes count of the snapshot.
+ * <p>
+ * Client whose votes are still pending in the {@link VoteAggregator} gets the
+ * page with those votes added to the snapshot and to options of the page, so
+ * it sees its own votes before they are written to database.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+class OptionsPage {
+
+    /** The snapshot of results the page belongs to. */
+    private final PollResults results;
+    /** The number of the page, starting from 1. */
+    private final int page;
+    /** The number of pages. */
+    private final int pages;
+    /** Options of the page. */
+    private final List<PollOption> options;
+    /** Percentages of votes of options of the page. */
+    private final List<Double> percentages;
+
+    /**
+     * Constructs a new {@code OptionsPage}.
+     *
+     * @param results
+     *            the snapshot of results the page belongs to
+     * @param page
+     *            the number of the page
+     * @param pages
+     *            the number of pages
+     * @param options
+     *            options of the page
+     * @param percentages
+     *            percentages of votes of options of the page
+     */
+    private OptionsPage(PollResults results, int page, int pages, List<PollOption> options,
+            List<Double> percentages) {
+        this.results = results;
+        this.page = page;
+        this.pages = pages;
+        this.options = options;
+        this.percentages = percentages;
+    }
+
+    /**
+     * Returns the page with the specified number of options of the
+     * {@code results} snapshot or {@code null} if snapshot doesn't contain
+     * its options. Page that doesn't exist is returned without options.
+     *
+     * @param results
+     *            the snapshot of results
+     * @param page
+     *            the number of the page, starting from 1
+     * @param pageSize
+     *            the number of options per page
+     * @return the page or {@code null} if snapshot doesn't contain its options
+     */
+    public static OptionsPage of(PollResults results, int page, int pageSize) {
+        int pages = countPages(results, pageSize);
+        if (page < 1 || page > pages)
+            return new OptionsPage(results, page, pages, new ArrayList<>(), new ArrayList<>());
+
+        int from = (int) Math.min(results.getOptionsCount(), (page - 1L) * pageSize);
+        int to = (int) Math.min(results.getOptionsCount(), (long) from + pageSize);
+        if (to > results.getOptions().size())
+            return null;
+
+        return new OptionsPage(results, page, pages,
+                results.getOptions().subList(from, to),
+                results.getPercentages().subList(from, to));
+    }
+
+    /**
+     * Returns the page with the specified number of options of the poll with
+     * the specified {@code pollID} if it is contained in the snapshot the
+     * engine already materialized. Database isn't accessed, so this method can
+     * be called on a container thread.
+     *
+     * @param engine
+     *            the results engine
+     * @param pollID
+     *            the ID of the poll
+     * @param page
+     *            the number of the page, starting from 1
+     * @param pageSize
+     *            the number of options per page
+     * @return the page or {@code null} if it isn't in a materialized snapshot
+     */
+    public static OptionsPage cached(ResultsEngine engine, long pollID, int page, int pageSize) {
+        PollResults results = engine.getCachedResults(pollID);
+        return results == null ? null : of(results, page, pageSize);
+    }
+
+    /**
+     * Returns the page with the specified number of options of the poll with
+     * the specified {@code pollID} or {@code null} if that poll doesn't exist.
+     * Options that are not contained in the snapshot of the poll are read from
+     * the {@link DAO} returned by {@link DAOProvider}.
+     *
+     * @param pendingVotes
+     *            the aggregator whose pending votes are added to the page or
+     *            {@code null} if client has no pending votes
+     * @param engine
+     *            the results engine
+     * @param pollID
+     *            the ID of the poll
+     * @param page
+     *            the number of the page, starting from 1
+     * @param pageSize
+     *            the number of options per page
+     * @return the page or {@code null} if poll doesn't exist
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    public static OptionsPage load(VoteAggregator pendingVotes, ResultsEngine engine, long pollID, int page,
+            int pageSize) throws DAOException {
+        if (pendingVotes == null)
+            return load(engine, pollID, page, pageSize);
+
+        return pendingVotes.readWithPendingVotes(
+                pollID,
+                () -> load(engine, pollID, page, pageSize),
+                (options, votes) -> options == null ? null : options.withPendingVotes(votes, pageSize));
+    }
+
+    /**
+     * Returns the page with the specified number of options of the poll with
+     * the specified {@code pollID} without votes that are still pending or
+     * {@code null} if that poll doesn't exist.
+     *
+     * @param engine
+     *            the results engine
+     * @param pollID
+     *            the ID of the poll
+     * @param page
+     *            the number of the page, starting from 1
+     * @param pageSize
+     *            the number of options per page
+     * @return the page or {@code null} if poll doesn't exist
+     * @throws DAOException
+     *             if some exception occurs
+     */
+    private static OptionsPage load(ResultsEngine engine, long pollID, int page, int pageSize)
+            throws DAOException {
+        PollResults results = engine.getResults(pollID);
+        if (results == null)
+            return null;
+
+        OptionsPage snapshotPage = of(results, page, pageSize);
+        if (snapshotPage != null)
+            return snapshotPage;
+
+        List<PollOption> options = DAOProvider.getDao().getPollOptions(
+                pollID,
+                (int) Math.min(Integer.MAX_VALUE, (page - 1L) * pageSize),
+                pageSize);
+        return new OptionsPage(results, page, countPages(results, pageSize), options,
+                percentages(options, results.getTotalVotes()));
+    }
+
+    /**
+     * Returns the number of the page requested by {@code page} parameter of
+     * the specified request; {@code 1} if parameter is not given and
+     * {@code 0} if it is not a number.
+     *
+     * @param req
+     *            the request
+     * @return the number of the requested page
+     */
+    public static int parsePage(HttpServletRequest req) {
+        if (req.getParameter("page") == null)
+            return 1;
+
+        try {
+            return Integer.parseInt(req.getParameter("page"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the snapshot of results the page belongs to.
+     *
+     * @return the snapshot of results
+     */
+    public PollResults getResults() {
+        return results;
+    }
+
+    /**
+     * Returns the number of the page, starting from 1.
+     *
+     * @return the number of the page
+     */
+    public int getPage() {
+        return page;
+    }
+
+    /**
+     * Returns the number of pages.
+     *
+     * @return the number of pages
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Returns {@code true} if this page exists.
+     *
+     * @return {@code true} if page exists; {@code false} otherwise
+     */
+    public boolean exists() {
+        return page >= 1 && page <= pages;
+    }
+
+    /**
+     * Returns options of the page sorted by votes count.
+     *
+     * @return options of the page
+     */
+    public List<PollOption> getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns percentages of votes of options of the page in the same order
+     * as {@link #getOptions()}.
+     *
+     * @return percentages of votes of options of the page
+     */
+    public List<Double> getPercentages() {
+        return percentages;
+    }
+
+    /**
+     * Returns this page with the specified pending votes added to its snapshot
+     * and its options.
+     *
+     * @param votes
+     *            the number of pending votes per poll option ID
+     * @param pageSize
+     *            the number of options per page
+     * @return the page with pending votes
+     */
+    private OptionsPage withPendingVotes(Map<Long, Long> votes, int pageSize) {
+        if (votes.isEmpty())
+            return this;
+
+        long pending = votes.values().stream().mapToLong(Long::longValue).sum();
+        PollResults overlaid = new PollResults(results.getPoll(), withPendingVotes(results.getOptions(), votes),
+                results.getOptionsCount(), results.getTotalVotes() + pending, results.getVersion());
+
+        OptionsPage snapshotPage = of(overlaid, page, pageSize);
+        if (snapshotPage != null)
+            return snapshotPage;
+
+        List<PollOption> pageOptions = withPendingVotes(options, votes);
+        return new OptionsPage(overlaid, page, pages, pageOptions,
+                percentages(pageOptions, overlaid.getTotalVotes()));
+    }
+
+    /**
+     * Returns copies of the specified options with pending votes added to
+     * their votes count sorted by votes count.
+     *
+     * @param options
+     *            the options
+     * @param votes
+     *            the number of pending votes per poll option ID
+     * @return the options with pending votes
+     */
+    private static List<PollOption> withPendingVotes(List<PollOption> options, Map<Long, Long> votes) {
+        List<PollOption> overlaid = new ArrayList<>(options.size());
+        for (PollOption option : options) {
+            Long pending = votes.get(option.getId());
+            overlaid.add(pending == null ? option
+                    : new PollOption(option.getId(), option.getOptionTitle(), option.getOptionLink(),
+                            option.getPollID(), option.getVotesCount() + pending));
+        }
+        overlaid.sort(PollDetails.BY_VOTES);
+
+        return overlaid;
+    }
+
+    /**
+     * Returns percentages of votes of the specified options.
+     *
+     * @param options
+     *            the options
+     * @param totalVotes
+     *            the total votes count of the poll
+     * @return percentages of votes of options
+     */
+    private static List<Double> percentages(List<PollOption> options, long totalVotes) {
+        List<Double> percentages = new ArrayList<>(options.size());
+        for (PollOption option : options) {
+            percentages.add(totalVotes == 0 ? 0.0 : 100.0 * option.getVotesCount() / totalVotes);
+        }
+
+        return percentages;
+    }
+
+    /**
+     * Returns the number of pages of the specified snapshot.
+     *
+     * @param results
+     *            the snapshot of results
+     * @param pageSize
+     *            the number of options per page
+     * @return the number of pages
+     */
+    private static int countPages(PollResults results, int pageSize) {
+        return (int) Math.max(1, (results.getOptionsCount() + (long) pageSize - 1) / pageSize);
+    }
+
+}
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.List;
 import javax.imageio.ImageIO;
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -19,52 +20,136 @@ import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.data.general.PieDataset;
 import org.jfree.util.Rotation;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
 import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
 
 /**
  * {@code CreateImage} is a {@link HttpServlet} class that generates 3d pie
- * chart image of vote count.
+ * chart image of vote count. Options beyond the first {@code slices}(init
+ * parameter) are folded into a single "Ostalo" slice.
+ * <p>
+ * Conditional requests are handled by {@link ConditionalGet} so chart is not
+ * rendered if client already has the current one. Results are read from the
+ * snapshot the engine already holds on the container thread, or otherwise by
+ * the {@link AsyncDAO} while request is suspended. Slices are taken from the
+ * snapshot of the poll and read by the paged query of the DAO only if
+ * snapshot contains less options than there are slices(see
+ * {@link OptionsPage}).
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "glasanje-grafika", urlPatterns = { "/glasanje-grafika" })
+@WebServlet(
+        name = "glasanje-grafika",
+        urlPatterns = { "/glasanje-grafika" },
+        asyncSupported = true,
+        initParams = {
+                @WebInitParam(name = "slices", value = "10"),
+                @WebInitParam(name = "maxAge", value = "5"),
+                @WebInitParam(name = "staleWhileRevalidate", value = "30") })
 public class PieChartServlet extends HttpServlet {
 
     /** Serial version UID. */
     private static final long serialVersionUID = -1758457747813761483L;
 
+    /** Title of the slice that contains votes of all other options. */
+    private static final String OTHER_SLICE = "Ostalo";
     /** Background color of the pie chart. */
     private static final Paint BACKGROUND_COLOR = new Color(0xFF, 0xFF, 0xFF, 0);
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        long pollID = Long.parseLong(req.getParameter("pollID"));
-        List<PollOption> pollOptions = DAOProvider.getDao().getPollOptionByPollID(pollID);
+        long pollID = -1;
+        try {
+            pollID = Long.parseLong(req.getParameter("pollID"));
+        } catch (NumberFormatException e) {
+            resp.sendError(400, "Invalid pollID parameter.");
+            return;
+        }
+
+        ResultsEngine engine = (ResultsEngine) req.getServletContext().getAttribute(Initialization.RESULTS_ATTRIBUTE);
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        long finalPollID = pollID;
+        VoteAggregator pendingVotes = ConnectionSetterFilter.pendingVotes(req);
+        int slices = Integer.parseInt(getInitParameter("slices"));
+
+        OptionsPage cached = pendingVotes == null ? OptionsPage.cached(engine, pollID, 1, slices) : null;
+        if (cached != null) {
+            render(req, resp, engine, cached);
+            return;
+        }
+
+        AsyncProcessing.process(
+                req,
+                dao.submit(() -> OptionsPage.load(pendingVotes, engine, finalPollID, 1, slices)),
+                top -> render(req, resp, engine, top));
+    }
 
-        JFreeChart chart = createChart(createDataset(pollOptions), "");
+    /**
+     * Writes the pie chart of the specified results to the response.
+     *
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @param engine
+     *            the results engine
+     * @param top
+     *            the options that get their own slice or {@code null} if poll
+     *            doesn't exist
+     * @return always {@code null} because response is written
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private String render(HttpServletRequest req, HttpServletResponse resp, ResultsEngine engine,
+            OptionsPage top) throws IOException {
+        if (top == null) {
+            resp.sendError(400, "Invalid pollID parameter.");
+            return null;
+        }
+
+        PollResults results = top.getResults();
+        if (ConditionalGet.isNotModified(this, req, resp, engine.getETag(results), results.getTimestamp()))
+            return null;
+
+        JFreeChart chart = createChart(createDataset(results, top.getOptions()), "");
         BufferedImage image = chart.createBufferedImage(400, 400);
 
         resp.setContentType("image/png");
         ImageIO.write(image, "png", resp.getOutputStream());
+        return null;
     }
 
     /**
      * Creates and returns the set of data that will be displayed on the chart.
+     * Only {@code top} options get their own slice; votes of all other options
+     * are shown as a single slice.
      * 
-     * @param nominees
-     *            list of nominees that will displayed in chart
+     * @param results
+     *            results of the poll that will displayed in chart
+     * @param top
+     *            the options with the most votes that get their own slice
      * @return the set of data that will be displayed on the chart
      */
-    private static PieDataset createDataset(List<PollOption> nominees) {
+    private static PieDataset createDataset(PollResults results, List<PollOption> top) {
         DefaultPieDataset result = new DefaultPieDataset();
 
-        nominees.forEach(o -> {
+        long other = results.getTotalVotes();
+        for (PollOption o : top) {
             result.setValue(o.getOptionTitle(), o.getVotesCount());
-        });
+            other -= o.getVotesCount();
+        }
+
+        if (top.size() < results.getOptionsCount()) {
+            result.setValue(OTHER_SLICE, other);
+        }
 
         return result;
     }
@@ -1,19 +1,20 @@
 package hr.fer.zemris.java.tecaj_13.servlets;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAO;
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
-import hr.fer.zemris.java.tecaj_13.model.Poll;
-import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
 
 /**
  * {@code ResultsServlet} is a {@link HttpServlet} class that loads poll results
@@ -21,12 +22,30 @@ import hr.fer.zemris.java.tecaj_13.model.PollOption;
  * <p>
  * In order to use this servlet you need to provided parameter {@code pollId}
  * which indicates the id of the poll you want to display results of.
+ * <p>
+ * Results are read from the {@link ResultsEngine} snapshot of the poll. If
+ * the engine already holds the snapshot the page is rendered on the container
+ * thread; otherwise snapshot is built by the {@link AsyncDAO} while request is
+ * suspended.
+ * Conditional requests are handled by {@link ConditionalGet}.
+ * <p>
+ * Options are shown page by page sorted by votes count; page size is set by
+ * {@code pageSize} init parameter and page is selected by {@code page}
+ * parameter. Pages beyond the options contained in the snapshot are read by
+ * the paged query of the DAO(see {@link OptionsPage}).
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "glasanje-rezultati", urlPatterns = "/glasanje-rezultati")
+@WebServlet(
+        name = "glasanje-rezultati",
+        urlPatterns = "/glasanje-rezultati",
+        asyncSupported = true,
+        initParams = {
+                @WebInitParam(name = "pageSize", value = "50"),
+                @WebInitParam(name = "maxAge", value = "0"),
+                @WebInitParam(name = "staleWhileRevalidate", value = "0") })
 public class ResultsServlet extends HttpServlet {
 
     /** Serial version UID. */
@@ -34,7 +53,6 @@ public class ResultsServlet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        DAO dao = DAOProvider.getDao();
         long pollID = -1;
         try {
             pollID = Long.parseLong(req.getParameter("pollID"));
@@ -42,45 +60,67 @@ public class ResultsServlet extends HttpServlet {
             resp.sendError(400, "Invalid pollID parameter.");
             return;
         }
-        Poll poll = dao.getPoll(pollID);
-        List<PollOption> pollOptions = dao.getPollOptionByPollID(pollID);
 
-        if (pollOptions == null) {
-            resp.sendError(400, "Invalid pollID parameter.");
+        ResultsEngine engine = (ResultsEngine) req.getServletContext().getAttribute(Initialization.RESULTS_ATTRIBUTE);
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        long finalPollID = pollID;
+        VoteAggregator pendingVotes = ConnectionSetterFilter.pendingVotes(req);
+        int page = OptionsPage.parsePage(req);
+        int pageSize = Integer.parseInt(getInitParameter("pageSize"));
+
+        OptionsPage cached = pendingVotes == null ? OptionsPage.cached(engine, pollID, page, pageSize) : null;
+        if (cached != null) {
+            String view = render(req, resp, engine, cached);
+            if (view != null) {
+                req.getRequestDispatcher(view).forward(req, resp);
+            }
             return;
         }
 
-        req.setAttribute("poll", poll);
-        req.setAttribute("pollOptions", pollOptions);
-        req.setAttribute("winners", getWinners(pollOptions));
-
-        req.getRequestDispatcher("/WEB-INF/pages/glasanje-rezultati.jsp").forward(req, resp);
+        AsyncProcessing.process(
+                req,
+                dao.submit(() -> OptionsPage.load(pendingVotes, engine, finalPollID, page, pageSize)),
+                options -> render(req, resp, engine, options));
     }
 
     /**
-     * Returns the winner of the votes.
-     * <p>
-     * <b>Note:</b> more than one winner can exist if they have the same number
-     * of votes and therefore the list is returned
-     * 
-     * @param pollOptions
-     *            list of all poll options
-     * @return list of winners
+     * Sets the specified page of results as request attributes.
+     *
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @param engine
+     *            the results engine
+     * @param options
+     *            the page of results or {@code null} if poll doesn't exist
+     * @return the page that renders results or {@code null} if error was sent
+     * @throws IOException
+     *             if an I/O error occurs
      */
-    private static List<PollOption> getWinners(List<PollOption> pollOptions) {
-        pollOptions.sort((o1, o2) -> Long.compare(o2.getVotesCount(), o1.getVotesCount()));
-
-        List<PollOption> winners = new ArrayList<>();
-
-        long maxVotes = pollOptions.get(0).getVotesCount();
+    private String render(HttpServletRequest req, HttpServletResponse resp, ResultsEngine engine,
+            OptionsPage options) throws IOException {
+        if (options == null) {
+            resp.sendError(400, "Invalid pollID parameter.");
+            return null;
+        }
+        if (!options.exists()) {
+            resp.sendError(400, "Invalid page parameter.");
+            return null;
+        }
 
-        for (int i = 0, length = pollOptions.size(); i < length; i++) {
-            if (maxVotes != pollOptions.get(i).getVotesCount())
-                break;
+        PollResults results = options.getResults();
+        if (ConditionalGet.isNotModified(this, req, resp, engine.getETag(results), results.getTimestamp()))
+            return null;
 
-            winners.add(pollOptions.get(i));
-        }
+        req.setAttribute("poll", results.getPoll());
+        req.setAttribute("pollOptions", options.getOptions());
+        req.setAttribute("percentages", options.getPercentages());
+        req.setAttribute("page", options.getPage());
+        req.setAttribute("pages", options.getPages());
+        req.setAttribute("winners", results.getWinners());
 
-        return winners;
+        return "/WEB-INF/pages/glasanje-rezultati.jsp";
     }
+
 }
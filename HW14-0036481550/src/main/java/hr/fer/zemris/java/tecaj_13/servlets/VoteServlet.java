@@ -1,30 +1,38 @@
 package hr.fer.zemris.java.tecaj_13.servlets;
 
 import java.io.IOException;
-import java.util.List;
 
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAO;
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
-import hr.fer.zemris.java.tecaj_13.model.Poll;
-import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
 
 /**
  * {@code VoteServlet} is a {@link HttpServlet} class that loads poll and
  * redirects to {@code glasaj.jsp} page.
  * <p>
- * Poll(and its options) are chosen with {@code pollId} parameter.
+ * Poll(and its options) are chosen with {@code pollId} parameter and read from
+ * the {@link ResultsEngine} snapshot of the poll by the {@link AsyncDAO} while
+ * request is suspended. Options are shown page by page sorted by votes count;
+ * page size is set by {@code pageSize} init parameter and page is selected by
+ * {@code page} parameter. Pages beyond the options contained in the snapshot
+ * are read by the paged query of the DAO(see {@link OptionsPage}).
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "glasaj", urlPatterns = "/glasaj")
+@WebServlet(
+        name = "glasaj",
+        urlPatterns = "/glasaj",
+        asyncSupported = true,
+        initParams = @WebInitParam(name = "pageSize", value = "50"))
 public class VoteServlet extends HttpServlet {
 
     /** Serial version UID. */
@@ -40,21 +48,48 @@ public class VoteServlet extends HttpServlet {
             return;
         }
 
-        DAO dao = DAOProvider.getDao();
-        Poll poll = dao.getPoll(pollID);
-        
-        if(poll == null) {
+        ResultsEngine engine = (ResultsEngine) req.getServletContext().getAttribute(Initialization.RESULTS_ATTRIBUTE);
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        long finalPollID = pollID;
+        int page = OptionsPage.parsePage(req);
+        int pageSize = Integer.parseInt(getInitParameter("pageSize"));
+
+        AsyncProcessing.process(
+                req,
+                dao.submit(() -> OptionsPage.load(null, engine, finalPollID, page, pageSize)),
+                options -> render(req, resp, options));
+    }
+
+    /**
+     * Sets the specified page of options as request attributes.
+     *
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @param options
+     *            the page of options or {@code null} if poll doesn't exist
+     * @return the page that renders the poll or {@code null} if error was sent
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private String render(HttpServletRequest req, HttpServletResponse resp, OptionsPage options)
+            throws IOException {
+        if (options == null) {
             resp.sendError(400, "Invalid pollID parameter.");
-            return;
+            return null;
+        }
+        if (!options.exists()) {
+            resp.sendError(400, "Invalid page parameter.");
+            return null;
         }
-        
-        List<PollOption> pollOptions = dao.getPollOptionByPollID(pollID);
-        pollOptions.sort((o1, o2) -> Long.compare(o2.getVotesCount(), o1.getVotesCount()));
 
-        req.setAttribute("poll", poll);
-        req.setAttribute("pollOptions", pollOptions);
+        req.setAttribute("poll", options.getResults().getPoll());
+        req.setAttribute("pollOptions", options.getOptions());
+        req.setAttribute("page", options.getPage());
+        req.setAttribute("pages", options.getPages());
 
-        req.getRequestDispatcher("/WEB-INF/pages/glasaj.jsp").forward(req, resp);
+        return "/WEB-INF/pages/glasaj.jsp";
     }
 
 }
@@ -3,6 +3,7 @@ package hr.fer.zemris.java.tecaj_13.servlets;
 import java.io.IOException;
 import java.util.List;
 import javax.servlet.ServletException;
+import javax.servlet.annotation.WebInitParam;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -12,8 +13,13 @@ import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 
-import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.ConnectionSetterFilter;
+import hr.fer.zemris.java.tecaj_13.Initialization;
+import hr.fer.zemris.java.tecaj_13.dao.AsyncDAO;
 import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
 
 /**
  * {@code GlasanjeXlsServlet} is a {@link HttpServlet} class that generates Excel
@@ -21,12 +27,24 @@ import hr.fer.zemris.java.tecaj_13.model.PollOption;
  * count.
  * <p>
  * Poll is selected with 'pollID' parameter.(e.g. "/glasanje-xls?pollID=2")
+ * <p>
+ * Conditional requests are handled by {@link ConditionalGet} so spreadsheet is
+ * not generated if client already has the current one. Results are read by
+ * the {@link AsyncDAO} while request is suspended; options that are not
+ * contained in the snapshot of the poll are read by the paged query of the
+ * DAO(see {@link OptionsPage}).
  * 
  * @author Karlo Vrbić
  * @version 1.0
  * @see HttpServlet
  */
-@WebServlet(name = "glasanje-xls", urlPatterns = { "/glasanje-xls" })
+@WebServlet(
+        name = "glasanje-xls",
+        urlPatterns = { "/glasanje-xls" },
+        asyncSupported = true,
+        initParams = {
+                @WebInitParam(name = "maxAge", value = "5"),
+                @WebInitParam(name = "staleWhileRevalidate", value = "30") })
 public class XLSServlet extends HttpServlet {
 
 
@@ -36,26 +54,63 @@ public class XLSServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        HSSFWorkbook hwb = new HSSFWorkbook();
-
         long pollID = -1;
         try {
             pollID = Long.parseLong(req.getParameter("pollID"));
         } catch (NumberFormatException e) {
             resp.sendError(400, "Invalid pollID parameter.");
-            hwb.close();
             return;
         }
         
-        List<PollOption> pollOptions = DAOProvider.getDao().getPollOptionByPollID(pollID);
-        
-        createSheet(hwb, pollOptions);
-        
-        
-        resp.setContentType("application/xls");
-        resp.setHeader("Content-Disposition", "attachment; filename=results_poll" + pollID + ".xls");
+        ResultsEngine engine = (ResultsEngine) req.getServletContext().getAttribute(Initialization.RESULTS_ATTRIBUTE);
+        AsyncDAO dao = (AsyncDAO) req.getServletContext().getAttribute(Initialization.ASYNC_DAO_ATTRIBUTE);
+        long finalPollID = pollID;
+        VoteAggregator pendingVotes = ConnectionSetterFilter.pendingVotes(req);
+
+        AsyncProcessing.process(
+                req,
+                dao.submit(() -> OptionsPage.load(pendingVotes, engine, finalPollID, 1, Integer.MAX_VALUE)),
+                options -> render(req, resp, engine, options, finalPollID));
+    }
+
+    /**
+     * Writes the spreadsheet of the specified results to the response.
+     *
+     * @param req
+     *            the request
+     * @param resp
+     *            the response
+     * @param engine
+     *            the results engine
+     * @param options
+     *            all options of the poll or {@code null} if poll doesn't exist
+     * @param pollID
+     *            the ID of the poll
+     * @return always {@code null} because response is written
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private String render(HttpServletRequest req, HttpServletResponse resp, ResultsEngine engine,
+            OptionsPage options, long pollID) throws IOException {
+        if (options == null) {
+            resp.sendError(400, "Invalid pollID parameter.");
+            return null;
+        }
+
+        PollResults results = options.getResults();
+        if (ConditionalGet.isNotModified(this, req, resp, engine.getETag(results), results.getTimestamp()))
+            return null;
+
+        try (HSSFWorkbook hwb = new HSSFWorkbook()) {
+            createSheet(hwb, options.getOptions());
 
-        hwb.write(resp.getOutputStream());
+            resp.setContentType("application/xls");
+            resp.setHeader("Content-Disposition", "attachment; filename=results_poll" + pollID + ".xls");
+
+            hwb.write(resp.getOutputStream());
+        }
+
+        return null;
     }
 
     /**
@@ -63,13 +118,11 @@ public class XLSServlet extends HttpServlet {
      * appropriate data to it.
      * 
      * @param pollOptions
-     *            list of poll options
+     *            list of poll options sorted by their vote count
      * @param hwb
      *            excel spreadsheet
      */
     private static void createSheet(HSSFWorkbook hwb, List<PollOption> pollOptions) {
-        pollOptions.sort((o1, o2) -> Long.compare(o2.getVotesCount(), o1.getVotesCount()));
-
         HSSFSheet sheet = hwb.createSheet("Results");
 
         for (int i = 0, length = pollOptions.size(); i < length; i++) {
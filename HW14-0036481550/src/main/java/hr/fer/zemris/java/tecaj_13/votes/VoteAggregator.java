@@ -0,0 +1,461 @@
+package hr.fer.zemris.java.tecaj_13.votes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLConnectionProvider;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code VoteAggregator} is a write-behind buffer for votes. Votes are counted
+ * in striped in-memory counters(one {@link LongAdder} per poll option) so
+ * concurrent voters never contend for the same database row.
+ * <p>
+ * Accumulated votes are written to the database as a single batch every
+ * {@code flushInterval} milliseconds or as soon as number of pending votes
+ * reaches {@code flushThreshold}, whichever comes first. If writing fails votes
+ * are kept and written with the next flush.
+ * <p>
+ * If aggregator is given a {@link VoteJournal} every vote is durably written
+ * to the journal before it is counted. Votes left in the journal by a previous
+ * run are counted as pending votes when aggregator is constructed and
+ * journal segments are deleted only after votes contained in them are written
+ * to database. The number of the last journal segment whose votes are written
+ * is recorded as a checkpoint in the same transaction, so segments left behind
+ * by a crash right after that transaction are not counted again.
+ * <p>
+ * Every flush closes a generation of votes. {@link #addVote(long, long)}
+ * returns the generation the vote was counted in, and a reader that must see
+ * that vote(e.g. the voter reading results) while {@link #isFlushed(long)}
+ * returns {@code false} reads through
+ * {@link #readWithPendingVotes(long, Supplier, BiFunction)}, which adds the
+ * pending votes of the poll to what it read without writing them. Pending
+ * votes are written only by periodic and threshold triggered flushes.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class VoteAggregator {
+
+    /** Prefix of the names of metrics registered by this aggregator. */
+    private static final String METRICS_PREFIX = "votes.aggregator.";
+
+    /** Data source used for flushing votes to database. */
+    private final DataSource ds;
+    /** Journal that makes pending votes durable; may be {@code null}. */
+    private final VoteJournal journal;
+    /** Number of milliseconds between two periodic flushes. */
+    private final long flushInterval;
+    /** Number of pending votes that triggers a flush. */
+    private final long flushThreshold;
+    /** Generation new votes are counted in; changed under the write lock. */
+    private volatile long generation = 1;
+    /** The last generation whose votes are written to database. */
+    private volatile long flushedGeneration;
+    /**
+     * Number of times counters were drained plus number of times drained
+     * votes were written or returned; odd while a flush is writing votes.
+     */
+    private volatile long flushStamp;
+    /**
+     * Lock that makes journal rotation and draining of counters atomic in
+     * respect to adding votes.
+     */
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    /**
+     * Votes that are not yet written to database mapped by poll ID and then by
+     * poll option ID.
+     */
+    private final Map<Long, Map<Long, LongAdder>> counters = new ConcurrentHashMap<>();
+    /** Number of votes that are not yet written to database. */
+    private final LongAdder pendingVotes = new LongAdder();
+    /** Number of votes written to database. */
+    private final LongAdder flushedVotes = new LongAdder();
+    /** Number of successful flushes. */
+    private final LongAdder flushes = new LongAdder();
+    /** Number of failed flushes. */
+    private final LongAdder failedFlushes = new LongAdder();
+    /** Flag that is set while threshold triggered flush is scheduled. */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /** Executor that runs flushes. */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new {@code VoteAggregator} and starts periodic flushing.
+     *
+     * @param ds
+     *            data source used for flushing votes to database
+     * @param journal
+     *            journal that makes pending votes durable or {@code null} if
+     *            votes shouldn't be journaled
+     * @param flushInterval
+     *            number of milliseconds between two periodic flushes
+     * @param flushThreshold
+     *            number of pending votes that triggers a flush
+     * @throws NullPointerException
+     *             if {@code ds} parameter is a {@code null} reference
+     * @throws IllegalArgumentException
+     *             if {@code flushInterval} or {@code flushThreshold} parameter
+     *             is not a positive number
+     * @throws UncheckedIOException
+     *             if votes couldn't be recovered from the journal
+     */
+    public VoteAggregator(DataSource ds, VoteJournal journal, long flushInterval, long flushThreshold) {
+        if (flushInterval <= 0)
+            throw new IllegalArgumentException("Flush interval must be a positive number.");
+        if (flushThreshold <= 0)
+            throw new IllegalArgumentException("Flush threshold must be a positive number.");
+
+        this.ds = Objects.requireNonNull(ds, "You cannot flush votes to a null reference as a data source.");
+        this.journal = journal;
+        this.flushInterval = flushInterval;
+        this.flushThreshold = flushThreshold;
+
+        if (journal != null) {
+            long[] checkpoint = new long[1];
+            SQLConnectionProvider.runWithConnection(
+                    ds,
+                    () -> checkpoint[0] = DAOProvider.getDao().getJournalCheckpoint());
+
+            try {
+                journal.recover(checkpoint[0]).forEach(
+                        (pollID, votes) -> votes.forEach((id, count) -> count(pollID, id, count)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Votes couldn't be recovered from the journal.", e);
+            }
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "vote-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+
+        Metrics.register(METRICS_PREFIX + "pending", this::getPendingVotes);
+        Metrics.register(METRICS_PREFIX + "flushed", flushedVotes::sum);
+        Metrics.register(METRICS_PREFIX + "flushes", flushes::sum);
+        Metrics.register(METRICS_PREFIX + "failedFlushes", failedFlushes::sum);
+    }
+
+    /**
+     * Adds one vote to the poll option with the specified {@code id}. If this
+     * aggregator has a journal this method returns after vote is durably
+     * written to it.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param id
+     *            the ID of the poll option
+     * @return the generation the vote was counted in
+     * @throws IOException
+     *             if vote couldn't be written to the journal
+     */
+    public long addVote(long pollID, long id) throws IOException {
+        long ticket = 0;
+        long counted;
+
+        rotationLock.readLock().lock();
+        try {
+            if (journal != null) {
+                ticket = journal.write(id, pollID);
+            }
+            count(pollID, id, 1L);
+            counted = generation;
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+
+        if (journal != null) {
+            journal.sync(ticket);
+        }
+
+        if (pendingVotes.sum() >= flushThreshold && flushScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+
+        return counted;
+    }
+
+    /**
+     * Returns the number of milliseconds between two periodic flushes, which
+     * is the longest time a vote stays pending unless flushing fails.
+     *
+     * @return the flush interval in milliseconds
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Checks if votes of the specified generation are written to database.
+     * Generations this aggregator never reached(e.g. generations of a previous
+     * run of the application) are considered written.
+     *
+     * @param generation
+     *            the generation returned by {@link #addVote(long, long)}
+     * @return {@code true} if votes of the generation are written;
+     *         {@code false} otherwise
+     */
+    public boolean isFlushed(long generation) {
+        return generation <= flushedGeneration || generation > this.generation;
+    }
+
+    /**
+     * Reads a value with {@code reader} and returns the result of
+     * {@code overlay} applied to it and the votes of the poll with the
+     * specified {@code pollID} that are not yet written to database. Votes
+     * aren't written by this method, so reader sees database and results
+     * published from it without them and overlay adds them.
+     * <p>
+     * If a flush writes votes while value is read, value is read again, so
+     * every vote is either contained in the value or passed to overlay, but
+     * never both. If a flush is writing votes when this method is called, it
+     * waits for it to finish.
+     *
+     * @param <T>
+     *            the type of the value
+     * @param pollID
+     *            the ID of the poll
+     * @param reader
+     *            reads the value from database or results published from it
+     * @param overlay
+     *            adds pending votes, given as votes per poll option ID, to
+     *            the value
+     * @return the value with pending votes
+     */
+    public <T> T readWithPendingVotes(long pollID, Supplier<T> reader, BiFunction<T, Map<Long, Long>, T> overlay) {
+        while (true) {
+            long stamp = flushStamp;
+            if ((stamp & 1) != 0) {
+                // flush holds the monitor while it writes votes
+                synchronized (this) {
+                    stamp = flushStamp;
+                }
+            }
+
+            T value = reader.get();
+            Map<Long, Long> pending = getPendingVotes(pollID);
+            if (flushStamp == stamp)
+                return overlay.apply(value, pending);
+        }
+    }
+
+    /**
+     * Returns the votes of the poll with the specified {@code pollID} that are
+     * not yet written to database.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @return the number of pending votes per poll option ID
+     */
+    public Map<Long, Long> getPendingVotes(long pollID) {
+        Map<Long, Long> votes = new HashMap<>();
+        counters.getOrDefault(pollID, Collections.emptyMap()).forEach((id, counter) -> {
+            long count = counter.sum();
+            if (count != 0) {
+                votes.put(id, count);
+            }
+        });
+
+        return votes;
+    }
+
+    /**
+     * Writes all pending votes to database unless votes of the specified
+     * generation are already written. Callers that wait for the same
+     * generation while a flush is running share it.
+     *
+     * @param generation
+     *            the generation returned by {@link #addVote(long, long)}
+     * @throws UncheckedIOException
+     *             if an I/O error occurs while working with the journal
+     * @see #flush()
+     */
+    public void flush(long generation) {
+        if (isFlushed(generation))
+            return;
+
+        synchronized (this) {
+            if (!isFlushed(generation)) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of votes that are not yet written to database.
+     *
+     * @return the number of pending votes
+     */
+    public long getPendingVotes() {
+        return pendingVotes.sum();
+    }
+
+    /**
+     * Writes all pending votes to database as a single batch. If writing fails
+     * votes are returned to counters and {@link hr.fer.zemris.java.tecaj_13.dao.DAOException
+     * DAOException} is thrown.
+     *
+     * @throws UncheckedIOException
+     *             if an I/O error occurs while working with the journal
+     */
+    public synchronized void flush() {
+        Map<Long, Long> votes = new LinkedHashMap<>();
+        Map<Long, Long> polls = new HashMap<>();
+        long checkpoint = -1;
+        long closed;
+
+        rotationLock.writeLock().lock();
+        try {
+            if (journal != null) {
+                checkpoint = journal.rotate();
+            }
+            closed = generation++;
+
+            flushStamp++;
+            counters.forEach((pollID, pollCounters) -> pollCounters.forEach((id, counter) -> {
+                long delta = counter.sum();
+                if (delta != 0) {
+                    counter.add(-delta);
+                    votes.put(id, delta);
+                    polls.put(id, pollID);
+                }
+            }));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal couldn't be rotated.", e);
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+
+        try {
+            long total = votes.values().stream().mapToLong(Long::longValue).sum();
+
+            if (!votes.isEmpty()) {
+                long segment = checkpoint;
+                try {
+                    SQLConnectionProvider.runWithConnection(ds, () -> {
+                        if (segment < 0) {
+                            DAOProvider.getDao().updatePollOptionsVotesCount(votes);
+                        } else {
+                            DAOProvider.getDao().updatePollOptionsVotesCount(votes, segment);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    votes.forEach((id, delta) -> counter(polls.get(id), id).add(delta));
+                    failedFlushes.increment();
+                    throw e;
+                }
+
+                pendingVotes.add(-total);
+                flushedVotes.add(total);
+                flushes.increment();
+            }
+            flushedGeneration = closed;
+        } finally {
+            flushStamp++;
+        }
+
+        if (journal != null) {
+            try {
+                journal.deleteClosedSegments();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Checkpointed journal segments couldn't be deleted.", e);
+            }
+        }
+    }
+
+    /**
+     * Stops periodic flushing and writes all pending votes to database.
+     */
+    public void close() {
+        scheduler.shutdown();
+
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+        } finally {
+            Metrics.unregister(METRICS_PREFIX);
+
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds {@code votes} votes to the pending votes of the poll option with
+     * the specified {@code id}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param id
+     *            the ID of the poll option
+     * @param votes
+     *            votes to be added
+     */
+    private void count(long pollID, long id, long votes) {
+        counter(pollID, id).add(votes);
+        pendingVotes.add(votes);
+    }
+
+    /**
+     * Returns the counter of pending votes of the poll option with the
+     * specified {@code id}.
+     *
+     * @param pollID
+     *            the ID of the poll
+     * @param id
+     *            the ID of the poll option
+     * @return the counter of pending votes
+     */
+    private LongAdder counter(long pollID, long id) {
+        return counters.computeIfAbsent(pollID, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(id, k -> new LongAdder());
+    }
+
+    /**
+     * Writes all pending votes to database and prints the stack trace if
+     * writing fails.
+     *
+     * @see #flush()
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
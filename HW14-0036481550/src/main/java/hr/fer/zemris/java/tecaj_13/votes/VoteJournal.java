@@ -0,0 +1,332 @@
+package hr.fer.zemris.java.tecaj_13.votes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code VoteJournal} is a durable append-only log of votes. Every vote is
+ * written as a fixed-size binary record(poll option ID, poll ID and timestamp)
+ * to the current segment file in the journal directory.
+ * <p>
+ * Writing a record and forcing it to disk are separate steps. Threads that
+ * wait for their records to be forced share a single {@code fsync}(group
+ * commit): the thread that forces the segment makes durable all records
+ * written up to that moment, so threads queued behind it return without
+ * forcing again.
+ * <p>
+ * When votes are checkpointed(written to database) the current segment is
+ * closed by {@link #rotate()}, which returns the sequence number of the last
+ * closed segment, and closed segments are deleted by
+ * {@link #deleteClosedSegments()}. Database records that number in the same
+ * transaction as the votes, so segments that exist when journal is opened are
+ * recovered by {@link #recover(long)} only if their number is greater than the
+ * recorded checkpoint.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class VoteJournal implements Closeable {
+
+    /** Size of one record in bytes. */
+    public static final int RECORD_SIZE = 3 * Long.BYTES;
+
+    /** Prefix of the names of metrics registered by this journal. */
+    private static final String METRICS_PREFIX = "votes.journal.";
+    /** Prefix of segment file names. */
+    private static final String SEGMENT_PREFIX = "votes-";
+    /** Suffix of segment file names. */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /** Directory that contains segment files. */
+    private final Path dir;
+    /** Lock that guards writing to the current segment. */
+    private final Object writeLock = new Object();
+    /** Lock that guards forcing the current segment to disk. */
+    private final Object syncLock = new Object();
+    /** Buffer used for writing one record. */
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    /** Segments that are closed but not yet deleted. */
+    private final List<Path> closedSegments = new ArrayList<>();
+    /** Number of written records. */
+    private final LongAdder records = new LongAdder();
+    /** Number of times a segment was forced to disk. */
+    private final LongAdder syncs = new LongAdder();
+
+    /** Channel of the current segment. */
+    private FileChannel channel;
+    /** Path of the current segment. */
+    private Path segment;
+    /** Sequence number of the current segment. */
+    private long segmentNumber;
+    /** Number of records written to the current segment. */
+    private long segmentRecords;
+    /** Ticket of the last written record. */
+    private long written;
+    /** Ticket of the last record forced to disk. */
+    private long synced;
+
+    /**
+     * Opens a journal in the specified {@code dir}. Directory is created if it
+     * doesn't exist. Already existing segments are treated as closed segments.
+     *
+     * @param dir
+     *            the journal directory
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws NullPointerException
+     *             if {@code dir} parameter is a {@code null} reference
+     */
+    public VoteJournal(Path dir) throws IOException {
+        this.dir = Objects.requireNonNull(dir, "You cannot open a journal in a null reference as a directory.");
+
+        Files.createDirectories(dir);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                closedSegments.add(path);
+                segmentNumber = Math.max(segmentNumber, parseSegmentNumber(path));
+            }
+        }
+        closedSegments.sort(null);
+
+        openSegment();
+
+        Metrics.register(METRICS_PREFIX + "records", records::sum);
+        Metrics.register(METRICS_PREFIX + "syncs", syncs::sum);
+    }
+
+    /**
+     * Returns the number of votes per poll option of every poll contained in
+     * closed segments with sequence number greater than {@code checkpoint}, i.e.
+     * votes that were written before this journal was opened and were never
+     * checkpointed. Segments up to and including the checkpoint are deleted.
+     * Incomplete record at the end of a segment is ignored.
+     * <p>
+     * If journal directory was emptied while the checkpoint was kept, the
+     * current segment is reopened with a number greater than the checkpoint,
+     * so its votes are recovered after a crash.
+     *
+     * @param checkpoint
+     *            the sequence number of the last segment whose votes are
+     *            written to database
+     * @return the number of votes per poll option ID mapped by poll ID
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public Map<Long, Map<Long, Long>> recover(long checkpoint) throws IOException {
+        Map<Long, Map<Long, Long>> votes = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+
+        synchronized (writeLock) {
+            while (!closedSegments.isEmpty() && parseSegmentNumber(closedSegments.get(0)) <= checkpoint) {
+                Files.deleteIfExists(closedSegments.remove(0));
+            }
+
+            if (segmentNumber <= checkpoint && segmentRecords == 0) {
+                channel.close();
+                Files.deleteIfExists(segment);
+                segmentNumber = checkpoint;
+                openSegment();
+            }
+
+            for (Path path : closedSegments) {
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                    buffer.clear();
+
+                    while (ch.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.remaining() >= RECORD_SIZE) {
+                            long optionID = buffer.getLong();
+                            long pollID = buffer.getLong();
+                            buffer.getLong();
+                            votes.computeIfAbsent(pollID, k -> new HashMap<>()).merge(optionID, 1L, Long::sum);
+                        }
+                        buffer.compact();
+                    }
+                }
+            }
+        }
+
+        return votes;
+    }
+
+    /**
+     * Writes a vote record to the current segment. Record is not durable until
+     * {@link #sync(long)} is called with the returned ticket.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @param pollID
+     *            the ID of the poll
+     * @return the ticket of the written record
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public long write(long optionID, long pollID) throws IOException {
+        synchronized (writeLock) {
+            record.clear();
+            record.putLong(optionID).putLong(pollID).putLong(System.currentTimeMillis());
+            record.flip();
+
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+
+            segmentRecords++;
+            records.increment();
+            return ++written;
+        }
+    }
+
+    /**
+     * Blocks until the record with the specified {@code ticket} is forced to
+     * disk. If some other thread is already forcing the segment this method
+     * waits for it and forces the segment only if record still isn't
+     * durable.
+     *
+     * @param ticket
+     *            the ticket returned by {@link #write(long, long)}
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void sync(long ticket) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= ticket)
+                return;
+
+            long target;
+            FileChannel ch;
+            synchronized (writeLock) {
+                target = written;
+                ch = channel;
+            }
+
+            ch.force(false);
+            syncs.increment();
+            synced = target;
+        }
+    }
+
+    /**
+     * Writes a vote record and blocks until it is forced to disk.
+     *
+     * @param optionID
+     *            the ID of the poll option
+     * @param pollID
+     *            the ID of the poll
+     * @throws IOException
+     *             if an I/O error occurs
+     * @see #write(long, long)
+     * @see #sync(long)
+     */
+    public void append(long optionID, long pollID) throws IOException {
+        sync(write(optionID, pollID));
+    }
+
+    /**
+     * Forces and closes the current segment and opens a new one. If current
+     * segment is empty it is not closed.
+     *
+     * @return the sequence number of the last closed segment; all votes
+     *         written before this call are in segments up to and including it
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public long rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                if (segmentRecords == 0)
+                    return segmentNumber - 1;
+
+                channel.force(false);
+                syncs.increment();
+                synced = written;
+                channel.close();
+                closedSegments.add(segment);
+
+                openSegment();
+                return segmentNumber - 1;
+            }
+        }
+    }
+
+    /**
+     * Deletes all closed segments. This method should be called only after
+     * votes contained in them are checkpointed.
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public void deleteClosedSegments() throws IOException {
+        synchronized (writeLock) {
+            while (!closedSegments.isEmpty()) {
+                Files.deleteIfExists(closedSegments.get(0));
+                closedSegments.remove(0);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (writeLock) {
+                channel.force(false);
+                synced = written;
+                channel.close();
+
+                if (segmentRecords == 0) {
+                    Files.deleteIfExists(segment);
+                }
+            }
+        }
+
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+    /**
+     * Opens a new segment with the next sequence number.
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private void openSegment() throws IOException {
+        segmentNumber++;
+        segment = dir.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segmentRecords = 0;
+    }
+
+    /**
+     * Returns the sequence number of the segment at the specified
+     * {@code path}.
+     *
+     * @param path
+     *            the path of the segment
+     * @return the sequence number of the segment or {@code 0} if file name is
+     *         not a valid segment name
+     */
+    private static long parseSegmentNumber(Path path) {
+        String name = path.getFileName().toString();
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
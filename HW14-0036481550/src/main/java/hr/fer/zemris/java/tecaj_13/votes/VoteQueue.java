@@ -0,0 +1,149 @@
+package hr.fer.zemris.java.tecaj_13.votes;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import hr.fer.zemris.java.tecaj_13.concurrent.ThreadFactories;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * {@code VoteQueue} is a bounded queue of vote commands drained by a small
+ * fixed number of writer threads. Commands do the blocking work of recording
+ * a vote(e.g. database and journal I/O) so servlet container threads never
+ * wait for it.
+ * <p>
+ * When queue is full new commands are rejected instead of being queued so
+ * caller can tell the client to retry later.
+ * <p>
+ * Writers can be virtual threads(see {@link ThreadFactories}), in which case
+ * writers that wait for database don't block any platform thread.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class VoteQueue {
+
+    /** Prefix of the names of metrics registered by this queue. */
+    private static final String METRICS_PREFIX = "votes.queue.";
+
+    /** Executor that runs commands. */
+    private final ThreadPoolExecutor executor;
+    /** Number of rejected commands. */
+    private final LongAdder rejected = new LongAdder();
+    /** Number of commands that started running. */
+    private final LongAdder started = new LongAdder();
+    /** Total time commands spent waiting in queue in nanoseconds. */
+    private final LongAdder totalWait = new LongAdder();
+    /** Longest time a command spent waiting in queue in nanoseconds. */
+    private final AtomicLong maxWait = new AtomicLong();
+
+    /**
+     * Constructs a new {@code VoteQueue} and starts its writer threads, which
+     * are daemon platform threads.
+     *
+     * @param capacity
+     *            maximum number of commands waiting in queue
+     * @param writers
+     *            number of writer threads
+     * @throws IllegalArgumentException
+     *             if {@code capacity} or {@code writers} parameter is not a
+     *             positive number
+     */
+    public VoteQueue(int capacity, int writers) {
+        this(capacity, writers, ThreadFactories.create("vote-writer-", false));
+    }
+
+    /**
+     * Constructs a new {@code VoteQueue} and starts its writer threads.
+     *
+     * @param capacity
+     *            maximum number of commands waiting in queue
+     * @param writers
+     *            number of writer threads
+     * @param threads
+     *            the factory of writer threads
+     * @throws IllegalArgumentException
+     *             if {@code capacity} or {@code writers} parameter is not a
+     *             positive number
+     * @throws NullPointerException
+     *             if {@code threads} parameter is a {@code null} reference
+     */
+    public VoteQueue(int capacity, int writers, ThreadFactory threads) {
+        Objects.requireNonNull(threads, "You cannot create writers by a null reference as a thread factory.");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Queue capacity must be a positive number.");
+        if (writers <= 0)
+            throw new IllegalArgumentException("Number of writers must be a positive number.");
+
+        executor = new ThreadPoolExecutor(
+                writers,
+                writers,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                threads);
+
+        Metrics.register(METRICS_PREFIX + "depth", () -> executor.getQueue().size());
+        Metrics.register(METRICS_PREFIX + "rejected", rejected::sum);
+        Metrics.register(METRICS_PREFIX + "maxWaitMillis", () -> TimeUnit.NANOSECONDS.toMillis(maxWait.get()));
+        Metrics.register(METRICS_PREFIX + "avgWaitMillis", () -> {
+            long count = started.sum();
+            return count == 0 ? 0.0 : totalWait.sum() / 1e6 / count;
+        });
+    }
+
+    /**
+     * Queues the specified {@code command}. Command will be run by one of the
+     * writer threads.
+     *
+     * @param command
+     *            the command
+     * @return {@code true} if command was queued; {@code false} if queue is
+     *         full
+     * @throws NullPointerException
+     *             if {@code command} parameter is a {@code null} reference
+     */
+    public boolean offer(Runnable command) {
+        Objects.requireNonNull(command, "You cannot queue a null reference as a command.");
+
+        long queued = System.nanoTime();
+
+        try {
+            executor.execute(() -> {
+                long wait = System.nanoTime() - queued;
+                started.increment();
+                totalWait.add(wait);
+                maxWait.accumulateAndGet(wait, Math::max);
+
+                command.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops accepting new commands and waits for queued commands to finish.
+     */
+    public void close() {
+        executor.shutdown();
+
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Metrics.unregister(METRICS_PREFIX);
+    }
+
+}
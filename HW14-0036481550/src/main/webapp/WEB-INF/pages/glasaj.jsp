@@ -55,6 +55,23 @@
                                 </tr>
                             </c:if>
                         </c:forEach>
+                        <c:if test="${pages > 1}">
+                            <tr>
+                                <td>
+                                    <c:if test="${page > 1}">
+                                        <div class="fancy-link"
+                                            onclick="location.href='/webapp-baza/glasaj?pollID=${poll.id}&page=${page - 1}';">
+                                            Prethodna stranica</div>
+                                    </c:if>
+                                    <c:out value="${page} / ${pages}" />
+                                    <c:if test="${page < pages}">
+                                        <div class="fancy-link"
+                                            onclick="location.href='/webapp-baza/glasaj?pollID=${poll.id}&page=${page + 1}';">
+                                            Sljedeća stranica</div>
+                                    </c:if>
+                                </td>
+                            </tr>
+                        </c:if>
                     </tbody>
                 </table>
             </div>
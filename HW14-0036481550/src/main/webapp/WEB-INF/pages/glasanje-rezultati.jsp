@@ -1,5 +1,6 @@
 <%@ page contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c"%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/fmt" prefix="fmt"%>
 
 <%@ page session="true"%>
 
@@ -43,21 +44,40 @@
                 <table id="no-hover-table">
                     <thead>
                         <tr>
-                            <th colspan="2">Rezultati glasanja</th>
+                            <th colspan="3">Rezultati glasanja</th>
                         </tr>
                         <tr>
                             <th>Odabir</th>
                             <th>Broj glasova</th>
+                            <th>Postotak</th>
                         </tr>
                     </thead>
 
                     <tbody>
-                        <c:forEach var="options" items="${pollOptions}">
+                        <c:forEach var="options" items="${pollOptions}" varStatus="status">
                             <tr>
                                 <td><c:out value="${options.optionTitle}" /></td>
                                 <td><c:out value="${options.votesCount}" /></td>
+                                <td><fmt:formatNumber value="${percentages[status.index]}" maxFractionDigits="1" />%</td>
                             </tr>
                         </c:forEach>
+                        <c:if test="${pages > 1}">
+                            <tr>
+                                <td colspan="3">
+                                    <c:if test="${page > 1}">
+                                        <div class="fancy-link"
+                                            onclick="location.href='/webapp-baza/glasanje-rezultati?pollID=${poll.id}&page=${page - 1}';">
+                                            Prethodna stranica</div>
+                                    </c:if>
+                                    <c:out value="${page} / ${pages}" />
+                                    <c:if test="${page < pages}">
+                                        <div class="fancy-link"
+                                            onclick="location.href='/webapp-baza/glasanje-rezultati?pollID=${poll.id}&page=${page + 1}';">
+                                            Sljedeća stranica</div>
+                                    </c:if>
+                                </td>
+                            </tr>
+                        </c:if>
                     </tbody>
                 </table>
             </div>
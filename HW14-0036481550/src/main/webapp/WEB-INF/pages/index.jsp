@@ -45,6 +45,21 @@
                                 </td>
                             </tr>
                         </c:forEach>
+                        <c:if test="${not firstPage or not empty next}">
+                            <tr>
+                                <td>
+                                    <c:if test="${not firstPage}">
+                                        <div class="fancy-link" onclick="location.href='/webapp-baza/index.html';">
+                                            Prva stranica</div>
+                                    </c:if>
+                                    <c:if test="${not empty next}">
+                                        <div class="fancy-link"
+                                            onclick="location.href='/webapp-baza/index.html?after=${next}';">
+                                            Sljedeća stranica</div>
+                                    </c:if>
+                                </td>
+                            </tr>
+                        </c:if>
                     </tbody>
                 </table>
             </div>
@@ -0,0 +1,87 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code Benchmarks} is a small harness for throughput benchmarks that are
+ * run from their {@code main} methods rather than by the test runner. Every
+ * measurement is preceded by a warm-up run of the same length.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class Benchmarks {
+
+    /**
+     * Runs {@code operation} repeatedly from {@code threads} threads for
+     * {@code millis} milliseconds after a warm-up of the same length and
+     * returns the number of operations per second.
+     *
+     * @param threads
+     *            the number of threads running the operation
+     * @param millis
+     *            the duration of the measurement in milliseconds
+     * @param operation
+     *            the measured operation
+     * @return the number of operations per second
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    public static double throughput(int threads, long millis, Runnable operation) throws InterruptedException {
+        measure(threads, millis, operation);
+        return measure(threads, millis, operation);
+    }
+
+    /**
+     * Runs {@code operation} repeatedly from {@code threads} threads for
+     * {@code millis} milliseconds and returns the number of operations per
+     * second.
+     *
+     * @param threads
+     *            the number of threads running the operation
+     * @param millis
+     *            the duration of the measurement in milliseconds
+     * @param operation
+     *            the measured operation
+     * @return the number of operations per second
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    private static double measure(int threads, long millis, Runnable operation) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    operation.run();
+                    operations.increment();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        Thread.sleep(millis);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        return operations.sum() * 1e9 / (System.nanoTime() - started);
+    }
+
+}
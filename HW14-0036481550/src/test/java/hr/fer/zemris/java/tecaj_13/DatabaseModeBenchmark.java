@@ -0,0 +1,174 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLConnectionProvider;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLDAO;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SchemaMigrator;
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+
+/**
+ * Compares the latency of a request's database work when the database is
+ * embedded with the latency when it is reached over the network. Both
+ * databases are reached through pools made by the factories used by
+ * {@link Initialization}, so every operation checks a connection out, reads
+ * or updates one poll option and releases the connection, like a request
+ * does.
+ * <p>
+ * Embedded database is created in a temporary directory and deleted
+ * afterwards. Network Server isn't started by the benchmark; to measure it
+ * pass host, port, database name, user and password of a running one as
+ * arguments, otherwise only the embedded database is measured. Run it from
+ * its {@code main} method.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class DatabaseModeBenchmark {
+
+    /** Number of operations timed for every latency measurement. */
+    private static final int OPERATIONS = 20000;
+    /** Number of concurrent threads of the throughput measurement. */
+    private static final int THREADS = 8;
+    /** Duration of the throughput measurement in milliseconds. */
+    private static final long MILLIS = 3000;
+    /** Measured percentiles. */
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            host, port, database name, user and password of a running
+     *            Network Server or nothing to measure only the embedded
+     *            database
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 0 && args.length != 5) {
+            System.err.println("Expected arguments: [host port name user password]");
+            return;
+        }
+
+        Path directory = Files.createTempDirectory("embedded-benchmark");
+        Properties config = new Properties();
+        config.setProperty("user", "benchmark");
+        config.setProperty("password", "benchmark");
+        config.setProperty("pool.maxStatementsPerConnection", "64");
+
+        String databaseURL = PoolFactory.getConnectionURL(config, directory.resolve("db").toString());
+        InstrumentedDataSource embedded = EmbeddedDatabaseFactory.open(databaseURL, config);
+        try {
+            measure("embedded", embedded);
+        } finally {
+            PoolFactory.destroy(embedded);
+            EmbeddedDatabaseFactory.shutdown(databaseURL);
+            delete(directory);
+        }
+
+        if (args.length == 0) {
+            System.out.println("network  skipped, no Network Server given");
+            return;
+        }
+
+        config.setProperty("host", args[0]);
+        config.setProperty("port", args[1]);
+        config.setProperty("name", args[2]);
+        config.setProperty("user", args[3]);
+        config.setProperty("password", args[4]);
+        InstrumentedDataSource network = PoolFactory.openClient(config);
+        try {
+            measure("network", network);
+        } finally {
+            PoolFactory.destroy(network);
+        }
+    }
+
+    /**
+     * Migrates the schema of the database, adds a poll option and prints the
+     * latency of reading and of updating it and the read throughput of
+     * {@link #THREADS} threads.
+     *
+     * @param mode
+     *            the name of the database mode
+     * @param ds
+     *            the connection pool of the database
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    private static void measure(String mode, InstrumentedDataSource ds) throws InterruptedException {
+        SQLDAO dao = new SQLDAO();
+        long[] option = new long[1];
+        SQLConnectionProvider.runWithConnection(ds, () -> {
+            SchemaMigrator.migrate();
+            long pollID = dao.addPoll("Benchmark " + System.nanoTime(), "Benchmark.");
+            option[0] = dao.addPollOption("Benchmark " + System.nanoTime(), "http://benchmark.com", pollID, 0);
+        });
+
+        Runnable read = () -> SQLConnectionProvider.runWithConnection(ds, () -> dao.getPollOption(option[0]));
+        long[] votes = new long[1];
+        Runnable update = () -> SQLConnectionProvider.runWithConnection(
+                ds,
+                () -> dao.updatePollOptionsVotesCount(option[0], ++votes[0]));
+
+        System.out.println(mode + " read   " + latency(read));
+        System.out.println(mode + " update " + latency(update));
+        System.out.printf("%s read   %,.0f/s with %d threads%n", mode,
+                Benchmarks.throughput(THREADS, MILLIS, read), THREADS);
+    }
+
+    /**
+     * Runs {@code operation} {@link #OPERATIONS} times to warm up and as many
+     * times more timing every run, and returns the percentiles of the timed
+     * runs.
+     *
+     * @param operation
+     *            the measured operation
+     * @return the percentiles of latency in microseconds
+     */
+    private static String latency(Runnable operation) {
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+
+        long[] nanos = new long[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        StringBuilder sb = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.min(OPERATIONS - 1, Math.ceil(percentile / 100 * OPERATIONS) - 1);
+            sb.append(String.format("p%s %,8.1f us  ", percentile == (long) percentile
+                    ? Long.toString((long) percentile) : Double.toString(percentile), nanos[index] / 1000.0));
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Deletes the specified directory with all its content.
+     *
+     * @param directory
+     *            the directory
+     * @throws IOException
+     *             if some file couldn't be deleted
+     */
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
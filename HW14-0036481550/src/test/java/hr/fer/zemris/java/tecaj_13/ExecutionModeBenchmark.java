@@ -0,0 +1,195 @@
+package hr.fer.zemris.java.tecaj_13;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.tecaj_13.concurrent.ThreadFactories;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLConnectionProvider;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SQLDAO;
+import hr.fer.zemris.java.tecaj_13.dao.sql.SchemaMigrator;
+import hr.fer.zemris.java.tecaj_13.pool.InstrumentedDataSource;
+
+/**
+ * Compares throughput and memory of {@link #REQUESTS} concurrent slow
+ * requests run by threads made by {@link ThreadFactories} with
+ * "execution.virtualThreads" off and on. Every request reads a poll option in
+ * its own connection scope from a pooled embedded Derby database and then
+ * spends {@link #SLOW_MILLIS} milliseconds blocked on its slow client.
+ * <p>
+ * Requests are run by a pool of {@link #CONTAINER_THREADS} platform threads,
+ * like a servlet container does, by a platform thread per request and by a
+ * virtual thread per request. Virtual threads are measured only if the
+ * running JDK supports them. Run it from its {@code main} method with a large
+ * enough heap, e.g. {@code -Xmx1g}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ExecutionModeBenchmark {
+
+    /** Number of concurrent requests. */
+    private static final int REQUESTS = 10_000;
+    /** Number of milliseconds every request is blocked on its slow client. */
+    private static final long SLOW_MILLIS = 200;
+    /** Number of threads of the container thread pool. */
+    private static final int CONTAINER_THREADS = 200;
+    /** Maximum number of pooled database connections. */
+    private static final int CONNECTIONS = 20;
+    /** Number of milliseconds between two samples of memory and threads. */
+    private static final long SAMPLE_MILLIS = 10;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            not used
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        Properties config = new Properties();
+        config.setProperty("user", "benchmark");
+        config.setProperty("password", "benchmark");
+        config.setProperty("pool.maxPoolSize", Integer.toString(CONNECTIONS));
+        config.setProperty("pool.maxStatementsPerConnection", "16");
+
+        String databaseURL = PoolFactory.getConnectionURL(config, "memory:execution");
+        InstrumentedDataSource ds = EmbeddedDatabaseFactory.open(databaseURL, config);
+        try {
+            SQLDAO dao = new SQLDAO();
+            long[] option = new long[1];
+            SQLConnectionProvider.runWithConnection(ds, () -> {
+                SchemaMigrator.migrate();
+                option[0] = dao.addPollOption("Option", "http://option.com", dao.addPoll("Poll", "Poll."), 0);
+            });
+            Runnable request = () -> {
+                SQLConnectionProvider.runWithConnection(ds, () -> dao.getPollOption(option[0]));
+                try {
+                    Thread.sleep(SLOW_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+
+            for (int run = 0; run < 2; run++) {
+                boolean warmUp = run == 0;
+                ExecutorService container = Executors.newFixedThreadPool(
+                        CONTAINER_THREADS,
+                        ThreadFactories.create("container-", false));
+                try {
+                    measure("platform pool(" + CONTAINER_THREADS + ")", container, request, warmUp);
+                } finally {
+                    container.shutdown();
+                }
+
+                measure("platform per request", perRequest(ThreadFactories.create("request-", false)), request,
+                        warmUp);
+
+                if (ThreadFactories.isVirtualSupported()) {
+                    measure("virtual per request", perRequest(ThreadFactories.create("virtual-", true)), request,
+                            warmUp);
+                } else if (!warmUp) {
+                    System.out.println("virtual per request: skipped, virtual threads are not supported by this JDK");
+                }
+            }
+        } finally {
+            PoolFactory.destroy(ds);
+            EmbeddedDatabaseFactory.shutdown(databaseURL);
+        }
+    }
+
+    /**
+     * Returns an executor that runs every task on a new thread made by the
+     * specified {@code factory}.
+     *
+     * @param factory
+     *            the thread factory
+     * @return the executor
+     */
+    private static Executor perRequest(ThreadFactory factory) {
+        return task -> factory.newThread(task).start();
+    }
+
+    /**
+     * Runs {@link #REQUESTS} requests at once on the specified
+     * {@code executor} and, unless it is a warm-up, prints their throughput,
+     * the peak of heap used above the heap used before they started and the
+     * peak number of live platform threads.
+     *
+     * @param mode
+     *            the name of the execution mode
+     * @param executor
+     *            the executor that runs requests
+     * @param request
+     *            the request
+     * @param warmUp
+     *            {@code true} if results shouldn't be printed
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    private static void measure(String mode, Executor executor, Runnable request, boolean warmUp)
+            throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        threads.resetPeakThreadCount();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong peakHeap = new AtomicLong(baseline);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        long start = System.nanoTime();
+        int submitted = 0;
+        OutOfMemoryError failure = null;
+        try {
+            for (; submitted < REQUESTS; submitted++) {
+                executor.execute(() -> {
+                    try {
+                        request.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+        } catch (OutOfMemoryError e) {
+            failure = e;
+            for (int i = submitted; i < REQUESTS; i++) {
+                done.countDown();
+            }
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        sampler.join();
+
+        if (failure != null) {
+            System.out.println(mode + ": failed after " + submitted + " requests, " + failure.getMessage());
+        } else if (!warmUp) {
+            System.out.printf("%-22s %,10.0f requests/s, heap +%,7d KB, %,6d platform threads%n", mode,
+                    REQUESTS * 1e9 / elapsed, (peakHeap.get() - baseline) / 1024, threads.getPeakThreadCount());
+        }
+    }
+
+}
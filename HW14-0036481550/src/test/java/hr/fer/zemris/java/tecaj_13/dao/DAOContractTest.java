@@ -0,0 +1,295 @@
+package hr.fer.zemris.java.tecaj_13.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.model.Poll;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * Tests of the behavior every {@link DAO} implementation has to share.
+ * Subclasses provide the implementation under test.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public abstract class DAOContractTest {
+
+    /** The DAO under test. */
+    protected DAO dao;
+
+    /**
+     * Returns a new empty DAO under test.
+     *
+     * @return the DAO under test
+     */
+    protected abstract DAO createDAO();
+
+    /**
+     * Creates the DAO under test.
+     */
+    @Before
+    public void createDAOUnderTest() {
+        dao = createDAO();
+    }
+
+    /**
+     * Added poll can be read by its ID and by its title.
+     */
+    @Test
+    public void addedPollIsReadByIDAndTitle() {
+        long id = dao.addPoll("Bands", "Vote for a band.");
+
+        Poll byID = dao.getPoll(id);
+        assertEquals("Bands", byID.getTitle());
+        assertEquals("Vote for a band.", byID.getMessage());
+        assertEquals(id, dao.getPoll("Bands").getId());
+        assertEquals(1, dao.getAllPolls().size());
+    }
+
+    /**
+     * Missing polls and options are read as {@code null}.
+     */
+    @Test
+    public void missingEntriesAreNull() {
+        assertNull(dao.getPoll(42));
+        assertNull(dao.getPoll("Missing"));
+        assertNull(dao.getPollOption(42));
+        assertNull(dao.getPollOption("Missing"));
+        assertNull(dao.getPollDetails(42));
+    }
+
+    /**
+     * Poll titles are unique.
+     */
+    @Test(expected = DAOException.class)
+    public void duplicatePollTitleIsRejected() {
+        dao.addPoll("Bands", "Vote for a band.");
+        dao.addPoll("Bands", "Vote again.");
+    }
+
+    /**
+     * Adding a poll that exists returns the ID of the existing poll.
+     */
+    @Test
+    public void addPollIfDoesntExistReturnsExistingID() {
+        long id = dao.addPoll("Bands", "Vote for a band.");
+
+        assertEquals(id, dao.addPollIfDoesntExist("Bands", "Vote again."));
+        assertEquals("Vote for a band.", dao.getPoll(id).getMessage());
+        assertNotEquals(id, dao.addPollIfDoesntExist("Colors", "Vote for a color."));
+        assertEquals(2, dao.getAllPolls().size());
+    }
+
+    /**
+     * Polls are paged by ID.
+     */
+    @Test
+    public void pollsArePagedByID() {
+        long first = dao.addPoll("A", "a");
+        long second = dao.addPoll("B", "b");
+        long third = dao.addPoll("C", "c");
+
+        assertEquals(Arrays.asList(first, second), ids(dao.getPolls(0, 2)));
+        assertEquals(Arrays.asList(third), ids(dao.getPolls(second, 2)));
+        assertTrue(dao.getPolls(third, 2).isEmpty());
+    }
+
+    /**
+     * Added options belong to their poll.
+     */
+    @Test
+    public void addedOptionsBelongToTheirPoll() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long colors = dao.addPoll("Colors", "Vote for a color.");
+        long beatles = dao.addPollOption("The Beatles", "http://beatles.com", bands, 3);
+        dao.addPollOption("Red", "http://red.com", colors, 1);
+
+        PollOption option = dao.getPollOption(beatles);
+        assertEquals("The Beatles", option.getOptionTitle());
+        assertEquals("http://beatles.com", option.getOptionLink());
+        assertEquals(bands, option.getPollID());
+        assertEquals(3, option.getVotesCount());
+        assertEquals(beatles, dao.getPollOption("The Beatles").getId());
+        assertEquals(Arrays.asList(beatles), optionIDs(dao.getPollOptionByPollID(bands)));
+        assertEquals(2, dao.getAllPollOptions().size());
+    }
+
+    /**
+     * Option titles are unique within a poll.
+     */
+    @Test(expected = DAOException.class)
+    public void duplicateOptionTitleIsRejected() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        dao.addPollOption("The Beatles", "http://beatles.com", bands, 0);
+        dao.addPollOption("The Beatles", "http://beatles.org", bands, 0);
+    }
+
+    /**
+     * Adding an option that exists returns the ID of the existing option and
+     * keeps its votes.
+     */
+    @Test
+    public void addPollOptionIfDoesntExistReturnsExistingID() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long beatles = dao.addPollOption("The Beatles", "http://beatles.com", bands, 3);
+
+        assertEquals(beatles, dao.addPollOptionIfDoesntExist("The Beatles", "http://beatles.org", bands, 0));
+        assertEquals(3, dao.getPollOption(beatles).getVotesCount());
+    }
+
+    /**
+     * Options of a missing poll are rejected.
+     */
+    @Test(expected = DAOException.class)
+    public void optionOfMissingPollIsRejected() {
+        dao.addPollOption("The Beatles", "http://beatles.com", 42, 0);
+    }
+
+    /**
+     * Poll details and pages of options are sorted by votes count in
+     * descending order.
+     */
+    @Test
+    public void optionsAreSortedByVotes() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long few = dao.addPollOption("Few", "http://few.com", bands, 1);
+        long many = dao.addPollOption("Many", "http://many.com", bands, 5);
+        long some = dao.addPollOption("Some", "http://some.com", bands, 3);
+
+        PollDetails details = dao.getPollDetails(bands);
+        assertEquals(bands, details.getPoll().getId());
+        assertEquals(Arrays.asList(many, some, few), optionIDs(details.getOptions()));
+        assertEquals(Arrays.asList(many, some), optionIDs(dao.getPollOptions(bands, 0, 2)));
+        assertEquals(Arrays.asList(few), optionIDs(dao.getPollOptions(bands, 2, 2)));
+        assertEquals(Arrays.asList(bands), ids(dao.getPollDetails(Arrays.asList(bands, 42L)).values().stream()
+                .map(PollDetails::getPoll)
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Details of many polls are returned in the order of requested IDs,
+     * without missing polls and duplicates.
+     */
+    @Test
+    public void detailsOfManyPollsAreRead() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long colors = dao.addPoll("Colors", "Vote for a color.");
+        long foods = dao.addPoll("Foods", "Vote for a food.");
+
+        List<Long> requested = new ArrayList<>();
+        requested.add(foods);
+        for (long id = 1000; id < 1600; id++) {
+            requested.add(id);
+        }
+        requested.add(bands);
+        requested.add(foods);
+        requested.add(colors);
+
+        assertEquals(Arrays.asList(foods, bands, colors), new ArrayList<>(dao.getPollDetails(requested).keySet()));
+    }
+
+    /**
+     * Votes are added to options and votes of missing options are not
+     * counted.
+     */
+    @Test
+    public void votesAreAdded() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long first = dao.addPollOption("First", "http://first.com", bands, 0);
+        long second = dao.addPollOption("Second", "http://second.com", bands, 0);
+
+        assertEquals(1, dao.updatePollOptionsVotesCount(first, 2));
+        assertEquals(1, dao.updatePollOptionsVotesCount(first));
+        assertEquals(0, dao.updatePollOptionsVotesCount(42, 1));
+
+        Map<Long, Long> votes = new LinkedHashMap<>();
+        votes.put(second, 4L);
+        votes.put(42L, 1L);
+        int[] affected = dao.updatePollOptionsVotesCount(votes);
+        assertEquals(1, affected[0]);
+        assertEquals(0, affected[1]);
+
+        affected = dao.addVotes(Arrays.asList(new Vote(bands, first, 1), new Vote(bands, 42, 1)));
+        assertArrayEquals(new int[] { 1, 0 }, affected);
+
+        assertEquals(4, dao.getPollOption(first).getVotesCount());
+        assertEquals(4, dao.getPollOption(second).getVotesCount());
+    }
+
+    /**
+     * Journal checkpoint is recorded together with votes and is {@code 0}
+     * before any checkpoint is recorded.
+     */
+    @Test
+    public void journalCheckpointIsRecordedWithVotes() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long first = dao.addPollOption("First", "http://first.com", bands, 0);
+
+        assertEquals(0, dao.getJournalCheckpoint());
+
+        int[] affected = dao.updatePollOptionsVotesCount(Collections.singletonMap(first, 3L), 7);
+        assertArrayEquals(new int[] { 1 }, affected);
+        assertEquals(7, dao.getJournalCheckpoint());
+        assertEquals(3, dao.getPollOption(first).getVotesCount());
+
+        dao.updatePollOptionsVotesCount(Collections.emptyMap(), 8);
+        assertEquals(8, dao.getJournalCheckpoint());
+    }
+
+    /**
+     * Adding a poll definition adds only the missing options.
+     */
+    @Test
+    public void pollDefinitionAddsMissingOptions() {
+        PollDetails definition = new PollDetails(new Poll("Bands", "Vote for a band."), Arrays.asList(
+                new PollOption("First", "http://first.com", 0, 0),
+                new PollOption("Second", "http://second.com", 0, 2)));
+
+        long id = dao.addPollIfDoesntExist(definition);
+        dao.updatePollOptionsVotesCount(dao.getPollDetails(id).getOptions().get(0).getId(), 5);
+
+        assertEquals(id, dao.addPollIfDoesntExist(definition));
+        assertEquals(2, dao.getPollOptionByPollID(id).size());
+        assertEquals(7, dao.getPollOptionByPollID(id).stream().mapToLong(PollOption::getVotesCount).sum());
+    }
+
+    /**
+     * Returns the IDs of the specified polls.
+     *
+     * @param polls
+     *            the polls
+     * @return the IDs of the polls
+     */
+    private static List<Long> ids(List<Poll> polls) {
+        return polls.stream().map(Poll::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the IDs of the specified poll options.
+     *
+     * @param options
+     *            the poll options
+     * @return the IDs of the poll options
+     */
+    private static List<Long> optionIDs(List<PollOption> options) {
+        return options.stream().map(PollOption::getId).collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,70 @@
+package hr.fer.zemris.java.tecaj_13.dao.cache;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOContractTest;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.metrics.Metrics;
+
+/**
+ * Runs the {@link DAOContractTest} against the {@link CachingDAO} in front of
+ * a {@link MemoryDAO} and tests its caches.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class CachingDAOTest extends DAOContractTest {
+
+    @Override
+    protected DAO createDAO() {
+        return new CachingDAO(new MemoryDAO(), 1);
+    }
+
+    /**
+     * Options of an evicted list of options are removed from the index of
+     * cached options, and votes still invalidate the cached list.
+     */
+    @Test
+    public void evictedOptionsAreNotIndexed() {
+        long first = dao.addPoll("First", "Message");
+        long firstOption = dao.addPollOption("First option", "http://example.com/1", first, 0);
+        dao.addPollOption("Second option", "http://example.com/2", first, 0);
+        long second = dao.addPoll("Second", "Message");
+        dao.addPollOption("Third option", "http://example.com/3", second, 0);
+
+        dao.getPollOptionByPollID(first);
+        assertEquals(2, Metrics.snapshot().get("dao.cache.indexedOptions").intValue());
+
+        dao.getPollOptionByPollID(second);
+        assertEquals(1, Metrics.snapshot().get("dao.cache.indexedOptions").intValue());
+
+        dao.getPollOptionByPollID(first);
+        dao.updatePollOptionsVotesCount(firstOption, 3);
+        assertEquals(0, Metrics.snapshot().get("dao.cache.indexedOptions").intValue());
+        assertEquals(3, dao.getPollOption(firstOption).getVotesCount());
+    }
+
+    /**
+     * Modifying polls and options returned by the cache doesn't change what
+     * it returns later.
+     */
+    @Test
+    public void returnedObjectsAreCopies() {
+        long pollID = dao.addPoll("Poll", "Message");
+        long optionID = dao.addPollOption("Option", "http://example.com", pollID, 2);
+
+        dao.getPoll(pollID).setTitle("Changed");
+        dao.getPollOptionByPollID(pollID).get(0).setVotesCount(100);
+        dao.getPollDetails(pollID).getOptions().get(0).setVotesCount(100);
+        dao.getPollDetails(pollID).getPoll().setMessage("Changed");
+
+        assertEquals("Poll", dao.getPoll(pollID).getTitle());
+        assertEquals("Message", dao.getPoll(pollID).getMessage());
+        assertEquals(2, dao.getPollOption(optionID).getVotesCount());
+        assertEquals(2, dao.getPollDetails(pollID).getOptions().get(0).getVotesCount());
+    }
+
+}
@@ -0,0 +1,57 @@
+package hr.fer.zemris.java.tecaj_13.dao.memory;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOContractTest;
+
+/**
+ * Runs the {@link DAOContractTest} against the {@link MemoryDAO}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class MemoryDAOTest extends DAOContractTest {
+
+    /** Folder the snapshot is written to. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected DAO createDAO() {
+        return new MemoryDAO();
+    }
+
+    /**
+     * Journal checkpoint is written to the snapshot together with votes.
+     *
+     * @throws IOException
+     *             if snapshot couldn't be written
+     */
+    @Test
+    public void journalCheckpointIsSnapshotted() throws IOException {
+        Path snapshot = folder.getRoot().toPath().resolve("polls.snapshot");
+        MemoryDAO memory = new MemoryDAO(snapshot, 3_600_000);
+        long pollID = memory.addPoll("Poll", "Message");
+        long optionID = memory.addPollOption("Option", "http://example.com", pollID, 0);
+        memory.updatePollOptionsVotesCount(Collections.singletonMap(optionID, 2L), 5);
+        memory.close();
+
+        MemoryDAO loaded = new MemoryDAO(snapshot, 3_600_000);
+        try {
+            assertEquals(5, loaded.getJournalCheckpoint());
+            assertEquals(2, loaded.getPollOption(optionID).getVotesCount());
+        } finally {
+            loaded.close();
+        }
+    }
+
+}
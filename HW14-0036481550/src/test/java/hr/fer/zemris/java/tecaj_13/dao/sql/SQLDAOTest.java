@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOContractTest;
+
+/**
+ * Runs the {@link DAOContractTest} against the {@link SQLDAO} backed by a
+ * fresh in-memory embedded Derby database.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class SQLDAOTest extends DAOContractTest {
+
+    /** Source of unique database names. */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /** The name of the database of the current test. */
+    private String database;
+    /** The connection scope bound to the test thread. */
+    private ConnectionScope scope;
+    /** The connection scope that was bound before the test. */
+    private ConnectionScope previous;
+
+    /** Directory with poll definition files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected DAO createDAO() {
+        database = "memory:contract" + DATABASES.incrementAndGet();
+
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName(database);
+        ds.setCreateDatabase("create");
+        SQLConnectionProvider.runWithConnection(ds, SchemaMigrator::migrate);
+
+        scope = new ConnectionScope(ds);
+        previous = SQLConnectionProvider.bindScope(scope);
+        return new SQLDAO();
+    }
+
+    /**
+     * Journal checkpoint is recorded together with the votes.
+     */
+    @Test
+    public void journalCheckpointIsRecordedWithVotes() {
+        long bands = dao.addPoll("Bands", "Vote for a band.");
+        long option = dao.addPollOption("The Beatles", "http://beatles.com", bands, 0);
+        assertEquals(0, dao.getJournalCheckpoint());
+
+        dao.updatePollOptionsVotesCount(Collections.singletonMap(option, 3L), 7);
+
+        assertEquals(7, dao.getJournalCheckpoint());
+        assertEquals(3, dao.getPollOption(option).getVotesCount());
+    }
+
+    /**
+     * Loaded polls get the IDs generated for their own inserts, even when
+     * other polls already exist.
+     *
+     * @throws IOException
+     *             if poll definition files couldn't be written
+     */
+    @Test
+    public void loadedPollsGetTheirGeneratedIDs() throws IOException {
+        dao.addPoll("Existing", "Vote for anything.");
+        Path dir = folder.getRoot().toPath();
+        writePoll(dir.resolve("bands.properties"), "Bands", "The Beatles");
+        writePoll(dir.resolve("colors.properties"), "Colors", "Red");
+
+        PollLoader.Report report = new PollLoader((SQLDAO) dao).load(dir);
+
+        long bands = dao.getPoll("Bands").getId();
+        long colors = dao.getPoll("Colors").getId();
+        assertEquals(2, report.getInsertedPolls());
+        assertEquals(2, report.getInsertedOptions());
+        assertEquals(new HashSet<>(Arrays.asList(bands, colors)), report.getChangedPolls());
+        assertEquals(bands, dao.getPollOption("The Beatles").getPollID());
+        assertEquals(colors, dao.getPollOption("Red").getPollID());
+
+        assertEquals(0, new PollLoader((SQLDAO) dao).load(dir).getInsertedPolls());
+    }
+
+    /**
+     * Writes a poll definition file with a single option.
+     *
+     * @param file
+     *            the path to the file
+     * @param title
+     *            the title of the poll
+     * @param option
+     *            the title of the only option
+     * @throws IOException
+     *             if file couldn't be written
+     */
+    private static void writePoll(Path file, String title, String option) throws IOException {
+        String content = "title=" + title + "\nmessage=Vote.\nopt1_title=" + option + "\nopt1_link=http://x.com\n";
+        Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Releases the connection and drops the database of the test.
+     */
+    @After
+    public void dropDatabase() {
+        SQLConnectionProvider.bindScope(previous);
+        scope.release();
+
+        try {
+            DriverManager.getConnection("jdbc:derby:" + database + ";drop=true");
+        } catch (SQLException dropped) {
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the {@link SchemaMigrator}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class SchemaMigratorTest {
+
+    /** Source of unique database names. */
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    /** The name of the database of the current test. */
+    private String database;
+    /** The data source of the current test. */
+    private EmbeddedDataSource ds;
+
+    /**
+     * Creates an empty database.
+     */
+    @Before
+    public void createDatabase() {
+        database = "memory:migrator" + DATABASES.incrementAndGet();
+        ds = new EmbeddedDataSource();
+        ds.setDatabaseName(database);
+        ds.setCreateDatabase("create");
+    }
+
+    /**
+     * Drops the database of the test.
+     */
+    @After
+    public void dropDatabase() {
+        try {
+            DriverManager.getConnection("jdbc:derby:" + database + ";drop=true");
+        } catch (SQLException dropped) {
+        }
+    }
+
+    /**
+     * Database created before migrations existed that contains repeated poll
+     * and option titles is merged before unique constraints are added.
+     *
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    @Test
+    public void duplicatesAreMergedBeforeUniqueConstraints() throws SQLException {
+        try (Connection con = ds.getConnection(); Statement sta = con.createStatement()) {
+            sta.executeUpdate("CREATE TABLE Polls"
+                    + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
+                    + "title VARCHAR(150) NOT NULL,"
+                    + "message CLOB(2048) NOT NULL)");
+            sta.executeUpdate("CREATE TABLE PollOptions"
+                    + "(id BIGINT PRIMARY KEY GENERATED ALWAYS AS IDENTITY,"
+                    + " optionTitle VARCHAR(100) NOT NULL,"
+                    + " optionLink VARCHAR(150) NOT NULL,"
+                    + " pollID BIGINT, votesCount BIGINT,"
+                    + " FOREIGN KEY (pollID) REFERENCES Polls(id))");
+            sta.executeUpdate("CREATE TABLE PollOptionCounters"
+                    + "(optionId BIGINT NOT NULL,"
+                    + " shard INT NOT NULL,"
+                    + " delta BIGINT NOT NULL,"
+                    + " PRIMARY KEY (optionId, shard),"
+                    + " FOREIGN KEY (optionId) REFERENCES PollOptions(id))");
+
+            sta.executeUpdate("INSERT INTO Polls (title, message) VALUES ('Bands', 'first'), ('Bands', 'second')");
+            sta.executeUpdate("INSERT INTO PollOptions (optionTitle, optionLink, pollID, votesCount) VALUES"
+                    + " ('Beatles', 'a', 1, 1), ('Stones', 'b', 1, 2), ('Beatles', 'c', 2, 4), ('Doors', 'd', 2, 8)");
+            sta.executeUpdate("INSERT INTO PollOptionCounters VALUES (1, 0, 16), (3, 0, 32), (3, 1, 64)");
+        }
+
+        SQLConnectionProvider.runWithConnection(ds, SchemaMigrator::migrate);
+
+        assertEquals(rows("1 Bands"), query("SELECT id, title FROM Polls"));
+        assertEquals(rows("1 1 Beatles 101", "2 1 Stones 2", "4 1 Doors 8"),
+                query("SELECT id, pollID, optionTitle, votesCount FROM PollOptions ORDER BY id"));
+        assertEquals(rows("1 0 16"), query("SELECT optionId, shard, delta FROM PollOptionCounters"));
+        assertEquals(rows("1 Beatles 117"),
+                query("SELECT id, optionTitle, votesCount FROM PollOptionTotals WHERE optionTitle='Beatles'"));
+    }
+
+    /**
+     * Servers that migrate the same database at the same time apply every
+     * migration exactly once.
+     *
+     * @throws Exception
+     *             if migration fails
+     */
+    @Test
+    public void concurrentMigrationsApplyEveryMigrationOnce() throws Exception {
+        SQLConnectionProvider.runWithConnection(ds, () -> {
+        });
+
+        ExecutorService servers = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                results.add(servers.submit(() -> {
+                    int[] applied = new int[1];
+                    SQLConnectionProvider.runWithConnection(ds, () -> applied[0] = SchemaMigrator.migrate());
+                    return applied[0];
+                }));
+            }
+
+            int applied = 0;
+            for (Future<Integer> result : results) {
+                applied += result.get();
+            }
+
+            List<String> versions = query("SELECT version FROM SchemaVersion ORDER BY version");
+            assertEquals(versions.size(), applied);
+            assertEquals(Integer.toString(versions.size()), versions.get(versions.size() - 1));
+        } finally {
+            servers.shutdown();
+        }
+    }
+
+    /**
+     * Returns the rows of the specified {@code query} with columns separated
+     * by spaces.
+     *
+     * @param query
+     *            the query
+     * @return the rows of the query
+     * @throws SQLException
+     *             if a database access error occurs
+     */
+    private List<String> query(String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+
+        try (Connection con = ds.getConnection();
+                Statement sta = con.createStatement();
+                ResultSet rs = sta.executeQuery(query)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder(rs.getString(1));
+                for (int i = 2; i <= columns; i++) {
+                    row.append(' ').append(rs.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns the specified rows as a list.
+     *
+     * @param rows
+     *            the rows
+     * @return the list of rows
+     */
+    private static List<String> rows(String... rows) {
+        return new ArrayList<>(Arrays.asList(rows));
+    }
+
+}
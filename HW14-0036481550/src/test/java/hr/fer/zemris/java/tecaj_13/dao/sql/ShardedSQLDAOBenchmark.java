@@ -0,0 +1,90 @@
+package hr.fer.zemris.java.tecaj_13.dao.sql;
+
+import java.sql.SQLException;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+
+import hr.fer.zemris.java.tecaj_13.Benchmarks;
+
+/**
+ * Compares vote throughput of {@link SQLDAO} and {@link ShardedSQLDAO} when
+ * 1, 8 and 64 writers vote for the same poll option of an embedded Derby
+ * database. Every writer runs its statements on its own connection. Run it
+ * from its {@code main} method.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ShardedSQLDAOBenchmark {
+
+    /** Numbers of concurrent writers. */
+    private static final int[] WRITERS = { 1, 8, 64 };
+    /** Number of shards per poll option. */
+    private static final int SHARDS = 8;
+    /** Duration of every measurement in milliseconds. */
+    private static final long MILLIS = 3000;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            not used
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        for (int writers : WRITERS) {
+            System.out.printf("%2d writers: SQLDAO %,10.0f votes/s, ShardedSQLDAO(%d) %,10.0f votes/s%n",
+                    writers,
+                    measure(new SQLDAO(), "plain" + writers, 0, writers),
+                    SHARDS,
+                    measure(new ShardedSQLDAO(SHARDS), "sharded" + writers, SHARDS, writers));
+        }
+    }
+
+    /**
+     * Creates a database with one poll option and measures the number of
+     * votes per second {@code writers} threads add to it through {@code dao}.
+     *
+     * @param dao
+     *            the DAO that adds votes
+     * @param name
+     *            the name of the in-memory database
+     * @param shards
+     *            the number of counter shards to create or 0 for none
+     * @param writers
+     *            the number of writer threads
+     * @return the number of votes per second
+     * @throws InterruptedException
+     *             if the current thread is interrupted
+     */
+    private static double measure(SQLDAO dao, String name, int shards, int writers) throws InterruptedException {
+        EmbeddedDataSource ds = new EmbeddedDataSource();
+        ds.setDatabaseName("memory:" + name);
+        ds.setCreateDatabase("create");
+
+        long[] option = new long[1];
+        SQLConnectionProvider.runWithConnection(ds, () -> {
+            SchemaMigrator.migrate();
+            if (shards > 0) {
+                SQLUtils.createCounterShards(shards);
+            }
+            long pollID = dao.addPoll("Benchmark", "Benchmark poll.");
+            option[0] = dao.addPollOption("Hot", "http://hot.com", pollID, 0);
+        });
+
+        try {
+            return Benchmarks.throughput(writers, MILLIS,
+                    () -> SQLConnectionProvider.runWithConnection(ds,
+                            () -> dao.updatePollOptionsVotesCount(option[0], 1)));
+        } finally {
+            ds.setCreateDatabase(null);
+            ds.setConnectionAttributes("drop=true");
+            try {
+                ds.getConnection().close();
+            } catch (SQLException dropped) {
+            }
+        }
+    }
+
+}
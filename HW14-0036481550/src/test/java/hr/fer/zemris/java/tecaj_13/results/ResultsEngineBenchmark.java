@@ -0,0 +1,168 @@
+package hr.fer.zemris.java.tecaj_13.results;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.NotifyingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.model.PollDetails;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+
+/**
+ * JMH benchmark that compares reading results of a poll by sorting all its
+ * options on every read with reading them from the {@link ResultsEngine},
+ * both without votes between reads and with a vote before every read, for
+ * polls with 100, 1,000 and 10,000 options of the {@link MemoryDAO}. Run it
+ * from its {@code main} method with test classes, which contain the code
+ * generated by the JMH annotation processor, on the class path.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultsEngineBenchmark {
+
+    /** Number of options of the poll. */
+    @Param({ "100", "1000", "10000" })
+    public int options;
+
+    /** The DAO that was provided before the benchmark. */
+    private DAO previous;
+    /** The DAO whose writes are sent to the engine. */
+    private NotifyingDAO dao;
+    /** The engine under test. */
+    private ResultsEngine engine;
+    /** The ID of the poll. */
+    private long pollID;
+    /** IDs of options of the poll. */
+    private long[] optionIDs;
+
+    /**
+     * Creates the poll with {@link #options} options and the engine.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        MemoryDAO memory = new MemoryDAO();
+        pollID = memory.addPoll("Benchmark", "Benchmark poll.");
+        optionIDs = new long[options];
+        for (int i = 0; i < options; i++) {
+            optionIDs[i] = memory.addPollOption("Option " + i, "http://option.com/" + i, pollID, i % 97);
+        }
+
+        dao = new NotifyingDAO(memory);
+        engine = new ResultsEngine();
+        dao.addListener(engine);
+        previous = DAOProvider.getDao();
+        DAOProvider.setDao(dao);
+    }
+
+    /**
+     * Closes the engine and restores the provided DAO.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        engine.close();
+        DAOProvider.setDao(previous);
+    }
+
+    /**
+     * Reads results by sorting all options.
+     *
+     * @return the results of the poll
+     */
+    @Benchmark
+    public PollResults readSorted() {
+        return sort();
+    }
+
+    /**
+     * Reads results from the engine.
+     *
+     * @return the results of the poll
+     */
+    @Benchmark
+    public PollResults readEngine() {
+        return engine.getResults(pollID);
+    }
+
+    /**
+     * Votes for a random option and reads results by sorting all options.
+     *
+     * @return the results of the poll
+     */
+    @Benchmark
+    public PollResults voteAndReadSorted() {
+        vote();
+        return sort();
+    }
+
+    /**
+     * Votes for a random option and reads results from the engine.
+     *
+     * @return the results of the poll
+     */
+    @Benchmark
+    public PollResults voteAndReadEngine() {
+        vote();
+        return engine.getResults(pollID);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            not used
+     * @throws RunnerException
+     *             if the benchmark fails
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResultsEngineBenchmark.class.getName()).build()).run();
+    }
+
+    /**
+     * Adds one vote to a random option of the poll.
+     */
+    private void vote() {
+        dao.updatePollOptionsVotesCount(optionIDs[ThreadLocalRandom.current().nextInt(options)], 1);
+    }
+
+    /**
+     * Reads all options of the poll, sorts them by votes count and builds the
+     * results as results were read before the engine.
+     *
+     * @return the results of the poll
+     */
+    private PollResults sort() {
+        List<PollOption> sorted = new ArrayList<>(dao.getPollOptionByPollID(pollID));
+        sorted.sort(PollDetails.BY_VOTES);
+        return new PollResults(dao.getPoll(pollID), sorted, 0);
+    }
+
+}
@@ -0,0 +1,201 @@
+package hr.fer.zemris.java.tecaj_13.results;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOException;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.NotifyingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.model.PollResults;
+
+/**
+ * Tests of the {@link ResultsEngine}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class ResultsEngineTest {
+
+    /** Signalled when a flush is committed but not yet notified. */
+    private CountDownLatch committed;
+    /** Releases the committed flush. */
+    private CountDownLatch release;
+    /** The DAO votes are flushed to. */
+    private NotifyingDAO dao;
+    /** The engine under test. */
+    private ResultsEngine engine;
+    /** The ID of the poll. */
+    private long pollID;
+    /** The ID of the poll option. */
+    private long optionID;
+    /** The ID of the other poll. */
+    private long otherPollID;
+    /** The ID of the poll option of the other poll. */
+    private long otherOptionID;
+    /** The DAO that was provided before the test. */
+    private DAO previous;
+
+    /**
+     * Creates a poll with one option and registers the engine.
+     */
+    @Before
+    public void setUp() {
+        committed = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+
+        MemoryDAO memory = new MemoryDAO() {
+            @Override
+            public int[] updatePollOptionsVotesCount(Map<Long, Long> votes) throws DAOException {
+                int[] affected = super.updatePollOptionsVotesCount(votes);
+                committed.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return affected;
+            }
+        };
+        pollID = memory.addPoll("Poll", "Message");
+        optionID = memory.addPollOption("Option", "http://example.com", pollID, 3);
+        otherPollID = memory.addPoll("Other poll", "Message");
+        otherOptionID = memory.addPollOption("Other option", "http://example.com", otherPollID, 1);
+
+        dao = new NotifyingDAO(memory);
+        engine = new ResultsEngine();
+        dao.addListener(engine);
+        previous = DAOProvider.getDao();
+        DAOProvider.setDao(dao);
+    }
+
+    /**
+     * Unregisters the engine and restores the provided DAO.
+     */
+    @After
+    public void tearDown() {
+        engine.close();
+        DAOProvider.setDao(previous);
+    }
+
+    /**
+     * Loads results while a flush is committed but not yet notified; the
+     * flushed votes must be counted exactly once.
+     *
+     * @throws Exception
+     *             if the flush fails
+     */
+    @Test
+    public void coldLoadDuringFlushCountsVotesOnce() throws Exception {
+        ExecutorService flusher = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> flush = flusher.submit(() -> dao.updatePollOptionsVotesCount(
+                    Collections.singletonMap(optionID, 2L)));
+            committed.await();
+
+            assertEquals(5, engine.getResults(pollID).getTotalVotes());
+
+            release.countDown();
+            flush.get();
+        } finally {
+            release.countDown();
+            flusher.shutdown();
+        }
+
+        assertEquals(5, engine.getResults(pollID).getTotalVotes());
+    }
+
+    /**
+     * Loads results while a flush of votes of another poll is committed but
+     * not yet notified; the leaderboard must still be kept and the snapshot
+     * cached.
+     *
+     * @throws Exception
+     *             if the flush fails
+     */
+    @Test
+    public void flushOfOtherPollKeepsLoadedLeaderboard() throws Exception {
+        ExecutorService flusher = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> flush = flusher.submit(() -> dao.updatePollOptionsVotesCount(
+                    Collections.singletonMap(otherOptionID, 2L)));
+            committed.await();
+
+            PollResults results = engine.getResults(pollID);
+            assertEquals(3, results.getTotalVotes());
+            assertSame(results, engine.getCachedResults(pollID));
+
+            release.countDown();
+            flush.get();
+        } finally {
+            release.countDown();
+            flusher.shutdown();
+        }
+
+        assertSame(engine.getResults(pollID), engine.getCachedResults(pollID));
+        assertEquals(3, engine.getResults(otherPollID).getTotalVotes());
+    }
+
+    /**
+     * Loads results after a flush was notified; the flushed votes must be
+     * counted exactly once.
+     */
+    @Test
+    public void loadAfterFlushCountsVotesOnce() {
+        release.countDown();
+        engine.getResults(pollID);
+        dao.updatePollOptionsVotesCount(Collections.singletonMap(optionID, 2L));
+
+        assertEquals(5, engine.getResults(pollID).getTotalVotes());
+    }
+
+    /**
+     * Finished flush publishes a new snapshot right away, so it is served
+     * without being materialized on read.
+     */
+    @Test
+    public void flushPublishesNewSnapshot() {
+        release.countDown();
+        PollResults before = engine.getResults(pollID);
+        dao.updatePollOptionsVotesCount(Collections.singletonMap(optionID, 2L));
+
+        PollResults after = engine.getCachedResults(pollID);
+        assertEquals(3, before.getTotalVotes());
+        assertEquals(5, after.getTotalVotes());
+        assertEquals(5, after.getWinners().get(0).getVotesCount());
+    }
+
+    /**
+     * Entity tag depends only on results, so another engine(e.g. after a
+     * restart) gives the same tag for the same results and a vote changes it.
+     */
+    @Test
+    public void etagDependsOnlyOnResults() {
+        release.countDown();
+        String etag = engine.getETag(engine.getResults(pollID));
+
+        ResultsEngine restarted = new ResultsEngine();
+        try {
+            assertEquals(etag, restarted.getETag(restarted.getResults(pollID)));
+        } finally {
+            restarted.close();
+        }
+
+        dao.updatePollOptionsVotesCount(Collections.singletonMap(optionID, 1L));
+        assertNotEquals(etag, engine.getETag(engine.getResults(pollID)));
+    }
+
+}
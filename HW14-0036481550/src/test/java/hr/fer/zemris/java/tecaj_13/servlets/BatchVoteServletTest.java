@@ -0,0 +1,184 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.model.Vote;
+
+/**
+ * Tests of the {@link BatchVoteServlet}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class BatchVoteServletTest {
+
+    /**
+     * Only flat objects with integer properties {@code pollID}, {@code id}
+     * and {@code count} are votes.
+     */
+    @Test
+    public void onlyFlatVoteObjectsAreParsed() {
+        Map<String, Long> properties = new HashMap<>();
+
+        assertEquals(new Vote(1, 3, 12),
+                BatchVoteServlet.parseVote("{\"pollID\":1, \"id\":3, \"count\":12}", properties));
+        assertEquals(new Vote(1, 3, 1), BatchVoteServlet.parseVote("{ \"id\" : 3 , \"pollID\" : 1 }", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1,\"id\":3,\"count\":2.5}", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1,\"id\":3,\"x\":{\"count\":2}}", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1,\"id\":3,\"extra\":2}", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1,\"id\":3,\"id\":4}", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1,\"id\":3} {\"count\":2}", properties));
+        assertNull(BatchVoteServlet.parseVote("{\"pollID\":1}", properties));
+    }
+
+    /**
+     * Binary body that ends with an incomplete record is rejected.
+     */
+    @Test
+    public void truncatedRecordIsRejected() throws Exception {
+        ByteBuffer body = ByteBuffer.allocate(3 * Long.BYTES + 8);
+        body.putLong(1).putLong(3).putLong(1).putLong(1);
+
+        assertEquals(400, post("application/octet-stream", body.array()));
+    }
+
+    /**
+     * JSON lines body with a line longer than the limit is rejected.
+     */
+    @Test
+    public void tooLongLineIsRejected() throws Exception {
+        StringBuilder line = new StringBuilder("{\"pollID\":1,\"id\":3");
+        while (line.length() < 300) {
+            line.append(' ');
+        }
+        line.append("}\n");
+
+        assertEquals(400, post("application/x-ndjson", line.toString().getBytes("UTF-8")));
+    }
+
+    /**
+     * Posts the specified body to a new servlet whose lines may be 256
+     * characters long and returns the error status it sends.
+     *
+     * @param contentType
+     *            the content type of the body
+     * @param body
+     *            the body
+     * @return the status of the sent error or 0 if none was sent
+     * @throws Exception
+     *             if the servlet fails
+     */
+    private static int post(String contentType, byte[] body) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        params.put("maxVotes", "10");
+        params.put("maxLineLength", "256");
+
+        BatchVoteServlet servlet = new BatchVoteServlet();
+        servlet.init(stub(ServletConfig.class, (name, args) -> name.equals("getInitParameter")
+                ? params.get(args[0]) : null));
+
+        ByteArrayInputStream bytes = new ByteArrayInputStream(body);
+        ServletInputStream is = new ServletInputStream() {
+            @Override
+            public int read() throws IOException {
+                return bytes.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return bytes.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+        };
+
+        HttpServletRequest req = stub(HttpServletRequest.class, (name, args) -> {
+            switch (name) {
+            case "getContentType":
+                return contentType;
+            case "getInputStream":
+                return is;
+            case "getReader":
+                return new BufferedReader(new InputStreamReader(is, "UTF-8"));
+            default:
+                return null;
+            }
+        });
+
+        int[] status = new int[1];
+        HttpServletResponse resp = stub(HttpServletResponse.class, (name, args) -> {
+            if (name.equals("sendError")) {
+                status[0] = (Integer) args[0];
+            }
+            return null;
+        });
+
+        servlet.doPost(req, resp);
+        return status[0];
+    }
+
+    /**
+     * {@code Handler} answers calls of a stubbed interface.
+     *
+     * @author Karlo Vrbić
+     * @version 1.0
+     */
+    private interface Handler {
+
+        /**
+         * Answers the call of the method with the specified name.
+         *
+         * @param name
+         *            the name of the method
+         * @param args
+         *            the arguments
+         * @return the result of the call
+         * @throws Exception
+         *             if the call fails
+         */
+        Object answer(String name, Object[] args) throws Exception;
+    }
+
+    /**
+     * Returns a stub of the specified interface whose calls are answered by
+     * the specified handler.
+     *
+     * @param <T>
+     *            the type of the interface
+     * @param type
+     *            the interface
+     * @param handler
+     *            the handler
+     * @return the stub
+     */
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> handler.answer(method.getName(), args)));
+    }
+
+}
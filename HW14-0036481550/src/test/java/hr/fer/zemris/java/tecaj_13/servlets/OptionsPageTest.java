@@ -0,0 +1,156 @@
+package hr.fer.zemris.java.tecaj_13.servlets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.NotifyingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.model.PollOption;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+import hr.fer.zemris.java.tecaj_13.votes.VoteAggregator;
+
+/**
+ * Tests of the {@link OptionsPage}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class OptionsPageTest {
+
+    /** The engine whose snapshots contain at most two options. */
+    private ResultsEngine engine;
+    /** The DAO that was provided before the test. */
+    private DAO previous;
+    /** The ID of the poll. */
+    private long pollID;
+
+    /**
+     * Creates a poll with five options.
+     */
+    @Before
+    public void setUp() {
+        MemoryDAO memory = new MemoryDAO();
+        pollID = memory.addPoll("Poll", "Message");
+        for (int votes = 1; votes <= 5; votes++) {
+            memory.addPollOption("Option " + votes, "http://example.com/" + votes, pollID, votes);
+        }
+
+        NotifyingDAO dao = new NotifyingDAO(memory);
+        engine = new ResultsEngine(2);
+        dao.addListener(engine);
+        previous = DAOProvider.getDao();
+        DAOProvider.setDao(dao);
+    }
+
+    /**
+     * Unregisters the engine and restores the provided DAO.
+     */
+    @After
+    public void tearDown() {
+        engine.close();
+        DAOProvider.setDao(previous);
+    }
+
+    /**
+     * Snapshot is bounded but counts all options.
+     */
+    @Test
+    public void snapshotIsBounded() {
+        assertEquals(2, engine.getResults(pollID).getOptions().size());
+        assertEquals(5, engine.getResults(pollID).getOptionsCount());
+        assertEquals(15, engine.getResults(pollID).getTotalVotes());
+        assertFalse(engine.getResults(pollID).isComplete());
+    }
+
+    /**
+     * Pages within the snapshot are sliced from it and the rest are read by
+     * the paged query.
+     */
+    @Test
+    public void pagesBeyondSnapshotAreRead() {
+        assertEquals(Arrays.asList(5L, 4L), votes(OptionsPage.of(engine.getResults(pollID), 1, 2).getOptions()));
+        assertNull(OptionsPage.of(engine.getResults(pollID), 2, 2));
+
+        OptionsPage second = OptionsPage.load(null, engine, pollID, 2, 2);
+        assertEquals(3, second.getPages());
+        assertEquals(Arrays.asList(3L, 2L), votes(second.getOptions()));
+        assertEquals(20.0, second.getPercentages().get(0), 1e-9);
+
+        assertEquals(Arrays.asList(1L), votes(OptionsPage.load(null, engine, pollID, 3, 2).getOptions()));
+        assertFalse(OptionsPage.load(null, engine, pollID, 4, 2).exists());
+        assertEquals(5, OptionsPage.load(null, engine, pollID, 1, Integer.MAX_VALUE).getOptions().size());
+    }
+
+    /**
+     * Cached page is returned only from a materialized snapshot that contains
+     * it; a vote publishes a new snapshot that already counts it.
+     */
+    @Test
+    public void cachedPageNeedsMaterializedSnapshot() {
+        assertNull(OptionsPage.cached(engine, pollID, 1, 2));
+
+        engine.getResults(pollID);
+        assertEquals(Arrays.asList(5L, 4L), votes(OptionsPage.cached(engine, pollID, 1, 2).getOptions()));
+        assertNull(OptionsPage.cached(engine, pollID, 2, 2));
+
+        long optionID = engine.getResults(pollID).getOptions().get(0).getId();
+        DAOProvider.getDao().updatePollOptionsVotesCount(optionID, 1);
+        assertEquals(Arrays.asList(6L, 4L), votes(OptionsPage.cached(engine, pollID, 1, 2).getOptions()));
+    }
+
+    /**
+     * Pending votes are added to pages sliced from the snapshot and to pages
+     * read by the paged query without being written.
+     *
+     * @throws IOException
+     *             if a vote couldn't be counted
+     */
+    @Test
+    public void pendingVotesAreAddedToPages() throws IOException {
+        List<PollOption> options = DAOProvider.getDao().getPollOptions(pollID, 0, 5);
+        VoteAggregator aggregator = new VoteAggregator(new EmbeddedDataSource(), null, 3_600_000, Long.MAX_VALUE);
+        try {
+            aggregator.addVote(pollID, options.get(1).getId());
+            aggregator.addVote(pollID, options.get(1).getId());
+            for (int i = 0; i < 3; i++) {
+                aggregator.addVote(pollID, options.get(3).getId());
+            }
+
+            OptionsPage first = OptionsPage.load(aggregator, engine, pollID, 1, 2);
+            assertEquals(Arrays.asList(6L, 5L), votes(first.getOptions()));
+            assertEquals(20, first.getResults().getTotalVotes());
+            assertEquals(30.0, first.getPercentages().get(0), 1e-9);
+
+            assertEquals(Arrays.asList(5L, 3L), votes(OptionsPage.load(aggregator, engine, pollID, 2, 2).getOptions()));
+            assertEquals(5, aggregator.getPendingVotes());
+            assertEquals(15, engine.getResults(pollID).getTotalVotes());
+        } finally {
+            aggregator.close();
+        }
+    }
+
+    /**
+     * Returns votes counts of the specified options.
+     *
+     * @param options
+     *            the options
+     * @return votes counts of the options
+     */
+    private static List<Long> votes(List<PollOption> options) {
+        return options.stream().map(PollOption::getVotesCount).collect(Collectors.toList());
+    }
+
+}
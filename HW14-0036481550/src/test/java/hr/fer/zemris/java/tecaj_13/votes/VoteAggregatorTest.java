@@ -0,0 +1,153 @@
+package hr.fer.zemris.java.tecaj_13.votes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hr.fer.zemris.java.tecaj_13.dao.DAO;
+import hr.fer.zemris.java.tecaj_13.dao.DAOProvider;
+import hr.fer.zemris.java.tecaj_13.dao.NotifyingDAO;
+import hr.fer.zemris.java.tecaj_13.dao.memory.MemoryDAO;
+import hr.fer.zemris.java.tecaj_13.results.ResultsEngine;
+
+/**
+ * Tests of the {@link VoteAggregator}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class VoteAggregatorTest {
+
+    /** The engine results are read from. */
+    private ResultsEngine engine;
+    /** The aggregator under test. */
+    private VoteAggregator aggregator;
+    /** The ID of the poll. */
+    private long pollID;
+    /** The ID of the poll option. */
+    private long optionID;
+    /** The DAO that was provided before the test. */
+    private DAO previous;
+
+    /**
+     * Creates a poll with one option and an aggregator that doesn't flush on
+     * its own during the test.
+     */
+    @Before
+    public void setUp() {
+        MemoryDAO memory = new MemoryDAO();
+        pollID = memory.addPoll("Poll", "Message");
+        optionID = memory.addPollOption("Option", "http://example.com", pollID, 0);
+
+        NotifyingDAO dao = new NotifyingDAO(memory);
+        engine = new ResultsEngine();
+        dao.addListener(engine);
+        previous = DAOProvider.getDao();
+        DAOProvider.setDao(dao);
+
+        aggregator = new VoteAggregator(new EmbeddedDataSource(), null, 3_600_000, Long.MAX_VALUE);
+    }
+
+    /**
+     * Closes the aggregator and restores the provided DAO.
+     */
+    @After
+    public void tearDown() {
+        aggregator.close();
+        engine.close();
+        DAOProvider.setDao(previous);
+    }
+
+    /**
+     * Results read after flushing the generation of a vote contain it.
+     */
+    @Test
+    public void flushOfGenerationMakesVoteVisible() throws Exception {
+        long generation = aggregator.addVote(pollID, optionID);
+
+        assertFalse(aggregator.isFlushed(generation));
+        assertEquals(0, engine.getResults(pollID).getTotalVotes());
+
+        aggregator.flush(generation);
+
+        assertTrue(aggregator.isFlushed(generation));
+        assertEquals(1, engine.getResults(pollID).getTotalVotes());
+        assertEquals(0, aggregator.getPendingVotes());
+    }
+
+    /**
+     * Pending votes of the poll are added to what is read without being
+     * written.
+     */
+    @Test
+    public void pendingVotesAreReadWithoutFlush() throws Exception {
+        long generation = aggregator.addVote(pollID, optionID);
+
+        long total = aggregator.readWithPendingVotes(
+                pollID,
+                () -> engine.getResults(pollID).getTotalVotes(),
+                (votes, pending) -> votes + pending.getOrDefault(optionID, 0L));
+
+        assertEquals(1, total);
+        assertFalse(aggregator.isFlushed(generation));
+        assertEquals(1, aggregator.getPendingVotes());
+    }
+
+    /**
+     * Vote written by a flush while results are read is counted once.
+     */
+    @Test
+    public void voteFlushedWhileReadingIsCountedOnce() throws Exception {
+        aggregator.addVote(pollID, optionID);
+
+        boolean[] flushed = new boolean[1];
+        long total = aggregator.readWithPendingVotes(
+                pollID,
+                () -> {
+                    long votes = engine.getResults(pollID).getTotalVotes();
+                    if (!flushed[0]) {
+                        flushed[0] = true;
+                        aggregator.flush();
+                    }
+                    return votes;
+                },
+                (votes, pending) -> votes + pending.getOrDefault(optionID, 0L));
+
+        assertEquals(1, total);
+        assertEquals(0, aggregator.getPendingVotes());
+    }
+
+    /**
+     * Flushing a generation that is already written doesn't write votes of
+     * later generations.
+     */
+    @Test
+    public void flushOfWrittenGenerationDoesNothing() throws Exception {
+        long first = aggregator.addVote(pollID, optionID);
+        aggregator.flush(first);
+        long second = aggregator.addVote(pollID, optionID);
+
+        aggregator.flush(first);
+
+        assertTrue(second > first);
+        assertEquals(1, aggregator.getPendingVotes());
+        assertEquals(1, engine.getResults(pollID).getTotalVotes());
+    }
+
+    /**
+     * Generations the aggregator never reached, e.g. those of a previous run,
+     * are considered written.
+     */
+    @Test
+    public void unknownGenerationIsFlushed() throws Exception {
+        long generation = aggregator.addVote(pollID, optionID);
+
+        assertTrue(aggregator.isFlushed(generation + 100));
+    }
+
+}
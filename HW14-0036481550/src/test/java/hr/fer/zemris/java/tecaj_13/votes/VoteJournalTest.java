@@ -0,0 +1,70 @@
+package hr.fer.zemris.java.tecaj_13.votes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of the {@link VoteJournal}.
+ *
+ * @author Karlo Vrbić
+ * @version 1.0
+ */
+public class VoteJournalTest {
+
+    /** Directory of the journal. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Segments up to and including the checkpoint are not recovered.
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    @Test
+    public void checkpointedSegmentsAreNotRecovered() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        long checkpoint;
+
+        try (VoteJournal journal = new VoteJournal(dir)) {
+            journal.append(1, 10);
+            journal.append(1, 10);
+            checkpoint = journal.rotate();
+            journal.append(2, 10);
+        }
+
+        try (VoteJournal journal = new VoteJournal(dir)) {
+            assertEquals(Collections.singletonMap(10L, Collections.singletonMap(2L, 1L)), journal.recover(checkpoint));
+        }
+    }
+
+    /**
+     * Votes written after the journal directory was emptied are recovered
+     * even though the checkpoint is greater than the new segment numbers.
+     *
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    @Test
+    public void segmentsAfterEmptiedDirectoryAreRecovered() throws IOException {
+        Path dir = folder.getRoot().toPath();
+
+        try (VoteJournal journal = new VoteJournal(dir)) {
+            assertTrue(journal.recover(100).isEmpty());
+            journal.append(3, 10);
+        }
+
+        try (VoteJournal journal = new VoteJournal(dir)) {
+            assertEquals(Collections.singletonMap(10L, Collections.singletonMap(3L, 1L)), journal.recover(100));
+        }
+    }
+
+}